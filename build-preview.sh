@@ -0,0 +1,17 @@
+#!/bin/sh
+# Compiles src-preview (engine.OffHeapActorStore, which uses the JDK 21 preview FFM API) into the
+# output that already holds the compiled src, so ActorStore can load the off-heap stores by name.
+# Build src first (Eclipse writes it to bin), then run this with a JDK 21 javac on the PATH or in
+# JAVA_HOME. Run the simulator, benchmark or tests with --enable-preview to use the off-heap stores.
+#
+# usage: ./build-preview.sh [output directory, default bin]
+set -e
+cd "$(dirname "$0")"
+OUT="${1:-bin}"
+JAVAC=javac
+[ -n "$JAVA_HOME" ] && JAVAC="$JAVA_HOME/bin/javac"
+if [ ! -f "$OUT/engine/ActorStore.class" ]; then
+	echo "$OUT does not hold the compiled src; build the project first" >&2
+	exit 1
+fi
+"$JAVAC" --enable-preview --release 21 -cp "$OUT" -d "$OUT" $(find src-preview -name '*.java')
@@ -0,0 +1,211 @@
+package engine;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import actor.ArchetypeRegistry;
+
+/**
+ * The <i>ActorStore</i> whose columns are in native memory, outside the Java heap, so a battle is no longer limited by the heap size and its columns are never copied or scanned by the garbage collector.
+ * All columns share one <i>MemorySegment</i> behind a {@value #HEADER_BYTES}-byte header: first the nine <i>double</i> columns, then the four <i>byte</i> columns, each as long as the capacity.
+ * The segment is either allocated from an <i>Arena</i> or, for <i>ActorStore.mapped()</i>, a memory-mapped file; in the file, the header records the capacity and the number of slots in use, so reopening it only maps the file again.
+ * Growing allocates (or maps) a segment twice as large from a new <i>Arena</i>, moves the columns to their new offsets and closes the old <i>Arena</i>.
+ * <p>This is the only class that refers to <i>java.lang.foreign</i>, a preview API in JDK 21, so it is kept apart in <i>src-preview</i>: <i>build-preview.sh</i> compiles it after <i>src</i> with <i>--enable-preview --release 21</i>, into the same output, and the JVM must run with <i>--enable-preview</i> to use it.
+ * Nothing else refers to it: <i>ActorStore</i> calls its factories by name, and only when <i>ActorStore.isOffHeapSupported()</i> is true, so the rest of the tree builds and runs without preview features.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ActorStore#offHeap(ArchetypeRegistry)
+ * @see ActorStore#mapped(Path, ArchetypeRegistry)
+ */
+final class OffHeapActorStore extends ActorStore {
+	/** Bytes before the first column: {@value} */
+	static final long HEADER_BYTES = 64;
+	/** First <i>int</i> of a mapped file: "BFAS" */
+	private static final int MAGIC = 0x42464153;
+	private static final int VERSION = 1;
+	/** Offsets in the header */
+	private static final long MAGIC_OFFSET = 0, VERSION_OFFSET = 4, CAPACITY_OFFSET = 8, COUNT_OFFSET = 12, ARCHETYPES_OFFSET = 16;
+	/** Column numbers, in the order they are laid out */
+	private static final int X = 0, Y = 1, DEST_X = 2, DEST_Y = 3, LEG_TIME = 4, HEALTH = 5, STRENGTH = 6, SPEED = 7, SPECIAL = 8, DOUBLE_COLUMNS = 9;
+	private static final int TYPE = 0, FLAGS = 1, ARMY = 2, ALIVE = 3, BYTE_COLUMNS = 4;
+	private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+	private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT;
+
+	/** the mapped file, or null for anonymous memory */
+	private final Path file;
+	private Arena arena;
+	private MemorySegment segment;
+	private int capacity;
+	/** byte offset of each column in <i>segment</i> */
+	private long x, y, destX, destY, legTime, health, strength, speed, special, type, flags, army, alive;
+
+	private OffHeapActorStore(ArchetypeRegistry archetypes, Path file) {
+		super(archetypes, false);
+		this.file = file;
+	} // end Constructor
+
+	/**
+	 * Called by name from <i>ActorStore.offHeap()</i>.
+	 * @return an empty store in memory allocated from an <i>Arena</i>
+	 */
+	static ActorStore allocate(ArchetypeRegistry archetypes) {
+		OffHeapActorStore store = new OffHeapActorStore(archetypes, null);
+		store.arena = Arena.ofShared();
+		store.segment = store.arena.allocate(bytesFor(INITIAL_CAPACITY), Long.BYTES);
+		store.segment.fill((byte) 0);
+		store.writeHeader(INITIAL_CAPACITY, archetypes);
+		store.locateColumns(INITIAL_CAPACITY);
+		store.allocateBits();
+		return store;
+	} // end allocate()
+
+	/** Called by name from <i>ActorStore.mapped()</i>. @return the store in <i>file</i>, created empty if the file does not exist */
+	static ActorStore map(Path file, ArchetypeRegistry archetypes) throws IOException {
+		OffHeapActorStore store = new OffHeapActorStore(archetypes, file);
+		boolean exists = Files.exists(file) && Files.size(file) >= HEADER_BYTES;
+		int capacity = INITIAL_CAPACITY, count = 0;
+		if (exists) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ); Arena header = Arena.ofConfined()) {
+				MemorySegment head = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES, header);
+				if (head.get(INT, MAGIC_OFFSET) != MAGIC || head.get(INT, VERSION_OFFSET) != VERSION)
+					throw new IOException("Not an actor store: " + file);
+				if (head.get(INT, ARCHETYPES_OFFSET) != archetypes.size())
+					throw new IOException(String.format("%s was written with %d archetypes, not %d", file, head.get(INT, ARCHETYPES_OFFSET), archetypes.size()));
+				capacity = head.get(INT, CAPACITY_OFFSET);
+				count = head.get(INT, COUNT_OFFSET);
+				if (capacity < count || Files.size(file) < bytesFor(capacity))
+					throw new IOException("Truncated actor store: " + file);
+			}
+		}
+		store.arena = Arena.ofShared();
+		store.segment = mapFile(file, bytesFor(capacity), store.arena);
+		if (!exists)
+			store.writeHeader(capacity, archetypes);
+		store.locateColumns(capacity);
+		store.allocateBits();
+		store.restore(count);
+		return store;
+	} // end map()
+
+	private static MemorySegment mapFile(Path file, long bytes, Arena arena) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes, arena); // extends the file, with zeros, if it is shorter
+		}
+	} // end mapFile()
+
+	private static long bytesFor(int capacity) { return HEADER_BYTES + (long) capacity * (DOUBLE_COLUMNS * Double.BYTES + BYTE_COLUMNS); }
+
+	private void writeHeader(int capacity, ArchetypeRegistry archetypes) {
+		segment.set(INT, MAGIC_OFFSET, MAGIC);
+		segment.set(INT, VERSION_OFFSET, VERSION);
+		segment.set(INT, CAPACITY_OFFSET, capacity);
+		segment.set(INT, COUNT_OFFSET, size());
+		segment.set(INT, ARCHETYPES_OFFSET, archetypes.size());
+	} // end writeHeader()
+
+	/** Computes the offset of every column for a segment of <i>capacity</i> slots. */
+	private void locateColumns(int capacity) {
+		this.capacity = capacity;
+		x = doubleColumn(X); y = doubleColumn(Y); destX = doubleColumn(DEST_X); destY = doubleColumn(DEST_Y); legTime = doubleColumn(LEG_TIME);
+		health = doubleColumn(HEALTH); strength = doubleColumn(STRENGTH); speed = doubleColumn(SPEED); special = doubleColumn(SPECIAL);
+		type = byteColumn(TYPE); flags = byteColumn(FLAGS); army = byteColumn(ARMY); alive = byteColumn(ALIVE);
+	} // end locateColumns()
+
+	private long doubleColumn(int column) { return HEADER_BYTES + (long) column * capacity * Double.BYTES; }
+	private long byteColumn(int column) { return HEADER_BYTES + (long) DOUBLE_COLUMNS * capacity * Double.BYTES + (long) column * capacity; }
+
+	@Override
+	protected int capacity() { return capacity; }
+
+	@Override
+	protected void resize(int newCapacity) {
+		final int oldCapacity = capacity;
+		final long[] oldColumns = columnOffsets();
+		Arena newArena = Arena.ofShared();
+		MemorySegment newSegment;
+		if (file == null) {
+			newSegment = newArena.allocate(bytesFor(newCapacity), Long.BYTES);
+			newSegment.fill((byte) 0);
+			MemorySegment.copy(segment, 0, newSegment, 0, HEADER_BYTES);
+		} else {
+			try {
+				newSegment = mapFile(file, bytesFor(newCapacity), newArena);
+			} catch (IOException e) {
+				newArena.close();
+				throw new IllegalStateException("Cannot grow actor store " + file, e);
+			}
+		}
+		MemorySegment oldSegment = segment;
+		segment = newSegment;
+		locateColumns(newCapacity);
+		long[] newColumns = columnOffsets();
+		for (int column = newColumns.length - 1; column >= 0; --column) { // last first: in a file the columns only move up, so none is overwritten before it has moved
+			long bytes = (long) oldCapacity * (column < DOUBLE_COLUMNS ? Double.BYTES : 1);
+			MemorySegment.copy(file == null ? oldSegment : segment, oldColumns[column], segment, newColumns[column], bytes);
+			if (file != null) // clear what the old layout left beyond the moved column
+				segment.asSlice(newColumns[column] + bytes, bytes * (newCapacity - oldCapacity) / oldCapacity).fill((byte) 0);
+		}
+		segment.set(INT, CAPACITY_OFFSET, newCapacity);
+		arena.close();
+		arena = newArena;
+	} // end resize()
+
+	private long[] columnOffsets() { return new long[] { x, y, destX, destY, legTime, health, strength, speed, special, type, flags, army, alive }; }
+
+	@Override
+	protected void countChanged(int count) { segment.set(INT, COUNT_OFFSET, count); }
+
+	@Override
+	public boolean isOffHeap() { return true; }
+
+	@Override
+	public void force() {
+		if (file != null)
+			segment.force();
+	} // end force()
+
+	@Override
+	public void close() {
+		if (arena != null) {
+			force();
+			arena.close();
+			arena = null;
+		}
+	} // end close()
+
+	@Override public boolean isAlive(int id) { return segment.get(BYTE, alive + id) != 0; }
+	@Override protected void setAlive(int id, boolean alive) { segment.set(BYTE, this.alive + id, alive ? (byte) 1 : (byte) 0); }
+	@Override public int getArmy(int id) { return segment.get(BYTE, army + id); }
+	@Override protected void setArmy(int id, int armyIndex) { segment.set(BYTE, army + id, (byte) armyIndex); }
+	@Override protected int getType(int id) { return segment.get(BYTE, type + id); }
+	@Override protected void setType(int id, int archetypeId) { segment.set(BYTE, type + id, (byte) archetypeId); }
+	@Override protected int getFlags(int id) { return segment.get(BYTE, flags + id); }
+	@Override protected void setFlags(int id, int flags) { segment.set(BYTE, this.flags + id, (byte) flags); }
+
+	@Override public double getX(int id) { return segment.get(DOUBLE, x + ((long) id << 3)); }
+	@Override public double getY(int id) { return segment.get(DOUBLE, y + ((long) id << 3)); }
+	@Override protected void setX(int id, double x) { segment.set(DOUBLE, this.x + ((long) id << 3), x); }
+	@Override protected void setY(int id, double y) { segment.set(DOUBLE, this.y + ((long) id << 3), y); }
+	@Override protected double getDestX(int id) { return segment.get(DOUBLE, destX + ((long) id << 3)); }
+	@Override protected double getDestY(int id) { return segment.get(DOUBLE, destY + ((long) id << 3)); }
+	@Override protected void setDestX(int id, double destX) { segment.set(DOUBLE, this.destX + ((long) id << 3), destX); }
+	@Override protected void setDestY(int id, double destY) { segment.set(DOUBLE, this.destY + ((long) id << 3), destY); }
+	@Override protected double getLegTime(int id) { return segment.get(DOUBLE, legTime + ((long) id << 3)); }
+	@Override protected void setLegTime(int id, double legTime) { segment.set(DOUBLE, this.legTime + ((long) id << 3), legTime); }
+	@Override public double getHealth(int id) { return segment.get(DOUBLE, health + ((long) id << 3)); }
+	@Override protected void setHealth(int id, double health) { segment.set(DOUBLE, this.health + ((long) id << 3), health); }
+	@Override public double getStrength(int id) { return segment.get(DOUBLE, strength + ((long) id << 3)); }
+	@Override protected void setStrength(int id, double strength) { segment.set(DOUBLE, this.strength + ((long) id << 3), strength); }
+	@Override public double getSpeed(int id) { return segment.get(DOUBLE, speed + ((long) id << 3)); }
+	@Override protected void setSpeed(int id, double speed) { segment.set(DOUBLE, this.speed + ((long) id << 3), speed); }
+	@Override protected double getSpecial(int id) { return segment.get(DOUBLE, special + ((long) id << 3)); }
+	@Override protected void setSpecial(int id, double special) { segment.set(DOUBLE, this.special + ((long) id << 3), special); }
+} // end class OffHeapActorStore
@@ -8,7 +8,6 @@ import java.io.Serializable;
 import javafx.animation.*;
 import javafx.beans.property.*;
 import javafx.collections.ObservableList;
-import javafx.geometry.Point2D;
 import javafx.scene.*;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.*;
@@ -96,11 +95,19 @@ public abstract class Actor implements Serializable { // Could also be written a
 	/** returns a copy of the <i>double</i> value stored in <i>speed</i> */
 	public double getSpeed() { return speed.get(); }
 	
-	/** Used to assist in finding nearest opposing <i>Actor</i>; this <i>Actor</i? can ask its <i>Army</i> search the opposing <i>Army</i>, thus the <i>Army</i> will need to know who the opposing <i>Army</i> is, but that's the <i>Army</i> responsibility. */
+	/** Used to assist in finding nearest opposing <i>Actor</i>; this <i>Actor</i? can ask its <i>Army</i> search the hostile <i>Army</i> objects, thus the <i>Army</i> will need to know which <i>Army</i> objects are hostile, but that's the <i>Army</i> responsibility. */
 	@SuppressWarnings("unused") // This will be used in the next phase of development, at which point, we can remove the @SuppressWarnings("unused"). In general, @SuppressWarnings("unused") is BAD FORM . . . but we are committed to its removal. 
 	protected Army armyAllegiance; 
 	/** Used to manage the avatar motion under JavaFX. */
 	private TranslateTransition tt;
+	/** duration in seconds last given to <i>tt</i>, so a new <i>Duration</i> is only created when the speed changes */
+	private double legSeconds;
+	/** Index of the x coordinate in a location buffer: {@value} */
+	protected static final int X = 0;
+	/** Index of the y coordinate in a location buffer: {@value} */
+	protected static final int Y = 1;
+	/** location buffer filled by <i>findNewLocation()</i> and <i>meander()</i> at every step, so choosing a destination allocates nothing */
+	private double[] location = new double[2];
 	/** Is associated with the avatar and is used to display on-screen information about the <i>Actor</i> object. */
 	private Tooltip tooltip;
 	
@@ -118,10 +125,50 @@ public abstract class Actor implements Serializable { // Could also be written a
 		setHealth(SingletonRandom.instance.getNormalDistribution(MIN_HEALTH, MAX_HEALTH, 2.0));
 		setSpeed(SingletonRandom.instance.getNormalDistribution(MIN_SPEED, MAX_SPEED, 2.0));
 		createAvatar();
+		attachAvatar();
+	} // end Actor constructor
+
+	/**
+	 * <i>Actor</i> constructor for subclasses whose type is data rather than a class (see <i>Unit</i>): the subclass draws <i>strength</i>, <i>health</i> and <i>speed</i> from its own ranges, and builds its avatar and calls <i>attachAvatar()</i> once its own fields are set.
+	 * @param subclassCount used to support automatic naming (which includes a unique serial number).
+	 * @param armyAllegiance used to support the <i>Army</i>-specific <i>DropShadow</i> glow around this Actor object.
+	 * @param typeName name of the type, used in the automatic name in place of the class name
+	 * @param strength initial <i>strength</i>
+	 * @param health initial <i>health</i>
+	 * @param speed initial <i>speed</i>
+	 */
+	protected Actor(int subclassCount, Army armyAllegiance, String typeName, double strength, double health, double speed) {
+		this.armyAllegiance = armyAllegiance;
+		++actorSerialNumber;
+		this.name.set(String.format("%d:%s:%d:", actorSerialNumber, typeName, subclassCount)); // the fields are set directly, not through the overridable setters, since the subclass is not yet initialized
+		this.strength.set(Math.max(MIN_STRENGTH, Math.min(MAX_STRENGTH, strength)));
+		this.health.set(Math.max(MIN_HEALTH, Math.min(MAX_HEALTH, health)));
+		this.speed.set(Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed)));
+	} // end Actor constructor
+
+	/** Installs the <i>Tooltip</i> on the avatar and prepares its motion; called once the avatar returned by <i>getAvatar()</i> exists. */
+	protected final void attachAvatar() {
 		tooltip = new Tooltip(toString());
 		Tooltip.install(getAvatar(), tooltip);
+		prepareMotion();
+	} // end attachAvatar()
+
+	/** Builds the one <i>TranslateTransition</i> reused for every segment of motion; its <i>onFinished</i> handler is set once here rather than at every segment. */
+	private void prepareMotion() {
 		tt = new TranslateTransition(); tt.setNode(getAvatar()); // reuse
-	} // end Actor constructor
+		tt.setOnFinished(event -> startMotion(true)); // NOT RECURSION!!!!
+		legSeconds = 0.0;
+	} // end prepareMotion()
+
+	/**
+	 * Gives a recycled <i>Actor</i> object (see <i>Army.reinforce()</i>) fresh random attributes, as the constructor does, keeping its name, avatar, <i>Tooltip</i> and <i>TranslateTransition</i>. Subclasses that add attributes draw them again too; those that draw <i>strength</i>, <i>health</i> and <i>speed</i> from their own ranges override it without calling it.
+	 * The caller calls <i>resetAvatarAttributes()</i> once the subclasses are done.
+	 */
+	public void respawn() {
+		setStrength(SingletonRandom.instance.getNormalDistribution(MIN_STRENGTH, MAX_STRENGTH, 2.0));
+		setHealth(SingletonRandom.instance.getNormalDistribution(MIN_HEALTH, MAX_HEALTH, 2.0));
+		setSpeed(SingletonRandom.instance.getNormalDistribution(MIN_SPEED, MAX_SPEED, 2.0));
+	} // end respawn()
 
 	/** sets all <i>Actor</i> fields, guaranteeing values within the specified range. Later, it will be treated as a virtual method, and subclasses will call this (the superclass method) to perform its work. */
 	public void inputAllFields() {
@@ -171,6 +218,9 @@ public abstract class Actor implements Serializable { // Could also be written a
 		return getHealth();
 	} // end combatRound()
 
+	/** @return id of this actor's type in the default <i>ArchetypeRegistry</i>; called on every combat round and death, so each subclass resolves it once and keeps it */
+	public abstract int getArchetypeId();
+
 	/** 
 	 * based on <i>health</i> determines if the <i>Actor</i> is healthy enough to move; returns a <i>true</i> or <i>false</i> value 
 	 * @return boolean value representing whether the <i>Actor</i> can move.
@@ -192,91 +242,79 @@ public abstract class Actor implements Serializable { // Could also be written a
 	/** Defines the characteristics of a <i>TranslateTransition</i>.
 	 * Each call results in ONE segment of motion. When that segment is finished, it "chains" another call to <i>startMotion()</i> (which is NOT recursion)!
 	 * The initial call is made by the managing <i>Army</i> object; subsequent calls are made through the "chaining" process described here.
-	 * @param engageInCombat TODO
+	 * A segment allocates nothing on the heap: the destination is written into a location buffer owned by this <i>Actor</i>, and the <i>TranslateTransition</i>, its handler and (while the speed is unchanged) its <i>Duration</i> are reused.
+	 * @param engageInCombat true to fight the nearest opponent if it is close enough
 	 */
 	public void startMotion(boolean engageInCombat) {
-		Army opposingArmy = armyAllegiance.getOpposingArmy();
-		Actor opponent = opposingArmy.findNearestOpponent(this); // could legitimately return a null: 1) no one is visible 2) no Actors in opposing army
+		Actor opponent = armyAllegiance.findNearestHostile(this); // could legitimately return a null: 1) no one is visible 2) no Actors in any hostile army
 
-		Point2D newLocation;
 		if (opponent != null) {
-			System.out.printf("ToMove:[%.1f:%.1f] Opponent:[%.1f:%.1f]\n", getAvatar().getTranslateX(), getAvatar().getTranslateY(), opponent.getAvatar().getTranslateX(), opponent.getAvatar().getTranslateX());
 			double DISTANCE_FOR_BATTLE = 50.0;
 			if (engageInCombat && distanceTo(opponent) < DISTANCE_FOR_BATTLE) {
-				double h1, h2, h3, h4; // debug code
-				h1 = this.getHealth();
-				h2 = opponent.getHealth();
-
+				double healthBefore = getHealth(), opponentHealthBefore = opponent.getHealth();
 				combatRound(opponent);
-				h3 = this.getHealth();
-				h4 = opponent.getHealth();
-				h4 = h4;
-				if (this.getHealth() <= 0.0) {
+				armyAllegiance.recordCombat(this, opponent, getHealth() - healthBefore, opponent.getHealth() - opponentHealthBefore);
+				boolean killed = this.getHealth() <= 0.0;
+				if (killed) {
 					armyAllegiance.removeNowDeadActor(this);
 				}
 				if (opponent.getHealth() <= 0.0) {
 					opponent.armyAllegiance.removeNowDeadActor(opponent);
 				}
+				if (killed)
+					return; // the dead do not move on; their TranslateTransition has been stopped for reuse
 			} // end if (combat)
-			newLocation = findNewLocation(opponent);
+			findNewLocation(opponent, location);
 		} else // end if (test for null opponent)
-			newLocation = meander(); // null opponent means we wander around close to our current location
+			meander(location); // null opponent means we wander around close to our current location
 
 		if (tt.getStatus() != Animation.Status.RUNNING) { // if NOT yet RUNNING, start . . . otherwise, do nothing.
 		// tt.setToX(Math.random()*getAvatar().getScene().getWidth()); tt.setToY(Math.random()*getAvatar().getScene().getHeight());
-			tt.setToX(validateCoordinate(newLocation).getX());
-			tt.setToY(validateCoordinate(newLocation).getY());
-			tt.setDuration(Duration.seconds(MAX_SPEED / (getSpeed() * (armyAllegiance.getSpeedControllerValue()))));
-			tt.setOnFinished(event -> startMotion(true)); // NOT RECURSION!!!!
+			validateCoordinate(location);
+			tt.setToX(location[X]);
+			tt.setToY(location[Y]);
+			double seconds = MAX_SPEED / (getSpeed() * (armyAllegiance.getSpeedControllerValue()));
+			if (seconds != legSeconds) {
+				legSeconds = seconds;
+				tt.setDuration(Duration.seconds(seconds));
+			}
 			tt.play(); // give assembled object to the render engine (of course, play() is an object-oriented method which has access to "this" inside, and it can use "this" to give to the render engine.
 		}
 	} // end startMotion()
 	
-	private Point2D validateCoordinate(Point2D possibleNewLocation){
+	/** Pulls a destination that has left the battlefield back in, in place. */
+	private void validateCoordinate(double[] possibleNewLocation){
 		double maxY = armyAllegiance.getScene().getHeight();
 		double maxX = armyAllegiance.getScene().getWidth();
-		double myX = possibleNewLocation.getX();
-		double myY = possibleNewLocation.getY();
-		double newX=0.0;
-		double newY=0.0;
+		double myX = possibleNewLocation[X];
+		double myY = possibleNewLocation[Y];
 		if ((myX < 0) && (myY < 0)){
-			newX = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxX), 2.0);
-			newY = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxY), 2.0);
-			return new Point2D(newX, newY);
+			possibleNewLocation[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxX), 2.0);
+			possibleNewLocation[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxY), 2.0);
 		}
 		else if ((0 < myX) && (myX < maxX) && (myY < 0)){
-			newY = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxY), 2.0);
-			return new Point2D(myX, newY);
+			possibleNewLocation[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxY), 2.0);
 		}
 		else if ((myX > maxX) && (myY < 0)){
-			newX = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxX), 2.0);
-			newY = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
-			return new Point2D(newX, newY);
+			possibleNewLocation[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxX), 2.0);
+			possibleNewLocation[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
 		}
 		else if ((0 < myX) && (myY < maxY) && (myY > 0)){
-			newX = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxX), 2.0);
-			return new Point2D(newX, myY);
+			possibleNewLocation[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxX), 2.0);
 		}
 		else if ((myX > maxX) && (myY < maxY) && (myY > 0)){
-			newX = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxX), 2.0);
-			return new Point2D(newX, myY);
+			possibleNewLocation[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxX), 2.0);
 		}
-		if ((myX < 0) && (myY > maxY)){
-			newX = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxX), 2.0);
-			newY = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
-			return new Point2D(newX, newY);
+		else if ((myX < 0) && (myY > maxY)){
+			possibleNewLocation[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.25*maxX), 2.0);
+			possibleNewLocation[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
 		}
 		else if ((0 < myX) && (myX < maxX) && (myY > maxY)){
-			newY = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
-			return new Point2D(myX, newY);
+			possibleNewLocation[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
 		}
 		else if ((myX > maxX) && (myY > maxY)){
-			newX = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxX), 2.0);
-			newY = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
-			return new Point2D(newX, newY);
-		}
-		else {
-			return new Point2D(myX, myY);
+			possibleNewLocation[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxX), 2.0);
+			possibleNewLocation[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.75*maxY), 2.0);
 		}
 	}
 
@@ -292,17 +330,25 @@ public abstract class Actor implements Serializable { // Could also be written a
 		return calculatedDistance;
 	}
 	
-	protected abstract Point2D findNewLocation(Actor opponent);
+	/**
+	 * Each subclass chooses where to go next given its opponent.
+	 * @param opponent the nearest visible hostile <i>Actor</i>
+	 * @param location buffer that receives the destination: <i>location[X]</i> and <i>location[Y]</i>
+	 */
+	protected abstract void findNewLocation(Actor opponent, double[] location);
 	
-	protected Point2D meander() {
+	/** Writes a destination close to the current location into <i>location[X]</i> and <i>location[Y]</i>. */
+	protected void meander(double[] location) {
 		final double RANGE_OF_MEANDERING = 20.0;
 		double myX = getAvatar().getTranslateX();
 		double myY = getAvatar().getTranslateY();
-		return new Point2D(
-				SingletonRandom.instance.getNormalDistribution(myX-RANGE_OF_MEANDERING, myX+RANGE_OF_MEANDERING, 2.0),
-				SingletonRandom.instance.getNormalDistribution(myY-RANGE_OF_MEANDERING, myY+RANGE_OF_MEANDERING, 2.0));
+		location[X] = SingletonRandom.instance.getNormalDistribution(myX-RANGE_OF_MEANDERING, myX+RANGE_OF_MEANDERING, 2.0);
+		location[Y] = SingletonRandom.instance.getNormalDistribution(myY-RANGE_OF_MEANDERING, myY+RANGE_OF_MEANDERING, 2.0);
 	}
 	
+	/** Stops the <i>TranslateTransition</i> for good, so that no further segment is chained; used when the <i>Actor</i> dies. */
+	public void stopMotion() { tt.stop(); }
+
 	/** Pauses a <i>TranslateTransition</i> if it is actively running. */
 	public void pauseMotion() {
 		if (tt.getStatus() == Animation.Status.RUNNING)
@@ -368,12 +414,19 @@ public abstract class Actor implements Serializable { // Could also be written a
 	 strength = new SimpleDoubleProperty(in.readDouble());
 	 health = new SimpleDoubleProperty(in.readDouble());
 	 speed = new SimpleDoubleProperty(in.readDouble());
+	 location = new double[2];
+	 location[X] = in.readDouble(); // kept until the avatar exists
+	 location[Y] = in.readDouble();
 	 createAvatar();
-	 getAvatar().setTranslateX(in.readDouble());
-	 getAvatar().setTranslateY(in.readDouble());
-	 tooltip = new Tooltip(toString());
-	 Tooltip.install(getAvatar(), tooltip);
-	 resetAvatarAttributes();
+	 if (getAvatar() != null) // otherwise the subclass builds its avatar from its own fields and calls restoreAvatar() itself
+		 restoreAvatar();
 	 } // end readObject() to support serialization
 
+	  /** Places the avatar of a deserialized <i>Actor</i> where it was saved and attaches it; see <i>attachAvatar()</i>. */
+	  protected final void restoreAvatar() {
+	 getAvatar().setTranslateX(location[X]);
+	 getAvatar().setTranslateY(location[Y]);
+	 attachAvatar();
+	 } // end restoreAvatar()
+
 } // end class Actor
\ No newline at end of file
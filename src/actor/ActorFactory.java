@@ -13,10 +13,10 @@ import army.Army;
 public final class ActorFactory {
 	/** An enum type is a special data type that enables for a variable to be a set of predefined constants. The variable must be equal to one of the values that have been predefined for it. */
 	public enum Type {
-		HOBBIT()	{ @Override public Actor create(Army armyAllegiance) { return new Hobbit(armyAllegiance); } }, // HOBBIT is a constant, thus all UPPERCASE letters
-		WIZARD()	{ @Override public Actor create(Army armyAllegiance) { return new Wizard(armyAllegiance); } },
-		ORC()			{ @Override public Actor create(Army armyAllegiance) { return new Orc(armyAllegiance); } },
-		ELF()			{ @Override public Actor create(Army armyAllegiance) { return new Elf(armyAllegiance); } },
+		HOBBIT()	{ @Override public Actor create(Army armyAllegiance) { return createBuiltIn(this, armyAllegiance); } }, // HOBBIT is a constant, thus all UPPERCASE letters
+		WIZARD()	{ @Override public Actor create(Army armyAllegiance) { return createBuiltIn(this, armyAllegiance); } },
+		ORC()			{ @Override public Actor create(Army armyAllegiance) { return createBuiltIn(this, armyAllegiance); } },
+		ELF()			{ @Override public Actor create(Army armyAllegiance) { return createBuiltIn(this, armyAllegiance); } },
 		RANDOM()	{ @Override public Actor create(Army armyAllegiance) { return createActorRandomSelection(armyAllegiance); } };
 		/**
 		 * Polymorphic method that will bind to the specific create() method for the actual named type (e.g. HOBBIT); create an object of that type and return a reference-to it.
@@ -36,4 +36,25 @@ public final class ActorFactory {
 	public final static Actor createActorRandomSelection(Army armyAllegiance) {
 		return Type.values()[(int)(Math.random()*(double)(numTypes-1))].create(armyAllegiance); // subtract last because one enum type is RANDOM
 	} // end createActorRandomSelection()
+
+	/**
+	 * Creates a built-in type from its block in <i>archetypes.properties</i>, so the configuration is the only definition of the type.
+	 * The <i>Hobbit</i>, <i>Wizard</i>, <i>Orc</i> and <i>Elf</i> classes are kept only so that battles saved before the switch still load.
+	 * @param type one of the named types (not RANDOM)
+	 * @param armyAllegiance Used to define the <i>Army</i> allegiance of the <i>Actor</i>.
+	 * @return reference-to a new <i>Unit</i> object
+	 */
+	private static Actor createBuiltIn(Type type, Army armyAllegiance) {
+		return create(ArchetypeRegistry.getDefault().get(type), armyAllegiance);
+	} // end createBuiltIn()
+
+	/**
+	 * Creates an <i>Actor</i> of a type defined in the <i>ArchetypeRegistry</i>, rather than one of the built-in <i>Type</i> constants; no subclass is needed for the type.
+	 * @param archetype type of the new <i>Actor</i>
+	 * @param armyAllegiance Used to define the <i>Army</i> allegiance of the <i>Actor</i>.
+	 * @return reference-to a new <i>Unit</i> object
+	 */
+	public final static Actor create(Archetype archetype, Army armyAllegiance) {
+		return new Unit(archetype, armyAllegiance);
+	} // end create()
 } // end class ActoryFactory
\ No newline at end of file
@@ -0,0 +1,159 @@
+package actor;
+
+/**
+ * An <i>Archetype</i> holds everything that is the same for every actor of one type: the ranges its attributes are drawn from, how it hides, how it moves and what it looks like.
+ * It is a flyweight: one <i>Archetype</i> object exists per type, loaded by the <i>ArchetypeRegistry</i>, and actors refer to it by its small integer <i>id</i> instead of carrying their own copies.
+ * <i>Archetype</i> does not use JavaFX, so the headless engine can share it with the <i>Simulator</i>.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ArchetypeRegistry
+ * @see Unit
+ */
+public final class Archetype {
+	/** How an actor of this type decides whether it can be seen. */
+	public enum Visibility {
+		/** always visible, like an <i>Orc</i> */
+		ALWAYS,
+		/** visible unless it holds its concealment item, like an <i>Elf</i> cloak or a <i>Wizard</i> staff */
+		UNLESS_CONCEALED,
+		/** visible while its special attribute is below the threshold, like <i>Hobbit</i> stealth */
+		SPECIAL_BELOW
+	} // end enum Visibility
+
+	/** How an actor of this type picks its next destination when it has seen an opponent. */
+	public enum Movement {
+		/** runs for the half of the battlefield away from the opponent, like a <i>Hobbit</i> */
+		FLEE,
+		/** covers a fixed share of the distance to the opponent, like an <i>Orc</i>, <i>Elf</i> or <i>Wizard</i> */
+		APPROACH
+	} // end enum Movement
+
+	/** Which opponent an actor of this type fights when it has a choice. The strategies other than <b>NEAREST</b> pick among the opponents within battle range and fall back on the nearest one when none is in range. */
+	public enum Targeting {
+		/** the nearest visible opponent, as every type did originally */
+		NEAREST,
+		/** the opponent in range with the least health, to finish it off */
+		WEAKEST_IN_RANGE,
+		/** the opponent in range with the most strength, to remove the biggest threat */
+		STRONGEST_IN_RANGE,
+		/** the opponent in range with the most speed, before it can get away */
+		FASTEST_IN_RANGE
+	} // end enum Targeting
+
+	/** Shape of the avatar. */
+	public enum Shape { CIRCLE, RECTANGLE, IMAGE }
+
+	/** A range of values drawn with <i>SingletonRandom.getNormalDistribution()</i>. */
+	public static final class Range {
+		private final double min, max, spread;
+
+		public Range(double min, double max, double spread) {
+			if (min > max)
+				throw new IllegalArgumentException(String.format("Range minimum %.1f is above maximum %.1f", min, max));
+			this.min = min; this.max = max; this.spread = spread;
+		} // end Constructor
+
+		public double getMin() { return min; }
+		public double getMax() { return max; }
+		/** @return the <i>standardDeviationSpread</i> argument */
+		public double getSpread() { return spread; }
+
+		@Override
+		public String toString() { return String.format("%s %s %s", min, max, spread); }
+	} // end class Range
+
+	/** Sight radius of a type that does not configure one: {@value} */
+	public static final double DEFAULT_SIGHT = 150.0;
+
+	private final int id;
+	private final String name;
+	private final Range strength, health, speed;
+	/** label (e.g. "Stealth") and range of the one type-specific attribute, or null/null if the type has none */
+	private final String specialName;
+	private final Range special;
+	private final double concealedProbability, horseProbability;
+	private final Visibility visibility;
+	private final double visibilityThreshold;
+	private final Movement movement;
+	private final double approachFraction;
+	private final Targeting targeting;
+	/** radius within which an actor of this type sees, for the fog of war */
+	private final double sight;
+	/** reach, damage, projectile speed and reload time of the type's ranged attack; all 0 if it has none */
+	private final double rangedReach, rangedDamage, projectileSpeed, reloadSeconds;
+	private final Shape shape;
+	/** circle radius, or rectangle or image width */
+	private final double spriteWidth;
+	/** rectangle height; unused for the other shapes */
+	private final double spriteHeight;
+	/** <i>Color.web()</i> name of the circle or rectangle fill, or file name of the image */
+	private final String spriteSource;
+
+	Archetype(int id, String name, Range strength, Range health, Range speed, String specialName, Range special, double concealedProbability, double horseProbability,
+			Visibility visibility, double visibilityThreshold, Movement movement, double approachFraction, Targeting targeting, double sight, double[] ranged, Shape shape, double spriteWidth, double spriteHeight, String spriteSource) {
+		this.id = id; this.name = name;
+		this.strength = strength; this.health = health; this.speed = speed;
+		this.specialName = specialName; this.special = special;
+		this.concealedProbability = concealedProbability; this.horseProbability = horseProbability;
+		this.visibility = visibility; this.visibilityThreshold = visibilityThreshold;
+		this.movement = movement; this.approachFraction = approachFraction;
+		this.targeting = targeting;
+		this.sight = sight;
+		this.rangedReach = ranged[0]; this.rangedDamage = ranged[1]; this.projectileSpeed = ranged[2]; this.reloadSeconds = ranged[3];
+		this.shape = shape; this.spriteWidth = spriteWidth; this.spriteHeight = spriteHeight; this.spriteSource = spriteSource;
+	} // end Constructor
+
+	/** @return index of this archetype in its registry; small enough to store in a <i>byte</i> */
+	public int getId() { return id; }
+	public String getName() { return name; }
+	public Range getStrength() { return strength; }
+	public Range getHealth() { return health; }
+	public Range getSpeed() { return speed; }
+	public boolean hasSpecial() { return special != null; }
+	public String getSpecialName() { return specialName; }
+	public Range getSpecial() { return special; }
+	/** @return probability that a new actor holds the concealment item (0 if the type has none) */
+	public double getConcealedProbability() { return concealedProbability; }
+	/** @return probability that a new actor has a horse (0 if the type never rides) */
+	public double getHorseProbability() { return horseProbability; }
+	public Visibility getVisibility() { return visibility; }
+	public double getVisibilityThreshold() { return visibilityThreshold; }
+	public Movement getMovement() { return movement; }
+	/** @return share of the distance to the opponent covered by one leg of motion, for <b>APPROACH</b> movement */
+	public double getApproachFraction() { return approachFraction; }
+	public Targeting getTargeting() { return targeting; }
+	/** @return radius within which an actor of this type sees, for the fog of war of the headless <i>Battle</i> */
+	public double getSight() { return sight; }
+	/** @return true if actors of this type fire projectiles at opponents beyond melee distance (in a headless <i>Battle</i> with ranged combat on) */
+	public boolean isRanged() { return rangedReach > 0.0; }
+	/** @return farthest a projectile of this type flies */
+	public double getRangedReach() { return rangedReach; }
+	/** @return health a projectile of this type takes from the actor it hits */
+	public double getRangedDamage() { return rangedDamage; }
+	/** @return pixels per second a projectile of this type flies */
+	public double getProjectileSpeed() { return projectileSpeed; }
+	/** @return seconds between two shots of one actor of this type */
+	public double getReloadSeconds() { return reloadSeconds; }
+	public Shape getShape() { return shape; }
+	public double getSpriteWidth() { return spriteWidth; }
+	public double getSpriteHeight() { return spriteHeight; }
+	public String getSpriteSource() { return spriteSource; }
+
+	/**
+	 * The visibility rule of this type, applied to one actor's state.
+	 * @param special the actor's special attribute
+	 * @param concealed whether the actor holds the concealment item
+	 * @return true if the actor can be seen
+	 */
+	public boolean isVisible(double special, boolean concealed) {
+		switch (visibility) {
+		case UNLESS_CONCEALED: return !concealed;
+		case SPECIAL_BELOW:    return special < visibilityThreshold;
+		default:               return true;
+		}
+	} // end isVisible()
+
+	@Override
+	public String toString() { return name; }
+} // end class Archetype
@@ -0,0 +1,252 @@
+package actor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The <i>ArchetypeRegistry</i> loads the actor types from a configuration file, so a new type of unit is a few lines of configuration rather than a new subclass of <i>Actor</i>.
+ * The file is in <i>Properties</i> format. The key <b>archetypes</b> lists the type names in order (the order gives each <i>Archetype</i> its id); every other key is <i>TYPE.property</i>:
+ * <pre>
+ * archetypes = HOBBIT, ORC
+ * HOBBIT.special = Stealth 0 100 2.0       (optional: label, min, max, spread)
+ * HOBBIT.visibility = special below 50     (always | unless concealed | special below <i>value</i>)
+ * HOBBIT.movement = flee                   (flee | approach <i>fraction</i>)
+ * HOBBIT.sprite = circle 5 AQUAMARINE      (circle <i>radius color</i> | rectangle <i>width height color</i> | image <i>file width</i>)
+ * ORC.strength = 10 100 2.0                (optional, as are health and speed; the defaults are the <i>Actor</i> ranges)
+ * ORC.concealed = 0.0                      (optional: probability of holding a cloak or staff)
+ * ORC.horse = 0.0                          (optional: probability of riding a horse)
+ * ORC.targeting = weakest in range         (optional: nearest | weakest in range | strongest in range | fastest in range; default nearest)
+ * ELF.ranged = 200 3 300 1.5               (optional: reach, damage, projectile speed and reload seconds of a ranged attack; default none)
+ * ORC.sight = 120                          (optional: radius seen through the fog of war; default {@value Archetype#DEFAULT_SIGHT})
+ * </pre>
+ * The default registry is read once from <i>archetypes.properties</i> in the working directory (the same place as the avatar images), or from the file named by the system property <b>archetypes</b>.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Archetype
+ */
+public final class ArchetypeRegistry {
+	/** Ids are stored in a <i>byte</i>: {@value} */
+	public static final int MAX_ARCHETYPES = Byte.MAX_VALUE;
+	/** Default configuration file: {@value} */
+	public static final String DEFAULT_FILE = "archetypes.properties";
+
+	private static ArchetypeRegistry defaultRegistry;
+
+	private final List<Archetype> archetypes;
+	private final Map<String, Archetype> byName = new HashMap<>();
+
+	private ArchetypeRegistry(List<Archetype> archetypes) {
+		this.archetypes = Collections.unmodifiableList(archetypes);
+		for (Archetype archetype : archetypes)
+			byName.put(archetype.getName(), archetype);
+	} // end Constructor
+
+	/** @return the registry read from <i>archetypes.properties</i> (or the file named by the <b>archetypes</b> system property) the first time it is needed */
+	public static synchronized ArchetypeRegistry getDefault() {
+		if (defaultRegistry == null) {
+			try {
+				defaultRegistry = load(Paths.get(System.getProperty("archetypes", DEFAULT_FILE)));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Cannot read the actor archetypes", e);
+			}
+		}
+		return defaultRegistry;
+	} // end getDefault()
+
+	public static ArchetypeRegistry load(Path path) throws IOException {
+		try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			return load(reader);
+		}
+	} // end load()
+
+	/**
+	 * @param reader configuration in the format described above
+	 * @return a registry holding one <i>Archetype</i> per listed type
+	 * @throws IllegalArgumentException if a type is missing a required property or a value cannot be parsed
+	 */
+	public static ArchetypeRegistry load(Reader reader) throws IOException {
+		Properties properties = new Properties();
+		properties.load(reader);
+		String list = properties.getProperty("archetypes");
+		if (list == null || list.trim().isEmpty())
+			throw new IllegalArgumentException("No archetypes listed");
+		List<Archetype> archetypes = new ArrayList<>();
+		for (String name : list.split("[,\\s]+")) {
+			if (name.isEmpty())
+				continue;
+			if (archetypes.size() == MAX_ARCHETYPES)
+				throw new IllegalArgumentException("At most " + MAX_ARCHETYPES + " archetypes");
+			archetypes.add(parse(archetypes.size(), name.toUpperCase(Locale.ROOT), properties));
+		}
+		return new ArchetypeRegistry(archetypes);
+	} // end load()
+
+	private static Archetype parse(int id, String name, Properties properties) {
+		Archetype.Range strength = range(name, properties, "strength", new Archetype.Range(Actor.MIN_STRENGTH, Actor.MAX_STRENGTH, 2.0));
+		Archetype.Range health = range(name, properties, "health", new Archetype.Range(Actor.MIN_HEALTH, Actor.MAX_HEALTH, 2.0));
+		Archetype.Range speed = range(name, properties, "speed", new Archetype.Range(Actor.MIN_SPEED, Actor.MAX_SPEED, 2.0));
+
+		String specialName = null;
+		Archetype.Range special = null;
+		String[] specialWords = words(name, properties, "special", false);
+		if (specialWords != null) {
+			if (specialWords.length != 4)
+				throw invalid(name, "special", "label min max spread");
+			specialName = specialWords[0];
+			special = new Archetype.Range(number(name, "special", specialWords[1]), number(name, "special", specialWords[2]), number(name, "special", specialWords[3]));
+		}
+		double concealed = probability(name, properties, "concealed");
+		double horse = probability(name, properties, "horse");
+
+		String[] visibilityWords = words(name, properties, "visibility", true);
+		Archetype.Visibility visibility;
+		double threshold = 0.0;
+		String visibilityText = String.join(" ", visibilityWords).toLowerCase(Locale.ROOT);
+		if (visibilityText.equals("always"))
+			visibility = Archetype.Visibility.ALWAYS;
+		else if (visibilityText.equals("unless concealed"))
+			visibility = Archetype.Visibility.UNLESS_CONCEALED;
+		else if (visibilityText.startsWith("special below ") && visibilityWords.length == 3 && special != null) {
+			visibility = Archetype.Visibility.SPECIAL_BELOW;
+			threshold = number(name, "visibility", visibilityWords[2]);
+		} else
+			throw invalid(name, "visibility", "always | unless concealed | special below <value> (with a special attribute)");
+
+		String[] movementWords = words(name, properties, "movement", true);
+		Archetype.Movement movement;
+		double fraction = 0.0;
+		if (movementWords[0].equalsIgnoreCase("flee") && movementWords.length == 1)
+			movement = Archetype.Movement.FLEE;
+		else if (movementWords[0].equalsIgnoreCase("approach") && movementWords.length == 2) {
+			movement = Archetype.Movement.APPROACH;
+			fraction = number(name, "movement", movementWords[1]);
+		} else
+			throw invalid(name, "movement", "flee | approach <fraction>");
+
+		String[] targetingWords = words(name, properties, "targeting", false);
+		Archetype.Targeting targeting = Archetype.Targeting.NEAREST;
+		if (targetingWords != null) {
+			try {
+				targeting = Archetype.Targeting.valueOf(String.join("_", targetingWords).toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw invalid(name, "targeting", "nearest | weakest in range | strongest in range | fastest in range");
+			}
+		}
+
+		String[] sightWords = words(name, properties, "sight", false);
+		double sight = Archetype.DEFAULT_SIGHT;
+		if (sightWords != null) {
+			sight = number(name, "sight", sightWords[0]);
+			if (sightWords.length != 1 || !(sight >= 0.0))
+				throw invalid(name, "sight", "a radius of 0 or more");
+		}
+
+		double[] ranged = new double[4];
+		String[] rangedWords = words(name, properties, "ranged", false);
+		if (rangedWords != null) {
+			if (rangedWords.length != 4)
+				throw invalid(name, "ranged", "reach damage speed reload");
+			for (int i = 0; i < ranged.length; ++i) {
+				ranged[i] = number(name, "ranged", rangedWords[i]);
+				if (!(ranged[i] > 0.0))
+					throw invalid(name, "ranged", "four positive numbers: reach damage speed reload");
+			}
+		}
+
+		String[] spriteWords = words(name, properties, "sprite", true);
+		Archetype.Shape shape;
+		double spriteWidth, spriteHeight = 0.0;
+		String source;
+		switch (spriteWords[0].toLowerCase(Locale.ROOT)) {
+		case "circle":
+			if (spriteWords.length != 3) throw invalid(name, "sprite", "circle <radius> <color>");
+			shape = Archetype.Shape.CIRCLE; spriteWidth = number(name, "sprite", spriteWords[1]); source = spriteWords[2];
+			break;
+		case "rectangle":
+			if (spriteWords.length != 4) throw invalid(name, "sprite", "rectangle <width> <height> <color>");
+			shape = Archetype.Shape.RECTANGLE; spriteWidth = number(name, "sprite", spriteWords[1]); spriteHeight = number(name, "sprite", spriteWords[2]); source = spriteWords[3];
+			break;
+		case "image":
+			if (spriteWords.length != 3) throw invalid(name, "sprite", "image <file> <width>");
+			shape = Archetype.Shape.IMAGE; source = spriteWords[1]; spriteWidth = number(name, "sprite", spriteWords[2]);
+			break;
+		default:
+			throw invalid(name, "sprite", "circle | rectangle | image");
+		}
+		return new Archetype(id, name, strength, health, speed, specialName, special, concealed, horse, visibility, threshold, movement, fraction, targeting, sight, ranged, shape, spriteWidth, spriteHeight, source);
+	} // end parse()
+
+	private static String[] words(String name, Properties properties, String key, boolean required) {
+		String value = properties.getProperty(name + "." + key);
+		if (value == null || value.trim().isEmpty()) {
+			if (required)
+				throw new IllegalArgumentException(String.format("Archetype %s has no %s", name, key));
+			return null;
+		}
+		return value.trim().split("\\s+");
+	} // end words()
+
+	private static Archetype.Range range(String name, Properties properties, String key, Archetype.Range defaultRange) {
+		String[] words = words(name, properties, key, false);
+		if (words == null)
+			return defaultRange;
+		if (words.length != 3)
+			throw invalid(name, key, "min max spread");
+		return new Archetype.Range(number(name, key, words[0]), number(name, key, words[1]), number(name, key, words[2]));
+	} // end range()
+
+	private static double probability(String name, Properties properties, String key) {
+		String[] words = words(name, properties, key, false);
+		if (words == null)
+			return 0.0;
+		double probability = number(name, key, words[0]);
+		if (words.length != 1 || probability < 0.0 || probability > 1.0)
+			throw invalid(name, key, "a probability from 0 to 1");
+		return probability;
+	} // end probability()
+
+	private static double number(String name, String key, String text) {
+		try {
+			return Double.parseDouble(text);
+		} catch (NumberFormatException e) {
+			throw invalid(name, key, "a number where \"" + text + "\" is");
+		}
+	} // end number()
+
+	private static IllegalArgumentException invalid(String name, String key, String expected) {
+		return new IllegalArgumentException(String.format("Archetype %s: %s must be %s", name, key, expected));
+	} // end invalid()
+
+	/** @return number of archetypes; ids are 0 to size()-1 */
+	public int size() { return archetypes.size(); }
+	public Archetype get(int id) { return archetypes.get(id); }
+	public List<Archetype> getArchetypes() { return archetypes; }
+
+	/**
+	 * @param name archetype name, in any case
+	 * @return the archetype with that name
+	 * @throws IllegalArgumentException if there is none
+	 */
+	public Archetype get(String name) {
+		Archetype archetype = byName.get(name.toUpperCase(Locale.ROOT));
+		if (archetype == null)
+			throw new IllegalArgumentException("Unknown archetype " + name);
+		return archetype;
+	} // end get()
+
+	/** @return the archetype configured for one of the built-in types (not <b>RANDOM</b>) */
+	public Archetype get(ActorFactory.Type type) { return get(type.name()); }
+} // end class ArchetypeRegistry
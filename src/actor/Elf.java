@@ -6,7 +6,6 @@ import java.io.ObjectOutputStream;
 
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.geometry.*;
 import javafx.scene.Node;
 import javafx.scene.control.Tooltip;
 import javafx.scene.paint.Color;
@@ -18,6 +17,7 @@ import army.Army;
  * The <i>Elf</i> class is a subclass of <i>Actor</i>. The <i>Actor</i> class tracks state information for individual actors in the simulation: <i>name</i>, <i>health</i>, <i>strength</i>, <i>speed</i>, etc (and later, a screen avatar with coordinates). Additional attributes are tracked in the subclasses. The behaviours
  * (moving and battling) are defined in the subclasses. The <i>Actor</i> class is <i>abstract</i>, thus no <i>Actor</i> objects will ever be created -- only subclass objects, such as <i>Elf</i>.
  * The <i>Elf</i> class adds characteristics that are unique to elves. 
+ * New <i>Elf</i> actors are <i>Unit</i> objects built from the ELF block of <i>archetypes.properties</i> (see <i>ActorFactory</i>); this class is kept only so that saved battles holding <i>Elf</i> objects still load.
  * 
  * @author Ammar Khan
  * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
@@ -30,6 +30,8 @@ public class Elf extends Actor {
 	public static final double PROBABILITY_ELF_HAS_CLOAK = 0.6;
 	/** class-oriented variable used to generate a unique identifier for each new Elf object */
 	private static int elfCount = 0;
+	/** id of the <i>Elf</i> type in the default <i>ArchetypeRegistry</i>, looked up once */
+	private static final int ARCHETYPE_ID = ArchetypeRegistry.getDefault().get(ActorFactory.Type.ELF).getId();
 	
 	/** Directly changes the visibility of this object; if true, this <i>Elf</i> object cannot be seen by others. */
 	private boolean hasInvisibilityCloak;
@@ -43,6 +45,13 @@ public class Elf extends Actor {
 		hasInvisibilityCloak = (Math.random() < PROBABILITY_ELF_HAS_CLOAK);  
 	} // end Constructor
 	
+	/** Draws the cloak again, as the constructor does, for a recycled <i>Elf</i>. */
+	@Override
+	public void respawn() {
+		super.respawn();
+		hasInvisibilityCloak = (Math.random() < PROBABILITY_ELF_HAS_CLOAK);
+	} // end respawn()
+
 	/** Supports text-oriented input / editing of attributes of an <i>Elf</i> including the inherited attributes of <i>Actor</i>. */
 	@Override
 	public void inputAllFields() {
@@ -63,13 +72,16 @@ public class Elf extends Actor {
 	}
 
 	/** Even though avatar is defined as a <i>Rectangle</i> (in the <i>Elf</i> class), it is returned as a reference-to-<i>Node</i>, to simplify use of the avatar object elsewhere in the program. */
+	@Override
+	public int getArchetypeId() { return ARCHETYPE_ID; }
+
 	@Override
 	public Node getAvatar() {	return avatar; }
 
 	@Override
-	protected Point2D findNewLocation(Actor opponent) {
-		// TODO Auto-generated method stub
-		return new Point2D((getAvatar().getTranslateX())+(opponent.getAvatar().getTranslateX())/2.0, ((getAvatar().getTranslateX())+opponent.getAvatar().getTranslateY())/2.0);
+	protected void findNewLocation(Actor opponent, double[] location) {
+		location[X] = (getAvatar().getTranslateX())+(opponent.getAvatar().getTranslateX())/2.0;
+		location[Y] = ((getAvatar().getTranslateX())+opponent.getAvatar().getTranslateY())/2.0;
 	}
 
 	@Override
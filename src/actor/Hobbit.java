@@ -5,7 +5,6 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.geometry.*;
 import javafx.scene.Node;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
@@ -16,6 +15,7 @@ import util.*;
  * The <i>Hobbit</i> class is a subclass of <i>Actor</i>. The <i>Actor</i> class tracks state information for individual actors in the simulation: <i>name</i>, <i>health</i>, <i>strength</i>, <i>speed</i>, etc (and later, a screen avatar with coordinates). Additional attributes are tracked in the subclasses. The behaviours
  * (moving and battling) are defined in the subclasses. The <i>Actor</i> class is <i>abstract</i>, thus no <i>Actor</i> objects will ever be created -- only subclass objects, such as <i>Hobbit</i>.
  * The <i>Hobbit</i> class adds characteristics that are unique to elves. 
+ * New <i>Hobbit</i> actors are <i>Unit</i> objects built from the HOBBIT block of <i>archetypes.properties</i> (see <i>ActorFactory</i>); this class is kept only so that saved battles holding <i>Hobbit</i> objects still load.
  * 
  * @author Ammar Khan
  * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
@@ -30,6 +30,8 @@ public class Hobbit extends Actor {
 	public static final double MIN_STEALTH = 0.0; // the use of the JavaDoc tag {@value} causes the constant value to be included in the documentation
 	/** class-oriented variable used to generate a unique identifier for each new <i>Hobbit</i> object */
 	private static int hobbitCount = 0;
+	/** id of the <i>Hobbit</i> type in the default <i>ArchetypeRegistry</i>, looked up once */
+	private static final int ARCHETYPE_ID = ArchetypeRegistry.getDefault().get(ActorFactory.Type.HOBBIT).getId();
 
 	/** Influences the visibility of this object; sufficiently high stealth means <i>Hobbit</i> object cannot be seen by others. */
 	private SimpleDoubleProperty stealth;
@@ -45,6 +47,13 @@ public class Hobbit extends Actor {
 		stealth = new SimpleDoubleProperty(SingletonRandom.instance.getNormalDistribution(MIN_STEALTH, MAX_STEALTH, 2.0));
 	} // end Constructor
 	
+	/** Draws the stealth again, as the constructor does, for a recycled <i>Hobbit</i>. */
+	@Override
+	public void respawn() {
+		super.respawn();
+		stealth.set(SingletonRandom.instance.getNormalDistribution(MIN_STEALTH, MAX_STEALTH, 2.0));
+	} // end respawn()
+
 	/** Supports text-oriented input / editing of attributes of a <i>Hobbit</i> including the inherited attributes of <i>Actor</i>. */
 	@Override
 	public void inputAllFields() {
@@ -65,33 +74,30 @@ public class Hobbit extends Actor {
 	}
 	
 	/** Even though avatar is defined as a <i>Circle</i> (in the <i>Hobbit</i> class), it is returned as a reference-to-<i>Node</i>, to simplify use of the avatar object elsewhere in the program. */
+	@Override
+	public int getArchetypeId() { return ARCHETYPE_ID; }
+
 	@Override
 	public Node getAvatar() {	return avatar; }
 	@Override
-	protected Point2D findNewLocation(Actor opponent) {
-		SimpleDoubleProperty maxY = new SimpleDoubleProperty(armyAllegiance.getScene().getHeight());
-		SimpleDoubleProperty maxX = new SimpleDoubleProperty(armyAllegiance.getScene().getWidth());
-		SimpleDoubleProperty newX = new SimpleDoubleProperty(1.0);
-		SimpleDoubleProperty newY = new SimpleDoubleProperty(1.0);
-		if ((opponent.getAvatar().getTranslateX() < (0.5*maxX.get())) && (opponent.getAvatar().getTranslateY() < (0.5*maxY.get()))){
-			newX.set(SingletonRandom.instance.getNormalDistribution((0.5*maxX.get()), maxX.get(), 2.0));
-			newY.set(SingletonRandom.instance.getNormalDistribution((0.5*maxY.get()), maxY.get(), 2.0));
-			return new Point2D(newX.get(), newY.get());
+	protected void findNewLocation(Actor opponent, double[] location) {
+		double maxY = armyAllegiance.getScene().getHeight();
+		double maxX = armyAllegiance.getScene().getWidth();
+		if ((opponent.getAvatar().getTranslateX() < (0.5*maxX)) && (opponent.getAvatar().getTranslateY() < (0.5*maxY))){
+			location[X] = SingletonRandom.instance.getNormalDistribution((0.5*maxX), maxX, 2.0);
+			location[Y] = SingletonRandom.instance.getNormalDistribution((0.5*maxY), maxY, 2.0);
 		}
-		else if ((opponent.getAvatar().getTranslateX() >= (0.5*maxX.get())) && (opponent.getAvatar().getTranslateY() < (0.5*maxY.get()))){
-			newX.set(SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxX.get()), 2.0));
-			newY.set(SingletonRandom.instance.getNormalDistribution((0.5*maxY.get()), maxY.get(), 2.0));
-			return new Point2D(newX.get(), newY.get());
+		else if ((opponent.getAvatar().getTranslateX() >= (0.5*maxX)) && (opponent.getAvatar().getTranslateY() < (0.5*maxY))){
+			location[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxX), 2.0);
+			location[Y] = SingletonRandom.instance.getNormalDistribution((0.5*maxY), maxY, 2.0);
 		}
-		else if ((opponent.getAvatar().getTranslateX() < (0.5*maxX.get())) && (opponent.getAvatar().getTranslateY() >= (0.5*maxY.get()))){
-			newX.set(SingletonRandom.instance.getNormalDistribution((0.5*maxX.get()), maxX.get(), 2.0));
-			newY.set(SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxY.get()), 2.0));
-			return new Point2D(newX.get(), newY.get());
+		else if ((opponent.getAvatar().getTranslateX() < (0.5*maxX)) && (opponent.getAvatar().getTranslateY() >= (0.5*maxY))){
+			location[X] = SingletonRandom.instance.getNormalDistribution((0.5*maxX), maxX, 2.0);
+			location[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxY), 2.0);
 		}
 		else {
-			newX.set(SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxX.get()), 2.0));
-			newY.set(SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxY.get()), 2.0));
-			return new Point2D(newX.get(), newY.get());
+			location[X] = SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxX), 2.0);
+			location[Y] = SingletonRandom.instance.getNormalDistribution(0.0, (0.5*maxY), 2.0);
 		}
 	}
 	@Override
@@ -5,7 +5,6 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.geometry.*;
 import javafx.scene.Node;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
@@ -16,6 +15,7 @@ import army.*;
  * The <i>Orc</i> class is a subclass of <i>Actor</i>. The <i>Actor</i> class tracks state information for individual actors in the simulation: <i>name</i>, <i>health</i>, <i>strength</i>, <i>speed</i>, etc (and later, a screen avatar with coordinates). Additional attributes are tracked in the subclasses. The behaviours
  * (moving and battling) are defined in the subclasses. The <i>Actor</i> class is <i>abstract</i>, thus no <i>Actor</i> objects will ever be created -- only subclass objects, such as <i>Orc</i>.
  * The <i>Orc</i> class adds characteristics that are unique to elves. 
+ * New <i>Orc</i> actors are <i>Unit</i> objects built from the ORC block of <i>archetypes.properties</i> (see <i>ActorFactory</i>); this class is kept only so that saved battles holding <i>Orc</i> objects still load.
  * 
  * @author Ammar Khan
  * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
@@ -26,6 +26,8 @@ import army.*;
 public class Orc extends Actor {
 	/** class-oriented variable used to generate a unique identifier for each new Orc object */
 	private static int orcCount = 0;
+	/** id of the <i>Orc</i> type in the default <i>ArchetypeRegistry</i>, looked up once */
+	private static final int ARCHETYPE_ID = ArchetypeRegistry.getDefault().get(ActorFactory.Type.ORC).getId();
 	/** {@value} */
 	public static final double MAX_SMELL = 1000.0; // the use of the JavaDoc tag {@value} causes the constant value to be included in the documentation
 	/** {@value} */
@@ -44,6 +46,13 @@ public class Orc extends Actor {
 		smell = new SimpleDoubleProperty(SingletonRandom.instance.getNormalDistribution(MIN_SMELL, MAX_SMELL, 4.0));
 	}
 
+	/** Draws the smell again, as the constructor does, for a recycled <i>Orc</i>. */
+	@Override
+	public void respawn() {
+		super.respawn();
+		smell.set(SingletonRandom.instance.getNormalDistribution(MIN_SMELL, MAX_SMELL, 4.0));
+	} // end respawn()
+
 	/** Supports text-oriented input / editing of attributes of an <i>Orc</i> including the inherited attributes of <i>Actor</i>. */
 	@Override
 	public void inputAllFields() {
@@ -64,12 +73,15 @@ public class Orc extends Actor {
 	}
 
 	/** Even though avatar is defined as a <i>Rectangle</i> (in the <i>Orc</i> class), it is returned as a reference-to-<i>Node</i>, to simplify use of the avatar object elsewhere in the program. */
+	@Override
+	public int getArchetypeId() { return ARCHETYPE_ID; }
+
 	@Override
 	public Node getAvatar() {	return avatar; }
 	@Override
-	protected Point2D findNewLocation(Actor opponent) {
-		// TODO Auto-generated method stub
-		return new Point2D((getAvatar().getTranslateX())+(opponent.getAvatar().getTranslateX()*0.75), ((getAvatar().getTranslateX())+opponent.getAvatar().getTranslateY()*0.75));
+	protected void findNewLocation(Actor opponent, double[] location) {
+		location[X] = (getAvatar().getTranslateX())+(opponent.getAvatar().getTranslateX()*0.75);
+		location[Y] = ((getAvatar().getTranslateX())+opponent.getAvatar().getTranslateY()*0.75);
 	}
 	@Override
 	public boolean isVisible() {
@@ -0,0 +1,188 @@
+package actor;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Rectangle;
+import army.Army;
+import util.Input;
+import util.SingletonRandom;
+
+/**
+ * The <i>Unit</i> class is a subclass of <i>Actor</i> whose type is described by data rather than code: every rule that differs between types (attribute ranges, visibility, movement and avatar) comes from its <i>Archetype</i>.
+ * A <i>Unit</i> holds only its own state (the special attribute and the concealment and horse flags) plus a reference to the shared <i>Archetype</i>, so any type listed in <i>archetypes.properties</i> can take the field without a new subclass.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Archetype
+ * @see ArchetypeRegistry
+ * @see ActorFactory
+ */
+public final class Unit extends Actor {
+	/** version of the <i>writeObject()</i> layout: archetype name, special, concealed, hasHorse */
+	private static final long serialVersionUID = 1L;
+	/** Decoded avatar images, shared by every avatar drawn from the same file. */
+	private static final Map<String, Image> IMAGES = new HashMap<>();
+	/** class-oriented variable used to generate a unique identifier for each new <i>Unit</i> object */
+	private static int unitCount = 0;
+
+	/** shared type data; serialized by name */
+	private transient Archetype archetype;
+	/** value of the archetype's special attribute (e.g. stealth); unused if it has none */
+	private double special;
+	/** holds the archetype's concealment item (cloak or staff) */
+	private boolean concealed;
+	private boolean hasHorse;
+	/** the archetype's sprite, built once the archetype is known; not serialized, <i>readObject()</i> builds it again */
+	private transient Node avatar;
+
+	/**
+	 * Supports the generation of random values for automatically created objects. Each attribute is drawn once, from the archetype's range.
+	 * @param archetype type of the new <i>Unit</i>
+	 * @param armyAllegiance <i>Army</i> the new <i>Unit</i> fights for
+	 */
+	public Unit(Archetype archetype, Army armyAllegiance) {
+		super(++unitCount, armyAllegiance, archetype.getName(), draw(archetype.getStrength()), draw(archetype.getHealth()), draw(archetype.getSpeed()));
+		this.archetype = archetype;
+		if (archetype.hasSpecial())
+			special = draw(archetype.getSpecial());
+		concealed = Math.random() < archetype.getConcealedProbability();
+		hasHorse = Math.random() < archetype.getHorseProbability();
+		avatar = createSprite(archetype);
+		attachAvatar();
+	} // end Constructor
+
+	/** Draws every attribute again from the archetype, as the constructor does, for a recycled <i>Unit</i>; the sprite is kept. */
+	@Override
+	public void respawn() {
+		setStrength(draw(archetype.getStrength()));
+		setHealth(draw(archetype.getHealth()));
+		setSpeed(draw(archetype.getSpeed()));
+		if (archetype.hasSpecial())
+			special = draw(archetype.getSpecial());
+		concealed = Math.random() < archetype.getConcealedProbability();
+		hasHorse = Math.random() < archetype.getHorseProbability();
+	} // end respawn()
+
+	private static double draw(Archetype.Range range) {
+		return SingletonRandom.instance.getNormalDistribution(range.getMin(), range.getMax(), range.getSpread());
+	} // end draw()
+
+	public Archetype getArchetype() { return archetype; }
+	@Override
+	public int getArchetypeId() { return archetype.getId(); }
+	public double getSpecial() { return special; }
+	public boolean isConcealed() { return concealed; }
+	public boolean getHasHorse() { return hasHorse; }
+
+	/** Supports text-oriented input / editing of attributes of a <i>Unit</i> including the inherited attributes of <i>Actor</i>. Only the attributes its archetype uses are asked for. */
+	@Override
+	public void inputAllFields() {
+		super.inputAllFields();
+		if (archetype.hasSpecial())
+			special = Input.instance.getDouble(archetype.getSpecialName() + ":" + special, archetype.getSpecial().getMin(), archetype.getSpecial().getMax());
+		if (archetype.getConcealedProbability() > 0.0)
+			concealed = Input.instance.getBoolean("Concealed:");
+		if (archetype.getHorseProbability() > 0.0)
+			hasHorse = Input.instance.getBoolean("Has Horse:");
+	} // end inputAllFields()
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder(super.toString());
+		if (archetype.hasSpecial())
+			text.append(String.format(" %s:%4.1f", archetype.getSpecialName(), special));
+		if (archetype.getConcealedProbability() > 0.0)
+			text.append(" Concealed:").append(concealed);
+		if (archetype.getHorseProbability() > 0.0)
+			text.append(" Horse:").append(hasHorse);
+		return text.toString();
+	} // end toString()
+
+	/** Builds nothing: the sprite depends on the archetype, so the constructor and <i>readObject()</i> build it once the archetype is known. */
+	@Override
+	public void createAvatar() { }
+
+	@Override
+	public Node getAvatar() { return avatar; }
+
+	/**
+	 * Builds the avatar described by an archetype. Images are decoded once per file and shared.
+	 * @param archetype type whose sprite is drawn
+	 * @return a new <i>Node</i> for one actor
+	 */
+	public static Node createSprite(Archetype archetype) {
+		switch (archetype.getShape()) {
+		case CIRCLE:
+			return new Circle(archetype.getSpriteWidth(), Color.web(archetype.getSpriteSource()));
+		case RECTANGLE:
+			return new Rectangle(archetype.getSpriteWidth(), archetype.getSpriteHeight(), Color.web(archetype.getSpriteSource()));
+		default:
+			ImageView view = new ImageView(sharedImage(archetype.getSpriteSource()));
+			view.setFitWidth(archetype.getSpriteWidth());
+			view.setPreserveRatio(true);
+			return view;
+		}
+	} // end createSprite()
+
+	/** @return the decoded image in <i>fileName</i>, loaded on first use and shared afterwards */
+	static synchronized Image sharedImage(String fileName) {
+		Image image = IMAGES.get(fileName);
+		if (image == null) {
+			try (FileInputStream in = new FileInputStream(fileName)) {
+				image = new Image(in);
+			} catch (FileNotFoundException e) {
+				throw new IllegalStateException("Missing avatar image " + fileName, e);
+			} catch (IOException e) {
+				throw new IllegalStateException("Cannot read avatar image " + fileName, e);
+			}
+			IMAGES.put(fileName, image);
+		}
+		return image;
+	} // end sharedImage()
+
+	@Override
+	protected void findNewLocation(Actor opponent, double[] location) {
+		double opponentX = opponent.getAvatar().getTranslateX(), opponentY = opponent.getAvatar().getTranslateY();
+		if (archetype.getMovement() == Archetype.Movement.FLEE) { // run for the quadrant away from the opponent
+			double maxX = armyAllegiance.getScene().getWidth(), maxY = armyAllegiance.getScene().getHeight();
+			location[X] = opponentX < 0.5*maxX ? SingletonRandom.instance.getNormalDistribution(0.5*maxX, maxX, 2.0) : SingletonRandom.instance.getNormalDistribution(0.0, 0.5*maxX, 2.0);
+			location[Y] = opponentY < 0.5*maxY ? SingletonRandom.instance.getNormalDistribution(0.5*maxY, maxY, 2.0) : SingletonRandom.instance.getNormalDistribution(0.0, 0.5*maxY, 2.0);
+			return;
+		}
+		double myX = getAvatar().getTranslateX(), myY = getAvatar().getTranslateY();
+		double fraction = archetype.getApproachFraction();
+		location[X] = myX + (opponentX - myX)*fraction;
+		location[Y] = myY + (opponentY - myY)*fraction;
+	} // end findNewLocation()
+
+	@Override
+	public boolean isVisible() { return archetype.isVisible(special, concealed); }
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.writeObject(archetype.getName()); // the Archetype itself is shared, so only its name is written
+		out.writeDouble(special);
+		out.writeBoolean(concealed);
+		out.writeBoolean(hasHorse);
+	} // end writeObject() to support serialization
+
+	// Explicit implementation of readObject, but called implicitly as a result of recursive calls to readObject() based on Serializable interface
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		archetype = ArchetypeRegistry.getDefault().get((String) in.readObject());
+		special = in.readDouble();
+		concealed = in.readBoolean();
+		hasHorse = in.readBoolean();
+		avatar = createSprite(archetype);
+		restoreAvatar(); // Actor.readObject() left it to this class
+	} // end readObject() to support serialization
+} // end class Unit
@@ -1,12 +1,9 @@
 package actor;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 
-import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.image.*;
 import army.Army;
@@ -16,6 +13,7 @@ import util.Input;
  * The <i>Wizard</i> class is a subclass of <i>Actor</i>. The <i>Actor</i> class tracks state information for individual actors in the simulation: <i>name</i>, <i>health</i>, <i>strength</i>, <i>speed</i>, etc (and later, a screen avatar with coordinates). Additional attributes are tracked in the subclasses. The behaviours
  * (moving and battling) are defined in the subclasses. The <i>Actor</i> class is <i>abstract</i>, thus no <i>Actor</i> objects will ever be created -- only subclass objects, such as <i>Wizard</i>.
  * The <i>Wizard</i> class adds characteristics that are unique to elves. 
+ * New <i>Wizard</i> actors are <i>Unit</i> objects built from the WIZARD block of <i>archetypes.properties</i> (see <i>ActorFactory</i>); this class is kept only so that saved battles holding <i>Wizard</i> objects still load.
  * 
  * @author Ammar Khan
  * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
@@ -25,11 +23,13 @@ import util.Input;
  */
 public class Wizard extends Actor {
 	/** Probability used in generating a true/false boolean value for hasStaff {@value} */
-	private final double PROBABILITY_WIZARD_HAS_STAFF = 0.8; // true 80% of the time on random generation
+	private static final double PROBABILITY_WIZARD_HAS_STAFF = 0.8; // true 80% of the time on random generation; static, so it is not copied into every Wizard object
 	/** Probability used in generating a true/false boolean value for hasHorse {@value} */
-	private final double PROBABILITY_WIZARD_HAS_HORSE = 0.25;// true 25% of the time on random generation
+	private static final double PROBABILITY_WIZARD_HAS_HORSE = 0.25;// true 25% of the time on random generation
 	/** class-oriented variable used to generate a unique identifier for each new <i>Wizard</i> object */
 	private static int wizardCount = 0;
+	/** id of the <i>Wizard</i> type in the default <i>ArchetypeRegistry</i>, looked up once */
+	private static final int ARCHETYPE_ID = ArchetypeRegistry.getDefault().get(ActorFactory.Type.WIZARD).getId();
 	
 	/** Gives extra power in combat, and extra speed in moving */
 	private boolean hasStaff;
@@ -50,6 +50,14 @@ public class Wizard extends Actor {
 		hasHorse = (Math.random() < PROBABILITY_WIZARD_HAS_HORSE); // true 25% of the time 
 	}
 
+	/** Draws the staff and horse again, as the constructor does, for a recycled <i>Wizard</i>. */
+	@Override
+	public void respawn() {
+		super.respawn();
+		hasStaff = (Math.random() < PROBABILITY_WIZARD_HAS_STAFF);
+		hasHorse = (Math.random() < PROBABILITY_WIZARD_HAS_HORSE);
+	} // end respawn()
+
 	/** Supports text-oriented input / editing of attributes of a <i>Wizard</i> including the inherited attributes of <i>Actor</i>. */
 	@Override public void inputAllFields() {
 		super.inputAllFields(); // calls immediate superclass (which is currently Actor, but could change if redesigned)
@@ -62,26 +70,25 @@ public class Wizard extends Actor {
 		return String.format("%s Staff:%b Horse:%b", super.toString(), hasStaff, hasHorse);
 	}
 	
-	/** Each subclass of <i>Actor</i> MUST define its own unique avatar, which can be ANY kind of <i>Node</i>. It MUST because the method <i>createAvatar()</i> is defined as an <i>abstract</i> method. The <i>Wizard</i> creates an <i>ImageView</i> based on a .GIF file that has an animated image of a wizard. */
+	/** Each subclass of <i>Actor</i> MUST define its own unique avatar, which can be ANY kind of <i>Node</i>. It MUST because the method <i>createAvatar()</i> is defined as an <i>abstract</i> method. The <i>Wizard</i> creates an <i>ImageView</i> based on a .GIF file that has an animated image of a wizard.
+	 * The decoded <i>Image</i> is shared by every <i>Wizard</i>; only the <i>ImageView</i> is per object. */
 	@Override
 	public void createAvatar() {
-		try {
-			avatar = new ImageView(new Image(new FileInputStream("AnimatedWizard-1.gif"))); // avatar could have been defined as type Node and it would work on this line.
-			avatar.setFitWidth(30.0); // However, on THIS LINE avatar CANNOT be defined as type Node, since we need to call a method (setFitWidth()) that is not available in the Node layer (that is, part of the Node "contract")
-			avatar.setPreserveRatio(true); // Similar need to define avatar as type ImageView on THIS LINE.
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-			System.exit(0);
-		}
+		avatar = new ImageView(Unit.sharedImage("AnimatedWizard-1.gif")); // avatar could have been defined as type Node and it would work on this line.
+		avatar.setFitWidth(30.0); // However, on THIS LINE avatar CANNOT be defined as type Node, since we need to call a method (setFitWidth()) that is not available in the Node layer (that is, part of the Node "contract")
+		avatar.setPreserveRatio(true); // Similar need to define avatar as type ImageView on THIS LINE.
 	} // create Avatar()
 	
 	/** Even though avatar is defined as an <i>ImageView</i> (in the <i>Wizard</i> class), it is returned as a reference-to-<i>Node</i>, to simplify use of the avatar object elsewhere in the program. */
+	@Override
+	public int getArchetypeId() { return ARCHETYPE_ID; }
+
 	@Override
 	public Node getAvatar() {	return avatar; }
 	@Override
-	protected Point2D findNewLocation(Actor opponent) {
-		return new Point2D((getAvatar().getTranslateX())+(opponent.getAvatar().getTranslateX())/2.0, ((getAvatar().getTranslateX())+opponent.getAvatar().getTranslateY())/2.0);
+	protected void findNewLocation(Actor opponent, double[] location) {
+		location[X] = (getAvatar().getTranslateX())+(opponent.getAvatar().getTranslateX())/2.0;
+		location[Y] = ((getAvatar().getTranslateX())+opponent.getAvatar().getTranslateY())/2.0;
 		}
 	@Override
 	public boolean isVisible() {
@@ -0,0 +1,43 @@
+package army;
+
+import actor.Actor;
+
+/**
+ * An <i>ActorSnapshot</i> is an immutable copy of the displayed state of one <i>Actor</i> at the moment a <i>SnapshotTableModel</i> sampled it.
+ * The <i>TableView</i> and <i>ListView</i> windows show snapshots instead of live <i>Actor</i> objects, so moving avatars no longer trigger cell updates between samples.
+ * The text shown by the <i>ListView</i> is formatted on first use only, so only visible rows pay for it.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see SnapshotTableModel
+ */
+public final class ActorSnapshot {
+	private final Actor actor;
+	private final String name;
+	private final double health, strength, speed, x, y;
+	private String text;
+
+	ActorSnapshot(Actor actor, String name, double health, double strength, double speed, double x, double y) {
+		this.actor = actor;
+		this.name = name;
+		this.health = health; this.strength = strength; this.speed = speed;
+		this.x = x; this.y = y;
+	} // end Constructor
+
+	/** @return the live <i>Actor</i> this row was sampled from; only touch it on the JavaFX thread, e.g. in a command passed to <i>SnapshotTableModel.submit()</i> */
+	public Actor getActor() { return actor; }
+	public String getName() { return name; }
+	public double getHealth() { return health; }
+	public double getStrength() { return strength; }
+	public double getSpeed() { return speed; }
+	public double getX() { return x; }
+	public double getY() { return y; }
+
+	/** Same layout as <i>Actor.toString()</i> for the common attributes, plus the position. */
+	@Override
+	public String toString() {
+		if (text == null)
+			text = String.format("Name:%-12s Health:%4.1f Strength:%4.1f Speed:%4.1f X:%.0f Y:%.0f", name, health, strength, speed, x, y);
+		return text;
+	} // end toString()
+} // end class ActorSnapshot
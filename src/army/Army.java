@@ -3,7 +3,14 @@ package army;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import javafx.animation.FadeTransition;
 import javafx.animation.ParallelTransition;
@@ -12,7 +19,7 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
 import javafx.scene.Scene;
-import javafx.scene.control.TableView;
+import javafx.scene.layout.VBox;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
@@ -20,6 +27,7 @@ import javafx.scene.text.Text;
 import javafx.util.Duration;
 import simulator.Simulator;
 import actor.*;
+import engine.ReinforcementWave;
 /**
  * <i>Army</i> class manages a collection of <i>Actor</i> objects. The <i>Army</i> class does not need to know any detailed information about subclasses of <i>Actor</i>.
  * <i>Army</i> takes responsibility for adding each avatar (a reference-to<i>Node</i>) to the <i>Simulator</i> (which inherits <i>Group</i> and <i>Group</i> maintains a list of child <i>Node</i> objects that are to be displayed on the <i>Scene</i>).
@@ -34,10 +42,15 @@ public class Army {
 	/** Each <i>Army</i> object must have a <i>Collection</i> that can hold references to <i>Actor</i> objects. Currently, the <i>Collection</i> is implemented as an <i>ArrayList</i>*/
 	private ObservableList<Actor> collectionActors = FXCollections.observableList(new ArrayList<>());
 	public ObservableList<Actor> getObservableListActors() { return FXCollections.unmodifiableObservableList(collectionActors);	}
+	/** Bit <i>i</i> is set if <i>collectionActors.get(i)</i> is visible. Kept aligned with the <i>Collection</i> so that target searches test one bit rather than calling the <i>isVisible()</i> override of every candidate. */
+	private final BitSet visibleActors = new BitSet();
+	/** feeds the <i>TableView</i> and <i>ListView</i> windows; null until a window is built */
+	private SnapshotTableModel snapshotModel;
 	/** The reference-to-<i>Simulator</i> gives the Army access to the list of child <i>Node</i> objects maintained by the <i>Simulator</i> (which inherits from <i>Group</i>). When avatars are added the reference-to-<i>Simulator</i> provides access to the <i>Scene</i>. */
 	private Simulator simulator;
 	public Scene getScene() { return simulator.getScene(); }
-	private Army opposingArmy;
+	/** Armies whose <i>Actor</i> objects are targeted by the <i>Actor</i> objects of this <i>Army</i>. Hostility is one-way; the <i>Simulator</i> normally sets it both ways. */
+	private final List<Army> hostileArmies = new ArrayList<>();
 	/** Used to support the color of the <i>DropShadow</i> which is applied to each avatar. */
 	private Color color;
 	/** An <i>Effect</i> that is applied to each <i>Node</i> object that expresses the avatar. */
@@ -45,6 +58,17 @@ public class Army {
 	public static final String FONT_NAME = "Perpetua";
 	private static final Font NOTIFICATION_FONT_SMALL = new Font(FONT_NAME, 14.0);
 	private static final Font NOTIFICATION_FONT_LARGE = new Font(FONT_NAME, 36.0);
+	/** Dead <i>Actor</i> objects, by archetype id, waiting to be reused by <i>reinforce()</i> with their avatar, <i>Tooltip</i> and <i>TranslateTransition</i>. */
+	private final Map<Integer, ArrayDeque<Actor>> recycledActors = new HashMap<>();
+	/** archetype ids whose dead are kept in <i>recycledActors</i>, and how many may wait there in all; both set by <i>setRecycling()</i>, so an <i>Army</i> with no reinforcements to come keeps none of its dead */
+	private final BitSet recycledTypes = new BitSet();
+	private int recyclingCapacity, numRecycled;
+	/** Death notifications (a <i>Text</i> driven by a <i>ParallelTransition</i>) that have finished playing, ready to announce the next death. */
+	private final ArrayDeque<ParallelTransition> idleNotifications = new ArrayDeque<>();
+	/** spawn point of a reinforcement, reused by every one */
+	private final double[] spawnLocation = new double[2];
+	/** Draws the types and spawn points of reinforcements: a stream of its own, as in <i>engine.Battle</i>, so that seeding it repeats the waves whatever else draws random numbers. */
+	private final Random reinforcementRandom = new Random();
 	
 	/**
 	 * Constructor builds an </i>Army</i> object 
@@ -65,20 +89,89 @@ public class Army {
 	 * @param numToAdd is the number of objects to add to the <i>Army</i>.
 	 */
 	public void populate(ActorFactory.Type type, int numToAdd) {
-		for (int i=0; i<numToAdd; ++i) {
-			Actor actor = type.create(this);
-			collectionActors.add(actor); // send "this" so that Actor object can capture its allegiance
-			if (simulator != null) { // if called by basic jUnit tests that do not use Simulator, the following code is ignored
+		for (int i=0; i<numToAdd; ++i)
+			add(type.create(this)); // send "this" so that Actor object can capture its allegiance
+	} // end populate()
+
+	/**
+	 * Same as <i>populate(ActorFactory.Type, int)</i> for a type defined in the <i>ArchetypeRegistry</i>.
+	 * @param archetype type of the new <i>Actor</i> objects
+	 * @param numToAdd is the number of objects to add to the <i>Army</i>.
+	 */
+	public void populate(Archetype archetype, int numToAdd) {
+		for (int i=0; i<numToAdd; ++i)
+			add(ActorFactory.create(archetype, this));
+	} // end populate()
+
+	/**
+	 * Brings in one wave of reinforcements: <i>wave.getSize()</i> <i>Actor</i> objects of types drawn from the wave's mix, placed in its spawn area and set in motion.
+	 * Each is a dead <i>Actor</i> object of the same type brought back with fresh attributes when one is waiting, and a new one only otherwise, so an <i>Army</i> reinforced as fast as it loses actors stops allocating them.
+	 * @param wave the types, size and spawn area of the reinforcements
+	 */
+	public void reinforce(ReinforcementWave wave) {
+		for (int i=0; i<wave.getSize(); ++i) {
+			Archetype archetype = wave.pickType(reinforcementRandom.nextDouble());
+			ArrayDeque<Actor> recycled = recycledActors.get(archetype.getId());
+			Actor actor;
+			if (recycled != null && !recycled.isEmpty()) {
+				actor = recycled.pop();
+				--numRecycled;
+				actor.respawn();
+				actor.resetAvatarAttributes();
+			} else
+				actor = ActorFactory.create(archetype, this);
+			add(actor);
+			if (simulator != null) {
 				Node avatar = actor.getAvatar();
-				// Note: initial placement of avatar cannot be performed in the Actor constructor. The Actor does not yet have access to the Scene (where it can determine the width/height dimensions)
-				// BEFORE execution of the next line, the avatar WILL NOT know about the Scene in which it has been placed.
-				simulator.getChildren().add(avatar);
-				// AFTER execution of the preceding line, the avatar WILL know about the Scene in which it has been placed, thus we have access to dimensioning information.
-				avatar.setTranslateX(avatar.getScene().getWidth()*Math.random()); avatar.setTranslateY(avatar.getScene().getHeight()*Math.random()); 
-				avatar.setEffect(dropShadow);
-			} // end if (simulator != null)
+				wave.place(reinforcementRandom.nextDouble(), reinforcementRandom.nextDouble(), avatar.getScene().getWidth(), avatar.getScene().getHeight(), spawnLocation);
+				avatar.setTranslateX(spawnLocation[0]); avatar.setTranslateY(spawnLocation[1]);
+				actor.startMotion(false);
+			}
 		}
-	} // end populate()
+	} // end reinforce()
+
+	/** @param seed seed for the types and spawn points of the reinforcements, so that a run's waves can be repeated */
+	public void setReinforcementSeed(long seed) { reinforcementRandom.setSeed(seed); }
+
+	/**
+	 * Keeps dead <i>Actor</i> objects for the reinforcements still to come: only the dead of a type those waves can bring in, and no more than one full wave of each. Dead already kept beyond that are let go.
+	 * With no waves, no dead are kept; the <i>Simulator</i> calls this whenever the reinforcements scheduled for this <i>Army</i> change.
+	 * @param pendingWaves the waves still to enter for this <i>Army</i>
+	 */
+	public void setRecycling(List<ReinforcementWave> pendingWaves) {
+		recycledTypes.clear();
+		recyclingCapacity = 0;
+		for (ReinforcementWave wave : pendingWaves) {
+			recyclingCapacity += wave.getSize();
+			for (Archetype archetype : wave.getTypes())
+				recycledTypes.set(archetype.getId());
+		}
+		for (Map.Entry<Integer, ArrayDeque<Actor>> entry : recycledActors.entrySet()) {
+			ArrayDeque<Actor> recycled = entry.getValue();
+			while (!recycled.isEmpty() && (!recycledTypes.get(entry.getKey()) || numRecycled > recyclingCapacity)) {
+				recycled.pop();
+				--numRecycled;
+			}
+		}
+	} // end setRecycling()
+
+	/** @return number of dead <i>Actor</i> objects waiting to be reused */
+	public int getRecycledCount() { return numRecycled; }
+
+	/** Adds a new <i>Actor</i> object to the <i>Collection</i> and its avatar to the <i>Simulator</i>. */
+	private void add(Actor actor) {
+		collectionActors.add(actor);
+		visibleActors.set(collectionActors.size()-1, actor.isVisible());
+		if (simulator != null) { // if called by basic jUnit tests that do not use Simulator, the following code is ignored
+			Node avatar = actor.getAvatar();
+			// Note: initial placement of avatar cannot be performed in the Actor constructor. The Actor does not yet have access to the Scene (where it can determine the width/height dimensions)
+			// BEFORE execution of the next line, the avatar WILL NOT know about the Scene in which it has been placed.
+			simulator.getChildren().add(avatar);
+			// AFTER execution of the preceding line, the avatar WILL know about the Scene in which it has been placed, thus we have access to dimensioning information.
+			avatar.setTranslateX(avatar.getScene().getWidth()*Math.random()); avatar.setTranslateY(avatar.getScene().getHeight()*Math.random()); 
+			avatar.setEffect(dropShadow);
+		} // end if (simulator != null)
+	} // end add()
 
 	/** Outputs textual display to the console. */
 	public void display() {
@@ -95,6 +188,7 @@ public class Army {
 			return false;
 		}
 		collectionActors.get(index).inputAllFields();
+		visibleActors.set(index, collectionActors.get(index).isVisible());
 		return true;
 	} // end edit()
 
@@ -103,6 +197,7 @@ public class Army {
 
 	/** Iterates through the <i>Collection</i> of <i>Actor</i> objects and instructs each to begin (or resume) motion (ultimately using <i>TranslateTransition</i> objects that define animated movement). The start maps to a call to <i>play()</i> for the <i>TranslateTransition</i> object. */
 	public void startMotion() {
+		refreshVisibility(); // fields may have been edited in the TableView while suspended
 		for (Actor actor : collectionActors)
 			actor.startMotion(false);
 	}
@@ -119,29 +214,66 @@ public class Army {
 	}
 
 	public String getName() { return name; }
+	/** @return the colour of the <i>DropShadow</i> that shows allegiance to this <i>Army</i> */
+	public Color getColor() { return color; }
 
-	/** Calls upon class Actor to create the TableView; then associates the ObservableList of Actor objects with the TableView<Actor> */
+	/** @return the model that feeds this <i>Army</i>'s windows with throttled snapshots; created on first use, on the JavaFX thread */
+	public SnapshotTableModel getSnapshotModel() {
+		if (snapshotModel == null)
+			snapshotModel = new SnapshotTableModel(collectionActors);
+		return snapshotModel;
+	}
+
+	/** Builds a filter field and a <i>TableView</i> over snapshots of the <i>Actor</i> objects. The table is no longer bound to the live objects, so moving avatars do not update its cells every frame; edits are forwarded to the <i>Actor</i> objects as commands. */
 	public Node getTableViewOfActors() {
-		TableView<Actor> tableView = Actor.createTable(); // Actor class knows the details of the fields, so let Actor class take responsibility for defining the TableView (that's an example of encapsulation and decoupling).
-		tableView.setItems(collectionActors); // collectionActors is Observable, thus the TableView<Actor> object will receive future change-of-state notifications when an Actor object is added ro removed from the Collection.
-		return tableView;
+		return new VBox(5.0, getSnapshotModel().createFilterField(), getSnapshotModel().createTableView());
+	}
+
+	/** Builds a <i>ListView</i> over snapshots of the <i>Actor</i> objects. */
+	public Node getListViewOfActors() {
+		return getSnapshotModel().createListView();
 	}
 
-	public Army getOpposingArmy() {	return opposingArmy; }
-	public void setOpposingArmy(Army opposingArmy) { this.opposingArmy = opposingArmy; }
+	public List<Army> getHostileArmies() { return Collections.unmodifiableList(hostileArmies); }
+	public boolean isHostileTo(Army army) { return hostileArmies.contains(army); }
+	public void addHostileArmy(Army army) { if (army != this && !hostileArmies.contains(army)) hostileArmies.add(army); }
+	public void removeHostileArmy(Army army) { hostileArmies.remove(army); }
 
-	public Actor findNearestOpponent(Actor actorToMove) {
+	/** Recomputes the visibility bit of every <i>Actor</i> object; call after anything that changes stealth, cloak or staff, or the order of the <i>Collection</i>. */
+	public void refreshVisibility() {
+		visibleActors.clear();
+		for (int i=0; i<collectionActors.size(); ++i)
+			if (collectionActors.get(i).isVisible())
+				visibleActors.set(i);
+	} // end refreshVisibility()
+
+	/** Removes bit <i>index</i> of <i>visibleActors</i>, moving every set bit above it down one, to follow a removal from the <i>Collection</i> without calling <i>isVisible()</i> again. */
+	private void removeVisibilityBit(int index) {
+		visibleActors.clear(index);
+		for (int i = visibleActors.nextSetBit(index+1); i >= 0; i = visibleActors.nextSetBit(i+1)) { // ascending, so each bit moves into one already visited
+			visibleActors.clear(i);
+			visibleActors.set(i-1);
+		}
+	} // end removeVisibilityBit()
+
+	/**
+	 * Searches every hostile <i>Army</i> in a single pass for the nearest visible <i>Actor</i>.
+	 * @param actorToMove the <i>Actor</i> looking for a target
+	 * @return the nearest visible hostile <i>Actor</i>, or null if there is none
+	 */
+	public Actor findNearestHostile(Actor actorToMove) {
 		Actor nearest = null;
-		double distanceToClosest = Double.MAX_VALUE; 
-		for (Actor current : collectionActors) {
-			if (current.isVisible()) {
-				double actorToMoveX = actorToMove.getAvatar().getTranslateX();
-				double actorToMoveY = actorToMove.getAvatar().getTranslateY();
-				double currentX = current.getAvatar().getTranslateX();
-				double currentY = current.getAvatar().getTranslateY();
-				double deltaX = actorToMoveX - currentX;
-				double deltaY= actorToMoveY - currentY;
-				double calculatedDistance = Math.sqrt(deltaX*deltaX + deltaY*deltaY);
+		double distanceToClosest = Double.MAX_VALUE;
+		double actorToMoveX = actorToMove.getAvatar().getTranslateX();
+		double actorToMoveY = actorToMove.getAvatar().getTranslateY();
+		for (int h = 0; h < hostileArmies.size(); ++h) { // indexed, so no Iterator is allocated at each step of motion
+			final Army hostile = hostileArmies.get(h);
+			final List<Actor> actors = hostile.collectionActors;
+			for (int i = hostile.visibleActors.nextSetBit(0); i >= 0 && i < actors.size(); i = hostile.visibleActors.nextSetBit(i+1)) { // visits visible actors only
+				Actor current = actors.get(i);
+				double deltaX = actorToMoveX - current.getAvatar().getTranslateX();
+				double deltaY = actorToMoveY - current.getAvatar().getTranslateY();
+				double calculatedDistance = deltaX*deltaX + deltaY*deltaY; // comparing only, so no need for Math.sqrt()
 				if (calculatedDistance < distanceToClosest) {
 					distanceToClosest = calculatedDistance;
 					nearest = current;
@@ -149,33 +281,78 @@ public class Army {
 			}
 		}
 		return nearest;
+	} // end findNearestHostile()
+
+	public Actor findNearestOpponent(Actor actorToMove) {
+		Actor nearest = null;
+		double distanceToClosest = Double.MAX_VALUE; 
+		for (int i = visibleActors.nextSetBit(0); i >= 0 && i < collectionActors.size(); i = visibleActors.nextSetBit(i+1)) {
+			Actor current = collectionActors.get(i);
+			double actorToMoveX = actorToMove.getAvatar().getTranslateX();
+			double actorToMoveY = actorToMove.getAvatar().getTranslateY();
+			double currentX = current.getAvatar().getTranslateX();
+			double currentY = current.getAvatar().getTranslateY();
+			double deltaX = actorToMoveX - currentX;
+			double deltaY= actorToMoveY - currentY;
+			double calculatedDistance = Math.sqrt(deltaX*deltaX + deltaY*deltaY);
+			if (calculatedDistance < distanceToClosest) {
+				distanceToClosest = calculatedDistance;
+				nearest = current;
+			}
+		}
+		return nearest;
 	}
 
+	/** Passes a combat round fought by one of this army's <i>Actor</i> objects to the <i>Simulator</i>'s statistics, if there is a <i>Simulator</i>. */
+	public void recordCombat(Actor attacker, Actor defender, double attackerHealthChange, double defenderHealthChange) {
+		if (simulator != null)
+			simulator.recordCombat(attacker, defender, attackerHealthChange, defenderHealthChange);
+	} // end recordCombat()
+
+	/**
+	 * Takes a dead <i>Actor</i> off the battlefield and announces its death. The <i>Actor</i> object is kept, motion stopped, for <i>reinforce()</i> to bring back; nothing is done if it has already been removed.
+	 * @param nowDeadActor <i>Actor</i> whose health has fallen to 0 or below
+	 */
 	public void removeNowDeadActor(Actor nowDeadActor) {
+		final int index = collectionActors.indexOf(nowDeadActor);
+		if (index < 0)
+			return;
 		final ObservableList<Node> listJavaFXNodesOnBattlefield = simulator.getChildren(); // creating as a convenience variable, since the removeNowDeadActor() method needs to manage many Node objects in the simulator collection of Node objects
 		 // %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 		 // %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
-		 // START: Create Notification message about the nowDeadActor: Create, then add two Transition Animations, packing in a ParallelTransition
-		 { // setup Stack Frame to allow re-use of variable identifiers "tt", "ft" and "pt"
-		 Text message = new Text(240.0, 100.0, "Dead: " + nowDeadActor.getName()); message.setFont(NOTIFICATION_FONT_SMALL); message.setStroke(color);
-		 final Duration duration = Duration.seconds(3.0);
-		 FadeTransition ft = new FadeTransition(duration); ft.setToValue(0.0); // no need to associate with the Text (message) here, that will be done in the ParallelTransition
-		 TranslateTransition tt = new TranslateTransition(duration); tt.setByY(200.0);  // no need to associate with the Text (message) here, that will be done in the ParallelTransition
-		 ParallelTransition pt = new ParallelTransition(message, ft, tt); pt.setOnFinished(event->listJavaFXNodesOnBattlefield.remove(message)); pt.play(); // couple both Transitions in the ParallelTransition and associate with Text
-		 listJavaFXNodesOnBattlefield.add(message); // it will play() and after playing the code in the setOnFinished() method will called to remove the temporay message from the scenegraph.
-		 }
-		 // END: Create Notification message about the nowDeadActor: Create, then add two Transition Animations, packing in a ParallelTransition
+		 // START: Notification message about the nowDeadActor, played by a recycled ParallelTransition
+		 ParallelTransition pt = idleNotifications.poll();
+		 if (pt == null)
+			 pt = createNotification(listJavaFXNodesOnBattlefield);
+		 Text message = (Text) pt.getNode();
+		 message.setText("Dead: " + nowDeadActor.getName()); message.setStroke(color);
+		 message.setOpacity(1.0); message.setTranslateY(0.0); // back to where the transitions start from
+		 listJavaFXNodesOnBattlefield.add(message); // it will play() and after playing the code in the setOnFinished() method will remove the message from the scenegraph and keep the transition for the next death.
+		 pt.play();
+		 // END: Notification message about the nowDeadActor
 		 // %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 		 // %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 
-		 collectionActors.remove(nowDeadActor); // removes nowDeadActor from the collection of active Actor objects that are part of this army.
+		 nowDeadActor.stopMotion(); // no further segment of motion is chained from the dead
+		 collectionActors.remove(index); // removes nowDeadActor from the collection of active Actor objects that are part of this army.
+		 removeVisibilityBit(index); // later Actor objects shifted down one index
 		 listJavaFXNodesOnBattlefield.remove(nowDeadActor.getAvatar()); // removes the avatar from the screnegraph (the Node object). The actor will disappear from the screen.
+		 int archetypeId = nowDeadActor.getArchetypeId();
+		 if (numRecycled < recyclingCapacity && recycledTypes.get(archetypeId)) { // kept, avatar and all, for the next reinforcement of its type
+			 recycledActors.computeIfAbsent(archetypeId, id -> new ArrayDeque<>()).push(nowDeadActor);
+			 ++numRecycled;
+		 }
 		 
 		 // %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 		 // %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 		 // START: Create Final Announcement of Winning Army
-		 if (collectionActors.size() == 0) { // Army has been wiped out, since no Actor objects remain in the collection. Therefore . . . the opposing Army wins.
-		 Text winner = new Text(260.0, 300.0, "Winner: " + opposingArmy.getName()); winner.setFont(NOTIFICATION_FONT_LARGE); winner.setStroke(opposingArmy.color); winner.setEffect(opposingArmy.dropShadow);
+		 List<Army> winningAlliance = simulator.getWinningAlliance();
+		 if (collectionActors.size() == 0 && !winningAlliance.isEmpty()) { // Army has been wiped out, since no Actor objects remain in the collection, and the survivors are no longer hostile to one another. Therefore . . . the survivors win.
+		 Army leader = winningAlliance.get(0); // the alliance is announced in the colours of its first Army
+		 StringBuilder names = new StringBuilder(leader.getName());
+		 for (int i=1; i<winningAlliance.size(); ++i)
+			 names.append(i == winningAlliance.size()-1 ? " and " : ", ").append(winningAlliance.get(i).getName());
+		 Text winner = new Text(260.0, 300.0, (winningAlliance.size() == 1 ? "Winner: " : "Winners: ") + names); winner.setFont(NOTIFICATION_FONT_LARGE); winner.setStroke(leader.color); winner.setEffect(leader.dropShadow);
 		 final Duration duration = Duration.seconds(1.0);
 		 FadeTransition ft = new FadeTransition(duration, winner); ft.setToValue(0.2); ft.setCycleCount(10); ft.setAutoReverse(true); ft.setOnFinished(event->listJavaFXNodesOnBattlefield.remove(winner)); ft.play();
 		 listJavaFXNodesOnBattlefield.add(winner); // it will play() and after playing the code in the setOnFinished() method will called to remove the temporary winner from the scenegraph.
@@ -186,6 +363,20 @@ public class Army {
 		 
 	}
 
+	/**
+	 * Creates a death notification: a <i>Text</i> that fades and drifts down over 3 seconds, then leaves the scenegraph and waits in <i>idleNotifications</i> to be played again.
+	 * @param listJavaFXNodesOnBattlefield the <i>Simulator</i>'s children, to which the <i>Text</i> is added while it plays
+	 */
+	private ParallelTransition createNotification(ObservableList<Node> listJavaFXNodesOnBattlefield) {
+		Text message = new Text(240.0, 100.0, ""); message.setFont(NOTIFICATION_FONT_SMALL);
+		final Duration duration = Duration.seconds(3.0);
+		FadeTransition ft = new FadeTransition(duration); ft.setToValue(0.0); // no need to associate with the Text (message) here, that will be done in the ParallelTransition
+		TranslateTransition tt = new TranslateTransition(duration); tt.setByY(200.0);  // no need to associate with the Text (message) here, that will be done in the ParallelTransition
+		ParallelTransition pt = new ParallelTransition(message, ft, tt); // couple both Transitions in the ParallelTransition and associate with Text
+		pt.setOnFinished(event-> { listJavaFXNodesOnBattlefield.remove(message); idleNotifications.push(pt); });
+		return pt;
+	} // end createNotification()
+
 	public double getSpeedControllerValue() {
 		return simulator.getSpeedControllerValue();
 	}
@@ -203,6 +394,9 @@ public class Army {
 
 		public void deserialize(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		  collectionActors.clear();
+		  visibleActors.clear();
+		  recycledActors.clear(); // their avatars are no longer in the scenegraph after a restore
+		  numRecycled = 0;
 		  name = (String) in.readObject();
 		  color = new Color(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
 		  dropShadow = new DropShadow(10.0, color);
@@ -213,6 +407,7 @@ public class Army {
 		    actor.getAvatar().setEffect(dropShadow);
 		    simulator.getChildren().add(actor.getAvatar());
 		    collectionActors.add(actor);
+		    visibleActors.set(collectionActors.size()-1, actor.isVisible());
 		  }
 		} // end deserialize() to support serialization
 
@@ -0,0 +1,271 @@
+package army;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.control.cell.TextFieldTableCell;
+import javafx.util.Duration;
+import javafx.util.converter.NumberStringConverter;
+import actor.Actor;
+
+/**
+ * A <i>SnapshotTableModel</i> feeds the <i>TableView</i> and <i>ListView</i> windows of one <i>Army</i> with periodic snapshots instead of binding them to the live <i>Actor</i> objects.
+ * At a configurable rate (default {@value #DEFAULT_SNAPSHOTS_PER_SECOND} per second) the JavaFX thread copies the displayed fields of every <i>Actor</i> into primitive arrays, which takes a few milliseconds even for 100,000 actors.
+ * Building the rows, filtering and sorting them happen on a background thread; the finished list replaces the rows in a single change on the JavaFX thread.
+ * Both controls are virtualized, so only the visible rows create cells, and a sample that is still being processed when the next one is due is skipped rather than queued.
+ * <p>Edits made in the <i>TableView</i> do not touch the snapshot: they are submitted as commands, run against the live <i>Actor</i> on the JavaFX thread, and show up in the next snapshot, which is taken straight away.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ActorSnapshot
+ * @see Army
+ */
+public class SnapshotTableModel {
+	/** {@value} */
+	public static final double DEFAULT_SNAPSHOTS_PER_SECOND = 4.0;
+	/** One background thread builds, filters and sorts the snapshots of every <i>Army</i>. */
+	private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Snapshot worker");
+		thread.setDaemon(true); // must not keep the application alive once the windows close
+		return thread;
+	});
+	/** number of doubles copied per <i>Actor</i>: health, strength, speed, x, y */
+	private static final int FIELDS = 5;
+
+	/** live collection; read on the JavaFX thread only */
+	private final List<Actor> actors;
+	private final ObservableList<ActorSnapshot> rows = FXCollections.observableArrayList();
+	private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+	private final Timeline timeline = new Timeline();
+	private double snapshotsPerSecond;
+	private volatile Predicate<ActorSnapshot> filter = row -> true;
+	/** null keeps the order of the <i>Collection</i> */
+	private volatile Comparator<ActorSnapshot> comparator;
+	private String sortKey = "";
+	/** number of open windows showing this model; sampling stops when there are none */
+	private int viewers;
+	/** a snapshot is being built on the worker thread */
+	private boolean inFlight;
+	/** something changed while a snapshot was in flight; take another when it lands */
+	private boolean stale;
+	/** a cell is being edited; replacing the rows now would cancel the edit */
+	private boolean editing;
+
+	/** @param actors the live <i>Collection</i> of <i>Actor</i> objects of an <i>Army</i> */
+	public SnapshotTableModel(List<Actor> actors) {
+		this.actors = actors;
+		timeline.setCycleCount(Animation.INDEFINITE);
+		snapshotsPerSecond = DEFAULT_SNAPSHOTS_PER_SECOND; // the KeyFrame, which refers back to this model, is only built by attach()
+	} // end Constructor
+
+	public ObservableList<ActorSnapshot> getRows() { return FXCollections.unmodifiableObservableList(rows); }
+
+	public double getSnapshotsPerSecond() { return snapshotsPerSecond; }
+
+	/** @param snapshotsPerSecond how often the windows are refreshed while they are open */
+	public void setSnapshotsPerSecond(double snapshotsPerSecond) {
+		if (snapshotsPerSecond <= 0.0)
+			throw new IllegalArgumentException("Snapshot rate must be positive");
+		this.snapshotsPerSecond = snapshotsPerSecond;
+		if (timeline.getStatus() == Animation.Status.RUNNING) {
+			timeline.stop();
+			play();
+		}
+	} // end setSnapshotsPerSecond()
+
+	/** Starts sampling at <i>snapshotsPerSecond</i>. */
+	private void play() {
+		timeline.getKeyFrames().setAll(new KeyFrame(Duration.seconds(1.0 / snapshotsPerSecond), event -> sample()));
+		timeline.play();
+	} // end play()
+
+	/** Called when a window showing this model opens; the first viewer starts the sampling. */
+	public void attach() {
+		if (viewers++ == 0) {
+			sample();
+			play();
+		}
+	} // end attach()
+
+	/** Called when a window showing this model closes; the last viewer stops the sampling. */
+	public void detach() {
+		if (viewers > 0 && --viewers == 0)
+			timeline.stop();
+	} // end detach()
+
+	/** @param filter rows to keep; applied on the worker thread, so it must not touch the live <i>Actor</i> */
+	public void setFilter(Predicate<ActorSnapshot> filter) {
+		this.filter = filter;
+		refresh();
+	} // end setFilter()
+
+	/** @param comparator order of the rows, or null for the order of the <i>Collection</i>; applied on the worker thread */
+	public void setComparator(Comparator<ActorSnapshot> comparator) {
+		this.comparator = comparator;
+		refresh();
+	} // end setComparator()
+
+	/**
+	 * Forwards an edit to the simulation: <i>command</i> runs against the live <i>Actor</i> of <i>row</i> on the JavaFX thread, before the next snapshot is taken.
+	 * @param row row the edit was made in
+	 * @param command change to apply
+	 */
+	public void submit(ActorSnapshot row, Consumer<Actor> command) {
+		commands.add(() -> command.accept(row.getActor()));
+		refresh();
+	} // end submit()
+
+	/** Takes a snapshot now if one is not already in flight (JavaFX thread). */
+	private void refresh() {
+		if (Platform.isFxApplicationThread())
+			sample();
+		else
+			Platform.runLater(this::sample);
+	} // end refresh()
+
+	/** Runs the pending commands, then copies the live fields and hands them to the worker thread (JavaFX thread). */
+	private void sample() {
+		for (Runnable command; (command = commands.poll()) != null; )
+			command.run();
+		if (inFlight || editing) {
+			stale = true;
+			return;
+		}
+		final int size = actors.size();
+		final Actor[] sampled = actors.toArray(new Actor[size]);
+		final String[] names = new String[size];
+		final double[] values = new double[size * FIELDS];
+		for (int i = 0, v = 0; i < size; ++i) {
+			Actor actor = sampled[i];
+			names[i] = actor.getName();
+			values[v++] = actor.getHealth();
+			values[v++] = actor.getStrength();
+			values[v++] = actor.getSpeed();
+			values[v++] = actor.getAvatar().getTranslateX();
+			values[v++] = actor.getAvatar().getTranslateY();
+		}
+		inFlight = true;
+		stale = false;
+		final Predicate<ActorSnapshot> keep = filter;
+		final Comparator<ActorSnapshot> order = comparator;
+		WORKER.execute(() -> {
+			List<ActorSnapshot> result = new ArrayList<>(size);
+			for (int i = 0, v = 0; i < size; ++i, v += FIELDS) {
+				ActorSnapshot row = new ActorSnapshot(sampled[i], names[i], values[v], values[v + 1], values[v + 2], values[v + 3], values[v + 4]);
+				if (keep.test(row))
+					result.add(row);
+			}
+			if (order != null)
+				result.sort(order);
+			Platform.runLater(() -> publish(result));
+		});
+	} // end sample()
+
+	private void publish(List<ActorSnapshot> result) {
+		inFlight = false;
+		if (!editing)
+			rows.setAll(result); // one change event, however many rows changed
+		if (stale || editing)
+			sample();
+	} // end publish()
+
+	/** @return a text field that filters the rows by name */
+	public TextField createFilterField() {
+		TextField field = new TextField();
+		field.setPromptText("Filter by name");
+		field.textProperty().addListener((observable, oldText, newText) -> {
+			String wanted = newText.trim().toLowerCase(Locale.ROOT);
+			setFilter(wanted.isEmpty() ? row -> true : row -> row.getName().toLowerCase(Locale.ROOT).contains(wanted));
+		});
+		return field;
+	} // end createFilterField()
+
+	/** @return a <i>ListView</i> of the snapshot rows */
+	public ListView<ActorSnapshot> createListView() { return new ListView<>(rows); }
+
+	/**
+	 * Builds a <i>TableView</i> of the snapshot rows with the same columns and edit handlers as <i>Actor.createTable()</i>. Sorting by clicking a column header is done by the worker thread on the next snapshot.
+	 * @return the new <i>TableView</i>
+	 */
+	public TableView<ActorSnapshot> createTableView() {
+		TableView<ActorSnapshot> table = new TableView<>(rows);
+		final double PREF_WIDTH_DOUBLE = 80.0;
+		table.setPrefWidth(PREF_WIDTH_DOUBLE*7.5);
+		table.setEditable(true);
+		Map<TableColumn<ActorSnapshot, ?>, Comparator<ActorSnapshot>> comparators = new HashMap<>();
+
+		TableColumn<ActorSnapshot, String> nameCol = new TableColumn<>("Name");
+		nameCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getName()));
+		nameCol.setPrefWidth(PREF_WIDTH_DOUBLE*2.0);
+		nameCol.setCellFactory(TextFieldTableCell.<ActorSnapshot>forTableColumn());
+		nameCol.setOnEditCommit(event -> { String name = event.getNewValue(); submit(event.getRowValue(), a -> { a.setName(name); a.resetAvatarAttributes(); }); });
+		comparators.put(nameCol, Comparator.comparing(ActorSnapshot::getName));
+		table.getColumns().add(nameCol);
+
+		TableColumn<ActorSnapshot, Number> healthCol = numberColumn("Health", ActorSnapshot::getHealth, PREF_WIDTH_DOUBLE, comparators, table);
+		healthCol.setOnEditCommit(event -> { double value = event.getNewValue().doubleValue(); submit(event.getRowValue(), a -> { a.setHealth(value); a.resetAvatarAttributes(); }); });
+		TableColumn<ActorSnapshot, Number> strengthCol = numberColumn("Strength", ActorSnapshot::getStrength, PREF_WIDTH_DOUBLE, comparators, table);
+		strengthCol.setOnEditCommit(event -> { double value = event.getNewValue().doubleValue(); submit(event.getRowValue(), a -> { a.setStrength(value); a.resetAvatarAttributes(); }); });
+		TableColumn<ActorSnapshot, Number> speedCol = numberColumn("Speed", ActorSnapshot::getSpeed, PREF_WIDTH_DOUBLE, comparators, table);
+		speedCol.setOnEditCommit(event -> { double value = event.getNewValue().doubleValue(); submit(event.getRowValue(), a -> { a.setSpeed(value); a.resetAvatarAttributes(); }); });
+		numberColumn("X", ActorSnapshot::getX, PREF_WIDTH_DOUBLE, comparators, table).setEditable(false); // the position belongs to the TranslateTransition
+		numberColumn("Y", ActorSnapshot::getY, PREF_WIDTH_DOUBLE, comparators, table).setEditable(false);
+
+		table.setSortPolicy(view -> {
+			StringBuilder key = new StringBuilder();
+			Comparator<ActorSnapshot> order = null;
+			for (TableColumn<ActorSnapshot, ?> column : view.getSortOrder()) {
+				Comparator<ActorSnapshot> byColumn = comparators.get(column);
+				if (byColumn == null)
+					continue;
+				if (column.getSortType() == TableColumn.SortType.DESCENDING)
+					byColumn = byColumn.reversed();
+				order = order == null ? byColumn : order.thenComparing(byColumn);
+				key.append(column.getText()).append(column.getSortType()).append(',');
+			}
+			if (!key.toString().equals(sortKey)) { // the TableView also calls this when the rows are replaced; only a new sort order needs a new snapshot
+				sortKey = key.toString();
+				setComparator(order);
+			}
+			return true;
+		});
+		table.editingCellProperty().addListener((observable, oldCell, newCell) -> {
+			editing = newCell != null;
+			if (!editing && stale)
+				sample();
+		});
+		return table;
+	} // end createTableView()
+
+	private static TableColumn<ActorSnapshot, Number> numberColumn(String title, ToDoubleFunction<ActorSnapshot> field, double width, Map<TableColumn<ActorSnapshot, ?>, Comparator<ActorSnapshot>> comparators, TableView<ActorSnapshot> table) {
+		TableColumn<ActorSnapshot, Number> column = new TableColumn<>(title);
+		column.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(field.applyAsDouble(cell.getValue())));
+		column.setCellFactory(TextFieldTableCell.<ActorSnapshot, Number>forTableColumn(new NumberStringConverter()));
+		column.setPrefWidth(width);
+		comparators.put(column, Comparator.comparingDouble(field));
+		table.getColumns().add(column);
+		return column;
+	} // end numberColumn()
+} // end class SnapshotTableModel
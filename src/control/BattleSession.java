@@ -0,0 +1,275 @@
+package control;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import engine.Battle;
+
+/**
+ * One headless battle and the platform thread that runs it. Only the simulation thread touches the <i>Battle</i>:
+ * <ul>
+ * <li>commands (populate, run, pause, speed, checkpoint) are queued with <i>submit()</i> and executed by the simulation thread between ticks, so the battle needs no locks;</li>
+ * <li>queries read the last published <i>Summary</i>, an immutable copy refreshed by the simulation thread at most {@value #SUMMARIES_PER_SECOND} times a second and after every command, so any number of pollers never wait for, or slow down, the battle.</li>
+ * </ul>
+ * A running battle ticks at <i>ticksPerSecond</i> (real time by default, or as fast as it can at 0) until it is paused or decided.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ControlServer
+ */
+final class BattleSession implements AutoCloseable {
+	/** Refreshes of the published summary per second while running: {@value} */
+	static final int SUMMARIES_PER_SECOND = 10;
+	/** Same limits as the <i>Simulator</i> speed controller */
+	static final double MIN_SPEED_CONTROLLER = 1.0, MAX_SPEED_CONTROLLER = 50.0;
+	/** First <i>int</i> of a checkpoint file: {@value} */
+	static final int CHECKPOINT_MAGIC = 0x48424331; // "HBC1"
+
+	/** Immutable state of the battle, as last published by the simulation thread. */
+	static final class Summary {
+		final int id;
+		final boolean running, decided;
+		final int winner;
+		final long tick;
+		final double time, speedController, ticksPerSecond;
+		final int[] liveCount;
+		final double[] totalHealth;
+		/** measured ticks per second over the last publishing period, and mean tick duration in milliseconds */
+		final double measuredTicksPerSecond, meanTickMillis;
+		final long commands;
+
+		private Summary(BattleSession session, Battle battle, double measuredTicksPerSecond, double meanTickMillis) {
+			id = session.id;
+			running = session.running;
+			decided = battle.isDecided();
+			winner = battle.getWinner();
+			tick = session.tickBase + battle.getTickCount();
+			time = battle.getTime();
+			speedController = battle.getSpeedControllerValue();
+			ticksPerSecond = session.ticksPerSecond;
+			liveCount = new int[battle.getNumArmies()];
+			totalHealth = new double[battle.getNumArmies()];
+			for (int armyIndex = 0; armyIndex < liveCount.length; ++armyIndex) {
+				liveCount[armyIndex] = battle.getLiveCount(armyIndex);
+				totalHealth[armyIndex] = battle.getTotalHealth(armyIndex);
+			}
+			this.measuredTicksPerSecond = measuredTicksPerSecond;
+			this.meanTickMillis = meanTickMillis;
+			commands = session.commandsExecuted;
+		} // end Constructor
+
+		/** @return the state and the army summaries as a JSON object */
+		String toJson() {
+			StringBuilder json = new StringBuilder(128 + 64 * liveCount.length);
+			json.append(String.format(Locale.ROOT, "{\"id\":%d,\"state\":\"%s\",\"tick\":%d,\"time\":%.3f,\"speedController\":%.1f,\"ticksPerSecond\":%.1f,\"winner\":%d,\"armies\":[",
+					id, decided && tick > 0 ? "decided" : running ? "running" : "paused", tick, time, speedController, ticksPerSecond, winner));
+			for (int armyIndex = 0; armyIndex < liveCount.length; ++armyIndex)
+				json.append(armyIndex == 0 ? "" : ",").append(String.format(Locale.ROOT, "{\"army\":%d,\"live\":%d,\"totalHealth\":%.1f}", armyIndex, liveCount[armyIndex], totalHealth[armyIndex]));
+			return json.append("]}").toString();
+		} // end toJson()
+
+		/** @return the simulation thread's performance as a JSON object */
+		String metricsJson() {
+			return String.format(Locale.ROOT, "{\"id\":%d,\"tick\":%d,\"measuredTicksPerSecond\":%.1f,\"meanTickMillis\":%.3f,\"commands\":%d}", id, tick, measuredTicksPerSecond, meanTickMillis, commands);
+		} // end metricsJson()
+	} // end class Summary
+
+	private final int id;
+	private final long seed;
+	private final Thread thread;
+	private final LinkedBlockingQueue<Runnable> commands = new LinkedBlockingQueue<>();
+	private volatile Summary summary;
+	private volatile boolean closed;
+	/** the fields below belong to the simulation thread */
+	private Battle battle;
+	private boolean running;
+	private double ticksPerSecond = 1.0 / Battle.TICK_SECONDS;
+	/** ticks run before the last restore, which starts a new <i>Battle</i> */
+	private long tickBase;
+	private long commandsExecuted;
+	/** ticks and nanoseconds spent ticking since the last summary */
+	private long periodTicks, periodTickNanos, periodStart = System.nanoTime();
+
+	/**
+	 * Starts the simulation thread of a new, empty, paused battle.
+	 * @param id identifier of the session
+	 * @param seed seed of the battle
+	 * @param numArmies number of armies
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 */
+	BattleSession(int id, long seed, int numArmies, double width, double height) {
+		this.id = id;
+		this.seed = seed;
+		battle = new Battle(seed, numArmies, width, height);
+		summary = new Summary(this, battle, 0.0, 0.0);
+		thread = Thread.ofPlatform().name("battle-" + id).daemon().start(this::simulate);
+	} // end Constructor
+
+	int getId() { return id; }
+	/** @return the last published state; never blocks */
+	Summary getSummary() { return summary; }
+
+	/**
+	 * Queues a command for the simulation thread, which runs it between two ticks and then publishes a fresh summary.
+	 * @param command reads or changes the battle; its result completes the future
+	 * @return completed with the command's result, or exceptionally with what it threw
+	 */
+	<T> CompletableFuture<T> submit(Function<Battle, T> command) {
+		CompletableFuture<T> result = new CompletableFuture<>();
+		if (closed) {
+			result.completeExceptionally(new IllegalStateException("Battle " + id + " has been closed"));
+			return result;
+		}
+		commands.add(() -> {
+			try {
+				if (closed)
+					result.completeExceptionally(new IllegalStateException("Battle " + id + " has been closed"));
+				else
+					result.complete(command.apply(battle));
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		});
+		return result;
+	} // end submit()
+
+	/** Starts or resumes ticking; called on the simulation thread through <i>submit()</i>. */
+	void setRunning(boolean running) { this.running = running; }
+
+	/** @param ticksPerSecond pace of a running battle, or 0 to tick as fast as possible; called on the simulation thread through <i>submit()</i> */
+	void setTicksPerSecond(double ticksPerSecond) {
+		if (!(ticksPerSecond >= 0.0))
+			throw new IllegalArgumentException("Ticks per second must be 0 or more");
+		this.ticksPerSecond = ticksPerSecond;
+	} // end setTicksPerSecond()
+
+	/** Raises the speed controller by one, as <i>Simulator.speedUp()</i> does; called on the simulation thread. */
+	void speedUp() { battle.setSpeedControllerValue(Math.min(MAX_SPEED_CONTROLLER, battle.getSpeedControllerValue() + 1.0)); }
+	/** Lowers the speed controller by one, as <i>Simulator.slowDown()</i> does; called on the simulation thread. */
+	void slowDown() { battle.setSpeedControllerValue(Math.max(MIN_SPEED_CONTROLLER, battle.getSpeedControllerValue() - 1.0)); }
+
+	/**
+	 * Writes every live actor with <i>Battle.writeActor()</i>, after a header with the battlefield, the tick and the speed controller; called on the simulation thread.
+	 * @return number of actors written
+	 */
+	int checkpoint(Path file) throws IOException {
+		int count = 0;
+		for (int actor = 0; actor < battle.getStore().size(); ++actor)
+			if (battle.getStore().isAlive(actor) && !battle.getStore().isGhost(actor))
+				++count;
+		ByteBuffer records = ByteBuffer.allocate(count * Battle.ACTOR_RECORD_BYTES);
+		for (int actor = 0; actor < battle.getStore().size(); ++actor)
+			if (battle.getStore().isAlive(actor) && !battle.getStore().isGhost(actor))
+				battle.writeActor(actor, records);
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temporary))) {
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeInt(battle.getNumArmies());
+			out.writeDouble(battle.getWidth());
+			out.writeDouble(battle.getHeight());
+			out.writeLong(tickBase + battle.getTickCount());
+			out.writeDouble(battle.getSpeedControllerValue());
+			out.writeInt(count);
+			out.write(records.array());
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE); // a crash mid-write leaves the previous checkpoint intact
+		return count;
+	} // end checkpoint()
+
+	/**
+	 * Replaces the battle with the one in a checkpoint, paused; called on the simulation thread. The actors resume their legs of motion where they were, but the random sequences start again from the session's seed.
+	 * @return number of actors read
+	 * @throws IOException if the file is not a checkpoint
+	 */
+	int restore(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+			if (in.readInt() != CHECKPOINT_MAGIC)
+				throw new IOException(file + " is not a checkpoint");
+			Battle restored = new Battle(seed, in.readInt(), in.readDouble(), in.readDouble());
+			long tick = in.readLong();
+			restored.setSpeedControllerValue(in.readDouble());
+			int count = in.readInt();
+			ByteBuffer records = ByteBuffer.wrap(in.readNBytes(count * Battle.ACTOR_RECORD_BYTES));
+			if (records.remaining() != count * Battle.ACTOR_RECORD_BYTES)
+				throw new IOException(file + " is truncated");
+			for (int i = 0; i < count; ++i)
+				restored.readActor(records, false);
+			battle = restored;
+			tickBase = tick;
+			running = false;
+			return count;
+		}
+	} // end restore()
+
+	/** Body of the simulation thread: runs queued commands, ticks while running, and publishes summaries. */
+	private void simulate() {
+		long nextTick = System.nanoTime();
+		while (!closed) {
+			try {
+				if (running && battle.isDecided())
+					running = false; // stops by itself, like the Simulator once an army is wiped out
+				long wait = running ? (ticksPerSecond > 0.0 ? nextTick - System.nanoTime() : 0L) : 1_000_000_000L / SUMMARIES_PER_SECOND;
+				Runnable command = wait > 0L ? commands.poll(wait, TimeUnit.NANOSECONDS) : commands.poll();
+				if (command != null) {
+					do {
+						command.run();
+						++commandsExecuted;
+					} while ((command = commands.poll()) != null);
+					publish();
+					continue; // the command may have paused, resumed or replaced the battle
+				}
+				if (running) {
+					long start = System.nanoTime();
+					battle.tick();
+					periodTickNanos += System.nanoTime() - start;
+					++periodTicks;
+					nextTick = ticksPerSecond > 0.0 ? Math.max(nextTick + (long) (1e9 / ticksPerSecond), start) : start; // a late tick does not make the next ones rush
+				} else
+					nextTick = System.nanoTime();
+				if (!running || System.nanoTime() - periodStart >= 1_000_000_000L / SUMMARIES_PER_SECOND)
+					publish();
+			} catch (InterruptedException e) {
+				closed = true;
+			}
+		}
+		Runnable command;
+		while ((command = commands.poll()) != null) // fail the commands nobody will run
+			command.run();
+	} // end simulate()
+
+	/**
+	 * Publishes a fresh summary; called on the simulation thread, including by commands that answer with the state they leave behind.
+	 * @return the summary published
+	 */
+	Summary publish() {
+		long now = System.nanoTime();
+		double seconds = (now - periodStart) / 1e9;
+		summary = new Summary(this, battle, periodTicks / seconds, periodTicks == 0 ? summary.meanTickMillis : periodTickNanos / 1e6 / periodTicks);
+		periodStart = now;
+		periodTicks = periodTickNanos = 0L;
+		return summary;
+	} // end publish()
+
+	/** Stops the simulation thread and waits for it to end; commands still queued complete exceptionally. If the caller is interrupted while waiting, its interrupt flag is set again. */
+	@Override
+	public void close() {
+		closed = true;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	} // end close()
+} // end class BattleSession
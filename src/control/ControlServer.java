@@ -0,0 +1,355 @@
+package control;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import actor.ActorFactory;
+import actor.Archetype;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import engine.Battle;
+import engine.BulkEdit;
+import engine.ExportChannel;
+import engine.ReinforcementWave;
+import engine.RosterExporter;
+
+/**
+ * An HTTP interface to headless battles, for servers without the <i>FXLauncher</i> menu. Each request is handled on its own virtual thread, so many slow pollers cost no platform threads; each battle runs on its own <i>BattleSession</i> thread, which requests never block.
+ * All responses are JSON. Parameters are passed in the query string.
+ * <ul>
+ * <li><b>GET /battles</b>: summaries of every battle</li>
+ * <li><b>POST /battles</b> [seed, armies, width, height]: creates a paused, empty battle</li>
+ * <li><b>GET /battles/{id}</b>: state, tick and the live count and total health of each army</li>
+ * <li><b>GET /battles/{id}/metrics</b>: measured ticks per second and mean tick duration</li>
+ * <li><b>DELETE /battles/{id}</b>: stops and forgets the battle</li>
+ * <li><b>POST /battles/{id}/populate</b> army, type (an archetype name, or RANDOM), count: the menu's <i>Populate</i></li>
+ * <li><b>POST /battles/{id}/run</b>, <b>/suspend</b> (or <b>/pause</b>), <b>/speedUp</b>, <b>/slowDown</b>: the menu items of the same names</li>
+ * <li><b>POST /battles/{id}/rate</b> ticksPerSecond: pace of a running battle, 0 for as fast as possible</li>
+ * <li><b>POST /battles/{id}/save</b>, <b>/restore</b> [name]: checkpoint to, or restore from, a file in the checkpoint directory</li>
+ * <li><b>POST /battles/{id}/export</b> [format (csv or columnar), name]: streams the roster of live actors to a file in the checkpoint directory with <i>RosterExporter</i></li>
+ * <li><b>POST /battles/{id}/edit</b> command: applies a <i>BulkEdit</i> command, e.g. <i>set health = 100 where type = ORC and x &lt; 500</i>, and answers the number of actors it matched</li>
+ * <li><b>POST /battles/{id}/reinforce</b> army, types (archetype names with optional weights, e.g. <i>ORC:3,WIZARD:1</i>), size, interval, x, y, radius [waves]: schedules a <i>ReinforcementWave</i>; <b>POST /battles/{id}/reinforce</b> with <i>clear</i> cancels them all</li>
+ * <li><b>GET /metrics</b>: battles, requests served and requests in progress</li>
+ * </ul>
+ * Commands answer with the state they leave behind. Errors answer <b>400</b> (bad parameter), <b>404</b> (no such battle or path), <b>405</b> (wrong method) or <b>500</b>, with an <i>error</i> message.
+ * <p>Run from the command line as <pre>java control.ControlServer [port] [checkpointDirectory]</pre> which listens on the loopback interface.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see BattleSession
+ */
+public class ControlServer implements AutoCloseable {
+	/** Default port: {@value} */
+	public static final int DEFAULT_PORT = 8080;
+	/** Longest wait for a battle to run a command, in seconds: {@value} */
+	static final long COMMAND_TIMEOUT = 10L;
+	/** Checkpoint names are plain file names, so that requests cannot write outside the checkpoint directory */
+	private static final Pattern CHECKPOINT_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9_.-]*");
+
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Path checkpointDirectory;
+	private final Map<Integer, BattleSession> sessions = new ConcurrentSkipListMap<>();
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicInteger inProgress = new AtomicInteger();
+
+	/** Thrown by a handler to answer with a status other than 200. */
+	private static final class HttpError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		HttpError(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	} // end class HttpError
+
+	/**
+	 * @param address address to listen on; port 0 picks a free port
+	 * @param checkpointDirectory directory of the files written by <b>save</b> and read by <b>restore</b>
+	 */
+	public ControlServer(InetSocketAddress address, Path checkpointDirectory) throws IOException {
+		this.checkpointDirectory = checkpointDirectory;
+		server = HttpServer.create(address, 0);
+		server.setExecutor(executor);
+		server.createContext("/battles", exchange -> serve(exchange, this::battles));
+		server.createContext("/metrics", exchange -> serve(exchange, this::metrics));
+	} // end Constructor
+
+	public void start() { server.start(); }
+	public int getPort() { return server.getAddress().getPort(); }
+
+	/** Answers one request, turning exceptions into error responses. */
+	private void serve(HttpExchange exchange, Handler handler) throws IOException {
+		requests.incrementAndGet();
+		inProgress.incrementAndGet();
+		try (exchange) {
+			int status = 200;
+			String body;
+			try {
+				body = handler.handle(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), parameters(exchange.getRequestURI().getRawQuery()));
+				if (exchange.getRequestMethod().equals("POST") && exchange.getRequestURI().getPath().equals("/battles"))
+					status = 201;
+			} catch (HttpError e) {
+				status = e.status;
+				body = error(e.getMessage());
+			} catch (NumberFormatException e) {
+				status = 400;
+				body = error("Not a number: " + e.getMessage());
+			} catch (IllegalArgumentException e) {
+				status = 400;
+				body = error(e.getMessage());
+			} catch (NoSuchElementException e) {
+				status = 404;
+				body = error(e.getMessage());
+			} catch (IOException | RuntimeException e) {
+				status = 500;
+				body = error(e.toString());
+			}
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		} finally {
+			inProgress.decrementAndGet();
+		}
+	} // end serve()
+
+	@FunctionalInterface
+	private interface Handler {
+		String handle(String method, String path, Map<String, String> parameters) throws IOException;
+	}
+
+	/** Routes the requests under /battles. */
+	private String battles(String method, String path, Map<String, String> parameters) throws IOException {
+		String[] segments = path.replaceAll("^/+|/+$", "").split("/+");
+		if (segments.length == 1) {
+			if (method.equals("GET"))
+				return sessions.values().stream().map(session -> session.getSummary().toJson()).collect(Collectors.joining(",", "[", "]"));
+			requireMethod(method, "POST");
+			return create(parameters);
+		}
+		BattleSession session = find(segments[1]);
+		if (segments.length == 2) {
+			if (method.equals("DELETE")) {
+				sessions.remove(session.getId());
+				session.close();
+				return String.format("{\"id\":%d,\"state\":\"deleted\"}", session.getId());
+			}
+			requireMethod(method, "GET");
+			return session.getSummary().toJson();
+		}
+		if (segments.length != 3)
+			throw new HttpError(404, "No such path " + path);
+		String command = segments[2];
+		if (command.equals("metrics")) {
+			requireMethod(method, "GET");
+			return session.getSummary().metricsJson();
+		}
+		requireMethod(method, "POST");
+		switch (command) {
+		case "populate":
+			int armyIndex = Integer.parseInt(required(parameters, "army"));
+			String type = required(parameters, "type");
+			int count = Integer.parseInt(required(parameters, "count"));
+			if (count < 0)
+				throw new IllegalArgumentException("Count must be 0 or more");
+			return await(session.submit(battle -> {
+				if (armyIndex < 0 || armyIndex >= battle.getNumArmies())
+					throw new IllegalArgumentException("Army must be 0 to " + (battle.getNumArmies() - 1));
+				if (type.equalsIgnoreCase(ActorFactory.Type.RANDOM.name()))
+					battle.populate(armyIndex, ActorFactory.Type.RANDOM, count);
+				else
+					battle.populate(armyIndex, battle.getArchetypes().get(type), count);
+				return session.publish().toJson();
+			}));
+		case "run":
+			return await(session.submit(battle -> { session.setRunning(true); return session.publish().toJson(); }));
+		case "suspend":
+		case "pause":
+			return await(session.submit(battle -> { session.setRunning(false); return session.publish().toJson(); }));
+		case "speedUp":
+			return await(session.submit(battle -> { session.speedUp(); return session.publish().toJson(); }));
+		case "slowDown":
+			return await(session.submit(battle -> { session.slowDown(); return session.publish().toJson(); }));
+		case "rate":
+			double ticksPerSecond = Double.parseDouble(required(parameters, "ticksPerSecond"));
+			return await(session.submit(battle -> { session.setTicksPerSecond(ticksPerSecond); return session.publish().toJson(); }));
+		case "save":
+		case "restore":
+			Path file = checkpoint(parameters.getOrDefault("name", "battle-" + session.getId() + ".ckpt"));
+			boolean save = command.equals("save");
+			return await(session.submit(battle -> {
+				try {
+					int actors = save ? session.checkpoint(file) : session.restore(file);
+					return String.format(Locale.ROOT, "{\"id\":%d,\"%s\":\"%s\",\"actors\":%d,\"tick\":%d}", session.getId(), save ? "saved" : "restored", file.getFileName(), actors, session.publish().tick);
+				} catch (IOException e) {
+					throw new HttpError(save ? 500 : 400, e.toString());
+				}
+			}));
+		case "edit":
+			String text = required(parameters, "command");
+			return await(session.submit(battle -> {
+				BulkEdit edit = BulkEdit.compile(text, battle.getArchetypes());
+				long matched = edit.apply(battle);
+				return String.format(Locale.ROOT, "{\"id\":%d,\"%s\":%d,\"tick\":%d}", session.getId(), edit.isCount() ? "counted" : "edited", matched, session.publish().tick);
+			}));
+		case "export":
+			ExportChannel.Format format = ExportChannel.Format.valueOf(parameters.getOrDefault("format", "csv").toUpperCase(Locale.ROOT));
+			Path roster = checkpoint(parameters.getOrDefault("name", "battle-" + session.getId() + "." + format.getExtension()));
+			return await(session.submit(battle -> {
+				try {
+					long actors = RosterExporter.write(battle, roster, format);
+					return String.format(Locale.ROOT, "{\"id\":%d,\"exported\":\"%s\",\"actors\":%d,\"tick\":%d}", session.getId(), roster.getFileName(), actors, session.publish().tick);
+				} catch (IOException e) {
+					throw new HttpError(500, e.toString());
+				}
+			}));
+		case "reinforce":
+			if (parameters.containsKey("clear"))
+				return await(session.submit(battle -> { battle.clearReinforcements(); return session.publish().toJson(); }));
+			int reinforcedArmy = Integer.parseInt(required(parameters, "army"));
+			String types = required(parameters, "types");
+			int size = Integer.parseInt(required(parameters, "size"));
+			double interval = Double.parseDouble(required(parameters, "interval"));
+			double x = Double.parseDouble(required(parameters, "x")), y = Double.parseDouble(required(parameters, "y")), radius = Double.parseDouble(required(parameters, "radius"));
+			String maxWaves = parameters.get("waves");
+			return await(session.submit(battle -> {
+				Map<Archetype, Integer> mix = new LinkedHashMap<>();
+				for (String entry : types.split(",")) {
+					String[] nameAndWeight = entry.trim().split(":");
+					mix.merge(battle.getArchetypes().get(nameAndWeight[0].trim()), nameAndWeight.length > 1 ? Integer.parseInt(nameAndWeight[1].trim()) : 1, Integer::sum);
+				}
+				ReinforcementWave wave = new ReinforcementWave(mix, size, interval, x, y, radius);
+				if (maxWaves != null)
+					wave.setMaxWaves(Integer.parseInt(maxWaves));
+				battle.addReinforcements(reinforcedArmy, wave);
+				return session.publish().toJson();
+			}));
+		default:
+			throw new HttpError(404, "No such command " + command);
+		}
+	} // end battles()
+
+	/** Answers GET /metrics. */
+	private String metrics(String method, String path, Map<String, String> parameters) {
+		requireMethod(method, "GET");
+		return String.format("{\"battles\":%d,\"requests\":%d,\"inProgress\":%d}", sessions.size(), requests.get(), inProgress.get());
+	} // end metrics()
+
+	private String create(Map<String, String> parameters) {
+		long seed = Long.parseLong(parameters.getOrDefault("seed", Long.toString(System.nanoTime())));
+		int numArmies = Integer.parseInt(parameters.getOrDefault("armies", "2"));
+		double width = Double.parseDouble(parameters.getOrDefault("width", Double.toString(Battle.WORLD_WIDTH)));
+		double height = Double.parseDouble(parameters.getOrDefault("height", Double.toString(Battle.WORLD_HEIGHT)));
+		if (!(width > 0.0 && height > 0.0))
+			throw new IllegalArgumentException("Width and height must be positive");
+		BattleSession session = new BattleSession(nextId.getAndIncrement(), seed, numArmies, width, height);
+		sessions.put(session.getId(), session);
+		return session.getSummary().toJson();
+	} // end create()
+
+	private BattleSession find(String id) {
+		BattleSession session;
+		try {
+			session = sessions.get(Integer.parseInt(id));
+		} catch (NumberFormatException e) {
+			session = null;
+		}
+		if (session == null)
+			throw new NoSuchElementException("No battle " + id);
+		return session;
+	} // end find()
+
+	private Path checkpoint(String name) {
+		if (!CHECKPOINT_NAME.matcher(name).matches())
+			throw new IllegalArgumentException("Checkpoint names are letters, digits, '_', '-' and '.'");
+		return checkpointDirectory.resolve(name);
+	} // end checkpoint()
+
+	/** Waits, on this request's virtual thread, for the battle to run a command. */
+	private static String await(CompletableFuture<String> result) throws IOException {
+		try {
+			return result.get(COMMAND_TIMEOUT, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause)
+				throw cause;
+			throw new IOException(e.getCause());
+		} catch (TimeoutException e) {
+			throw new HttpError(503, "The battle did not answer within " + COMMAND_TIMEOUT + " s");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HttpError(503, "Interrupted");
+		}
+	} // end await()
+
+	private static void requireMethod(String method, String expected) {
+		if (!method.equals(expected))
+			throw new HttpError(405, method + " is not allowed here; use " + expected);
+	} // end requireMethod()
+
+	private static String required(Map<String, String> parameters, String name) {
+		String value = parameters.get(name);
+		if (value == null)
+			throw new IllegalArgumentException("Missing parameter " + name);
+		return value;
+	} // end required()
+
+	private static Map<String, String> parameters(String query) {
+		Map<String, String> parameters = new HashMap<>();
+		if (query != null)
+			for (String pair : query.split("&")) {
+				int equals = pair.indexOf('=');
+				if (equals > 0)
+					parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+			}
+		return parameters;
+	} // end parameters()
+
+	private static String error(String message) {
+		return "{\"error\":\"" + String.valueOf(message).replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+	} // end error()
+
+	/** Stops accepting requests, then stops every battle. */
+	@Override
+	public void close() {
+		server.stop(0);
+		for (BattleSession session : sessions.values())
+			session.close();
+		sessions.clear();
+		executor.shutdown();
+	} // end close()
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		Path checkpointDirectory = Paths.get(args.length > 1 ? args[1] : ".");
+		ControlServer server = new ControlServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), checkpointDirectory);
+		server.start();
+		System.out.printf("Battle control API on http://localhost:%d/battles%n", server.getPort());
+	} // end main()
+} // end class ControlServer
@@ -0,0 +1,317 @@
+package engine;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import actor.Archetype;
+import actor.ArchetypeRegistry;
+
+/**
+ * The <i>ActorStore</i> is the headless counterpart of the <i>Collection</i> of <i>Actor</i> objects held by each <i>Army</i>. Instead of one object per actor (with its <i>SimpleDoubleProperty</i> fields, avatar <i>Node</i>, <i>Tooltip</i> and <i>TranslateTransition</i>), every attribute is kept in its own column and an actor is simply an index into those columns.
+ * The slot index is the actor id: a dead actor keeps its slot (flagged as not alive) so that ids never shift during a battle. Only actors that leave the store altogether, and the dead of a battle that is being reinforced, have their slot released for reuse.
+ * All armies of a <i>Battle</i> share one store; the <i>army</i> column records allegiance.
+ * Per-type data (attribute ranges, visibility and movement rules) is not copied into the store: each actor records only the id of its <i>Archetype</i>, one byte.
+ * <p>The columns are Java arrays kept by this class, as <i>onHeap()</i> returns it: the default store, and the fast path. <i>offHeap()</i> and <i>mapped()</i> return an <i>OffHeapActorStore</i>, which overrides every accessor to keep the columns in native memory or in a memory-mapped file.
+ * The engine reads and writes the columns only through the accessors below, so a battle plays out identically whichever store it runs on. The <i>targetable</i> and <i>moving</i> bitsets, one bit per slot, always stay on the heap.
+ * <i>OffHeapActorStore</i> is compiled on its own with <i>--enable-preview</i> (it lives in <i>src-preview</i>, which <i>build-preview.sh</i> compiles after the project is built) and only loaded by name, so until a JVM asks for an off-heap store no accessor is overridden, and HotSpot compiles each one to the bare array access.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle
+ */
+public class ActorStore implements AutoCloseable {
+	/** Initial number of slots; the columns double whenever they fill. */
+	static final int INITIAL_CAPACITY = 64;
+
+	/** Bit in <i>flags</i>: <i>Elf</i> invisibility cloak or <i>Wizard</i> staff (both make the actor invisible). */
+	static final byte FLAG_CONCEALED = 1;
+	/** Bit in <i>flags</i>: <i>Wizard</i> horse. */
+	static final byte FLAG_HORSE = 2;
+	/** Bit in <i>flags</i>: read-only copy of an actor owned by another shard; it can be targeted but never acts. */
+	static final byte FLAG_GHOST = 4;
+
+	/** columns of a heap store; null in an <i>OffHeapActorStore</i> */
+	double[] x, y;
+	double[] destX, destY;
+	double[] legTime;
+	double[] health, strength, speed;
+	double[] special;
+	byte[] type;
+	byte[] flags;
+	byte[] army;
+	boolean[] alive;
+	/** one bit per slot, set while the actor is alive and visible, i.e. a legitimate target; searches walk the set bits instead of testing <i>isAlive()</i> and calling <i>isVisible()</i> per actor */
+	long[] targetable;
+	/** one bit per slot, set while the actor is alive and owned here (not a ghost), i.e. moved by <i>Battle.tick()</i>; read a word at a time as the lane mask of the vector movement kernel */
+	long[] moving;
+
+	/** number of slots in use (live and dead) */
+	private int count;
+	/** slots handed back through <i>release()</i>, reused before the columns grow */
+	private int[] freeSlots = new int[INITIAL_CAPACITY];
+	private int numFreeSlots;
+
+	/** flyweight type data, indexed by <i>type</i> */
+	private final ArchetypeRegistry archetypes;
+	/** name of the class loaded by <i>offHeap()</i> and <i>mapped()</i> */
+	private static final String OFF_HEAP_CLASS = "engine.OffHeapActorStore";
+	/** whether <i>OffHeapActorStore</i> can be loaded; null until first asked */
+	private static Boolean offHeapSupported;
+
+	/**
+	 * @param archetypes registry that the <i>type</i> ids refer to
+	 * @param heapColumns true to allocate the Java arrays; false for a subclass that keeps the columns elsewhere and calls <i>allocateBits()</i> once they exist
+	 */
+	ActorStore(ArchetypeRegistry archetypes, boolean heapColumns) {
+		this.archetypes = archetypes;
+		if (heapColumns) {
+			x = new double[INITIAL_CAPACITY]; y = new double[INITIAL_CAPACITY];
+			destX = new double[INITIAL_CAPACITY]; destY = new double[INITIAL_CAPACITY];
+			legTime = new double[INITIAL_CAPACITY];
+			health = new double[INITIAL_CAPACITY]; strength = new double[INITIAL_CAPACITY]; speed = new double[INITIAL_CAPACITY];
+			special = new double[INITIAL_CAPACITY];
+			type = new byte[INITIAL_CAPACITY]; flags = new byte[INITIAL_CAPACITY]; army = new byte[INITIAL_CAPACITY];
+			alive = new boolean[INITIAL_CAPACITY];
+			allocateBits();
+		}
+	} // end Constructor
+
+	/**
+	 * @param archetypes registry that the <i>type</i> ids refer to
+	 * @return an empty store whose columns are Java arrays
+	 */
+	public static ActorStore onHeap(ArchetypeRegistry archetypes) { return new ActorStore(archetypes, true); }
+
+	/**
+	 * @param archetypes registry that the <i>type</i> ids refer to
+	 * @return an empty store whose columns are in native memory, outside the heap
+	 * @throws UnsupportedOperationException if <i>isOffHeapSupported()</i> is false
+	 */
+	public static ActorStore offHeap(ArchetypeRegistry archetypes) {
+		try {
+			return (ActorStore) offHeapFactory("allocate", ArchetypeRegistry.class).invoke(null, archetypes);
+		} catch (InvocationTargetException e) {
+			throw unchecked(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	} // end offHeap()
+
+	/**
+	 * Opens a store kept in a memory-mapped file: the file is created if it does not exist, and otherwise reopened with every actor it holds, live or dead.
+	 * Only the pages actually touched are read from disk, so even a very large battle reopens at once.
+	 * @param file file holding the columns, in the byte order of the machine that wrote it
+	 * @param archetypes registry that the <i>type</i> ids refer to; it must have as many archetypes as the one the file was written with
+	 * @return the store; <i>close()</i> it to write everything back and release the mapping
+	 * @throws IOException if the file cannot be mapped or does not hold an actor store
+	 * @throws UnsupportedOperationException if <i>isOffHeapSupported()</i> is false
+	 */
+	public static ActorStore mapped(Path file, ArchetypeRegistry archetypes) throws IOException {
+		try {
+			return (ActorStore) offHeapFactory("map", Path.class, ArchetypeRegistry.class).invoke(null, file, archetypes);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException cause)
+				throw cause;
+			throw unchecked(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	} // end mapped()
+
+	/**
+	 * The off-heap stores use the Foreign Function and Memory API, a preview API in JDK 21: they can only be loaded by a JDK 21 started with <i>--enable-preview</i>.
+	 * @return true if <i>offHeap()</i> and <i>mapped()</i> can be used in this JVM
+	 */
+	public static synchronized boolean isOffHeapSupported() {
+		if (offHeapSupported == null) {
+			try {
+				Class.forName(OFF_HEAP_CLASS);
+				offHeapSupported = true;
+			} catch (ClassNotFoundException | LinkageError e) { // ClassNotFoundException if src-preview was not built, UnsupportedClassVersionError without --enable-preview
+				offHeapSupported = false;
+			}
+		}
+		return offHeapSupported;
+	} // end isOffHeapSupported()
+
+	/** @return the static factory <i>name</i> of <i>OffHeapActorStore</i>, which is only referred to by name so that this class builds and runs without <i>--enable-preview</i> */
+	private static Method offHeapFactory(String name, Class<?>... parameterTypes) {
+		if (!isOffHeapSupported())
+			throw new UnsupportedOperationException("Off-heap actor stores need src-preview compiled by build-preview.sh and JDK 21 started with --enable-preview");
+		try {
+			return Class.forName(OFF_HEAP_CLASS).getDeclaredMethod(name, parameterTypes);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	} // end offHeapFactory()
+
+	/** @return what an <i>OffHeapActorStore</i> factory threw, to be rethrown as it is when unchecked */
+	private static RuntimeException unchecked(Throwable cause) {
+		if (cause instanceof RuntimeException exception)
+			return exception;
+		if (cause instanceof Error error)
+			throw error;
+		return new IllegalStateException(cause);
+	} // end unchecked()
+
+	/** Sizes the bitsets for the columns' capacity; called by each subclass once its columns exist. */
+	final void allocateBits() {
+		targetable = new long[wordsFor(capacity())];
+		moving = new long[wordsFor(capacity())];
+	} // end allocateBits()
+
+	/**
+	 * Takes over <i>count</i> slots already filled in the columns, as when a mapped file is reopened, and recomputes their bits.
+	 * Slots released before the file was closed come back as dead actors.
+	 */
+	final void restore(int count) {
+		this.count = count;
+		for (int id = 0; id < count; ++id)
+			refreshTargetable(id);
+	} // end restore()
+
+	private void grow() {
+		resize(capacity() * 2);
+		targetable = Arrays.copyOf(targetable, wordsFor(capacity()));
+		moving = Arrays.copyOf(moving, wordsFor(capacity()));
+	} // end grow()
+
+	/** @return number of <i>long</i> words needed for one bit per slot */
+	static int wordsFor(int slots) { return (slots + Long.SIZE - 1) >>> 6; }
+
+	/**
+	 * Reserves a new slot; all attributes are zero and the caller is responsible for filling them in.
+	 * @param archetypeId type of the new actor
+	 * @param armyIndex allegiance of the new actor
+	 * @return id (slot index) of the new actor
+	 */
+	int add(int archetypeId, int armyIndex) {
+		int id;
+		if (numFreeSlots > 0)
+			id = freeSlots[--numFreeSlots];
+		else {
+			if (count == capacity())
+				grow();
+			id = count++;
+			countChanged(count);
+		}
+		setX(id, 0.0); setY(id, 0.0); setDestX(id, 0.0); setDestY(id, 0.0); setLegTime(id, 0.0);
+		setHealth(id, 0.0); setStrength(id, 0.0); setSpeed(id, 0.0); setSpecial(id, 0.0);
+		setFlags(id, 0);
+		setType(id, archetypeId);
+		setArmy(id, armyIndex);
+		setAlive(id, true);
+		targetable[id >>> 6] &= ~(1L << id); // not a target until the caller has set the attributes and called refreshTargetable()
+		moving[id >>> 6] &= ~(1L << id);
+		return id;
+	} // end add()
+
+	/**
+	 * Hands a slot back for reuse by a later <i>add()</i>. Unlike a death in battle, the id stops referring to this actor: used when an actor leaves the store altogether (e.g. migrates to another shard).
+	 * @param id slot to free
+	 */
+	void release(int id) {
+		setAlive(id, false);
+		targetable[id >>> 6] &= ~(1L << id);
+		moving[id >>> 6] &= ~(1L << id);
+		if (numFreeSlots == freeSlots.length)
+			freeSlots = Arrays.copyOf(freeSlots, capacity()); // room for every slot, so a battle that recycles its dead (see Battle.addReinforcements()) grows this once
+		freeSlots[numFreeSlots++] = id;
+	} // end release()
+
+	/** @return number of slots in use, including those of dead actors; valid ids are 0 to size()-1 */
+	public int size() { return count; }
+
+	/** @return number of slots the columns hold before they must grow */
+	protected int capacity() { return x.length; }
+
+	/** Grows every column to <i>capacity</i> slots, keeping the contents of the slots in use. */
+	protected void resize(int capacity) {
+		x = Arrays.copyOf(x, capacity); y = Arrays.copyOf(y, capacity);
+		destX = Arrays.copyOf(destX, capacity); destY = Arrays.copyOf(destY, capacity);
+		legTime = Arrays.copyOf(legTime, capacity);
+		health = Arrays.copyOf(health, capacity); strength = Arrays.copyOf(strength, capacity); speed = Arrays.copyOf(speed, capacity);
+		special = Arrays.copyOf(special, capacity);
+		type = Arrays.copyOf(type, capacity); flags = Arrays.copyOf(flags, capacity); army = Arrays.copyOf(army, capacity);
+		alive = Arrays.copyOf(alive, capacity);
+	} // end resize()
+
+	/** Called when the number of slots in use grows; a mapped store records it in its file. */
+	protected void countChanged(int count) { }
+
+	/** @return true if the columns are outside the Java heap */
+	public boolean isOffHeap() { return false; }
+
+	/** Writes any changes to a mapped store back to its file; nothing to do for the other stores. */
+	public void force() { }
+
+	/** Releases the columns of an off-heap store (writing a mapped store back to its file first); the store must not be used afterwards. Nothing to do for an on-heap store. */
+	@Override
+	public void close() { }
+
+	public boolean isAlive(int id) { return alive[id]; }
+	protected void setAlive(int id, boolean alive) { this.alive[id] = alive; }
+	public boolean isGhost(int id) { return (getFlags(id) & FLAG_GHOST) != 0; }
+	public int getArmy(int id) { return army[id]; }
+	protected void setArmy(int id, int armyIndex) { army[id] = (byte) armyIndex; }
+	/** @return <i>Archetype</i> id */
+	protected int getType(int id) { return type[id]; }
+	protected void setType(int id, int archetypeId) { type[id] = (byte) archetypeId; }
+	/** @return bit set of FLAG_ constants */
+	protected int getFlags(int id) { return flags[id]; }
+	protected void setFlags(int id, int flags) { this.flags[id] = (byte) flags; }
+	public Archetype getArchetype(int id) { return archetypes.get(getType(id)); }
+	public ArchetypeRegistry getArchetypes() { return archetypes; }
+
+	/** current position */
+	public double getX(int id) { return x[id]; }
+	public double getY(int id) { return y[id]; }
+	protected void setX(int id, double x) { this.x[id] = x; }
+	protected void setY(int id, double y) { this.y[id] = y; }
+	/** destination of the current leg of motion (the <i>TranslateTransition</i> toX/toY in the JavaFX version) */
+	protected double getDestX(int id) { return destX[id]; }
+	protected double getDestY(int id) { return destY[id]; }
+	protected void setDestX(int id, double destX) { this.destX[id] = destX; }
+	protected void setDestY(int id, double destY) { this.destY[id] = destY; }
+	/** seconds remaining until the current leg of motion finishes and the actor acts again */
+	protected double getLegTime(int id) { return legTime[id]; }
+	protected void setLegTime(int id, double legTime) { this.legTime[id] = legTime; }
+	public double getHealth(int id) { return health[id]; }
+	protected void setHealth(int id, double health) { this.health[id] = health; }
+	public double getStrength(int id) { return strength[id]; }
+	protected void setStrength(int id, double strength) { this.strength[id] = strength; }
+	public double getSpeed(int id) { return speed[id]; }
+	protected void setSpeed(int id, double speed) { this.speed[id] = speed; }
+	/** <i>Hobbit</i> stealth or <i>Orc</i> smell; unused for the other types */
+	protected double getSpecial(int id) { return special[id]; }
+	protected void setSpecial(int id, double special) { this.special[id] = special; }
+
+	/** @return true if the actor is alive and visible; a single bit test */
+	public boolean isTargetable(int id) { return (targetable[id >>> 6] & (1L << id)) != 0L; }
+
+	/** Recomputes the <i>targetable</i> and <i>moving</i> bits of one actor; call whenever its alive state, <i>special</i> or flags change. Visibility rules are evaluated here, once per change, rather than inside every search. */
+	void refreshTargetable(int id) {
+		boolean alive = isAlive(id);
+		if (alive && isVisible(id))
+			targetable[id >>> 6] |= 1L << id;
+		else
+			targetable[id >>> 6] &= ~(1L << id);
+		if (alive && !isGhost(id))
+			moving[id >>> 6] |= 1L << id;
+		else
+			moving[id >>> 6] &= ~(1L << id);
+	} // end refreshTargetable()
+
+	/** The visibility rule of the actor's <i>Archetype</i>; for the built-in types, the same rules as the <i>isVisible()</i> overrides in <i>Hobbit</i>, <i>Elf</i>, <i>Wizard</i> and <i>Orc</i>. */
+	public boolean isVisible(int id) {
+		return archetypes.get(getType(id)).isVisible(getSpecial(id), (getFlags(id) & FLAG_CONCEALED) != 0);
+	} // end isVisible()
+
+	/** Same text as <i>Actor.toString()</i> for the common attributes. */
+	public String toString(int id) {
+		return String.format("Id:%-6d %-6s Health:%4.1f Strength:%4.1f Speed:%4.1f", id, getArchetype(id), getHealth(id), getStrength(id), getSpeed(id));
+	} // end toString()
+} // end class ActorStore
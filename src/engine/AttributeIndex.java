@@ -0,0 +1,171 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Orders the actors of every <i>SpatialGrid</i> cell by one attribute, so targeting strategies such as "weakest opponent in range" are answered without gathering and sorting candidates.
+ * The index shares the grid's layout: cell <i>c</i> occupies <i>order[cellStart[c]]</i> to <i>order[cellStart[c+1]-1]</i>, best first (lowest value for <b>ascending</b>, highest otherwise, ties broken by lower id).
+ * It is re-sorted when the grid is rebuilt, because actors change cells every tick; between rebuilds <i>update()</i> moves one actor to its new place in its cell when its value changes, as combat changes <i>health</i>.
+ * A query walks each cell in range from the best end and stops at the first hostile, targetable actor within range, so it examines only the few actors that beat the answer instead of every candidate.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see SpatialGrid
+ * @see Battle#findTarget(int)
+ */
+final class AttributeIndex {
+	/** Attribute an index is ordered by. */
+	enum Attribute {
+		HEALTH, STRENGTH, SPEED;
+
+		double of(ActorStore store, int id) {
+			switch (this) {
+			case HEALTH:   return store.getHealth(id);
+			case STRENGTH: return store.getStrength(id);
+			default:       return store.getSpeed(id);
+			}
+		} // end of()
+	} // end enum Attribute
+
+	private final Attribute attribute;
+	private final boolean ascending;
+	private int[] order = new int[0], scratch = new int[0];
+	/** position of each actor in <i>order</i> since the last rebuild, or -1 if it was not filed */
+	private int[] slot = new int[0];
+
+	/**
+	 * @param attribute attribute to order by
+	 * @param ascending true to put the lowest value first, false for the highest
+	 */
+	AttributeIndex(Attribute attribute, boolean ascending) {
+		this.attribute = attribute;
+		this.ascending = ascending;
+	} // end Constructor
+
+	/** Copies the cell layout of a freshly rebuilt grid and sorts every cell. */
+	void rebuild(SpatialGrid grid, ActorStore store) {
+		final int size = store.size();
+		if (slot.length < size) {
+			slot = new int[store.capacity()];
+			order = new int[store.capacity()];
+			scratch = new int[store.capacity()];
+		}
+		final int[] cellStart = grid.cellStart;
+		final int cells = cellStart.length - 1;
+		System.arraycopy(grid.cellActors, 0, order, 0, cellStart[cells]);
+		for (int cell = 0; cell < cells; ++cell)
+			sort(store, cellStart[cell], cellStart[cell + 1]);
+		Arrays.fill(slot, 0, size, -1);
+		for (int i = 0; i < cellStart[cells]; ++i)
+			slot[order[i]] = i;
+	} // end rebuild()
+
+	/** Merge sort of order[from] to order[to-1]; cells are small and the ids arrive in ascending order, so runs are cheap to merge. */
+	private void sort(ActorStore store, int from, int to) {
+		if (to - from < 2)
+			return;
+		if (to - from <= 8) {
+			for (int i = from + 1; i < to; ++i)
+				for (int j = i; j > from && before(store, order[j], order[j - 1]); --j) {
+					int swap = order[j]; order[j] = order[j - 1]; order[j - 1] = swap;
+				}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		sort(store, from, middle);
+		sort(store, middle, to);
+		if (!before(store, order[middle], order[middle - 1]))
+			return; // already in order
+		System.arraycopy(order, from, scratch, from, to - from);
+		for (int i = from, left = from, right = middle; i < to; ++i)
+			order[i] = right >= to || (left < middle && !before(store, scratch[right], scratch[left])) ? scratch[left++] : scratch[right++];
+	} // end sort()
+
+	/** @return true if actor <i>a</i> ranks ahead of actor <i>b</i> */
+	private boolean before(ActorStore store, int a, int b) {
+		double valueA = attribute.of(store, a), valueB = attribute.of(store, b);
+		if (valueA != valueB)
+			return ascending ? valueA < valueB : valueA > valueB;
+		return a < b;
+	} // end before()
+
+	/**
+	 * Restores the order of the actor's cell after its value has changed. Actors not filed at the last rebuild are ignored.
+	 * @param id actor whose value changed
+	 */
+	void update(SpatialGrid grid, ActorStore store, int id) {
+		if (id >= slot.length || slot[id] < 0 || order[slot[id]] != id)
+			return; // not filed, or added since the rebuild into a released actor's id
+		final int cell = grid.cellOf[id];
+		final int start = grid.cellStart[cell], end = grid.cellStart[cell + 1];
+		int position = slot[id];
+		for (; position > start && before(store, id, order[position - 1]); --position)
+			slot[order[position] = order[position - 1]] = position;
+		for (; position < end - 1 && before(store, order[position + 1], id); ++position)
+			slot[order[position] = order[position + 1]] = position;
+		order[position] = id;
+		slot[id] = position;
+	} // end update()
+
+	/**
+	 * Finds the best-ranked actor within <i>range</i> of (x, y) whose army is in <i>hostileMask</i>.
+	 * @param grid the grid this index was last rebuilt from
+	 * @param store actors, as passed to the last <i>rebuild()</i>
+	 * @param x query position
+	 * @param y query position
+	 * @param hostileMask bit per army to consider
+	 * @param range distance the target must be strictly within
+	 * @param fog what the searching army sees, or null without fog of war
+	 * @param army the searching army
+	 * @return id of the best such actor, or -1 if there is none in range
+	 */
+	int findBest(SpatialGrid grid, ActorStore store, double x, double y, long hostileMask, double range, FogOfWar fog, int army) {
+		final int reach = (int) Math.ceil(range / grid.cellSize);
+		final int centreColumn = grid.column(x), centreRow = grid.row(y);
+		final double rangeSquared = range * range;
+		int best = -1;
+		for (int row = Math.max(0, centreRow - reach); row <= Math.min(grid.rows - 1, centreRow + reach); ++row) {
+			for (int column = Math.max(0, centreColumn - reach); column <= Math.min(grid.columns - 1, centreColumn + reach); ++column) {
+				int cell = row * grid.columns + column;
+				if ((grid.cellMask[cell] & hostileMask) == 0L || (fog != null && (fog.visibleTo[cell] & (1L << army)) == 0L))
+					continue;
+				for (int i = grid.cellStart[cell], end = grid.cellStart[cell + 1]; i < end; ++i) {
+					int candidate = order[i];
+					if (best >= 0 && !before(store, candidate, best))
+						break; // nothing further along this cell can beat the best so far
+					if (!store.isTargetable(candidate) || (hostileMask & (1L << store.getArmy(candidate))) == 0L)
+						continue;
+					double deltaX = x - store.getX(candidate), deltaY = y - store.getY(candidate);
+					if (deltaX * deltaX + deltaY * deltaY < rangeSquared) {
+						best = candidate;
+						break; // the first one in range is the best this cell has
+					}
+				}
+			}
+		}
+		return best;
+	} // end findBest()
+
+	/**
+	 * Brute-force equivalent of <i>findBest()</i>: every live, visible actor is examined. Kept as the reference for testing and benchmarking the index.
+	 * @return id of the best actor within range, or -1 if there is none
+	 */
+	int scanBest(ActorStore store, double x, double y, long hostileMask, double range, FogOfWar fog, int army) {
+		final long[] targetable = store.targetable;
+		final double rangeSquared = range * range;
+		int best = -1;
+		for (int word = 0, words = ActorStore.wordsFor(store.size()); word < words; ++word) {
+			for (long bits = targetable[word]; bits != 0L; bits &= bits - 1) {
+				int candidate = (word << 6) + Long.numberOfTrailingZeros(bits);
+				if ((hostileMask & (1L << store.getArmy(candidate))) == 0L || (best >= 0 && !before(store, candidate, best)))
+					continue;
+				if (fog != null && !fog.isVisible(army, store.getX(candidate), store.getY(candidate)))
+					continue;
+				double deltaX = x - store.getX(candidate), deltaY = y - store.getY(candidate);
+				if (deltaX * deltaX + deltaY * deltaY < rangeSquared)
+					best = candidate;
+			}
+		}
+		return best;
+	} // end scanBest()
+} // end class AttributeIndex
@@ -0,0 +1,1045 @@
+package engine;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import actor.Actor;
+import actor.ActorFactory;
+import actor.Archetype;
+import actor.ArchetypeRegistry;
+import util.SingletonRandom;
+
+/**
+ * A <i>Battle</i> runs the same rules as the JavaFX <i>Simulator</i> without a scene graph: no avatars, no <i>TranslateTransition</i> objects and no render engine, so a battle can run at full CPU speed on any thread.
+ * Time advances in fixed ticks of {@value #TICK_SECONDS} seconds. Each actor moves along its current leg of motion; when the leg is finished the actor acts exactly as <i>Actor.startMotion(true)</i> does:
+ * find the nearest visible opponent, fight a <i>combatRound</i> if within {@value #DISTANCE_FOR_BATTLE}, then choose a new destination using the movement rule of its <i>Archetype</i> (or meander when no opponent is visible).
+ * Actor types come from an <i>ArchetypeRegistry</i>, so a battle can field any type defined in <i>archetypes.properties</i>.
+ * The leg lasts <i>MAX_SPEED / (speed * speedController)</i> seconds, the same duration given to the <i>TranslateTransition</i>.
+ * <p>By default the new destinations are chosen in type batches: the actors that act in a tick are queued in one index range per type, and each range is handed to the <i>MovementKernels</i> rule for that type, so no call site sees more than one type.
+ * <i>setTypeBatched(false)</i> restores the per-actor <i>switch</i>, which is kept as the reference for testing and benchmarking.</p>
+ * <p>Each type fights the opponent picked by its <i>Archetype.Targeting</i> strategy, which <i>setTargeting()</i> can change per battle. The strategies that rank opponents in range by an attribute are answered from <i>AttributeIndex</i> objects kept in step with the grid.</p>
+ * <p>On a <i>TerrainGrid</i>, an army given an objective with <i>setObjective()</i> marches on it when no opponent is in sight, following a <i>FlowField</i> shared by every army with the same objective instead of meandering.</p>
+ * <p>With <i>setFogOfWar()</i>, each army targets only the opponents in the cells its own actors see, kept by a <i>FogOfWar</i> updated incrementally as actors change cell.</p>
+ * <p>With <i>setRangedCombat()</i>, the types whose <i>Archetype</i> is ranged shoot at opponents beyond {@value #DISTANCE_FOR_BATTLE} but within reach; the projectiles fly in a <i>ProjectilePool</i> that each tick moves and tests against the grid before the actors act.</p>
+ * <p>Armies given a <i>ReinforcementWave</i> with <i>addReinforcements()</i> receive new actors at its interval; from then on the slots of the dead are handed back to the <i>ActorStore</i> and filled by the next reinforcements, so a battle reinforced without end keeps a store of constant size.</p>
+ * <p><i>runEvents()</i> is an alternative to ticking: every actor's next action is scheduled in a <i>CalendarQueue</i> at the exact end of its leg of motion, and the battle jumps straight from one action time to the next.</p>
+ * <p>By default each combat round is fought as soon as the actor acts, so a later round sees the health left by an earlier one. <i>setCombat()</i> can instead collect the rounds of a tick (in type-batched mode) and resolve them together from the health at the start of the act phase, which allows the SIMD <i>VectorCombatKernel</i>.</p>
+ * <p>Every random draw comes from the battle's own seeded <i>Random</i> objects, so two battles with the same seed and the same population play out identically.
+ * Combat, <i>Hobbit</i> flight and meandering each draw from their own sequence, in id order, so the batched and per-actor paths play out identically too.
+ * <i>setStateHashing()</i> records a <i>StateHash</i> after every tick, which the <i>LockstepVerifier</i> uses to check that claim.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ActorStore
+ * @see simulator.Simulator
+ */
+public class Battle {
+	/** Simulated seconds per call to <i>tick()</i>: {@value} */
+	public static final double TICK_SECONDS = 0.05;
+	/** Same value as the local constant in <i>Actor.startMotion()</i>: {@value} */
+	public static final double DISTANCE_FOR_BATTLE = 50.0;
+	/** Width of the battlefield, matching the <i>FXLauncher</i> scene width: {@value} */
+	public static final double WORLD_WIDTH = 1000.0;
+	/** Height of the battlefield, matching the <i>FXLauncher</i> scene height for the 1600x914 <i>MiddleEarth-3.jpg</i> background: {@value} */
+	public static final double WORLD_HEIGHT = WORLD_WIDTH * 914.0 / 1600.0;
+	/** Index of the <i>Forces of Light</i> in a two-army battle. */
+	public static final int LIGHT = 0;
+	/** Index of the <i>Forces of Darkness</i> in a two-army battle. */
+	public static final int DARKNESS = 1;
+	/** Armies are identified by a bit in a <i>long</i> faction mask: {@value} */
+	public static final int MAX_ARMIES = Long.SIZE;
+	/** True if the JVM was started with <i>--add-modules jdk.incubator.vector</i>, so the Vector API kernels can be loaded; otherwise their scalar equivalents are used. */
+	public static final boolean VECTOR_SUPPORTED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	/** How the combat rounds of a tick are resolved. */
+	public enum Combat {
+		/** one <i>combatRound()</i> at a time, as each actor acts, like the <i>Simulator</i> */
+		SEQUENTIAL,
+		/** the rounds of a tick are collected into a <i>CombatBatch</i> and resolved together by a scalar loop */
+		BATCHED_SCALAR,
+		/** as <b>BATCHED_SCALAR</b>, resolved with the Vector API; identical results, and the scalar loop is used if <i>jdk.incubator.vector</i> is missing */
+		BATCHED_VECTOR
+	} // end enum Combat
+
+	private final ArchetypeRegistry archetypes;
+	private final ActorStore store;
+	/** population and combat */
+	private final Random random;
+	/** <i>Hobbit</i> destinations */
+	private final Random fleeRandom = new Random();
+	/** destinations of actors with no visible opponent, and of those pulled back onto the battlefield */
+	private final Random meanderRandom = new Random();
+	private final int[] liveCount;
+	/** deaths of each army since the battle was built, not counting ghosts */
+	private final long[] deathCount;
+	/** for each army, bit <i>n</i> is set if it treats army <i>n</i> as hostile */
+	private final long[] hostileMask;
+	private final SpatialGrid grid;
+	/** targeting strategy of each archetype in this battle */
+	private final Archetype.Targeting[] targeting;
+	/** one index per strategy in use, by <i>Targeting.ordinal()</i>; null for <b>NEAREST</b> and for strategies nobody uses */
+	private final AttributeIndex[] indexes = new AttributeIndex[Archetype.Targeting.values().length];
+	private final double width, height;
+	private double speedController = 1.0;
+	private long tickCount;
+	/** simulated seconds since the battle started */
+	private double time;
+	/** next action of every actor owned here, while <i>runEvents()</i> is running */
+	private CalendarQueue events;
+	private int[] dueNow = new int[0];
+	private boolean started;
+	private boolean typeBatched = true;
+	private boolean vectorMovement = true;
+	/** same-army separation radius, 0 for none */
+	private double separationRadius;
+	private boolean hardCollision;
+	private final CrowdSeparation separation = new CrowdSeparation();
+	private Combat combat = Combat.SEQUENTIAL;
+	/** where and how combat happens, or null when not recorded */
+	private CombatStatistics statistics;
+	/** what each army sees, or null when every army sees the whole battlefield */
+	private FogOfWar fog;
+	private boolean fogOcclusion;
+	/** projectiles in flight, or null when no type shoots */
+	private ProjectilePool projectiles;
+	/** scheduled reinforcements: the wave, the army it reinforces, the time it was scheduled and the waves entered so far */
+	private ReinforcementWave[] waves = new ReinforcementWave[0];
+	private int[] waveArmy = new int[0], wavesEntered = new int[0];
+	private double[] waveScheduledAt = new double[0];
+	/** spawn point of a reinforcement, reused by every one */
+	private final double[] spawnLocation = new double[2];
+	/** <i>StateHash</i> after each tick from <i>hashesFrom</i> on, while state hashing is on; null when it is off */
+	private long[] stateHashes;
+	private long hashesFrom;
+	private int numStateHashes;
+	private final CombatBatch combatBatch = new CombatBatch();
+	/** actors due to act this tick and the opponent each found, while their combat rounds are batched */
+	private int[] due = new int[0], dueOpponent = new int[0];
+	/** actors due to act this tick with an opponent; archetype <i>t</i> occupies queueStart[t] to queueEnd[t]-1 */
+	private int[] queue = new int[0], queueOpponent = new int[0];
+	private final int[] queueStart, queueEnd;
+	/** actors due to act this tick without an opponent */
+	private int[] wanderers = new int[0];
+	/** actors due to act this tick without an opponent whose army has an objective */
+	private int[] followers = new int[0];
+	private int numWanderers, numFollowers;
+	private TerrainGrid terrain;
+	/** flow field towards each army's objective, or null; armies with the same objective share one */
+	private final FlowField[] objectives;
+
+	/**
+	 * Builds an empty two-army battle on a battlefield the size of the <i>FXLauncher</i> scene.
+	 * @param seed seed for every random draw made by this battle
+	 */
+	public Battle(long seed) { this(seed, 2, WORLD_WIDTH, WORLD_HEIGHT); }
+
+	/**
+	 * Builds an empty battle whose actor types come from <i>ArchetypeRegistry.getDefault()</i>.
+	 * @param seed seed for every random draw made by this battle
+	 * @param numArmies number of armies taking part (at most {@value #MAX_ARMIES}); initially every army is hostile to every other
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 */
+	public Battle(long seed, int numArmies, double width, double height) { this(seed, numArmies, width, height, ArchetypeRegistry.getDefault()); }
+
+	/**
+	 * @param seed seed for every random draw made by this battle
+	 * @param numArmies number of armies taking part (at most {@value #MAX_ARMIES}); initially every army is hostile to every other
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 * @param archetypes actor types that may take part
+	 */
+	public Battle(long seed, int numArmies, double width, double height, ArchetypeRegistry archetypes) { this(seed, numArmies, width, height, ActorStore.onHeap(archetypes)); }
+
+	/**
+	 * Builds a battle over the given store, which may live off the heap or in a file (see <i>ActorStore.offHeap()</i> and <i>ActorStore.mapped()</i>). A store that already holds actors, such as a reopened file, joins the battle with them.
+	 * The store decides only where the attributes are kept: with the same seed and the same actors every store plays out the same battle.
+	 * @param seed seed for every random draw made by this battle
+	 * @param numArmies number of armies taking part (at most {@value #MAX_ARMIES}); initially every army is hostile to every other
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 * @param store store that keeps the attributes of the actors; its registry gives the actor types that may take part
+	 * @throws IllegalArgumentException if an actor already in the store belongs to an army beyond <i>numArmies</i>
+	 */
+	public Battle(long seed, int numArmies, double width, double height, ActorStore store) {
+		if (numArmies < 1 || numArmies > MAX_ARMIES)
+			throw new IllegalArgumentException("Number of armies must be 1 to " + MAX_ARMIES);
+		this.archetypes = store.getArchetypes();
+		this.store = store;
+		queueStart = new int[archetypes.size() + 1];
+		queueEnd = new int[archetypes.size()];
+		random = new Random(seed);
+		reseedMovement(seed);
+		liveCount = new int[numArmies];
+		deathCount = new long[numArmies];
+		for (int id = 0; id < store.size(); ++id)
+			if (store.isAlive(id) && !store.isGhost(id)) {
+				if (store.getArmy(id) >= numArmies)
+					throw new IllegalArgumentException("Actor " + id + " belongs to army " + store.getArmy(id) + " of " + numArmies);
+				++liveCount[store.getArmy(id)];
+			}
+		hostileMask = new long[numArmies];
+		objectives = new FlowField[numArmies];
+		long allArmies = numArmies == MAX_ARMIES ? -1L : (1L << numArmies) - 1;
+		for (int armyIndex = 0; armyIndex < numArmies; ++armyIndex)
+			hostileMask[armyIndex] = allArmies & ~(1L << armyIndex);
+		this.width = width;
+		this.height = height;
+		grid = new SpatialGrid(width, height, DISTANCE_FOR_BATTLE);
+		targeting = new Archetype.Targeting[archetypes.size()];
+		for (Archetype archetype : archetypes.getArchetypes())
+			applyTargeting(archetype, archetype.getTargeting());
+	} // end Constructor
+
+	/**
+	 * Sets whether <i>armyIndex</i> targets actors of <i>otherArmy</i>. The relation is one-way: call twice for a mutual alliance or war.
+	 * @param armyIndex army whose targeting changes
+	 * @param otherArmy army it will (or will no longer) attack
+	 * @param hostile true to attack, false to leave alone
+	 */
+	public void setHostile(int armyIndex, int otherArmy, boolean hostile) {
+		if (hostile)
+			hostileMask[armyIndex] |= 1L << otherArmy;
+		else
+			hostileMask[armyIndex] &= ~(1L << otherArmy);
+	} // end setHostile()
+
+	public boolean isHostile(int armyIndex, int otherArmy) { return (hostileMask[armyIndex] & (1L << otherArmy)) != 0L; }
+
+	/**
+	 * Changes which opponent actors of one type fight in this battle; the initial strategy is the one configured for the <i>Archetype</i>.
+	 * @param archetype type whose targeting changes
+	 * @param strategy new targeting strategy
+	 */
+	public void setTargeting(Archetype archetype, Archetype.Targeting strategy) {
+		applyTargeting(archetype, strategy);
+	} // end setTargeting()
+
+	/** Records the strategy and creates the index it needs; the constructor calls this directly rather than the overridable <i>setTargeting()</i>. */
+	private void applyTargeting(Archetype archetype, Archetype.Targeting strategy) {
+		targeting[archetype.getId()] = strategy;
+		if (strategy != Archetype.Targeting.NEAREST && indexes[strategy.ordinal()] == null) {
+			AttributeIndex index;
+			switch (strategy) {
+			case WEAKEST_IN_RANGE:   index = new AttributeIndex(AttributeIndex.Attribute.HEALTH, true); break;
+			case STRONGEST_IN_RANGE: index = new AttributeIndex(AttributeIndex.Attribute.STRENGTH, false); break;
+			default:                 index = new AttributeIndex(AttributeIndex.Attribute.SPEED, false); break;
+			}
+			indexes[strategy.ordinal()] = index;
+			if (started)
+				index.rebuild(grid, store);
+		}
+	} // end applyTargeting()
+
+	public Archetype.Targeting getTargeting(Archetype archetype) { return targeting[archetype.getId()]; }
+
+	/**
+	 * Sets the terrain that objectives are pursued across; existing objectives are recomputed over it.
+	 * @param terrain terrain covering this battlefield, e.g. <i>TerrainGrid.fromImage()</i> of <i>MiddleEarth-3.jpg</i>
+	 */
+	public void setTerrain(TerrainGrid terrain) {
+		this.terrain = terrain;
+		if (fog != null && fogOcclusion)
+			fog.setTerrain(terrain);
+		FlowField[] old = objectives.clone();
+		Arrays.fill(objectives, null);
+		for (int armyIndex = 0; armyIndex < objectives.length; ++armyIndex)
+			if (old[armyIndex] != null)
+				setObjective(armyIndex, old[armyIndex].getTargetX(), old[armyIndex].getTargetY(), old[armyIndex].getTargetRadius());
+	} // end setTerrain()
+
+	public TerrainGrid getTerrain() { return terrain; }
+
+	/**
+	 * Gives an army a region to march on whenever its actors see no opponent. Armies with the same objective share one <i>FlowField</i>, and an army whose objective only widens updates its field incrementally.
+	 * Without a terrain, open ground in cells of {@value #DISTANCE_FOR_BATTLE} / 5 is assumed.
+	 * @param armyIndex army receiving the objective
+	 * @param x centre of the region
+	 * @param y centre of the region
+	 * @param radius radius of the region
+	 */
+	public void setObjective(int armyIndex, double x, double y, double radius) {
+		if (terrain == null)
+			terrain = new TerrainGrid(width, height, DISTANCE_FOR_BATTLE / 5.0);
+		for (int other = 0; other < objectives.length; ++other) {
+			FlowField field = objectives[other];
+			if (other != armyIndex && field != null && field.getTargetX() == x && field.getTargetY() == y && field.getTargetRadius() == radius) {
+				objectives[armyIndex] = field;
+				return;
+			}
+		}
+		if (objectives[armyIndex] == null || isShared(armyIndex))
+			objectives[armyIndex] = new FlowField(terrain);
+		objectives[armyIndex].setTarget(x, y, radius);
+	} // end setObjective()
+
+	/** @param armyIndex army whose actors go back to meandering when no opponent is in sight */
+	public void clearObjective(int armyIndex) { objectives[armyIndex] = null; }
+
+	/** @return flow field towards the army's objective, or null if it has none */
+	public FlowField getObjective(int armyIndex) { return objectives[armyIndex]; }
+
+	private boolean isShared(int armyIndex) {
+		for (int other = 0; other < objectives.length; ++other)
+			if (other != armyIndex && objectives[other] == objectives[armyIndex])
+				return true;
+		return false;
+	} // end isShared()
+
+	/**
+	 * Headless equivalent of <i>Army.populate()</i>: creates the actors with the attribute distributions of their <i>Archetype</i> and places them uniformly over the battlefield.
+	 * @param armyIndex army receiving the new actors
+	 * @param type type to create; <b>RANDOM</b> picks one of the registry's archetypes per actor, as <i>ActorFactory.createActorRandomSelection()</i> does
+	 * @param numToAdd number of actors to create
+	 */
+	public void populate(int armyIndex, ActorFactory.Type type, int numToAdd) {
+		for (int i = 0; i < numToAdd; ++i)
+			spawn(armyIndex, type == ActorFactory.Type.RANDOM ? archetypes.get(random.nextInt(archetypes.size())) : archetypes.get(type), null);
+	} // end populate()
+
+	/**
+	 * Same as <i>populate(int, ActorFactory.Type, int)</i> for any archetype of this battle's registry.
+	 * @param armyIndex army receiving the new actors
+	 * @param archetype type to create
+	 * @param numToAdd number of actors to create
+	 */
+	public void populate(int armyIndex, Archetype archetype, int numToAdd) {
+		for (int i = 0; i < numToAdd; ++i)
+			spawn(armyIndex, archetype, null);
+	} // end populate()
+
+	/**
+	 * Schedules reinforcements for an army: a wave of new actors enters every <i>wave.getIntervalSeconds()</i> of simulated time from now, at the start of the tick that reaches it (waves do not enter during <i>runEvents()</i>).
+	 * From now on every death in this battle hands its slot back to the <i>ActorStore</i>, where the next reinforcement reuses it; the id of a dead actor may therefore come to refer to a new one.
+	 * @param armyIndex army receiving the reinforcements
+	 * @param wave the types, size, spawn area and interval of the waves
+	 */
+	public void addReinforcements(int armyIndex, ReinforcementWave wave) {
+		if (armyIndex < 0 || armyIndex >= liveCount.length)
+			throw new IllegalArgumentException("Army must be 0 to " + (liveCount.length - 1));
+		int i = waves.length;
+		waves = Arrays.copyOf(waves, i + 1);
+		waveArmy = Arrays.copyOf(waveArmy, i + 1);
+		wavesEntered = Arrays.copyOf(wavesEntered, i + 1);
+		waveScheduledAt = Arrays.copyOf(waveScheduledAt, i + 1);
+		waves[i] = wave;
+		waveArmy[i] = armyIndex;
+		waveScheduledAt[i] = time;
+	} // end addReinforcements()
+
+	/** Cancels every scheduled reinforcement; the slots of the dead are kept again from now on. */
+	public void clearReinforcements() {
+		waves = new ReinforcementWave[0];
+		waveArmy = wavesEntered = new int[0];
+		waveScheduledAt = new double[0];
+	} // end clearReinforcements()
+
+	/** @return waves of the scheduled reinforcements that have entered the battle so far */
+	public long getWavesEntered() {
+		long entered = 0L;
+		for (int count : wavesEntered)
+			entered += count;
+		return entered;
+	} // end getWavesEntered()
+
+	/** Spawns every wave that has fallen due, in the order the waves were scheduled. */
+	private void reinforce() {
+		for (int i = 0; i < waves.length; ++i) {
+			ReinforcementWave wave = waves[i];
+			for (int due = wave.wavesDue(time - waveScheduledAt[i]); wavesEntered[i] < due; ++wavesEntered[i])
+				for (int n = 0; n < wave.getSize(); ++n)
+					spawn(waveArmy[i], wave.pickType(random.nextDouble()), wave);
+		}
+	} // end reinforce()
+
+	/**
+	 * @param area spawn area of a reinforcement, or null to place the actor uniformly over the battlefield
+	 */
+	private void spawn(int armyIndex, Archetype archetype, ReinforcementWave area) {
+		int id = store.add(archetype.getId(), armyIndex);
+		if (projectiles != null)
+			projectiles.forget(id); // the slot may have been a dead shooter's
+		store.setStrength(id, normal(archetype.getStrength()));
+		store.setHealth(id, normal(archetype.getHealth()));
+		store.setSpeed(id, normal(archetype.getSpeed()));
+		if (archetype.hasSpecial())
+			store.setSpecial(id, normal(archetype.getSpecial()));
+		if (archetype.getConcealedProbability() > 0.0 && random.nextDouble() < archetype.getConcealedProbability())
+			store.setFlags(id, store.getFlags(id) | ActorStore.FLAG_CONCEALED);
+		if (archetype.getHorseProbability() > 0.0 && random.nextDouble() < archetype.getHorseProbability())
+			store.setFlags(id, store.getFlags(id) | ActorStore.FLAG_HORSE);
+		double x, y;
+		if (area == null) {
+			x = width * random.nextDouble();
+			y = height * random.nextDouble();
+		} else {
+			area.place(random.nextDouble(), random.nextDouble(), width, height, spawnLocation);
+			x = spawnLocation[0];
+			y = spawnLocation[1];
+		}
+		store.setX(id, x); store.setDestX(id, x);
+		store.setY(id, y); store.setDestY(id, y);
+		store.refreshTargetable(id);
+		++liveCount[armyIndex];
+	} // end spawn()
+
+	/**
+	 * Advances the battle by one tick of {@value #TICK_SECONDS} seconds. The first call starts every actor without combat, like <i>Army.startMotion()</i>.
+	 * The tick has two phases: every actor first moves along its leg, then (with all positions settled and the <i>SpatialGrid</i> rebuilt) every actor whose leg has finished acts.
+	 */
+	public void tick() {
+		if (!started) {
+			started = true;
+			rebuildIndexes();
+			actAll(false);
+		}
+		if (waves.length > 0)
+			reinforce();
+		move(TICK_SECONDS);
+		if (separationRadius > 0.0)
+			separation.separate(store, separationRadius, hardCollision, width, height);
+		rebuildIndexes();
+		if (projectiles != null)
+			landProjectiles();
+		actAll(true); // the equivalent of setOnFinished(event -> startMotion(true))
+		++tickCount;
+		if (stateHashes != null) {
+			if (numStateHashes == stateHashes.length)
+				stateHashes = Arrays.copyOf(stateHashes, 2 * stateHashes.length);
+			stateHashes[numStateHashes++] = StateHash.of(store);
+		}
+	} // end tick()
+
+	/** Moves every actor along its leg of motion for <i>seconds</i> by linear interpolation, as the <i>TranslateTransition</i> does. */
+	private void move(double seconds) {
+		if (vectorMovement && VECTOR_SUPPORTED && !store.isOffHeap())
+			VectorMovementKernel.integrate(store, seconds, width, height);
+		else
+			MovementKernels.integrate(store, 0, store.size(), seconds, width, height);
+		time += seconds;
+	} // end move()
+
+	/**
+	 * Runs the battle event by event until one army is wiped out or the simulated time reaches <i>maxTime</i>. Instead of stepping in ticks, each actor's next action is scheduled in a <i>CalendarQueue</i> at the exact end of its leg of motion,
+	 * <i>MAX_SPEED / (speed * speedController)</i> seconds after it began, so fast actors act more often than slow ones just as the <i>TranslateTransition</i> durations make them.
+	 * At each event time every actor is moved to that instant, the grid is rebuilt and the actors whose legs end there act, in id order; no time is spent on the stretches in between when nobody acts.
+	 * Each event time costs about as much as one tick, so this wins when actions are sparse (few or slow actors) and ticking wins when many actors act every {@value #TICK_SECONDS} seconds.
+	 * <p>Battles may switch between <i>tick()</i> and <i>runEvents()</i>; the remaining leg times carry over. Event mode is for battles run in one process, not shards.</p>
+	 * @param maxTime simulated time, in seconds since the start of the battle, at which to stop
+	 * @return index of the winning army, or -1 if the battle was not decided in time
+	 */
+	public int runEvents(double maxTime) {
+		if (!started) {
+			started = true;
+			rebuildIndexes();
+			actAll(false);
+		}
+		events = new CalendarQueue();
+		final int size = store.size();
+		for (int id = 0; id < size; ++id)
+			if (store.isAlive(id) && !store.isGhost(id))
+				events.add(id, time + Math.max(0.0, store.getLegTime(id)));
+		if (dueNow.length < size)
+			dueNow = new int[store.capacity()];
+		while (!isDecided() && !events.isEmpty()) {
+			double when = events.getTime(events.peek());
+			if (when > maxTime)
+				break;
+			move(when - time);
+			time = when; // exactly, whatever the rounding of the sum
+			int numDue = 0;
+			while (!events.isEmpty() && events.getTime(events.peek()) == when) { // ties come out in id order
+				int id = events.poll();
+				store.setX(id, store.getDestX(id)); // the leg has ended exactly at its destination
+				store.setY(id, store.getDestY(id));
+				store.setLegTime(id, 0.0);
+				dueNow[numDue++] = id;
+			}
+			rebuildIndexes();
+			for (int i = 0; i < numDue; ++i) {
+				int id = dueNow[i];
+				if (!store.isAlive(id))
+					continue; // killed earlier at this same instant
+				act(id, true);
+				if (store.isAlive(id))
+					events.add(id, time + store.getLegTime(id));
+			}
+		}
+		events = null;
+		return getWinner();
+	} // end runEvents()
+
+	/** Re-files every actor in the grid, and in the attribute indexes of the targeting strategies in use, after the actors have moved; recomputes any flow field whose terrain has changed. */
+	private void rebuildIndexes() {
+		grid.rebuild(store);
+		for (AttributeIndex index : indexes)
+			if (index != null)
+				index.rebuild(grid, store);
+		for (FlowField field : objectives)
+			if (field != null)
+				field.refresh();
+		if (fog != null)
+			fog.update(store);
+	} // end rebuildIndexes()
+
+	/**
+	 * Runs ticks until one army is wiped out or <i>maxTicks</i> have elapsed.
+	 * @param maxTicks upper limit on the number of ticks
+	 * @return index of the winning army, or -1 if the battle was not decided in time
+	 */
+	public int run(long maxTicks) {
+		while (!isDecided() && tickCount < maxTicks)
+			tick();
+		return getWinner();
+	} // end run()
+
+	/**
+	 * Every live actor owned by this battle acts, in id order: all of them when <i>engageInCombat</i> is false (the start of the battle), otherwise those whose leg of motion has finished.
+	 * In type-batched mode each actor only searches and fights here; the new legs of motion are then chosen by one kernel per type.
+	 */
+	private void actAll(boolean engageInCombat) {
+		final int size = store.size();
+		if (!typeBatched) {
+			for (int id = 0; id < size; ++id)
+				if (store.isAlive(id) && !store.isGhost(id) && (!engageInCombat || store.getLegTime(id) <= 0.0))
+					act(id, engageInCombat);
+			return;
+		}
+		if (queue.length < size) {
+			queue = new int[store.capacity()];
+			queueOpponent = new int[store.capacity()];
+			wanderers = new int[store.capacity()];
+			followers = new int[store.capacity()];
+			due = new int[store.capacity()];
+			dueOpponent = new int[store.capacity()];
+		}
+		// one range of the queue per type, large enough for every live actor of that type
+		final int numTypes = queueEnd.length;
+		Arrays.fill(queueStart, 0);
+		for (int id = 0; id < size; ++id)
+			if (store.isAlive(id))
+				++queueStart[store.getType(id) + 1];
+		for (int type = 0; type < numTypes; ++type) {
+			queueStart[type + 1] += queueStart[type];
+			queueEnd[type] = queueStart[type];
+		}
+		numWanderers = numFollowers = 0;
+		if (combat != Combat.SEQUENTIAL && engageInCombat) {
+			int numDue = 0;
+			combatBatch.clear();
+			for (int id = 0; id < size; ++id) {
+				if (!store.isAlive(id) || store.isGhost(id) || store.getLegTime(id) > 0.0)
+					continue;
+				int opponent = findTarget(id);
+				if (opponent >= 0 && distance(id, opponent) < DISTANCE_FOR_BATTLE)
+					combatBatch.add(id, opponent, random);
+				else if (opponent >= 0 && projectiles != null && store.getArchetype(id).isRanged())
+					projectiles.fire(store, id, opponent, time);
+				due[numDue] = id;
+				dueOpponent[numDue++] = opponent;
+			}
+			resolveCombat();
+			for (int i = 0; i < numDue; ++i) {
+				int id = due[i];
+				if (store.isAlive(id))
+					enqueue(id, dueOpponent[i]);
+			}
+		} else {
+			for (int id = 0; id < size; ++id) {
+				if (!store.isAlive(id) || store.isGhost(id) || (engageInCombat && store.getLegTime(id) > 0.0))
+					continue;
+				int opponent = engage(id, engageInCombat);
+				if (opponent != KILLED)
+					enqueue(id, opponent);
+			}
+		}
+		for (int type = 0; type < numTypes; ++type) {
+			Archetype archetype = archetypes.get(type);
+			if (archetype.getMovement() == Archetype.Movement.FLEE)
+				MovementKernels.flee(store, queue, queueOpponent, queueStart[type], queueEnd[type], width, height, fleeRandom);
+			else
+				MovementKernels.approach(store, queue, queueOpponent, queueStart[type], queueEnd[type], archetype.getApproachFraction());
+		}
+		MovementKernels.meander(store, wanderers, 0, numWanderers, width, height, meanderRandom);
+		for (int type = 0; type < numTypes; ++type)
+			MovementKernels.startLegs(store, queue, queueStart[type], queueEnd[type], speedController);
+		MovementKernels.startLegs(store, wanderers, 0, numWanderers, speedController);
+		MovementKernels.follow(store, followers, 0, numFollowers, objectives, speedController);
+	} // end actAll()
+
+	/** Queues an actor that has acted for the movement kernel of its type, or (with no opponent) for its army's flow field or for meandering. */
+	private void enqueue(int id, int opponent) {
+		if (opponent >= 0) {
+			int slot = queueEnd[store.getType(id)]++;
+			queue[slot] = id;
+			queueOpponent[slot] = opponent;
+		} else if (objectives[store.getArmy(id)] != null)
+			followers[numFollowers++] = id;
+		else
+			wanderers[numWanderers++] = id;
+	} // end enqueue()
+
+	/** Resolves the collected combat rounds, applies the health changes in pair order, then removes the actors left with no health. */
+	private void resolveCombat() {
+		if (combat == Combat.BATCHED_VECTOR && VECTOR_SUPPORTED)
+			VectorCombatKernel.resolve(combatBatch, store);
+		else
+			combatBatch.resolveScalar(store);
+		for (int i = 0; i < combatBatch.size; ++i) {
+			store.setHealth(combatBatch.attacker[i], store.getHealth(combatBatch.attacker[i]) + combatBatch.attackerChange[i]);
+			store.setHealth(combatBatch.defender[i], store.getHealth(combatBatch.defender[i]) + combatBatch.defenderChange[i]);
+			healthChanged(combatBatch.attacker[i]);
+			healthChanged(combatBatch.defender[i]);
+			if (statistics != null)
+				recordRound(combatBatch.attacker[i], combatBatch.defender[i], combatBatch.attackerChange[i], combatBatch.defenderChange[i]);
+		}
+		for (int i = 0; i < combatBatch.size; ++i) {
+			if (store.getHealth(combatBatch.defender[i]) <= 0.0)
+				kill(combatBatch.defender[i], combatBatch.attacker[i]);
+			if (store.getHealth(combatBatch.attacker[i]) <= 0.0)
+				kill(combatBatch.attacker[i], combatBatch.defender[i]);
+		}
+	} // end resolveCombat()
+
+	/** returned by <i>engage()</i> when the acting actor died in combat */
+	private static final int KILLED = -2;
+
+	/**
+	 * First half of a segment of <i>Actor.startMotion()</i>: finds an opponent with the type's targeting strategy and, if it is within {@value #DISTANCE_FOR_BATTLE}, fights a combat round.
+	 * @return the opponent (even if it was just killed), -1 if there is none, or <i>KILLED</i> if the actor itself died
+	 */
+	private int engage(int id, boolean engageInCombat) {
+		int opponent = findTarget(id);
+		if (opponent >= 0 && engageInCombat && distance(id, opponent) < DISTANCE_FOR_BATTLE) {
+			combatRound(id, opponent);
+			if (store.getHealth(opponent) <= 0.0)
+				kill(opponent, id);
+			if (store.getHealth(id) <= 0.0) {
+				kill(id, opponent);
+				return KILLED;
+			}
+		} else if (opponent >= 0 && engageInCombat && projectiles != null && events == null && store.getArchetype(id).isRanged())
+			projectiles.fire(store, id, opponent, time);
+		return opponent;
+	} // end engage()
+
+	/** One segment of <i>Actor.startMotion()</i> for a single actor: optional combat against the nearest visible opponent, then a new leg of motion chosen by a <i>switch</i> on the type. */
+	private void act(int id, boolean engageInCombat) {
+		int opponent = engage(id, engageInCombat);
+		if (opponent == KILLED)
+			return;
+		if (opponent < 0 && objectives[store.getArmy(id)] != null) {
+			MovementKernels.follow(store, id, objectives[store.getArmy(id)], speedController);
+			return;
+		}
+		double newX, newY;
+		Random destinationRandom = meanderRandom;
+		if (opponent >= 0) {
+			if (store.getArchetype(id).getMovement() == Archetype.Movement.FLEE)
+				destinationRandom = fleeRandom;
+			newX = findNewX(id, opponent);
+			newY = findNewY(id, opponent);
+		} else { // null opponent means we wander around close to our current location
+			newX = MovementKernels.meander(store.getX(id), meanderRandom);
+			newY = MovementKernels.meander(store.getY(id), meanderRandom);
+		}
+		store.setDestX(id, MovementKernels.validate(newX, width, destinationRandom));
+		store.setDestY(id, MovementKernels.validate(newY, height, destinationRandom));
+		store.setLegTime(id, Actor.MAX_SPEED / (store.getSpeed(id) * speedController));
+	} // end act()
+
+	/**
+	 * Finds the nearest live, visible actor of any army hostile to this actor's army, in one grid search regardless of the number of hostile armies.
+	 * Valid during the act phase of <i>tick()</i>, when the grid matches the actor positions.
+	 * @return id of the nearest visible hostile actor, or -1 if there is none
+	 */
+	public int findNearestHostile(int id) {
+		return grid.findNearest(store, store.getX(id), store.getY(id), hostileMask[store.getArmy(id)], fog, store.getArmy(id));
+	} // end findNearestHostile()
+
+	/**
+	 * Brute-force equivalent of <i>findNearestHostile()</i>, as <i>Army.findNearestOpponent()</i> searches: every live, visible actor is examined. Kept as the reference for testing and benchmarking the grid search.
+	 * @return id of the nearest visible hostile actor, or -1 if there is none
+	 */
+	public int scanNearestHostile(int id) {
+		final int size = store.size();
+		final long hostile = hostileMask[store.getArmy(id)];
+		final long[] targetable = store.targetable;
+		final double myX = store.getX(id), myY = store.getY(id);
+		int nearest = -1;
+		double closest = Double.MAX_VALUE;
+		for (int word = 0, words = ActorStore.wordsFor(size); word < words; ++word) {
+			for (long bits = targetable[word]; bits != 0L; bits &= bits - 1) { // visit only the live, visible actors
+				int current = (word << 6) + Long.numberOfTrailingZeros(bits);
+				if ((hostile & (1L << store.getArmy(current))) == 0L || (fog != null && !fog.isVisible(store.getArmy(id), store.getX(current), store.getY(current))))
+					continue;
+				double deltaX = myX - store.getX(current), deltaY = myY - store.getY(current);
+				double distanceSquared = deltaX * deltaX + deltaY * deltaY; // no need for sqrt() when only comparing
+				if (distanceSquared < closest) {
+					closest = distanceSquared;
+					nearest = current;
+				}
+			}
+		}
+		return nearest;
+	} // end scanNearestHostile()
+
+	/**
+	 * Finds the opponent this actor fights with the targeting strategy of its type. The strategies that rank opponents in range walk an <i>AttributeIndex</i> from its best end, so the cost depends on how many opponents nearby beat the answer, not on the size of the armies.
+	 * Valid during the act phase of <i>tick()</i>, when the grid matches the actor positions.
+	 * @return id of the chosen opponent (the nearest one if no opponent is in range), or -1 if no hostile actor is visible
+	 */
+	public int findTarget(int id) {
+		Archetype.Targeting strategy = targeting[store.getType(id)];
+		if (strategy != Archetype.Targeting.NEAREST) {
+			int target = indexes[strategy.ordinal()].findBest(grid, store, store.getX(id), store.getY(id), hostileMask[store.getArmy(id)], DISTANCE_FOR_BATTLE, fog, store.getArmy(id));
+			if (target >= 0)
+				return target;
+		}
+		return findNearestHostile(id);
+	} // end findTarget()
+
+	/**
+	 * Brute-force equivalent of <i>findTarget()</i>: every live, visible actor is examined. Kept as the reference for testing and benchmarking the attribute indexes.
+	 * @return id of the chosen opponent, or -1 if no hostile actor is visible
+	 */
+	public int scanTarget(int id) {
+		Archetype.Targeting strategy = targeting[store.getType(id)];
+		if (strategy != Archetype.Targeting.NEAREST) {
+			int target = indexes[strategy.ordinal()].scanBest(store, store.getX(id), store.getY(id), hostileMask[store.getArmy(id)], DISTANCE_FOR_BATTLE, fog, store.getArmy(id));
+			if (target >= 0)
+				return target;
+		}
+		return scanNearestHostile(id);
+	} // end scanTarget()
+
+	/** Same arithmetic as <i>Actor.getHitPoints()</i>. */
+	private double hitPoints(int id) { return store.getStrength(id) + store.getHealth(id) * .5 * random.nextDouble(); }
+
+	/** Same arithmetic as <i>Actor.combatRound()</i>; <i>attacker</i> plays the role of <i>this</i>. */
+	private void combatRound(int attacker, int defender) {
+		double healthAdjustmentOfLooser = -(random.nextDouble() * CombatBatch.MAX_COMBAT_HEALTH_REDUCTION_OF_LOOSER) - 1.0; // looser looses at least 1.0
+		double healthAdjustmentOfWinner = -(random.nextDouble() * CombatBatch.MAX_COMBAT_HEALTH_REDUCTION_OF_WINNER) + 1.0;
+		double attackerHitPoints = hitPoints(attacker);
+		double proportionHitPoints = attackerHitPoints / (hitPoints(attacker) + hitPoints(defender)); // getHitPoints() is drawn twice for the attacker, as in Actor
+		boolean attackerLost = random.nextDouble() > proportionHitPoints;
+		double attackerChange = attackerLost ? healthAdjustmentOfLooser : healthAdjustmentOfWinner, defenderChange = attackerLost ? healthAdjustmentOfWinner : healthAdjustmentOfLooser;
+		store.setHealth(attacker, store.getHealth(attacker) + attackerChange);
+		store.setHealth(defender, store.getHealth(defender) + defenderChange);
+		healthChanged(attacker);
+		healthChanged(defender);
+		if (statistics != null)
+			recordRound(attacker, defender, attackerChange, defenderChange);
+	} // end combatRound()
+
+	/** Moves the projectiles in flight over the last tick and applies the damage of those that hit; the actors have moved and the grid is rebuilt. */
+	private void landProjectiles() {
+		projectiles.advance(TICK_SECONDS, grid, store, hostileMask, width, height);
+		for (int i = 0; i < projectiles.numHits; ++i) {
+			int target = projectiles.hitTarget[i], shooter = projectiles.hitShooter[i];
+			if (!store.isAlive(target))
+				continue; // killed by an earlier hit of this tick
+			double change = -projectiles.hitDamage[i];
+			store.setHealth(target, store.getHealth(target) + change);
+			healthChanged(target);
+			if (statistics != null)
+				statistics.recordRound(store.getType(shooter), store.getType(target), projectiles.hitX[i], projectiles.hitY[i], 0.0, change, time);
+			if (store.getHealth(target) <= 0.0)
+				kill(target, shooter);
+		}
+	} // end landProjectiles()
+
+	/** Records a combat round, fought midway between the two actors. */
+	private void recordRound(int attacker, int defender, double attackerChange, double defenderChange) {
+		statistics.recordRound(store.getType(attacker), store.getType(defender), (store.getX(attacker) + store.getX(defender)) * 0.5, (store.getY(attacker) + store.getY(defender)) * 0.5, attackerChange, defenderChange, time);
+	} // end recordRound()
+
+	/** Keeps the health-ordered index, if any strategy uses one, in step with a change of health. */
+	private void healthChanged(int id) {
+		AttributeIndex index = indexes[Archetype.Targeting.WEAKEST_IN_RANGE.ordinal()];
+		if (index != null)
+			index.update(grid, store, id);
+	} // end healthChanged()
+
+	/** Headless equivalent of <i>Army.removeNowDeadActor()</i>, for a death with no killer. */
+	private void kill(int id) { kill(id, -1); }
+
+	/**
+	 * Headless equivalent of <i>Army.removeNowDeadActor()</i>.
+	 * @param killer actor whose combat round killed <i>id</i>, or -1
+	 */
+	private void kill(int id, int killer) {
+		if (!store.isAlive(id))
+			return;
+		if (statistics != null && !store.isGhost(id)) // a ghost's death is recorded by the shard that owns it
+			statistics.recordDeath(store.getType(id), killer >= 0 ? store.getType(killer) : -1, store.getX(id), store.getY(id), time);
+		store.setAlive(id, false);
+		store.refreshTargetable(id);
+		if (events != null)
+			events.remove(id);
+		if (!store.isGhost(id)) { // a ghost's death is settled by the shard that owns it
+			--liveCount[store.getArmy(id)];
+			++deathCount[store.getArmy(id)];
+			if (waves.length > 0)
+				store.release(id); // for the next reinforcement
+		}
+	} // end kill()
+
+	/** Kills every live actor whose health has been set to 0 or below, after a <i>BulkEdit</i> has written the store directly. */
+	void settleDeaths() {
+		for (int id = 0; id < store.size(); ++id)
+			if (store.isAlive(id) && !store.isGhost(id) && store.getHealth(id) <= 0.0)
+				kill(id);
+	} // end settleDeaths()
+
+	/** Applies damage (or healing) reported from elsewhere, e.g. combat against this actor's ghost on a neighbouring shard. */
+	public void adjustHealth(int id, double changeToValue) {
+		store.setHealth(id, store.getHealth(id) + changeToValue);
+		healthChanged(id);
+		if (store.getHealth(id) <= 0.0)
+			kill(id);
+	} // end adjustHealth()
+
+	/** Headless equivalent of <i>Actor.setHealth()</i>, e.g. for an edit made while the battle runs. */
+	public void setHealth(int id, double health) { adjustHealth(id, health - store.getHealth(id)); }
+
+	/** Headless equivalent of <i>Actor.setStrength()</i>; keeps the strength-ordered index in step. */
+	public void setStrength(int id, double strength) {
+		store.setStrength(id, strength);
+		AttributeIndex index = indexes[Archetype.Targeting.STRONGEST_IN_RANGE.ordinal()];
+		if (index != null)
+			index.update(grid, store, id);
+	} // end setStrength()
+
+	/** Size in bytes of one record written by <i>writeActor()</i>: {@value} */
+	public static final int ACTOR_RECORD_BYTES = 9 * Float.BYTES + 3;
+
+	/**
+	 * Writes the complete state of a live actor as a compact binary record of {@value #ACTOR_RECORD_BYTES} bytes. Coordinates and attributes are narrowed to <i>float</i>, which is ample for a battlefield of {@value #WORLD_WIDTH} pixels.
+	 * @param id actor to write
+	 * @param out destination buffer, advanced by {@value #ACTOR_RECORD_BYTES} bytes
+	 */
+	public void writeActor(int id, ByteBuffer out) {
+		out.putFloat((float) store.getX(id)).putFloat((float) store.getY(id));
+		out.putFloat((float) store.getDestX(id)).putFloat((float) store.getDestY(id)).putFloat((float) store.getLegTime(id));
+		out.putFloat((float) store.getHealth(id)).putFloat((float) store.getStrength(id)).putFloat((float) store.getSpeed(id)).putFloat((float) store.getSpecial(id));
+		out.put((byte) store.getType(id)).put((byte) (store.getFlags(id) & ~ActorStore.FLAG_GHOST)).put((byte) store.getArmy(id));
+	} // end writeActor()
+
+	/**
+	 * Adds an actor from a record written by <i>writeActor()</i>.
+	 * @param in source buffer, advanced by {@value #ACTOR_RECORD_BYTES} bytes
+	 * @param ghost true to add a read-only ghost, which can be targeted and damaged but never acts and is not counted in <i>getLiveCount()</i>
+	 * @return id of the new actor
+	 */
+	public int readActor(ByteBuffer in, boolean ghost) {
+		float x = in.getFloat(), y = in.getFloat(), destX = in.getFloat(), destY = in.getFloat(), legTime = in.getFloat();
+		float health = in.getFloat(), strength = in.getFloat(), speed = in.getFloat(), special = in.getFloat();
+		byte type = in.get(), flags = in.get(), armyIndex = in.get();
+		int id = store.add(type, armyIndex);
+		store.setX(id, x); store.setY(id, y); store.setDestX(id, destX); store.setDestY(id, destY); store.setLegTime(id, legTime);
+		store.setHealth(id, health); store.setStrength(id, strength); store.setSpeed(id, speed); store.setSpecial(id, special);
+		store.setFlags(id, ghost ? (byte) (flags | ActorStore.FLAG_GHOST) : flags);
+		store.refreshTargetable(id);
+		if (!ghost)
+			++liveCount[armyIndex];
+		return id;
+	} // end readActor()
+
+	/**
+	 * Removes an actor from this battle without counting it as a death (it has moved elsewhere, or it was a ghost). Its id may be reused by the next actor added.
+	 * @param id actor to remove
+	 */
+	public void release(int id) {
+		if (store.isAlive(id) && !store.isGhost(id))
+			--liveCount[store.getArmy(id)];
+		store.release(id);
+	} // end release()
+
+	private void reseedMovement(long seed) {
+		fleeRandom.setSeed(seed * 31L + 1L);
+		meanderRandom.setSeed(seed * 31L + 2L);
+	} // end reseedMovement()
+
+	/**
+	 * @param typeBatched true (the default) to choose new legs of motion with one <i>MovementKernels</i> call per type; false to choose them actor by actor with a <i>switch</i> on the type. Both give identical battles.
+	 */
+	public void setTypeBatched(boolean typeBatched) { this.typeBatched = typeBatched; }
+	public boolean isTypeBatched() { return typeBatched; }
+
+	/**
+	 * Turns on crowd separation: after moving, each tick, actors of the same army closer than <i>radius</i> push each other apart (see <i>CrowdSeparation</i>). Off by default, as in the <i>Simulator</i>, and not applied by <i>runEvents()</i>.
+	 * @param radius separation radius, or 0 to turn separation off
+	 * @param hardCollision false to remove a share of each overlap per tick, true to remove all of it
+	 */
+	public void setSeparation(double radius, boolean hardCollision) {
+		separationRadius = radius;
+		this.hardCollision = hardCollision;
+	} // end setSeparation()
+
+	public double getSeparationRadius() { return separationRadius; }
+	public boolean isHardCollision() { return hardCollision; }
+
+	/**
+	 * @param vectorMovement true (the default) to move the actors with <i>VectorMovementKernel</i> when the Vector API is available; false to always use the scalar <i>MovementKernels.integrate()</i>. Both give identical battles.
+	 */
+	public void setVectorMovement(boolean vectorMovement) { this.vectorMovement = vectorMovement; }
+	public boolean isVectorMovement() { return vectorMovement; }
+
+	/**
+	 * @param combat how to resolve the combat rounds of a tick; the batched modes apply in type-batched mode only, and <b>BATCHED_SCALAR</b> and <b>BATCHED_VECTOR</b> give identical battles
+	 */
+	public void setCombat(Combat combat) { this.combat = combat; }
+	public Combat getCombat() { return combat; }
+
+	/**
+	 * Turns the fog of war on or off. With it on, an army targets and approaches only the opponents in cells of the grid within the sight radius (<i>Archetype.getSight()</i>) of one of its live actors; otherwise every visible opponent on the battlefield can be found.
+	 * @param fogOfWar true to restrict each army to what it sees
+	 * @param occlusion true for the impassable cells of the terrain (see <i>setTerrain()</i>) to block sight
+	 */
+	public void setFogOfWar(boolean fogOfWar, boolean occlusion) {
+		fog = fogOfWar ? new FogOfWar(grid, liveCount.length, archetypes) : null;
+		fogOcclusion = occlusion;
+		if (fog != null && occlusion && terrain != null)
+			fog.setTerrain(terrain);
+		if (fog != null)
+			fog.update(store);
+	} // end setFogOfWar()
+
+	public boolean isFogOfWar() { return fog != null; }
+
+	/**
+	 * Turns ranged combat on or off. With it on, an actor of a ranged type (<i>Archetype.isRanged()</i>) whose opponent is beyond {@value #DISTANCE_FOR_BATTLE} but within reach fires a projectile at it, once per reload; projectiles advance with <i>tick()</i> only, not <i>runEvents()</i>.
+	 * @param maxProjectiles capacity of the pool of projectiles in flight (shots beyond it are dropped), or 0 to turn ranged combat off
+	 */
+	public void setRangedCombat(int maxProjectiles) { projectiles = maxProjectiles > 0 ? new ProjectilePool(maxProjectiles) : null; }
+	public boolean isRangedCombat() { return projectiles != null; }
+
+	/** @return projectiles in flight */
+	public int getProjectilesInFlight() { return projectiles == null ? 0 : projectiles.size(); }
+	/** @return projectiles fired since ranged combat was turned on */
+	public long getProjectilesFired() { return projectiles == null ? 0L : projectiles.getFired(); }
+	/** @return projectiles that hit since ranged combat was turned on */
+	public long getProjectileHits() { return projectiles == null ? 0L : projectiles.getHits(); }
+	/** @return shots not fired because the pool was full */
+	public long getProjectilesDropped() { return projectiles == null ? 0L : projectiles.getDropped(); }
+
+	/** @return true if the army sees (x, y); always true without fog of war */
+	public boolean isVisibleTo(int armyIndex, double x, double y) { return fog == null || fog.isVisible(armyIndex, x, y); }
+
+	/** @return number of grid cells of {@value #DISTANCE_FOR_BATTLE} pixels the army sees, or all of them without fog of war */
+	public int getVisibleCells(int armyIndex) { return fog == null ? grid.columns * grid.rows : fog.countVisible(armyIndex); }
+
+	/**
+	 * @param statistics aggregates where and how combat happens from now on, or null (the default) to stop; it should cover this battlefield and registry
+	 */
+	public void setStatistics(CombatStatistics statistics) { this.statistics = statistics; }
+	public CombatStatistics getStatistics() { return statistics; }
+
+	/**
+	 * Turns on recording of the <i>StateHash</i> of the battle after every <i>tick()</i>, to compare runs of different engine configurations (see <i>LockstepVerifier</i>). Off by default; each tick then costs one extra pass over the actors.
+	 * Turning it on again discards the hashes recorded so far.
+	 * @param stateHashing true to record a hash per tick from the next tick on, false to stop and discard them
+	 */
+	public void setStateHashing(boolean stateHashing) {
+		stateHashes = stateHashing ? new long[1024] : null;
+		hashesFrom = tickCount + 1;
+		numStateHashes = 0;
+	} // end setStateHashing()
+
+	public boolean isStateHashing() { return stateHashes != null; }
+
+	/**
+	 * @param tick number of a tick run while state hashing was on (the first tick of a battle is 1)
+	 * @return the <i>StateHash</i> of the battle at the end of that tick
+	 * @throws IllegalArgumentException if no hash was recorded for that tick
+	 */
+	public long getStateHash(long tick) {
+		if (stateHashes == null || tick < hashesFrom || tick >= hashesFrom + numStateHashes)
+			throw new IllegalArgumentException("No state hash recorded for tick " + tick);
+		return stateHashes[(int) (tick - hashesFrom)];
+	} // end getStateHash()
+
+	/** @return the recorded hashes, in tick order from the first recorded tick, or an empty array if state hashing is off */
+	public long[] getStateHashes() { return stateHashes == null ? new long[0] : Arrays.copyOf(stateHashes, numStateHashes); }
+
+	/**
+	 * Per-type movement rules of the <i>Archetype</i>. For the built-in types these are the <i>findNewLocation()</i> overrides: a <i>Hobbit</i> runs for the quadrant opposite its opponent, an <i>Orc</i> charges three quarters of the way to its opponent, and an <i>Elf</i> or <i>Wizard</i> closes half of the distance.
+	 * The <i>Orc</i>, <i>Elf</i> and <i>Wizard</i> overrides mix up their X and Y terms; this is the movement they were written to express.
+	 */
+	private double findNewX(int id, int opponent) {
+		Archetype archetype = store.getArchetype(id);
+		switch (archetype.getMovement()) {
+		case FLEE: return MovementKernels.flee(store.getX(opponent), width, fleeRandom);
+		default:   return MovementKernels.approach(store.getX(id), store.getX(opponent), archetype.getApproachFraction());
+		}
+	} // end findNewX()
+
+	private double findNewY(int id, int opponent) {
+		Archetype archetype = store.getArchetype(id);
+		switch (archetype.getMovement()) {
+		case FLEE: return MovementKernels.flee(store.getY(opponent), height, fleeRandom);
+		default:   return MovementKernels.approach(store.getY(id), store.getY(opponent), archetype.getApproachFraction());
+		}
+	} // end findNewY()
+
+	private double distance(int a, int b) {
+		double deltaX = store.getX(a) - store.getX(b), deltaY = store.getY(a) - store.getY(b);
+		return Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+	} // end distance()
+
+	private double normal(Archetype.Range range) {
+		return SingletonRandom.getNormalDistribution(random, range.getMin(), range.getMax(), range.getSpread());
+	} // end normal()
+
+	/** @return true once no army with live actors is hostile to another army with live actors */
+	public boolean isDecided() {
+		long standing = 0L;
+		for (int armyIndex = 0; armyIndex < liveCount.length; ++armyIndex)
+			if (liveCount[armyIndex] > 0)
+				standing |= 1L << armyIndex;
+		for (int armyIndex = 0; armyIndex < liveCount.length; ++armyIndex)
+			if ((standing & (1L << armyIndex)) != 0L && (hostileMask[armyIndex] & standing) != 0L)
+				return false;
+		return true;
+	} // end isDecided()
+
+	/** @return index of the only army with live actors, or -1 if several armies (or none) are still standing */
+	public int getWinner() {
+		int winner = -1;
+		for (int armyIndex = 0; armyIndex < liveCount.length; ++armyIndex) {
+			if (liveCount[armyIndex] > 0) {
+				if (winner >= 0)
+					return -1;
+				winner = armyIndex;
+			}
+		}
+		return winner;
+	} // end getWinner()
+
+	/** @return sum of <i>health</i> over the live actors of the army */
+	public double getTotalHealth(int armyIndex) {
+		double total = 0.0;
+		for (int id = 0; id < store.size(); ++id)
+			if (store.isAlive(id) && store.getArmy(id) == armyIndex && !store.isGhost(id))
+				total += store.getHealth(id);
+		return total;
+	} // end getTotalHealth()
+
+	public int getLiveCount(int armyIndex) { return liveCount[armyIndex]; }
+	/** @return actors of the army that have died in this battle (not those released with <i>release()</i>) */
+	public long getDeathCount(int armyIndex) { return deathCount[armyIndex]; }
+	public int getNumArmies() { return liveCount.length; }
+	public long getTickCount() { return tickCount; }
+	/** @return simulated seconds since the battle started, advanced by both <i>tick()</i> and <i>runEvents()</i> */
+	public double getTime() { return time; }
+	public ActorStore getStore() { return store; }
+	public ArchetypeRegistry getArchetypes() { return archetypes; }
+	public double getWidth() { return width; }
+	public double getHeight() { return height; }
+
+	/** Same role as <i>Simulator.getSpeedControllerValue()</i>: legs of motion last <i>MAX_SPEED / (speed * speedController)</i> seconds. */
+	public double getSpeedControllerValue() { return speedController; }
+	public void setSpeedControllerValue(double speedController) { this.speedController = speedController; }
+} // end class Battle
@@ -0,0 +1,355 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+import actor.ArchetypeRegistry;
+
+/**
+ * A command of a small edit language, compiled once and applied to every live actor of a battle at once: the bulk counterpart of <i>Army.edit()</i>, which prompts for each field of one actor.
+ * <pre>
+ * set health = 100 where type = ORC and x &lt; 500
+ * set strength = strength * 1.5, speed = speed + 2 where army = 1 and not (health &lt; 30)
+ * count where type = HOBBIT or type = ELF
+ * </pre>
+ * <ul>
+ * <li><b>set</b> <i>attribute</i> = <i>expression</i>, ... [<b>where</b> <i>condition</i>] assigns <i>x</i>, <i>y</i>, <i>health</i>, <i>strength</i>, <i>speed</i> or <i>special</i>; every right-hand side sees the values from before the command;</li>
+ * <li><b>count</b> [<b>where</b> <i>condition</i>] only counts;</li>
+ * <li>expressions combine numbers, attributes (the assignable ones plus <i>id</i>, <i>army</i> and <i>type</i>) and archetype names (which stand for their ids) with + - * / and parentheses;</li>
+ * <li>conditions compare expressions with = != &lt; &lt;= &gt; &gt;= and combine with <b>and</b>, <b>or</b>, <b>not</b> and parentheses.</li>
+ * </ul>
+ * Keywords, attributes and archetype names are case-insensitive. The command is compiled to a tree of small functions over the <i>ActorStore</i>, then applied to chunks of {@value #CHUNK} ids in parallel on the common fork-join pool; a chunk is a whole number of the 64-actor words of the store's bit sets, so chunks never write to the same word. Ghosts are never edited.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle
+ */
+public final class BulkEdit {
+	/** Ids per parallel task, a multiple of 64: {@value} */
+	public static final int CHUNK = 1 << 14;
+
+	/** Attributes a command can read; the first six can also be assigned. */
+	public enum Attribute {
+		X, Y, HEALTH, STRENGTH, SPEED, SPECIAL, ID, ARMY, TYPE;
+
+		public boolean isAssignable() { return ordinal() <= SPECIAL.ordinal(); }
+
+		double of(ActorStore store, int id) {
+			switch (this) {
+			case X:        return store.getX(id);
+			case Y:        return store.getY(id);
+			case HEALTH:   return store.getHealth(id);
+			case STRENGTH: return store.getStrength(id);
+			case SPEED:    return store.getSpeed(id);
+			case SPECIAL:  return store.getSpecial(id);
+			case ID:       return id;
+			case ARMY:     return store.getArmy(id);
+			default:       return store.getType(id);
+			}
+		} // end of()
+	} // end enum Attribute
+
+	/** A compiled expression. */
+	@FunctionalInterface
+	private interface Value { double of(ActorStore store, int id); }
+	/** A compiled condition. */
+	@FunctionalInterface
+	private interface Condition { boolean test(ActorStore store, int id); }
+
+	private final String command;
+	private final Condition where;
+	/** assigned attributes and their values, in the order written; empty for <b>count</b> */
+	private final Attribute[] targets;
+	private final Value[] values;
+
+	private BulkEdit(String command, Condition where, Attribute[] targets, Value[] values) {
+		this.command = command;
+		this.where = where;
+		this.targets = targets;
+		this.values = values;
+	} // end Constructor
+
+	/**
+	 * @param command text of the command
+	 * @param archetypes registry whose names may appear in the command
+	 * @return the compiled command
+	 * @throws IllegalArgumentException if the command is not valid, naming the position of the error
+	 */
+	public static BulkEdit compile(String command, ArchetypeRegistry archetypes) {
+		return new Parser(command, archetypes).parseCommand();
+	} // end compile()
+
+	/** @return true for <b>count</b>, which changes nothing */
+	public boolean isCount() { return targets.length == 0; }
+
+	/**
+	 * Applies the command to every live actor of <i>battle</i> (not ghosts) that meets its condition. Actors whose health is set to 0 or below die, as with <i>Battle.setHealth()</i>. Call between ticks.
+	 * @return number of actors that met the condition (and were edited, for <b>set</b>)
+	 */
+	public long apply(Battle battle) {
+		final ActorStore store = battle.getStore();
+		final int size = store.size();
+		long matched = IntStream.range(0, (size + CHUNK - 1) / CHUNK).parallel().mapToLong(chunk -> applyChunk(store, chunk * CHUNK, Math.min(size, (chunk + 1) * CHUNK), battle.getWidth(), battle.getHeight())).sum();
+		for (Attribute target : targets) {
+			if (target == Attribute.HEALTH) {
+				battle.settleDeaths();
+				break;
+			}
+		}
+		return matched;
+	} // end apply()
+
+	/** Applies the command to ids <i>from</i> to <i>to</i>-1. */
+	private long applyChunk(ActorStore store, int from, int to, double width, double height) {
+		double[] results = new double[targets.length];
+		long matched = 0L;
+		for (int id = from; id < to; ++id) {
+			if (!store.isAlive(id) || store.isGhost(id) || (where != null && !where.test(store, id)))
+				continue;
+			++matched;
+			if (targets.length == 0)
+				continue;
+			for (int i = 0; i < targets.length; ++i)
+				results[i] = values[i].of(store, id); // every value is computed before any is assigned
+			for (int i = 0; i < targets.length; ++i) {
+				switch (targets[i]) {
+				case X:        store.setX(id, Math.max(0.0, Math.min(width, results[i]))); break;
+				case Y:        store.setY(id, Math.max(0.0, Math.min(height, results[i]))); break;
+				case HEALTH:   store.setHealth(id, results[i]); break;
+				case STRENGTH: store.setStrength(id, results[i]); break;
+				case SPEED:    store.setSpeed(id, results[i]); break;
+				default:       store.setSpecial(id, results[i]); break;
+				}
+			}
+			store.refreshTargetable(id); // special can change visibility
+		}
+		return matched;
+	} // end applyChunk()
+
+	@Override
+	public String toString() { return command; }
+
+	/** Recursive-descent parser of one command. */
+	private static final class Parser {
+		private final String text;
+		private final ArchetypeRegistry archetypes;
+		private final List<String> tokens = new ArrayList<>();
+		private final List<Integer> positions = new ArrayList<>();
+		private int next;
+
+		Parser(String text, ArchetypeRegistry archetypes) {
+			this.text = text;
+			this.archetypes = archetypes;
+			tokenize();
+		} // end Constructor
+
+		private void tokenize() {
+			int i = 0;
+			while (i < text.length()) {
+				char c = text.charAt(i);
+				int start = i;
+				if (Character.isWhitespace(c)) {
+					++i;
+					continue;
+				}
+				if (Character.isDigit(c) || (c == '.' && i + 1 < text.length() && Character.isDigit(text.charAt(i + 1)))) {
+					while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.'))
+						++i;
+				} else if (Character.isLetter(c) || c == '_') {
+					while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_'))
+						++i;
+				} else if ((c == '<' || c == '>' || c == '!') && i + 1 < text.length() && text.charAt(i + 1) == '=' || c == '<' && i + 1 < text.length() && text.charAt(i + 1) == '>') {
+					i += 2;
+				} else if ("=<>+-*/(),".indexOf(c) >= 0) {
+					++i;
+				} else
+					throw error("Unexpected '" + c + "'", start);
+				tokens.add(text.substring(start, i));
+				positions.add(start);
+			}
+		} // end tokenize()
+
+		private IllegalArgumentException error(String message, int position) {
+			return new IllegalArgumentException(String.format("%s at position %d in: %s", message, position + 1, text));
+		} // end error()
+
+		private IllegalArgumentException error(String message) {
+			return error(message, next < positions.size() ? positions.get(next) : text.length());
+		} // end error()
+
+		private String peek() { return next < tokens.size() ? tokens.get(next) : ""; }
+
+		private boolean accept(String token) {
+			if (peek().equalsIgnoreCase(token)) {
+				++next;
+				return true;
+			}
+			return false;
+		} // end accept()
+
+		private void expect(String token) {
+			if (!accept(token))
+				throw error("Expected '" + token + "'");
+		} // end expect()
+
+		BulkEdit parseCommand() {
+			List<Attribute> targets = new ArrayList<>();
+			List<Value> values = new ArrayList<>();
+			if (accept("set")) {
+				do {
+					Attribute target = attribute(peek());
+					if (target == null || !target.isAssignable())
+						throw error("Expected one of x, y, health, strength, speed, special");
+					++next;
+					expect("=");
+					targets.add(target);
+					values.add(parseExpression());
+				} while (accept(","));
+			} else if (!accept("count"))
+				throw error("Expected 'set' or 'count'");
+			Condition where = accept("where") ? parseCondition() : null;
+			if (next < tokens.size())
+				throw error("Unexpected '" + peek() + "'");
+			return new BulkEdit(text.trim(), where, targets.toArray(new Attribute[0]), values.toArray(new Value[0]));
+		} // end parseCommand()
+
+		private Condition parseCondition() {
+			Condition condition = parseConjunction();
+			while (accept("or")) {
+				Condition left = condition, right = parseConjunction();
+				condition = (store, id) -> left.test(store, id) || right.test(store, id);
+			}
+			return condition;
+		} // end parseCondition()
+
+		private Condition parseConjunction() {
+			Condition condition = parseNegation();
+			while (accept("and")) {
+				Condition left = condition, right = parseNegation();
+				condition = (store, id) -> left.test(store, id) && right.test(store, id);
+			}
+			return condition;
+		} // end parseConjunction()
+
+		private Condition parseNegation() {
+			if (accept("not")) {
+				Condition negated = parseNegation();
+				return (store, id) -> !negated.test(store, id);
+			}
+			if (peek().equals("(")) { // a parenthesized condition, unless it turns out to open an expression, as in (health + 1) > 5
+				int start = next;
+				try {
+					++next;
+					Condition condition = parseCondition();
+					expect(")");
+					if (!isOperator(peek()))
+						return condition;
+				} catch (IllegalArgumentException e) {
+					// not a condition: parse again as a comparison
+				}
+				next = start;
+			}
+			return parseComparison();
+		} // end parseNegation()
+
+		private static boolean isOperator(String token) {
+			return token.length() > 0 && "=<>!+-*/".indexOf(token.charAt(0)) >= 0;
+		} // end isOperator()
+
+		private Condition parseComparison() {
+			Value left = parseExpression();
+			String operator = peek();
+			++next;
+			Value right = parseExpression();
+			switch (operator) {
+			case "=":  return (store, id) -> left.of(store, id) == right.of(store, id);
+			case "!=":
+			case "<>": return (store, id) -> left.of(store, id) != right.of(store, id);
+			case "<":  return (store, id) -> left.of(store, id) < right.of(store, id);
+			case "<=": return (store, id) -> left.of(store, id) <= right.of(store, id);
+			case ">":  return (store, id) -> left.of(store, id) > right.of(store, id);
+			case ">=": return (store, id) -> left.of(store, id) >= right.of(store, id);
+			default:
+				--next;
+				throw error("Expected a comparison");
+			}
+		} // end parseComparison()
+
+		private Value parseExpression() {
+			Value value = parseTerm();
+			for (;;) {
+				if (accept("+")) {
+					Value left = value, right = parseTerm();
+					value = (store, id) -> left.of(store, id) + right.of(store, id);
+				} else if (accept("-")) {
+					Value left = value, right = parseTerm();
+					value = (store, id) -> left.of(store, id) - right.of(store, id);
+				} else
+					return value;
+			}
+		} // end parseExpression()
+
+		private Value parseTerm() {
+			Value value = parseFactor();
+			for (;;) {
+				if (accept("*")) {
+					Value left = value, right = parseFactor();
+					value = (store, id) -> left.of(store, id) * right.of(store, id);
+				} else if (accept("/")) {
+					Value left = value, right = parseFactor();
+					value = (store, id) -> left.of(store, id) / right.of(store, id);
+				} else
+					return value;
+			}
+		} // end parseTerm()
+
+		private Value parseFactor() {
+			if (accept("-")) {
+				Value negated = parseFactor();
+				return (store, id) -> -negated.of(store, id);
+			}
+			if (accept("(")) {
+				Value value = parseExpression();
+				expect(")");
+				return value;
+			}
+			String token = peek();
+			if (token.isEmpty())
+				throw error("Expected a number, attribute or archetype");
+			if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.') {
+				final double number;
+				try {
+					number = Double.parseDouble(token);
+				} catch (NumberFormatException e) {
+					throw error("Bad number '" + token + "'");
+				}
+				++next;
+				return (store, id) -> number;
+			}
+			if (!Character.isLetter(token.charAt(0)) && token.charAt(0) != '_')
+				throw error("Expected a number, attribute or archetype");
+			Attribute attribute = attribute(token);
+			if (attribute != null) {
+				++next;
+				return attribute::of;
+			}
+			final double type;
+			try {
+				type = archetypes.get(token).getId();
+			} catch (IllegalArgumentException e) {
+				throw error("Unknown attribute or archetype '" + token + "'");
+			}
+			++next;
+			return (store, id) -> type;
+		} // end parseFactor()
+
+		private static Attribute attribute(String token) {
+			for (Attribute attribute : Attribute.values())
+				if (attribute.name().equals(token.toUpperCase(Locale.ROOT)))
+					return attribute;
+			return null;
+		} // end attribute()
+	} // end class Parser
+} // end class BulkEdit
@@ -0,0 +1,166 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * A calendar queue (R. Brown, 1988) of pending actions, at most one per actor id, ordered by time and then by id.
+ * Time is divided into "days" of <i>width</i> seconds and the days of one "year" map onto a ring of buckets, like the days of a desk calendar; each bucket is a short list sorted by time.
+ * <i>poll()</i> looks at today's bucket first and moves forward a day at a time, so with the bucket width matched to the spacing of the events both <i>add()</i> and <i>poll()</i> take constant time on average.
+ * The ring is resized (and the width re-estimated from the pending events) whenever the number of events doubles or halves.
+ * <p>The lists are intrusive: links and times live in arrays indexed by id, so scheduling an actor allocates nothing and <i>remove()</i> (e.g. when an actor dies) takes constant time.
+ * Each event records its absolute day number, and an event is taken only when its day is reached, so rounding can never release a later event before an earlier one.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle#runEvents(double)
+ */
+public final class CalendarQueue {
+	private static final int MIN_BUCKETS = 16;
+
+	/** scheduled time of each id; meaningful only while <i>contains(id)</i> */
+	private double[] time = new double[0];
+	/** absolute day of each scheduled id: floor(time / width) */
+	private long[] day = new long[0];
+	/** links of the sorted bucket lists; -1 ends a list */
+	private int[] next = new int[0], previous = new int[0];
+	/** bucket holding each id, or -1 if it is not scheduled */
+	private int[] bucketOf = new int[0];
+	private int[] head = new int[MIN_BUCKETS];
+	private double width = 1.0;
+	private int size;
+	/** day being searched by <i>poll()</i> */
+	private long currentDay;
+
+	public CalendarQueue() {
+		Arrays.fill(head, -1);
+	} // end Constructor
+
+	public int size() { return size; }
+	public boolean isEmpty() { return size == 0; }
+	public boolean contains(int id) { return id < bucketOf.length && bucketOf[id] >= 0; }
+
+	/** @return time at which <i>id</i> is scheduled; only valid if <i>contains(id)</i> */
+	public double getTime(int id) { return time[id]; }
+
+	/**
+	 * Schedules <i>id</i> at <i>when</i>, replacing its pending event if it has one.
+	 * @param id actor id (any non-negative int; the arrays grow as needed)
+	 * @param when time of the event
+	 */
+	public void add(int id, double when) {
+		if (contains(id))
+			remove(id);
+		if (id >= bucketOf.length) {
+			int capacity = Math.max(id + 1, bucketOf.length * 2);
+			time = Arrays.copyOf(time, capacity);
+			day = Arrays.copyOf(day, capacity);
+			next = Arrays.copyOf(next, capacity);
+			previous = Arrays.copyOf(previous, capacity);
+			int oldLength = bucketOf.length;
+			bucketOf = Arrays.copyOf(bucketOf, capacity);
+			Arrays.fill(bucketOf, oldLength, capacity, -1);
+		}
+		time[id] = when;
+		link(id);
+		if (++size > 2 * head.length)
+			resize(head.length * 2);
+	} // end add()
+
+	/** Files a scheduled id in the bucket of its day, keeping the bucket sorted. */
+	private void link(int id) {
+		long eventDay = (long) Math.floor(time[id] / width);
+		day[id] = eventDay;
+		if (eventDay < currentDay || size == 0)
+			currentDay = eventDay; // earlier than anything pending: start the next search from here
+		int bucket = (int) (eventDay & (head.length - 1));
+		bucketOf[id] = bucket;
+		int before = -1, after = head[bucket];
+		while (after >= 0 && !earlier(id, after)) {
+			before = after;
+			after = next[after];
+		}
+		previous[id] = before;
+		next[id] = after;
+		if (before >= 0)
+			next[before] = id;
+		else
+			head[bucket] = id;
+		if (after >= 0)
+			previous[after] = id;
+	} // end link()
+
+	private boolean earlier(int a, int b) { return time[a] < time[b] || (time[a] == time[b] && a < b); }
+
+	/**
+	 * Cancels the pending event of <i>id</i>, if any.
+	 * @param id actor id
+	 */
+	public void remove(int id) {
+		if (!contains(id))
+			return;
+		unlink(id);
+		if (--size < head.length / 2 && head.length > MIN_BUCKETS)
+			resize(head.length / 2);
+	} // end remove()
+
+	private void unlink(int id) {
+		if (previous[id] >= 0)
+			next[previous[id]] = next[id];
+		else
+			head[bucketOf[id]] = next[id];
+		if (next[id] >= 0)
+			previous[next[id]] = previous[id];
+		bucketOf[id] = -1;
+	} // end unlink()
+
+	/** @return the id with the earliest event (lowest id first among equal times), or -1 if the queue is empty; the event stays scheduled */
+	public int peek() {
+		if (size == 0)
+			return -1;
+		final int mask = head.length - 1;
+		for (int n = 0; n < head.length; ++n, ++currentDay) {
+			int first = head[(int) (currentDay & mask)];
+			if (first >= 0 && day[first] <= currentDay)
+				return first;
+		}
+		// a whole year without an event: jump straight to the earliest one
+		int earliest = -1;
+		for (int first : head)
+			if (first >= 0 && (earliest < 0 || earlier(first, earliest)))
+				earliest = first;
+		currentDay = day[earliest];
+		return earliest;
+	} // end peek()
+
+	/** @return the id with the earliest event, now unscheduled, or -1 if the queue is empty */
+	public int poll() {
+		int id = peek();
+		if (id >= 0)
+			remove(id);
+		return id;
+	} // end poll()
+
+	/** Re-files every pending event in a ring of <i>buckets</i> buckets, with the day width set to the average spacing of the events. */
+	private void resize(int buckets) {
+		int[] pending = new int[size];
+		int count = 0;
+		double earliest = Double.MAX_VALUE, latest = -Double.MAX_VALUE;
+		for (int first : head)
+			for (int id = first; id >= 0; id = next[id]) {
+				pending[count++] = id;
+				earliest = Math.min(earliest, time[id]);
+				latest = Math.max(latest, time[id]);
+			}
+		if (count > 1 && latest > earliest)
+			width = 3.0 * (latest - earliest) / count; // about three events a day keeps the lists short without too many empty days
+		head = new int[buckets];
+		Arrays.fill(head, -1);
+		int pendingSize = size;
+		size = 0;
+		for (int i = 0; i < count; ++i) {
+			link(pending[i]);
+			++size;
+		}
+		size = pendingSize;
+	} // end resize()
+} // end class CalendarQueue
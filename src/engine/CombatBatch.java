@@ -0,0 +1,102 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The combat rounds of one tick, collected as pairs so they can be resolved together instead of one <i>combatRound()</i> at a time.
+ * <i>add()</i> makes every random draw of <i>Actor.combatRound()</i> for the pair, in the same order, so the resolution itself is pure arithmetic on arrays:
+ * the hit points of both sides, the proportion that decides the winner, and the health change of each side.
+ * Every pair is resolved from the health the actors had when the batch was collected, and the changes are then added in pair order, so a batch gives the same result however its arithmetic is carried out.
+ * Both resolutions first gather the strength and health of each side into contiguous arrays, so the arithmetic reads every input with unit stride.
+ * <i>resolveScalar()</i> is the plain loop; <i>VectorCombatKernel</i> computes the same values several pairs at a time with the Vector API when the <i>jdk.incubator.vector</i> module is present.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle.Combat
+ * @see VectorCombatKernel
+ */
+final class CombatBatch {
+	/** Same values as the constants in <i>Actor</i>. */
+	static final double MAX_COMBAT_HEALTH_REDUCTION_OF_LOOSER = 10.0, MAX_COMBAT_HEALTH_REDUCTION_OF_WINNER = 3.0;
+
+	int size;
+	int[] attacker = new int[0], defender = new int[0];
+	/** the draws of <i>Actor.combatRound()</i>, in the order it makes them */
+	double[] looserDraw = new double[0], winnerDraw = new double[0], attackerDraw = new double[0], attackerSecondDraw = new double[0], defenderDraw = new double[0], outcomeDraw = new double[0];
+	/** strength and health of each side, gathered by <i>gather()</i> */
+	double[] attackerStrength = new double[0], attackerHealth = new double[0], defenderStrength = new double[0], defenderHealth = new double[0];
+	/** results: health change of each side */
+	double[] attackerChange = new double[0], defenderChange = new double[0];
+
+	void clear() { size = 0; }
+
+	/**
+	 * Adds one combat round and makes its random draws.
+	 * @param attacker actor playing the role of <i>this</i> in <i>combatRound()</i>
+	 * @param defender its opponent
+	 * @param random the battle's combat sequence
+	 */
+	void add(int attacker, int defender, Random random) {
+		if (size == this.attacker.length) {
+			int capacity = Math.max(64, size * 2);
+			this.attacker = Arrays.copyOf(this.attacker, capacity);
+			this.defender = Arrays.copyOf(this.defender, capacity);
+			looserDraw = Arrays.copyOf(looserDraw, capacity);
+			winnerDraw = Arrays.copyOf(winnerDraw, capacity);
+			attackerDraw = Arrays.copyOf(attackerDraw, capacity);
+			attackerSecondDraw = Arrays.copyOf(attackerSecondDraw, capacity);
+			defenderDraw = Arrays.copyOf(defenderDraw, capacity);
+			outcomeDraw = Arrays.copyOf(outcomeDraw, capacity);
+			attackerStrength = Arrays.copyOf(attackerStrength, capacity);
+			attackerHealth = Arrays.copyOf(attackerHealth, capacity);
+			defenderStrength = Arrays.copyOf(defenderStrength, capacity);
+			defenderHealth = Arrays.copyOf(defenderHealth, capacity);
+			attackerChange = Arrays.copyOf(attackerChange, capacity);
+			defenderChange = Arrays.copyOf(defenderChange, capacity);
+		}
+		this.attacker[size] = attacker;
+		this.defender[size] = defender;
+		looserDraw[size] = random.nextDouble();
+		winnerDraw[size] = random.nextDouble();
+		attackerDraw[size] = random.nextDouble();
+		attackerSecondDraw[size] = random.nextDouble();
+		defenderDraw[size] = random.nextDouble();
+		outcomeDraw[size] = random.nextDouble();
+		++size;
+	} // end add()
+
+	/** Copies the strength and health of both sides of every pair out of the store. */
+	void gather(ActorStore store) {
+		for (int i = 0; i < size; ++i) {
+			int a = attacker[i], d = defender[i];
+			attackerStrength[i] = store.getStrength(a);
+			attackerHealth[i] = store.getHealth(a);
+			defenderStrength[i] = store.getStrength(d);
+			defenderHealth[i] = store.getHealth(d);
+		}
+	} // end gather()
+
+	/** Fills <i>attackerChange</i> and <i>defenderChange</i> one pair at a time, with the arithmetic of <i>Actor.combatRound()</i>. */
+	void resolveScalar(ActorStore store) {
+		gather(store);
+		resolveScalar(0, size);
+	} // end resolveScalar()
+
+	/** Scalar resolution of gathered pairs <i>from</i> to <i>to</i>-1; also finishes the pairs left over by the vector loop. */
+	void resolveScalar(int from, int to) {
+		for (int i = from; i < to; ++i) {
+			double healthAdjustmentOfLooser = -(looserDraw[i] * MAX_COMBAT_HEALTH_REDUCTION_OF_LOOSER) - 1.0;
+			double healthAdjustmentOfWinner = -(winnerDraw[i] * MAX_COMBAT_HEALTH_REDUCTION_OF_WINNER) + 1.0;
+			double attackerHitPoints = attackerStrength[i] + attackerHealth[i] * .5 * attackerDraw[i];
+			double proportionHitPoints = attackerHitPoints / ((attackerStrength[i] + attackerHealth[i] * .5 * attackerSecondDraw[i]) + (defenderStrength[i] + defenderHealth[i] * .5 * defenderDraw[i]));
+			if (outcomeDraw[i] > proportionHitPoints) {
+				attackerChange[i] = healthAdjustmentOfLooser;
+				defenderChange[i] = healthAdjustmentOfWinner;
+			} else {
+				attackerChange[i] = healthAdjustmentOfWinner;
+				defenderChange[i] = healthAdjustmentOfLooser;
+			}
+		}
+	} // end resolveScalar()
+} // end class CombatBatch
@@ -0,0 +1,206 @@
+package engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+
+import actor.ArchetypeRegistry;
+
+/**
+ * Where and how a battle is decided, aggregated as combat happens into counters and grids of fixed size: nothing is kept per event, so the cost of recording and the memory used do not grow with the length of the battle.
+ * <ul>
+ * <li>kills by killer type and victim type (the <i>Archetype</i> ids of a registry);</li>
+ * <li>a heatmap over square cells of the battlefield of the combat rounds fought there and of the deaths;</li>
+ * <li>a timeline of the health lost in combat and of the deaths, in {@value #TIMELINE_LENGTH} buckets: when the battle outlasts them, neighbouring buckets are merged and each covers twice as long.</li>
+ * </ul>
+ * Both the headless <i>Battle</i> (see <i>Battle.setStatistics()</i>) and the JavaFX <i>Simulator</i> record into it; <i>export()</i> writes it out as CSV files at the end of a battle.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see simulator.HeatmapOverlay
+ */
+public final class CombatStatistics {
+	/** Default side of a heatmap cell: {@value} */
+	public static final double DEFAULT_CELL_SIZE = 25.0;
+	/** Buckets of the timeline: {@value} */
+	public static final int TIMELINE_LENGTH = 256;
+	/** Seconds covered by a timeline bucket until the first merge: {@value} */
+	public static final double INITIAL_BUCKET_SECONDS = 1.0;
+
+	private final ArchetypeRegistry archetypes;
+	private final double cellSize;
+	private final int columns, rows;
+	private final int[] combat, deaths;
+	private int maxCombat, maxDeaths;
+	/** kills[killer * types + victim] */
+	private final long[] kills;
+	/** deaths whose killer is unknown (damage from elsewhere, or an edit), by victim type */
+	private final long[] otherDeaths;
+	private final double[] damageTaken;
+	private final double[] timelineDamage = new double[TIMELINE_LENGTH];
+	private final int[] timelineDeaths = new int[TIMELINE_LENGTH];
+	private double bucketSeconds = INITIAL_BUCKET_SECONDS;
+	/** buckets in use */
+	private int timelineSize;
+	private long rounds;
+	private double totalDamage;
+
+	/**
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 * @param cellSize side of each square heatmap cell
+	 * @param archetypes registry whose archetype ids the types are
+	 */
+	public CombatStatistics(double width, double height, double cellSize, ArchetypeRegistry archetypes) {
+		this.archetypes = archetypes;
+		this.cellSize = cellSize;
+		columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		combat = new int[columns * rows];
+		deaths = new int[columns * rows];
+		kills = new long[archetypes.size() * archetypes.size()];
+		otherDeaths = new long[archetypes.size()];
+		damageTaken = new double[archetypes.size()];
+	} // end Constructor
+
+	/** Forgets everything recorded. */
+	public void clear() {
+		Arrays.fill(combat, 0); Arrays.fill(deaths, 0);
+		maxCombat = maxDeaths = 0;
+		Arrays.fill(kills, 0L); Arrays.fill(otherDeaths, 0L); Arrays.fill(damageTaken, 0.0);
+		Arrays.fill(timelineDamage, 0.0); Arrays.fill(timelineDeaths, 0);
+		bucketSeconds = INITIAL_BUCKET_SECONDS;
+		timelineSize = 0;
+		rounds = 0L;
+		totalDamage = 0.0;
+	} // end clear()
+
+	/**
+	 * Records one combat round.
+	 * @param attackerType archetype id of the actor that started the round
+	 * @param defenderType archetype id of its opponent
+	 * @param x where the round was fought
+	 * @param y where the round was fought
+	 * @param attackerHealthChange change of the attacker's health; only losses count as damage
+	 * @param defenderHealthChange change of the defender's health
+	 * @param time seconds since the battle started
+	 */
+	public void recordRound(int attackerType, int defenderType, double x, double y, double attackerHealthChange, double defenderHealthChange, double time) {
+		int cell = cell(x, y);
+		if (++combat[cell] > maxCombat)
+			maxCombat = combat[cell];
+		double attackerDamage = Math.max(0.0, -attackerHealthChange), defenderDamage = Math.max(0.0, -defenderHealthChange);
+		damageTaken[attackerType] += attackerDamage;
+		damageTaken[defenderType] += defenderDamage;
+		totalDamage += attackerDamage + defenderDamage;
+		timelineDamage[bucket(time)] += attackerDamage + defenderDamage;
+		++rounds;
+	} // end recordRound()
+
+	/**
+	 * Records a death.
+	 * @param victimType archetype id of the actor that died
+	 * @param killerType archetype id of the actor that killed it, or -1 if there was none
+	 * @param x where it died
+	 * @param y where it died
+	 * @param time seconds since the battle started
+	 */
+	public void recordDeath(int victimType, int killerType, double x, double y, double time) {
+		int cell = cell(x, y);
+		if (++deaths[cell] > maxDeaths)
+			maxDeaths = deaths[cell];
+		if (killerType >= 0)
+			++kills[killerType * archetypes.size() + victimType];
+		else
+			++otherDeaths[victimType];
+		++timelineDeaths[bucket(time)];
+	} // end recordDeath()
+
+	private int cell(double x, double y) {
+		int column = Math.min(columns - 1, Math.max(0, (int) (x / cellSize)));
+		int row = Math.min(rows - 1, Math.max(0, (int) (y / cellSize)));
+		return row * columns + column;
+	} // end cell()
+
+	/** @return the timeline bucket of <i>time</i>, merging buckets until it fits */
+	private int bucket(double time) {
+		int bucket = (int) (Math.max(0.0, time) / bucketSeconds);
+		while (bucket >= TIMELINE_LENGTH) {
+			for (int i = 0; i < TIMELINE_LENGTH / 2; ++i) {
+				timelineDamage[i] = timelineDamage[2 * i] + timelineDamage[2 * i + 1];
+				timelineDeaths[i] = timelineDeaths[2 * i] + timelineDeaths[2 * i + 1];
+			}
+			Arrays.fill(timelineDamage, TIMELINE_LENGTH / 2, TIMELINE_LENGTH, 0.0);
+			Arrays.fill(timelineDeaths, TIMELINE_LENGTH / 2, TIMELINE_LENGTH, 0);
+			bucketSeconds *= 2.0;
+			timelineSize = (timelineSize + 1) / 2;
+			bucket = (int) (time / bucketSeconds);
+		}
+		timelineSize = Math.max(timelineSize, bucket + 1);
+		return bucket;
+	} // end bucket()
+
+	public double getCellSize() { return cellSize; }
+	public int getColumns() { return columns; }
+	public int getRows() { return rows; }
+	/** @return combat rounds fought in the cell */
+	public int getCombat(int column, int row) { return combat[row * columns + column]; }
+	/** @return deaths in the cell */
+	public int getDeaths(int column, int row) { return deaths[row * columns + column]; }
+	/** @return most combat rounds fought in any one cell */
+	public int getMaxCombat() { return maxCombat; }
+	/** @return most deaths in any one cell */
+	public int getMaxDeaths() { return maxDeaths; }
+	/** @return actors of type <i>victimType</i> killed by actors of type <i>killerType</i> */
+	public long getKills(int killerType, int victimType) { return kills[killerType * archetypes.size() + victimType]; }
+	/** @return actors of the type that died with no killer (damage from elsewhere, or an edit) */
+	public long getOtherDeaths(int victimType) { return otherDeaths[victimType]; }
+	/** @return health lost in combat by actors of the type */
+	public double getDamageTaken(int type) { return damageTaken[type]; }
+	public long getRounds() { return rounds; }
+	/** @return health lost in combat by both sides of every round */
+	public double getTotalDamage() { return totalDamage; }
+	/** @return timeline buckets in use */
+	public int getTimelineSize() { return timelineSize; }
+	/** @return seconds covered by each timeline bucket */
+	public double getBucketSeconds() { return bucketSeconds; }
+	/** @return health lost in combat during the bucket */
+	public double getTimelineDamage(int bucket) { return timelineDamage[bucket]; }
+	/** @return deaths during the bucket */
+	public int getTimelineDeaths(int bucket) { return timelineDeaths[bucket]; }
+
+	/**
+	 * Writes three CSV files into <i>directory</i>, creating it if needed: <i>kills.csv</i> (killer type, victim type, kills; plus the damage taken and unattributed deaths per type), <i>timeline.csv</i> (start, damage, deaths per bucket) and <i>heatmap.csv</i> (column, row, x, y, rounds, deaths per cell with any).
+	 */
+	public void export(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("kills.csv"))) {
+			out.write("killer,victim,kills\n");
+			for (int killer = 0; killer < archetypes.size(); ++killer)
+				for (int victim = 0; victim < archetypes.size(); ++victim)
+					if (getKills(killer, victim) > 0)
+						out.write(String.format(Locale.ROOT, "%s,%s,%d%n", archetypes.get(killer).getName(), archetypes.get(victim).getName(), getKills(killer, victim)));
+			for (int type = 0; type < archetypes.size(); ++type)
+				if (otherDeaths[type] > 0)
+					out.write(String.format(Locale.ROOT, "%s,%s,%d%n", "NONE", archetypes.get(type).getName(), otherDeaths[type]));
+			out.write("\ntype,damageTaken\n");
+			for (int type = 0; type < archetypes.size(); ++type)
+				out.write(String.format(Locale.ROOT, "%s,%.3f%n", archetypes.get(type).getName(), damageTaken[type]));
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("timeline.csv"))) {
+			out.write("startSeconds,damage,deaths\n");
+			for (int bucket = 0; bucket < timelineSize; ++bucket)
+				out.write(String.format(Locale.ROOT, "%.3f,%.3f,%d%n", bucket * bucketSeconds, timelineDamage[bucket], timelineDeaths[bucket]));
+		}
+		try (BufferedWriter out = Files.newBufferedWriter(directory.resolve("heatmap.csv"))) {
+			out.write("column,row,x,y,rounds,deaths\n");
+			for (int row = 0; row < rows; ++row)
+				for (int column = 0; column < columns; ++column)
+					if (getCombat(column, row) > 0 || getDeaths(column, row) > 0)
+						out.write(String.format(Locale.ROOT, "%d,%d,%.1f,%.1f,%d,%d%n", column, row, column * cellSize, row * cellSize, getCombat(column, row), getDeaths(column, row)));
+		}
+	} // end export()
+} // end class CombatStatistics
@@ -0,0 +1,221 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import actor.ActorFactory;
+
+/**
+ * Searches for the <i>Forces of Light</i> composition with the best win rate against a fixed <i>Forces of Darkness</i>.
+ * Every composition within the per-type budget is a candidate. Candidates are evaluated in parallel, one thread per core, by running headless <i>Battle</i> objects.
+ * Two shortcuts keep the search fast:
+ * <ul><li>a battle is abandoned as soon as one side outnumbers the other by <i>decisiveRatio</i> (the stronger side is scored as the winner), or when <i>maxTicks</i> elapse (the side with more total health is scored as the winner);</li>
+ * <li>after <i>minBattles</i> battles, a candidate is dropped as soon as the upper confidence bound of its win rate falls below the win rate of the incumbent (the best candidate that has completed all <i>maxBattles</i> battles so far).</li></ul>
+ * Battle seeds depend only on the candidate and the battle number, so results can be reproduced.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle
+ */
+public class CompositionOptimizer {
+	/** Concrete actor types (every <i>ActorFactory.Type</i> except <b>RANDOM</b>). */
+	private static final ActorFactory.Type[] TYPES = Arrays.copyOf(ActorFactory.Type.values(), ActorFactory.numTypes - 1);
+	/** Ticks between checks for an early decision: one simulated second. */
+	private static final int DECISION_CHECK_INTERVAL = 20;
+
+	private final int[] budget = new int[TYPES.length];
+	private final int[] darkness = new int[TYPES.length];
+	private int minBattles = 10;
+	private int maxBattles = 100;
+	private long maxTicks = 20 * 60 * 10; // ten simulated minutes
+	private double decisiveRatio = 3.0;
+	/** z-score of the one-sided confidence bound used by the sequential test; 2.576 gives a 0.5% chance of wrongly dropping a candidate at any single look. */
+	private double confidenceZ = 2.576;
+	private long seed = 1L;
+
+	/** Best candidate that has completed all of its battles; shared by the worker threads. */
+	private Candidate incumbent;
+
+	/**
+	 * A <i>Forces of Light</i> composition and the battle results gathered for it so far.
+	 */
+	public static final class Candidate {
+		private final int[] counts;
+		private int battles, wins;
+		private boolean droppedEarly;
+
+		private Candidate(int[] counts) { this.counts = counts; }
+
+		/** @return number of actors of the given type in this composition */
+		public int getCount(ActorFactory.Type type) { return counts[type.ordinal()]; }
+		public int getBattles() { return battles; }
+		public int getWins() { return wins; }
+		/** @return true if the sequential test stopped this candidate before <i>maxBattles</i> */
+		public boolean isDroppedEarly() { return droppedEarly; }
+		public double getWinRate() { return battles == 0 ? 0.0 : (double) wins / battles; }
+
+		/** Upper end of the Wilson score interval for the win rate. */
+		double upperBound(double z) {
+			if (battles == 0)
+				return 1.0;
+			double n = battles, p = getWinRate(), z2 = z * z;
+			return (p + z2 / (2 * n) + z * Math.sqrt(p * (1 - p) / n + z2 / (4 * n * n))) / (1 + z2 / n);
+		} // end upperBound()
+
+		@Override
+		public String toString() {
+			StringBuilder composition = new StringBuilder();
+			for (ActorFactory.Type type : TYPES)
+				composition.append(String.format("%s:%-3d ", type, counts[type.ordinal()]));
+			return String.format("%sWin Rate:%5.1f%% (%d/%d)%s", composition, 100.0 * getWinRate(), wins, battles, droppedEarly ? " dropped" : "");
+		} // end toString()
+	} // end class Candidate
+
+	/**
+	 * @param budget maximum number of actors of each type the <i>Forces of Light</i> may field
+	 * @param darkness fixed composition of the <i>Forces of Darkness</i>
+	 */
+	public CompositionOptimizer(Map<ActorFactory.Type, Integer> budget, Map<ActorFactory.Type, Integer> darkness) {
+		for (Map.Entry<ActorFactory.Type, Integer> entry : budget.entrySet())
+			this.budget[concrete(entry.getKey())] = entry.getValue();
+		for (Map.Entry<ActorFactory.Type, Integer> entry : darkness.entrySet())
+			this.darkness[concrete(entry.getKey())] = entry.getValue();
+	} // end Constructor
+
+	private static int concrete(ActorFactory.Type type) {
+		if (type == ActorFactory.Type.RANDOM)
+			throw new IllegalArgumentException("Compositions are built from concrete types, not RANDOM");
+		return type.ordinal();
+	} // end concrete()
+
+	public void setMinBattles(int minBattles) { this.minBattles = minBattles; }
+	public void setMaxBattles(int maxBattles) { this.maxBattles = maxBattles; }
+	public void setMaxTicks(long maxTicks) { this.maxTicks = maxTicks; }
+	public void setDecisiveRatio(double decisiveRatio) { this.decisiveRatio = decisiveRatio; }
+	public void setConfidenceZ(double confidenceZ) { this.confidenceZ = confidenceZ; }
+	public void setSeed(long seed) { this.seed = seed; }
+
+	/**
+	 * Evaluates every non-empty composition within the budget.
+	 * @param threads number of worker threads
+	 * @return all candidates, best first: candidates that completed their battles are ranked by win rate, ahead of those dropped early
+	 */
+	public List<Candidate> optimize(int threads) throws InterruptedException {
+		List<Candidate> candidates = enumerate();
+		List<Callable<Candidate>> tasks = new ArrayList<>();
+		for (int i = 0; i < candidates.size(); ++i) {
+			final Candidate candidate = candidates.get(i);
+			final long candidateSeed = seed * 1_000_003L + i;
+			tasks.add(() -> evaluate(candidate, candidateSeed));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Candidate> future : executor.invokeAll(tasks))
+				future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		candidates.sort(Comparator.comparing(Candidate::isDroppedEarly).thenComparing(Comparator.comparingDouble(Candidate::getWinRate).reversed()));
+		return candidates;
+	} // end optimize()
+
+	/** Builds one candidate per point of the budget grid, skipping the empty army. */
+	private List<Candidate> enumerate() {
+		List<Candidate> candidates = new ArrayList<>();
+		int[] counts = new int[TYPES.length];
+		while (true) {
+			if (Arrays.stream(counts).sum() > 0)
+				candidates.add(new Candidate(counts.clone()));
+			int digit = 0; // odometer-style increment over the budget grid
+			while (digit < counts.length && ++counts[digit] > budget[digit])
+				counts[digit++] = 0;
+			if (digit == counts.length)
+				return candidates;
+		}
+	} // end enumerate()
+
+	/** Runs battles for one candidate until <i>maxBattles</i> or until the sequential test drops it. */
+	private Candidate evaluate(Candidate candidate, long candidateSeed) {
+		for (int battleNumber = 0; battleNumber < maxBattles; ++battleNumber) {
+			if (playBattle(candidate.counts, candidateSeed * 31L + battleNumber) == Battle.LIGHT)
+				++candidate.wins;
+			++candidate.battles;
+			if (candidate.battles >= minBattles && isClearlyWorse(candidate)) {
+				candidate.droppedEarly = true;
+				return candidate;
+			}
+		}
+		offerIncumbent(candidate);
+		return candidate;
+	} // end evaluate()
+
+	private synchronized boolean isClearlyWorse(Candidate candidate) {
+		return incumbent != null && candidate.upperBound(confidenceZ) < incumbent.getWinRate();
+	} // end isClearlyWorse()
+
+	private synchronized void offerIncumbent(Candidate candidate) {
+		if (incumbent == null || candidate.getWinRate() > incumbent.getWinRate())
+			incumbent = candidate;
+	} // end offerIncumbent()
+
+	/** @return index of the army scored as the winner of one (possibly abandoned) battle */
+	private int playBattle(int[] light, long battleSeed) {
+		Battle battle = new Battle(battleSeed);
+		for (ActorFactory.Type type : TYPES) {
+			battle.populate(Battle.LIGHT, type, light[type.ordinal()]);
+			battle.populate(Battle.DARKNESS, type, darkness[type.ordinal()]);
+		}
+		while (battle.getTickCount() < maxTicks) {
+			for (int i = 0; i < DECISION_CHECK_INTERVAL && !battle.isDecided(); ++i)
+				battle.tick();
+			if (battle.isDecided())
+				return battle.getWinner();
+			int lightCount = battle.getLiveCount(Battle.LIGHT), darknessCount = battle.getLiveCount(Battle.DARKNESS);
+			if (lightCount >= decisiveRatio * darknessCount)
+				return Battle.LIGHT;
+			if (darknessCount >= decisiveRatio * lightCount)
+				return Battle.DARKNESS;
+		}
+		return battle.getTotalHealth(Battle.LIGHT) > battle.getTotalHealth(Battle.DARKNESS) ? Battle.LIGHT : Battle.DARKNESS;
+	} // end playBattle()
+
+	/**
+	 * Command line entry point. Arguments are <i>TYPE=count</i> budgets for the <i>Forces of Light</i>, then the word <i>vs</i>, then <i>TYPE=count</i> for the <i>Forces of Darkness</i>; for example
+	 * <pre>java engine.CompositionOptimizer HOBBIT=10 ELF=10 WIZARD=6 vs ORC=23</pre>
+	 * With no arguments, the <i>Simulator.populate()</i> armies are used as the starting point.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Map<ActorFactory.Type, Integer> budget = new EnumMap<>(ActorFactory.Type.class), darkness = new EnumMap<>(ActorFactory.Type.class);
+		if (args.length == 0) {
+			budget.put(ActorFactory.Type.HOBBIT, 10); budget.put(ActorFactory.Type.ELF, 10); budget.put(ActorFactory.Type.WIZARD, 6);
+			darkness.put(ActorFactory.Type.ORC, 23);
+		}
+		Map<ActorFactory.Type, Integer> side = budget;
+		for (String arg : args) {
+			if (arg.equalsIgnoreCase("vs")) {
+				side = darkness;
+				continue;
+			}
+			String[] pair = arg.split("=");
+			side.put(ActorFactory.Type.valueOf(pair[0].toUpperCase()), Integer.parseInt(pair[1]));
+		}
+		CompositionOptimizer optimizer = new CompositionOptimizer(budget, darkness);
+		long start = System.nanoTime();
+		List<Candidate> ranked = optimizer.optimize(Runtime.getRuntime().availableProcessors());
+		int totalBattles = ranked.stream().mapToInt(Candidate::getBattles).sum();
+		System.out.printf("%d compositions, %d battles in %.1f s%n", ranked.size(), totalBattles, (System.nanoTime() - start) / 1e9);
+		for (Candidate candidate : ranked.subList(0, Math.min(10, ranked.size())))
+			System.out.println(candidate);
+	} // end main()
+} // end class CompositionOptimizer
@@ -0,0 +1,130 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Pushes apart actors of the same army that stand closer than a separation radius, so crowds spread out instead of stacking on the point <i>findNewLocation()</i> gave them.
+ * Every tick the actors are filed in a spatial hash (cells as wide as the radius, hashed into a table about twice the number of actors), and each actor looks for neighbours in the 3 x 3 cells around it.
+ * Each actor examines at most {@value #MAX_CANDIDATES} candidates and is pushed by at most {@value #MAX_NEIGHBOURS} neighbours, so even an army clumped on a single point costs time linear in its size.
+ * <p>All pushes of a pass are computed from the positions at the start of the pass and then applied together, so the result does not depend on the order of the actors.
+ * Soft separation removes a share of each overlap per tick; hard collision runs {@value #HARD_PASSES} passes that each remove the whole overlap, split between the two actors.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle#setSeparation(double, boolean)
+ */
+final class CrowdSeparation {
+	/** Candidates examined per actor per pass: {@value} */
+	static final int MAX_CANDIDATES = 32;
+	/** Neighbours that push one actor per pass: {@value} */
+	static final int MAX_NEIGHBOURS = 6;
+	/** Share of the overlap removed per tick by soft separation: {@value} */
+	static final double SOFT_STRENGTH = 0.25;
+	/** Passes per tick of hard collision: {@value} */
+	static final int HARD_PASSES = 2;
+	/** Golden angle, to give actors on exactly the same point distinct directions: {@value} */
+	private static final double GOLDEN_ANGLE = 2.399963229728653;
+
+	private int[] bucketStart = new int[1], bucketNext = new int[0], bucketActors = new int[0], bucketOf = new int[0];
+	private int[] cellColumn = new int[0], cellRow = new int[0];
+	private double[] pushX = new double[0], pushY = new double[0];
+	private int mask;
+
+	/**
+	 * Separates every actor owned by the store from its own army's neighbours.
+	 * @param radius distance below which two actors of the same army push each other apart
+	 * @param hard true for hard collision, false for soft separation
+	 */
+	void separate(ActorStore store, double radius, boolean hard, double width, double height) {
+		final int passes = hard ? HARD_PASSES : 1;
+		final double strength = hard ? 0.5 : 0.5 * SOFT_STRENGTH; // each actor of a pair takes half of the push
+		for (int pass = 0; pass < passes; ++pass) {
+			rebuild(store, radius);
+			push(store, radius, strength, width, height);
+		}
+	} // end separate()
+
+	/** Files every actor owned by the store in the bucket of its cell, with a counting sort. */
+	private void rebuild(ActorStore store, double radius) {
+		final int size = store.size();
+		if (bucketOf.length < size) {
+			bucketOf = new int[store.capacity()];
+			bucketActors = new int[store.capacity()];
+			cellColumn = new int[store.capacity()];
+			cellRow = new int[store.capacity()];
+			pushX = new double[store.capacity()];
+			pushY = new double[store.capacity()];
+		}
+		int buckets = Integer.highestOneBit(Math.max(16, 2 * size - 1)) << 1;
+		if (bucketStart.length != buckets + 1) {
+			bucketStart = new int[buckets + 1];
+			bucketNext = new int[buckets];
+		} else
+			Arrays.fill(bucketStart, 0);
+		mask = buckets - 1;
+		final long[] moving = store.moving;
+		for (int id = 0; id < size; ++id) {
+			if ((moving[id >>> 6] & (1L << id)) == 0L) {
+				bucketOf[id] = -1;
+				continue;
+			}
+			cellColumn[id] = (int) Math.floor(store.getX(id) / radius);
+			cellRow[id] = (int) Math.floor(store.getY(id) / radius);
+			bucketOf[id] = hash(cellColumn[id], cellRow[id]);
+			++bucketStart[bucketOf[id] + 1];
+		}
+		for (int bucket = 0; bucket < buckets; ++bucket)
+			bucketStart[bucket + 1] += bucketStart[bucket];
+		System.arraycopy(bucketStart, 0, bucketNext, 0, buckets);
+		for (int id = 0; id < size; ++id)
+			if (bucketOf[id] >= 0)
+				bucketActors[bucketNext[bucketOf[id]]++] = id;
+	} // end rebuild()
+
+	private int hash(int column, int row) { return ((column * 0x9E3779B1) ^ (row * 0x85EBCA77)) >>> 7 & mask; }
+
+	/** Computes every actor's push from the current positions, then applies them all. */
+	private void push(ActorStore store, double radius, double strength, double width, double height) {
+		final int size = store.size();
+		final double radiusSquared = radius * radius;
+		for (int id = 0; id < size; ++id) {
+			pushX[id] = pushY[id] = 0.0;
+			if (bucketOf[id] < 0)
+				continue;
+			int candidates = 0, neighbours = 0;
+			search:
+			for (int row = cellRow[id] - 1; row <= cellRow[id] + 1; ++row)
+				for (int column = cellColumn[id] - 1; column <= cellColumn[id] + 1; ++column) {
+					int bucket = hash(column, row);
+					int start = bucketStart[bucket], count = bucketStart[bucket + 1] - start;
+					for (int k = 0; k < count; ++k) {
+						if (candidates++ == MAX_CANDIDATES || neighbours == MAX_NEIGHBOURS)
+							break search;
+						int other = bucketActors[start + (k + id) % count]; // each actor starts at a different place in a crowded bucket
+						if (other == id || store.getArmy(other) != store.getArmy(id) || cellColumn[other] != column || cellRow[other] != row)
+							continue; // itself, an opponent, or another cell sharing the bucket
+						double deltaX = store.getX(id) - store.getX(other), deltaY = store.getY(id) - store.getY(other);
+						double distanceSquared = deltaX * deltaX + deltaY * deltaY;
+						if (distanceSquared >= radiusSquared)
+							continue;
+						++neighbours;
+						double distance = Math.sqrt(distanceSquared);
+						if (distance == 0.0) { // same point: split along a direction fixed by the pair
+							double angle = GOLDEN_ANGLE * (Math.min(id, other) + 1) + (id < other ? 0.0 : Math.PI);
+							pushX[id] += strength * radius * Math.cos(angle);
+							pushY[id] += strength * radius * Math.sin(angle);
+						} else {
+							double overlap = strength * (radius - distance) / distance;
+							pushX[id] += deltaX * overlap;
+							pushY[id] += deltaY * overlap;
+						}
+					}
+				}
+		}
+		for (int id = 0; id < size; ++id)
+			if (bucketOf[id] >= 0) {
+				store.setX(id, Math.min(Math.max(store.getX(id) + pushX[id], 0.0), width));
+				store.setY(id, Math.min(Math.max(store.getY(id) + pushY[id], 0.0), height));
+			}
+	} // end push()
+} // end class CrowdSeparation
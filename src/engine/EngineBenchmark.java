@@ -0,0 +1,243 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import actor.ActorFactory;
+import actor.Archetype;
+import actor.ArchetypeRegistry;
+
+/**
+ * Command-line benchmark for the headless engine. Each trial builds a fresh battle from the same seed, with <b>RANDOM</b> armies so that actor types are interleaved in id order, and times a fixed number of ticks.
+ * Every mode other than <b>SCALAR_MOVEMENT</b> moves the actors with the Vector API kernel when the JVM is started with <i>--add-modules jdk.incubator.vector</i>.
+ * Trials of the different modes alternate so that JIT warm-up and machine noise affect them equally; the median time per tick of each mode is printed.
+ * <p>Run as <pre>java engine.EngineBenchmark [actorsPerArmy] [ticks] [trials]</pre></p>
+ * <p>Run as <pre>java --add-modules jdk.incubator.vector engine.EngineBenchmark combat [pairs]</pre> to compare the pairs per second of the scalar and SIMD resolution of a <i>CombatBatch</i>.</p>
+ * <p>Run as <pre>java engine.EngineBenchmark events [seconds]</pre> to compare ticking with the event-driven <i>Battle.runEvents()</i> over the same simulated time, from sparse to crowded battles.</p>
+ * <p>Run as <pre>java engine.EngineBenchmark separation</pre> to time crowd separation of armies clumped on a single point, which should grow linearly with their size.</p>
+ * <p>Run as <pre>java --enable-preview engine.EngineBenchmark storage [ticks]</pre> on JDK 21 to compare the time per tick of the same battles kept on the heap and off it, as they grow.</p>
+ * <p>Run as <pre>java engine.EngineBenchmark targeting [maxActorsPerArmy]</pre> to compare the latency of <i>Battle.findTarget()</i>, answered from the attribute indexes, with the brute-force <i>Battle.scanTarget()</i> as the armies grow.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle
+ */
+public class EngineBenchmark {
+	private static final long SEED = 2024L;
+
+	/** Compared configurations of a <i>Battle</i>. */
+	private enum Mode {
+		INTERLEAVED { @Override void configure(Battle battle) { battle.setTypeBatched(false); } },
+		SCALAR_MOVEMENT { @Override void configure(Battle battle) { battle.setVectorMovement(false); } },
+		TYPE_BATCHED { @Override void configure(Battle battle) { battle.setTypeBatched(true); } },
+		SCALAR_COMBAT { @Override void configure(Battle battle) { battle.setCombat(Battle.Combat.BATCHED_SCALAR); } },
+		VECTOR_COMBAT { @Override void configure(Battle battle) { battle.setCombat(Battle.Combat.BATCHED_VECTOR); } };
+
+		abstract void configure(Battle battle);
+	} // end enum Mode
+
+	/** @return nanoseconds per tick */
+	private static double trial(Mode mode, int actorsPerArmy, int ticks) {
+		Battle battle = new Battle(SEED);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, actorsPerArmy);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, actorsPerArmy);
+		mode.configure(battle);
+		long start = System.nanoTime();
+		for (int tick = 0; tick < ticks && !battle.isDecided(); ++tick)
+			battle.tick();
+		return (double) (System.nanoTime() - start) / Math.max(1L, battle.getTickCount());
+	} // end trial()
+
+	/**
+	 * Times both targeting queries for every strategy on battles of growing size. Each battle runs a few ticks first so that health has spread and the indexes are current.
+	 * The brute-force scan is timed on a sample of actors, as it is too slow to run for all of them on the largest battles.
+	 */
+	private static void benchmarkTargeting(int maxActorsPerArmy) {
+		final int sampleSize = 2000;
+		System.out.printf("%-20s %10s %14s %14s%n", "strategy", "actors", "index ns/query", "scan ns/query");
+		for (Archetype.Targeting strategy : Archetype.Targeting.values()) {
+			if (strategy == Archetype.Targeting.NEAREST)
+				continue;
+			for (int actorsPerArmy = 1000; actorsPerArmy <= maxActorsPerArmy; actorsPerArmy *= 4) {
+				Battle battle = new Battle(SEED);
+				battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, actorsPerArmy);
+				battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, actorsPerArmy);
+				for (Archetype archetype : battle.getArchetypes().getArchetypes())
+					battle.setTargeting(archetype, strategy);
+				for (int tick = 0; tick < 20; ++tick)
+					battle.tick();
+				ActorStore store = battle.getStore();
+				int[] sample = new int[sampleSize];
+				for (int i = 0, id = 0; i < sampleSize; ++i, id = (id + 7919) % store.size()) {
+					while (!store.isAlive(id))
+						id = (id + 1) % store.size();
+					sample[i] = id;
+				}
+				long checksum = 0L;
+				double indexTime = Double.MAX_VALUE, scanTime = Double.MAX_VALUE;
+				for (int repeat = 0; repeat < 5; ++repeat) { // best of five, after the first has warmed up the JIT
+					long start = System.nanoTime();
+					for (int id : sample)
+						checksum += battle.findTarget(id);
+					indexTime = Math.min(indexTime, (double) (System.nanoTime() - start) / sampleSize);
+					start = System.nanoTime();
+					for (int id : sample)
+						checksum -= battle.scanTarget(id);
+					scanTime = Math.min(scanTime, (double) (System.nanoTime() - start) / sampleSize);
+				}
+				if (checksum != 0L)
+					throw new IllegalStateException("Index and scan disagree for " + strategy);
+				System.out.printf("%-20s %10d %14.0f %14.0f%n", strategy, 2 * actorsPerArmy, indexTime, scanTime);
+			}
+		}
+	} // end benchmarkTargeting()
+
+	/** Times both resolutions of one large batch of random pairs over a populated store, and checks that they agree. */
+	private static void benchmarkCombat(int pairs) {
+		Battle battle = new Battle(SEED);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 50_000);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, 50_000);
+		ActorStore store = battle.getStore();
+		Random random = new Random(SEED);
+		CombatBatch batch = new CombatBatch();
+		for (int i = 0; i < pairs; ++i)
+			batch.add(random.nextInt(50_000), 50_000 + random.nextInt(50_000), random);
+		double scalarTime = Double.MAX_VALUE, vectorTime = Double.MAX_VALUE;
+		double[] scalarAttacker = null, scalarDefender = null;
+		for (int repeat = 0; repeat < 15; ++repeat) { // best of fifteen, after the first few have warmed up the JIT
+			long start = System.nanoTime();
+			batch.resolveScalar(store);
+			scalarTime = Math.min(scalarTime, System.nanoTime() - start);
+			scalarAttacker = Arrays.copyOf(batch.attackerChange, pairs);
+			scalarDefender = Arrays.copyOf(batch.defenderChange, pairs);
+			if (Battle.VECTOR_SUPPORTED) {
+				start = System.nanoTime();
+				VectorCombatKernel.resolve(batch, store);
+				vectorTime = Math.min(vectorTime, System.nanoTime() - start);
+				if (!Arrays.equals(scalarAttacker, Arrays.copyOf(batch.attackerChange, pairs)) || !Arrays.equals(scalarDefender, Arrays.copyOf(batch.defenderChange, pairs)))
+					throw new IllegalStateException("Vector and scalar combat disagree");
+			}
+		}
+		System.out.printf("%d pairs%n%-8s %8.1f M pairs/s%n", pairs, "scalar", pairs / scalarTime * 1e3);
+		if (Battle.VECTOR_SUPPORTED)
+			System.out.printf("%-8s %8.1f M pairs/s%n", "vector", pairs / vectorTime * 1e3);
+		else
+			System.out.println("vector   not measured: start the JVM with --add-modules jdk.incubator.vector");
+	} // end benchmarkCombat()
+
+	/** Times <i>seconds</i> of simulated battle, or until it is decided, both ways for armies of 1 to 1000 actors, and prints the wall-clock cost per simulated second. */
+	private static void benchmarkEvents(double seconds) {
+		System.out.printf("%10s %16s %16s%n", "actors", "ticks ms/sim s", "events ms/sim s");
+		for (int actorsPerArmy : new int[] { 1, 3, 10, 30, 100, 1000 }) {
+			double tickCost = Double.MAX_VALUE, eventCost = Double.MAX_VALUE;
+			for (int repeat = 0; repeat < 5; ++repeat) { // best of five, after the first has warmed up the JIT
+				Battle ticked = new Battle(SEED), evented = new Battle(SEED);
+				for (Battle battle : new Battle[] { ticked, evented }) {
+					battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, actorsPerArmy);
+					battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, actorsPerArmy);
+				}
+				long start = System.nanoTime();
+				ticked.run(Math.round(seconds / Battle.TICK_SECONDS));
+				tickCost = Math.min(tickCost, (System.nanoTime() - start) / 1e6 / Math.max(Battle.TICK_SECONDS, ticked.getTime()));
+				start = System.nanoTime();
+				evented.runEvents(seconds);
+				eventCost = Math.min(eventCost, (System.nanoTime() - start) / 1e6 / Math.max(Battle.TICK_SECONDS, evented.getTime()));
+			}
+			System.out.printf("%10d %16.4f %16.4f%n", 2 * actorsPerArmy, tickCost, eventCost);
+		}
+	} // end benchmarkEvents()
+
+	/** Times one tick of hard crowd separation with every actor of both armies piled within a few pixels of one point. */
+	private static void benchmarkSeparation() {
+		System.out.printf("%10s %14s %14s%n", "actors", "ms/separation", "ns/actor");
+		for (int actorsPerArmy = 1000; actorsPerArmy <= 256_000; actorsPerArmy *= 4) {
+			Battle battle = new Battle(SEED);
+			battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, actorsPerArmy);
+			battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, actorsPerArmy);
+			ActorStore store = battle.getStore();
+			CrowdSeparation separation = new CrowdSeparation();
+			double best = Double.MAX_VALUE;
+			for (int repeat = 0; repeat < 5; ++repeat) { // best of five, after the first has warmed up the JIT
+				Random random = new Random(SEED);
+				for (int id = 0; id < store.size(); ++id) {
+					store.setX(id, 500.0 + 4.0 * random.nextDouble());
+					store.setY(id, 280.0 + 4.0 * random.nextDouble());
+				}
+				long start = System.nanoTime();
+				separation.separate(store, 6.0, true, battle.getWidth(), battle.getHeight());
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.printf("%10d %14.3f %14.1f%n", store.size(), best / 1e6, best / store.size());
+		}
+	} // end benchmarkSeparation()
+
+	/** Ticks the same battle on an on-heap and an off-heap store, each moved by the scalar kernel so that only the storage differs, for armies of growing size. */
+	private static void benchmarkStorage(int ticks) {
+		if (!ActorStore.isOffHeapSupported()) {
+			System.out.println("Off-heap storage needs src-preview compiled by build-preview.sh and JDK 21 started with --enable-preview");
+			return;
+		}
+		System.out.printf("%10s %14s %14s%n", "actors", "heap ms/tick", "off ms/tick");
+		for (int actorsPerArmy = 1000; actorsPerArmy <= 256_000; actorsPerArmy *= 4) {
+			double heapTime = Double.MAX_VALUE, offHeapTime = Double.MAX_VALUE;
+			for (int repeat = 0; repeat < 3; ++repeat) { // best of three, after the first has warmed up the JIT
+				try (ActorStore heap = ActorStore.onHeap(ArchetypeRegistry.getDefault()); ActorStore offHeap = ActorStore.offHeap(ArchetypeRegistry.getDefault())) {
+					for (ActorStore store : new ActorStore[] { heap, offHeap }) {
+						Battle battle = new Battle(SEED, 2, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, store);
+						battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, actorsPerArmy);
+						battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, actorsPerArmy);
+						battle.setVectorMovement(false);
+						long start = System.nanoTime();
+						for (int tick = 0; tick < ticks && !battle.isDecided(); ++tick)
+							battle.tick();
+						double time = (double) (System.nanoTime() - start) / Math.max(1L, battle.getTickCount()) / 1e6;
+						if (store == heap)
+							heapTime = Math.min(heapTime, time);
+						else
+							offHeapTime = Math.min(offHeapTime, time);
+					}
+				}
+			}
+			System.out.printf("%10d %14.3f %14.3f%n", 2 * actorsPerArmy, heapTime, offHeapTime);
+		}
+	} // end benchmarkStorage()
+
+	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("storage")) {
+			benchmarkStorage(args.length > 1 ? Integer.parseInt(args[1]) : 50);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("separation")) {
+			benchmarkSeparation();
+			return;
+		}
+		if (args.length > 0 && args[0].equals("events")) {
+			benchmarkEvents(args.length > 1 ? Double.parseDouble(args[1]) : 600.0);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("combat")) {
+			benchmarkCombat(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("targeting")) {
+			benchmarkTargeting(args.length > 1 ? Integer.parseInt(args[1]) : 64_000);
+			return;
+		}
+		int actorsPerArmy = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+		int trials = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+		Mode[] modes = Mode.values();
+		for (Mode mode : modes) // warm-up, not measured
+			trial(mode, actorsPerArmy, ticks);
+		double[][] times = new double[modes.length][trials];
+		for (int t = 0; t < trials; ++t)
+			for (Mode mode : modes)
+				times[mode.ordinal()][t] = trial(mode, actorsPerArmy, ticks);
+		System.out.printf("%d actors per army, %d ticks, %d trials%n", actorsPerArmy, ticks, trials);
+		for (Mode mode : modes) {
+			double[] sorted = times[mode.ordinal()].clone();
+			Arrays.sort(sorted);
+			System.out.printf("%-16s %8.3f ms/tick (median)%n", mode, sorted[trials / 2] / 1e6);
+		}
+	} // end main()
+} // end class EngineBenchmark
@@ -0,0 +1,186 @@
+package engine;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A file written on a background thread through a <i>FileChannel</i>, for exports that are too large to build in memory first.
+ * The caller encodes straight into one of {@value #BUFFERS} direct buffers of {@value #BUFFER_BYTES} bytes obtained from <i>reserve()</i>; a full buffer is handed to the writer thread and the caller carries on in the next, waiting only when the disk falls {@value #BUFFERS} buffers behind.
+ * So an export of any size holds at most {@value #BUFFERS} buffers in memory, and text is encoded digit by digit into them (see <i>putLong()</i> and <i>putDecimal()</i>) without a <i>String</i> per value.
+ * <p>Columnar files (<i>Format.COLUMNAR</i>) are big-endian, like the checkpoints of <i>control.BattleSession</i>: the magic number of the file, then a column count and, for each column, its name (a length byte and ASCII) and a kind byte ({@value #KIND_BYTE} byte, {@value #KIND_INT} int, {@value #KIND_LONG} long, {@value #KIND_FLOAT} float or {@value #KIND_DOUBLE} double) as written by <i>putColumns()</i>, then the values of each column in turn.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see RosterExporter
+ * @see SeriesRecorder
+ */
+public final class ExportChannel implements AutoCloseable {
+	/** Size of each buffer: {@value} */
+	public static final int BUFFER_BYTES = 1 << 20;
+	/** Buffers in flight: {@value} */
+	public static final int BUFFERS = 3;
+	/** Column kinds of the columnar format */
+	public static final byte KIND_BYTE = 'B', KIND_INT = 'I', KIND_LONG = 'L', KIND_FLOAT = 'F', KIND_DOUBLE = 'D';
+
+	/** Encodings of an export. */
+	public enum Format {
+		/** comma-separated text with a header line */
+		CSV("csv"),
+		/** binary, one column after another */
+		COLUMNAR("bin");
+
+		private final String extension;
+		Format(String extension) { this.extension = extension; }
+		/** @return usual file name extension, without the dot */
+		public String getExtension() { return extension; }
+	} // end enum Format
+
+	/** handed to the writer thread to stop it */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final FileChannel channel;
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BUFFERS), full = new ArrayBlockingQueue<>(BUFFERS + 1);
+	private final Thread writer;
+	/** buffer being filled by the caller */
+	private ByteBuffer buffer;
+	/** first error of the writer thread; it then discards the rest */
+	private volatile IOException failure;
+	private long bytesHandedOff;
+	private boolean closed;
+
+	/** Creates (or truncates) <i>file</i> and starts its writer thread. */
+	public ExportChannel(Path file) throws IOException {
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		for (int i = 0; i < BUFFERS; ++i)
+			free.add(ByteBuffer.allocateDirect(BUFFER_BYTES));
+		buffer = free.remove();
+		writer = new Thread(this::write, "export " + file.getFileName());
+		writer.setDaemon(true);
+		writer.start();
+	} // end Constructor
+
+	/**
+	 * @param bytes most bytes the caller is about to put, at most {@value #BUFFER_BYTES}
+	 * @return the buffer to put them into, with at least <i>bytes</i> remaining
+	 * @throws IOException if the writer thread has failed
+	 */
+	public ByteBuffer reserve(int bytes) throws IOException {
+		if (buffer.remaining() < bytes)
+			handOff();
+		return buffer;
+	} // end reserve()
+
+	/** Passes the current buffer to the writer thread and takes a free one, waiting for the disk if none is free. */
+	private void handOff() throws IOException {
+		if (failure != null)
+			throw failure;
+		buffer.flip();
+		bytesHandedOff += buffer.remaining();
+		try {
+			full.put(buffer);
+			buffer = free.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export interrupted");
+		}
+	} // end handOff()
+
+	/** Body of the writer thread. */
+	private void write() {
+		try {
+			for (ByteBuffer next = full.take(); next != END; next = full.take()) {
+				try {
+					while (failure == null && next.hasRemaining())
+						channel.write(next);
+				} catch (IOException e) {
+					failure = e;
+				}
+				next.clear();
+				free.put(next);
+			}
+		} catch (InterruptedException e) {
+			failure = new InterruptedIOException("Export writer interrupted");
+		}
+	} // end write()
+
+	/** @return bytes put so far */
+	public long getBytes() { return bytesHandedOff + buffer.position(); }
+
+	/**
+	 * Writes what remains, waits for the writer thread and closes the file.
+	 * @throws IOException if any write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (buffer.position() > 0)
+				handOff();
+			full.put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure = new InterruptedIOException("Export interrupted");
+		} finally {
+			channel.close();
+		}
+		if (failure != null)
+			throw failure;
+	} // end close()
+
+	/** Puts the characters of <i>text</i>, which must be ASCII. */
+	public static void putAscii(ByteBuffer out, CharSequence text) {
+		for (int i = 0; i < text.length(); ++i)
+			out.put((byte) text.charAt(i));
+	} // end putAscii()
+
+	/** Puts the decimal digits of <i>value</i>. */
+	public static void putLong(ByteBuffer out, long value) {
+		if (value < 0L) {
+			out.put((byte) '-');
+			value = -value;
+		}
+		int digits = 1;
+		for (long rest = value; rest >= 10L; rest /= 10L)
+			++digits;
+		int start = out.position();
+		for (int i = start + digits - 1; i >= start; --i, value /= 10L)
+			out.put(i, (byte) ('0' + value % 10L));
+		out.position(start + digits);
+	} // end putLong()
+
+	/** Puts <i>value</i>, which must be finite, rounded to <i>decimals</i> (at most 9) digits after the point. */
+	public static void putDecimal(ByteBuffer out, double value, int decimals) {
+		long scale = 1L;
+		for (int i = 0; i < decimals; ++i)
+			scale *= 10L;
+		long scaled = Math.round(Math.abs(value) * scale);
+		if (value < 0.0 && scaled != 0L)
+			out.put((byte) '-');
+		putLong(out, scaled / scale);
+		if (decimals > 0) {
+			out.put((byte) '.');
+			long fraction = scaled % scale;
+			for (long digit = scale / 10L; digit > 0L; digit /= 10L)
+				out.put((byte) ('0' + fraction / digit % 10L));
+		}
+	} // end putDecimal()
+
+	/** Puts the column descriptors of a columnar file: the count, then each name and kind. */
+	public void putColumns(String[] names, byte[] kinds) throws IOException {
+		reserve(Short.BYTES).putShort((short) names.length);
+		for (int column = 0; column < names.length; ++column) {
+			byte[] name = names[column].getBytes(StandardCharsets.US_ASCII);
+			reserve(name.length + 2).put((byte) name.length).put(name).put(kinds[column]);
+		}
+	} // end putColumns()
+} // end class ExportChannel
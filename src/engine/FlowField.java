@@ -0,0 +1,185 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * A flow field over a <i>TerrainGrid</i>: for every cell, the cheapest next step towards a target region and the total cost of getting there.
+ * It is computed with one Dijkstra pass outwards from the target cells (8 neighbours, diagonal steps cost {@code sqrt(2)} times the cost of the cell entered, no corner cutting past impassable cells),
+ * and then shared by every actor heading for that region: each actor only looks up the cell it stands on, so thousands of actors cost no more than the single pass.
+ * <p>When the target region grows (more cells, none removed) and the terrain is unchanged, <i>setTarget()</i> updates the field incrementally: only the new target cells are seeded, and only cells they bring closer are visited again.
+ * Any other change of objective, or a change of terrain (detected through <i>TerrainGrid.getVersion()</i>), recomputes the whole field.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see TerrainGrid
+ * @see Battle#setObjective(int, double, double, double)
+ */
+public final class FlowField {
+	private static final double DIAGONAL = Math.sqrt(2.0);
+	private static final int[] STEP_COLUMN = { 1, -1, 0, 0, 1, 1, -1, -1 }, STEP_ROW = { 0, 0, 1, -1, 1, -1, 1, -1 };
+
+	private final TerrainGrid terrain;
+	/** cost of the cheapest path from each cell to the region; infinite if there is none */
+	private final double[] distance;
+	/** next cell on that path, the cell itself for a target cell, or -1 if the region cannot be reached */
+	private final int[] next;
+	private final boolean[] target;
+	/** binary heap of cells ordered by <i>distance</i>, with each cell's position in it (-1 if absent) */
+	private final int[] heap, heapPosition;
+	private int heapSize;
+	private long terrainVersion = -1L;
+	private double targetX, targetY, targetRadius = -1.0;
+	/** cells whose distance was settled by the last computation */
+	private int cellsVisited;
+
+	/** @param terrain terrain to find paths across; the field starts with no target */
+	public FlowField(TerrainGrid terrain) {
+		this.terrain = terrain;
+		int cells = terrain.getColumns() * terrain.getRows();
+		distance = new double[cells];
+		next = new int[cells];
+		target = new boolean[cells];
+		heap = new int[cells];
+		heapPosition = new int[cells];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		Arrays.fill(next, -1);
+		Arrays.fill(heapPosition, -1);
+	} // end Constructor
+
+	public TerrainGrid getTerrain() { return terrain; }
+	public double getTargetX() { return targetX; }
+	public double getTargetY() { return targetY; }
+	public double getTargetRadius() { return targetRadius; }
+	/** @return number of cells settled by the last (full or incremental) computation */
+	public int getCellsVisited() { return cellsVisited; }
+
+	/**
+	 * Aims the field at the passable cells whose centres lie within <i>radius</i> of (x, y), plus the cell containing (x, y).
+	 * @param x centre of the target region
+	 * @param y centre of the target region
+	 * @param radius radius of the target region
+	 */
+	public void setTarget(double x, double y, double radius) {
+		boolean[] wanted = new boolean[target.length];
+		markRegion(wanted, x, y, radius);
+		boolean grows = terrainVersion == terrain.getVersion();
+		for (int cell = 0; cell < target.length && grows; ++cell)
+			grows = !target[cell] || wanted[cell];
+		targetX = x; targetY = y; targetRadius = radius;
+		if (!grows) {
+			Arrays.fill(target, false);
+			Arrays.fill(distance, Double.POSITIVE_INFINITY);
+			Arrays.fill(next, -1);
+		}
+		terrainVersion = terrain.getVersion();
+		cellsVisited = 0;
+		for (int cell = 0; cell < target.length; ++cell)
+			if (wanted[cell] && !target[cell]) {
+				target[cell] = true;
+				distance[cell] = 0.0;
+				next[cell] = cell;
+				push(cell);
+			}
+		spread();
+	} // end setTarget()
+
+	/** Recomputes the whole field if the terrain has changed since it was computed. */
+	public void refresh() {
+		if (targetRadius >= 0.0 && terrainVersion != terrain.getVersion()) {
+			terrainVersion = -1L; // forces a full recomputation
+			setTarget(targetX, targetY, targetRadius);
+		}
+	} // end refresh()
+
+	private void markRegion(boolean[] region, double x, double y, double radius) {
+		final double cellSize = terrain.getCellSize();
+		final int columns = terrain.getColumns();
+		int reach = (int) Math.ceil(radius / cellSize) + 1;
+		int centreColumn = terrain.column(x), centreRow = terrain.row(y);
+		for (int row = Math.max(0, centreRow - reach); row <= Math.min(terrain.getRows() - 1, centreRow + reach); ++row)
+			for (int column = Math.max(0, centreColumn - reach); column <= Math.min(columns - 1, centreColumn + reach); ++column) {
+				double deltaX = (column + 0.5) * cellSize - x, deltaY = (row + 0.5) * cellSize - y;
+				if (deltaX * deltaX + deltaY * deltaY <= radius * radius && terrain.getCost(column, row) != TerrainGrid.IMPASSABLE)
+					region[row * columns + column] = true;
+			}
+		region[centreRow * columns + centreColumn] = true;
+	} // end markRegion()
+
+	/** Dijkstra from the cells on the heap: settles the cheapest cell and relaxes its neighbours, pointing each improved neighbour back at it. */
+	private void spread() {
+		final int columns = terrain.getColumns(), rows = terrain.getRows();
+		while (heapSize > 0) {
+			int cell = pop();
+			++cellsVisited;
+			int column = cell % columns, row = cell / columns;
+			for (int direction = 0; direction < STEP_COLUMN.length; ++direction) {
+				int neighbourColumn = column + STEP_COLUMN[direction], neighbourRow = row + STEP_ROW[direction];
+				if (neighbourColumn < 0 || neighbourColumn >= columns || neighbourRow < 0 || neighbourRow >= rows)
+					continue;
+				int cost = terrain.getCost(neighbourColumn, neighbourRow);
+				if (cost == TerrainGrid.IMPASSABLE)
+					continue;
+				boolean diagonal = direction >= 4;
+				if (diagonal && (terrain.getCost(neighbourColumn, row) == TerrainGrid.IMPASSABLE || terrain.getCost(column, neighbourRow) == TerrainGrid.IMPASSABLE))
+					continue; // no squeezing between two corners
+				int neighbour = neighbourRow * columns + neighbourColumn;
+				double through = distance[cell] + (diagonal ? DIAGONAL * cost : cost);
+				if (through < distance[neighbour]) {
+					distance[neighbour] = through;
+					next[neighbour] = cell;
+					push(neighbour);
+				}
+			}
+		}
+	} // end spread()
+
+	/** @return next cell to head for from <i>cell</i>: the cell itself inside the target region, -1 if the region cannot be reached */
+	public int nextCell(int cell) { return next[cell]; }
+
+	/** @return cost of the cheapest path from <i>cell</i> to the target region, or infinity */
+	public double getDistance(int cell) { return distance[cell]; }
+
+	public boolean isTarget(int cell) { return target[cell]; }
+
+	private void push(int cell) {
+		int position = heapPosition[cell];
+		if (position < 0) {
+			position = heapSize++;
+			heap[position] = cell;
+		}
+		while (position > 0) { // the distance only ever decreases, so the cell only moves up
+			int parent = (position - 1) >>> 1;
+			if (distance[heap[parent]] <= distance[cell])
+				break;
+			heap[position] = heap[parent];
+			heapPosition[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = cell;
+		heapPosition[cell] = position;
+	} // end push()
+
+	private int pop() {
+		int top = heap[0];
+		heapPosition[top] = -1;
+		int last = heap[--heapSize];
+		if (heapSize > 0) {
+			int position = 0;
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= heapSize)
+					break;
+				if (child + 1 < heapSize && distance[heap[child + 1]] < distance[heap[child]])
+					++child;
+				if (distance[heap[child]] >= distance[last])
+					break;
+				heap[position] = heap[child];
+				heapPosition[heap[position]] = position;
+				position = child;
+			}
+			heap[position] = last;
+			heapPosition[last] = position;
+		}
+		return top;
+	} // end pop()
+} // end class FlowField
@@ -0,0 +1,162 @@
+package engine;
+
+import java.util.Arrays;
+
+import actor.ArchetypeRegistry;
+
+/**
+ * What each army can see, on the cells of the <i>SpatialGrid</i>: a cell is visible to an army while at least one of its live actors is within its type's sight radius (<i>Archetype.getSight()</i>) of the cell, and, with occlusion on, no impassable <i>TerrainGrid</i> cell lies on the line between them.
+ * Each army keeps a count per cell of the actors that see it, and each actor remembers the cell it last stamped its sight from. <i>update()</i> visits only the actors that have changed cell (or died, or appeared) since: it takes away the old disc of sight and adds the new one, so the cost of a tick depends on how many actors cross a cell boundary, not on how many there are.
+ * A cell's counts become one bit per army in <i>visibleTo</i>, which the grid searches test next to the cell's faction mask, so a search skips the cells its army cannot see with the same single AND.
+ * Ghosts (actors owned by another shard) do not see for their army.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle#setFogOfWar(boolean, boolean)
+ * @see SpatialGrid
+ */
+final class FogOfWar {
+	private final double cellSize;
+	private final int columns, rows, cells;
+	/** coverage[army * cells + cell]: actors of the army that see the cell */
+	private final int[] coverage;
+	/** bit per army that sees the cell */
+	final long[] visibleTo;
+	/** per archetype id: the offsets (column, row) of the cells within its sight radius of a cell, in pairs */
+	private final int[][] discs;
+	/** cell each actor last stamped its sight from, or -1 */
+	private int[] stampedCell = new int[0];
+	/** army and archetype of that stamp, army << 8 | type, since the slot may have been reused by then */
+	private int[] stampedBy = new int[0];
+	/** terrain that blocks sight, or null for none */
+	private TerrainGrid terrain;
+	/** <i>TerrainGrid.getVersion()</i> when the stamps were made */
+	private long terrainVersion;
+
+	/**
+	 * @param grid geometry of the cells
+	 * @param numArmies number of armies
+	 * @param archetypes registry whose sight radii are used
+	 */
+	FogOfWar(SpatialGrid grid, int numArmies, ArchetypeRegistry archetypes) {
+		cellSize = grid.cellSize;
+		columns = grid.columns;
+		rows = grid.rows;
+		cells = columns * rows;
+		coverage = new int[numArmies * cells];
+		visibleTo = new long[cells];
+		discs = new int[archetypes.size()][];
+		for (int type = 0; type < discs.length; ++type)
+			discs[type] = disc(archetypes.get(type).getSight() / cellSize);
+	} // end Constructor
+
+	/** @return the offsets of the cells whose centres are within <i>radius</i> cells of a cell's centre, nearest first */
+	private static int[] disc(double radius) {
+		int reach = (int) Math.floor(radius);
+		int[] offsets = new int[2 * (2 * reach + 1) * (2 * reach + 1)];
+		int size = 0;
+		for (int ring = 0; ring <= reach; ++ring)
+			for (int row = -ring; row <= ring; ++row)
+				for (int column = -ring; column <= ring; ++column)
+					if (Math.max(Math.abs(row), Math.abs(column)) == ring && row * row + column * column <= radius * radius) {
+						offsets[size++] = column;
+						offsets[size++] = row;
+					}
+		return Arrays.copyOf(offsets, size);
+	} // end disc()
+
+	/**
+	 * @param terrain terrain whose impassable cells block sight, or null for none; every actor is stamped again at the next <i>update()</i>
+	 */
+	void setTerrain(TerrainGrid terrain) {
+		this.terrain = terrain;
+		clear();
+	} // end setTerrain()
+
+	/** Forgets every stamp, so the next <i>update()</i> stamps every actor afresh. */
+	private void clear() {
+		Arrays.fill(coverage, 0);
+		Arrays.fill(visibleTo, 0L);
+		Arrays.fill(stampedCell, -1);
+		if (terrain != null)
+			terrainVersion = terrain.getVersion();
+	} // end clear()
+
+	/** Moves the sight of every actor that has changed cell since the last update; call once the actors have moved. */
+	void update(ActorStore store) {
+		if (terrain != null && terrain.getVersion() != terrainVersion)
+			clear(); // what blocks sight has changed: every stamp would come out differently
+		final int size = store.size();
+		if (stampedCell.length < size) {
+			int old = stampedCell.length;
+			stampedCell = Arrays.copyOf(stampedCell, store.capacity());
+			stampedBy = Arrays.copyOf(stampedBy, store.capacity());
+			Arrays.fill(stampedCell, old, stampedCell.length, -1);
+		}
+		for (int id = 0; id < size; ++id) {
+			int cell = store.isAlive(id) && !store.isGhost(id) ? cellAt(store.getX(id), store.getY(id)) : -1;
+			int by = store.getArmy(id) << 8 | store.getType(id);
+			if (cell == stampedCell[id] && (cell < 0 || by == stampedBy[id]))
+				continue;
+			if (stampedCell[id] >= 0)
+				stamp(stampedCell[id], stampedBy[id] >>> 8, stampedBy[id] & 0xFF, -1);
+			if (cell >= 0)
+				stamp(cell, store.getArmy(id), store.getType(id), 1);
+			stampedCell[id] = cell;
+			stampedBy[id] = by;
+		}
+	} // end update()
+
+	private int cellAt(double x, double y) {
+		int column = Math.min(columns - 1, Math.max(0, (int) (x / cellSize)));
+		int row = Math.min(rows - 1, Math.max(0, (int) (y / cellSize)));
+		return row * columns + column;
+	} // end cellAt()
+
+	/** Adds <i>change</i> to the army's count of every cell the type sees from <i>origin</i>. */
+	private void stamp(int origin, int army, int type, int change) {
+		final int originColumn = origin % columns, originRow = origin / columns;
+		final int base = army * cells;
+		final long bit = 1L << army;
+		final int[] disc = discs[type];
+		for (int i = 0; i < disc.length; i += 2) {
+			int column = originColumn + disc[i], row = originRow + disc[i + 1];
+			if (column < 0 || column >= columns || row < 0 || row >= rows)
+				continue;
+			int cell = row * columns + column;
+			if (terrain != null && !lineOfSight(originColumn, originRow, column, row))
+				continue;
+			int count = coverage[base + cell] += change;
+			if (count == 0)
+				visibleTo[cell] &= ~bit;
+			else if (count == change) // was 0
+				visibleTo[cell] |= bit;
+		}
+	} // end stamp()
+
+	/** @return true if no impassable terrain lies between the centres of the two cells (the end cells themselves can be seen) */
+	private boolean lineOfSight(int fromColumn, int fromRow, int toColumn, int toRow) {
+		double fromX = (fromColumn + 0.5) * cellSize, fromY = (fromRow + 0.5) * cellSize;
+		double deltaX = (toColumn + 0.5) * cellSize - fromX, deltaY = (toRow + 0.5) * cellSize - fromY;
+		int steps = (int) Math.ceil(Math.hypot(deltaX, deltaY) / (terrain.getCellSize() * 0.5)); // half a terrain cell per step, so no terrain cell is stepped over
+		int first = terrain.cellAt(fromX, fromY), last = terrain.cellAt(fromX + deltaX, fromY + deltaY);
+		for (int step = 1; step < steps; ++step) {
+			int cell = terrain.cellAt(fromX + deltaX * step / steps, fromY + deltaY * step / steps);
+			if (cell != first && cell != last && terrain.getCost(cell) == TerrainGrid.IMPASSABLE)
+				return false;
+		}
+		return true;
+	} // end lineOfSight()
+
+	/** @return true if the army sees the cell containing (x, y) */
+	boolean isVisible(int army, double x, double y) { return (visibleTo[cellAt(x, y)] & (1L << army)) != 0L; }
+
+	/** @return number of cells the army sees */
+	int countVisible(int army) {
+		int count = 0;
+		for (int cell = 0; cell < cells; ++cell)
+			if ((visibleTo[cell] & (1L << army)) != 0L)
+				++count;
+		return count;
+	} // end countVisible()
+} // end class FogOfWar
@@ -0,0 +1,162 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import actor.ActorFactory;
+import actor.ArchetypeRegistry;
+
+/**
+ * Runs the same battle in two engine configurations, tick by tick, and reports the first tick at which they differ and the actors that differ there.
+ * Each tick only the <i>StateHash</i> of the two battles is compared; the actors themselves are compared only once the hashes disagree, so a long verification costs little more than running the two battles.
+ * <p>Run as <pre>java --add-modules jdk.incubator.vector engine.LockstepVerifier [candidate [reference]] [actorsPerArmy] [ticks] [seed]</pre> to verify a candidate engine (by default, every engine) against a reference (by default, the one it promises to match).</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see StateHash
+ * @see Battle#setStateHashing(boolean)
+ */
+public class LockstepVerifier {
+	/** Largest number of differing actors listed in a <i>Divergence</i>: {@value} */
+	public static final int MAX_REPORTED_ACTORS = 20;
+
+	/** Engine configurations of a <i>Battle</i>. Batched combat resolves the rounds of a tick from the health at its start, so it plays out a different battle from sequential combat; each configuration promises identical battles to its <i>getReference()</i>. */
+	public enum Engine {
+		/** per-actor movement rules and scalar movement and combat: the reference */
+		SCALAR { @Override void configure(Battle battle) { battle.setTypeBatched(false); battle.setVectorMovement(false); } },
+		/** type-batched movement rules */
+		TYPE_BATCHED { @Override void configure(Battle battle) { battle.setVectorMovement(false); } },
+		/** type-batched, moved by the Vector API kernel */
+		VECTOR_MOVEMENT { @Override void configure(Battle battle) { } },
+		/** type-batched, combat rounds resolved in batches by a scalar loop */
+		BATCHED_SCALAR { @Override void configure(Battle battle) { battle.setCombat(Battle.Combat.BATCHED_SCALAR); } },
+		/** type-batched, combat rounds resolved in batches with the Vector API */
+		BATCHED_VECTOR { @Override void configure(Battle battle) { battle.setCombat(Battle.Combat.BATCHED_VECTOR); } },
+		/** type-batched, actors kept off the heap (needs <i>--enable-preview</i> on JDK 21) */
+		OFF_HEAP {
+			@Override ActorStore createStore() { return ActorStore.offHeap(ArchetypeRegistry.getDefault()); }
+			@Override void configure(Battle battle) { battle.setVectorMovement(false); }
+		};
+
+		ActorStore createStore() { return ActorStore.onHeap(ArchetypeRegistry.getDefault()); }
+		abstract void configure(Battle battle);
+
+		/** @return the configuration this one must match exactly: <b>BATCHED_SCALAR</b> for batched combat, <b>SCALAR</b> otherwise */
+		public Engine getReference() { return this == BATCHED_VECTOR || this == BATCHED_SCALAR ? BATCHED_SCALAR : SCALAR; }
+
+		/** @return true if this configuration can run in this JVM */
+		public boolean isAvailable() { return this != OFF_HEAP || ActorStore.isOffHeapSupported(); }
+
+		/** @return an empty two-army battle on the default battlefield, in this configuration */
+		public Battle create(long seed) {
+			Battle battle = new Battle(seed, 2, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, createStore());
+			configure(battle);
+			return battle;
+		} // end create()
+	} // end enum Engine
+
+	/** Where two battles first differ. */
+	public static final class Divergence {
+		private final long tick;
+		private final List<String> actors;
+
+		private Divergence(long tick, List<String> actors) {
+			this.tick = tick;
+			this.actors = Collections.unmodifiableList(actors);
+		}
+
+		/** @return first tick after which the battles differ */
+		public long getTick() { return tick; }
+		/** @return one line per differing actor (at most {@value #MAX_REPORTED_ACTORS}): its id and its state in each battle */
+		public List<String> getActors() { return actors; }
+
+		@Override
+		public String toString() { return "Diverged at tick " + tick + (actors.isEmpty() ? "" : ":\n  " + String.join("\n  ", actors)); }
+	} // end class Divergence
+
+	private LockstepVerifier() {}
+
+	/**
+	 * Builds the same battle in two configurations and verifies them.
+	 * @param populate adds the same actors to each battle
+	 * @return the first divergence, or null if the battles stayed identical
+	 */
+	public static Divergence verify(Engine reference, Engine candidate, long seed, Consumer<Battle> populate, long maxTicks) {
+		Battle first = reference.create(seed), second = candidate.create(seed);
+		populate.accept(first);
+		populate.accept(second);
+		try {
+			return verify(first, second, maxTicks);
+		} finally {
+			first.getStore().close();
+			second.getStore().close();
+		}
+	} // end verify()
+
+	/**
+	 * Ticks two battles in lockstep, with state hashing on, until both are decided, they differ or <i>maxTicks</i> have run.
+	 * @return the first divergence, or null if the battles stayed identical
+	 */
+	public static Divergence verify(Battle reference, Battle candidate, long maxTicks) {
+		reference.setStateHashing(true);
+		candidate.setStateHashing(true);
+		for (long tick = 0; tick < maxTicks && !(reference.isDecided() && candidate.isDecided()); ++tick) {
+			reference.tick();
+			candidate.tick();
+			long number = reference.getTickCount();
+			if (reference.getStateHash(number) != candidate.getStateHash(number) || reference.isDecided() != candidate.isDecided())
+				return new Divergence(number, compare(reference.getStore(), candidate.getStore()));
+		}
+		return null;
+	} // end verify()
+
+	/** @return a line for each actor (up to {@value #MAX_REPORTED_ACTORS}) whose id, position, health or liveness differs between the stores */
+	private static List<String> compare(ActorStore reference, ActorStore candidate) {
+		List<String> actors = new ArrayList<>();
+		for (int id = 0; id < Math.max(reference.size(), candidate.size()) && actors.size() < MAX_REPORTED_ACTORS; ++id) {
+			String first = describe(reference, id), second = describe(candidate, id);
+			if (!first.equals(second))
+				actors.add(String.format("Id:%-6d %s | %s", id, first, second));
+		}
+		return actors;
+	} // end compare()
+
+	/** @return the hashed state of the actor, exactly */
+	private static String describe(ActorStore store, int id) {
+		if (id >= store.size() || !store.isAlive(id) || store.isGhost(id))
+			return "absent";
+		return String.format("x=%s y=%s health=%s", store.getX(id), store.getY(id), store.getHealth(id)); // Double.toString, so that the last bit shows
+	} // end describe()
+
+	public static void main(String[] args) {
+		List<Engine> engines = new ArrayList<>();
+		List<Long> numbers = new ArrayList<>();
+		for (String arg : args) {
+			if (Character.isDigit(arg.charAt(0)))
+				numbers.add(Long.parseLong(arg));
+			else
+				engines.add(Engine.valueOf(arg.toUpperCase()));
+		}
+		List<Engine> candidates = engines.isEmpty() ? List.of(Engine.values()) : engines.subList(0, 1);
+		int actorsPerArmy = numbers.size() > 0 ? numbers.get(0).intValue() : 1000;
+		long maxTicks = numbers.size() > 1 ? numbers.get(1) : 5000L;
+		long seed = numbers.size() > 2 ? numbers.get(2) : 2024L;
+		Consumer<Battle> populate = battle -> {
+			battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, actorsPerArmy);
+			battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, actorsPerArmy);
+		};
+		for (Engine candidate : candidates) {
+			Engine reference = engines.size() > 1 ? engines.get(1) : candidate.getReference();
+			if (candidate == reference)
+				continue;
+			if (!candidate.isAvailable()) {
+				System.out.printf("%-16s not available in this JVM%n", candidate);
+				continue;
+			}
+			Divergence divergence = verify(reference, candidate, seed, populate, maxTicks);
+			System.out.printf("%-16s %s%n", candidate, divergence == null ? "identical to " + reference : divergence);
+		}
+	} // end main()
+} // end class LockstepVerifier
@@ -0,0 +1,151 @@
+package engine;
+
+import java.util.Random;
+
+import actor.Actor;
+import util.SingletonRandom;
+
+/**
+ * Bulk versions of the per-type <i>findNewLocation()</i> rules. Each kernel runs one rule over a range of actor ids that all share a type, so the loop body is a single, fixed piece of arithmetic:
+ * there is no <i>switch</i> on the type and no virtual call per actor, and the JIT can inline (and where the rule has no random draws, unroll and vectorize) the loop.
+ * <p>The scalar helpers are shared with the per-actor path in <i>Battle</i>, so both paths compute bit-identical destinations.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle
+ */
+final class MovementKernels {
+	/** Same range used by <i>Actor.meander()</i>: {@value} */
+	static final double RANGE_OF_MEANDERING = 20.0;
+	/** Number of <i>FlowField</i> cells an actor follows in one leg of motion: {@value} */
+	static final int FLOW_STEPS = 3;
+
+	private MovementKernels() {}
+
+	/** <i>Hobbit</i> rule for one axis: run for the half of the battlefield away from the opponent. */
+	static double flee(double opponent, double extent, Random random) {
+		return opponent < 0.5 * extent ? normal(random, 0.5 * extent, extent) : normal(random, 0.0, 0.5 * extent);
+	} // end flee()
+
+	/** <i>Orc</i>, <i>Elf</i> and <i>Wizard</i> rule for one axis: cover <i>fraction</i> of the distance to the opponent. */
+	static double approach(double mine, double opponent, double fraction) { return mine + (opponent - mine) * fraction; }
+
+	/** <i>Actor.meander()</i> for one axis. */
+	static double meander(double mine, Random random) { return normal(random, mine - RANGE_OF_MEANDERING, mine + RANGE_OF_MEANDERING); }
+
+	/** A coordinate that has left the battlefield is pulled back into the band next to the edge it crossed, which is what <i>Actor.validateCoordinate()</i> sets out to do. */
+	static double validate(double coordinate, double max, Random random) {
+		if (coordinate < 0.0)
+			return normal(random, 0.0, 0.25 * max);
+		if (coordinate > max)
+			return normal(random, 0.75 * max, max);
+		return coordinate;
+	} // end validate()
+
+	static double normal(Random random, double lowerLimit, double upperLimit) {
+		return SingletonRandom.getNormalDistribution(random, lowerLimit, upperLimit, 2.0);
+	} // end normal()
+
+	/**
+	 * Kernel for <i>Hobbit</i> actors: every destination is drawn from <i>random</i>, in the order of <i>ids</i>.
+	 * @param ids actor ids; entries <i>from</i> to <i>to</i>-1 are processed
+	 * @param opponents opponent of each entry of <i>ids</i>
+	 */
+	static void flee(ActorStore store, int[] ids, int[] opponents, int from, int to, double width, double height, Random random) {
+		for (int i = from; i < to; ++i) {
+			int id = ids[i], opponent = opponents[i];
+			double newX = flee(store.getX(opponent), width, random);
+			double newY = flee(store.getY(opponent), height, random);
+			store.setDestX(id, validate(newX, width, random));
+			store.setDestY(id, validate(newY, height, random));
+		}
+	} // end flee()
+
+	/**
+	 * Kernel for the types that close in on their opponent. Both actor and opponent are on the battlefield, so the destination is too and no validation is needed: the loop is pure arithmetic.
+	 * @param fraction share of the distance covered by one leg of motion
+	 */
+	static void approach(ActorStore store, int[] ids, int[] opponents, int from, int to, double fraction) {
+		for (int i = from; i < to; ++i) {
+			int id = ids[i], opponent = opponents[i];
+			store.setDestX(id, approach(store.getX(id), store.getX(opponent), fraction));
+			store.setDestY(id, approach(store.getY(id), store.getY(opponent), fraction));
+		}
+	} // end approach()
+
+	/**
+	 * Moves every actor owned by the store along its leg of motion for <i>seconds</i>, by linear interpolation towards the destination as the <i>TranslateTransition</i> does, and counts down the leg.
+	 * The leg duration already includes the speed controller; positions are clamped to the battlefield. Dead actors and ghosts (moved by the shard that owns them) are skipped.
+	 * This is the scalar reference for <i>VectorMovementKernel</i>, which also calls it for the ids left over after its last full vector.
+	 * @param from first id to move
+	 * @param to one past the last id to move
+	 */
+	static void integrate(ActorStore store, int from, int to, double seconds, double width, double height) {
+		final long[] moving = store.moving;
+		for (int id = from; id < to; ++id) {
+			if ((moving[id >>> 6] & (1L << id)) == 0L)
+				continue;
+			double remaining = store.getLegTime(id);
+			double fraction = remaining <= seconds ? 1.0 : seconds / remaining;
+			double x = store.getX(id), y = store.getY(id);
+			store.setX(id, Math.min(Math.max(x + (store.getDestX(id) - x) * fraction, 0.0), width));
+			store.setY(id, Math.min(Math.max(y + (store.getDestY(id) - y) * fraction, 0.0), height));
+			store.setLegTime(id, remaining - seconds);
+		}
+	} // end integrate()
+
+	/** Kernel for actors of any type with no visible opponent. */
+	static void meander(ActorStore store, int[] ids, int from, int to, double width, double height, Random random) {
+		for (int i = from; i < to; ++i) {
+			int id = ids[i];
+			double newX = meander(store.getX(id), random);
+			double newY = meander(store.getY(id), random);
+			store.setDestX(id, validate(newX, width, random));
+			store.setDestY(id, validate(newY, height, random));
+		}
+	} // end meander()
+
+	/**
+	 * Sends one actor up to {@value #FLOW_STEPS} cells down its army's flow field, to the centre of the last cell reached, and starts the leg.
+	 * The leg lasts <i>MAX_SPEED / (speed * speedController)</i> seconds times the average terrain cost of the cells entered, so rough ground slows it down.
+	 * An actor inside the target region, or cut off from it, holds its position for one leg.
+	 */
+	static void follow(ActorStore store, int id, FlowField field, double speedController) {
+		final TerrainGrid terrain = field.getTerrain();
+		int cell = terrain.cellAt(store.getX(id), store.getY(id));
+		double cost = 0.0;
+		int steps = 0;
+		for (; steps < FLOW_STEPS; ++steps) {
+			int nextCell = field.nextCell(cell);
+			if (nextCell < 0 || nextCell == cell)
+				break;
+			cell = nextCell;
+			cost += terrain.getCost(cell);
+		}
+		if (steps == 0) {
+			store.setDestX(id, store.getX(id));
+			store.setDestY(id, store.getY(id));
+		} else {
+			store.setDestX(id, (cell % terrain.getColumns() + 0.5) * terrain.getCellSize());
+			store.setDestY(id, (cell / terrain.getColumns() + 0.5) * terrain.getCellSize());
+		}
+		store.setLegTime(id, Actor.MAX_SPEED / (store.getSpeed(id) * speedController) * (steps == 0 ? 1.0 : cost / steps));
+	} // end follow()
+
+	/**
+	 * Kernel for actors with no visible opponent whose army has an objective: all of them read the same few shared flow fields, indexed by army. Starts their legs too.
+	 * @param fields flow field of each army
+	 */
+	static void follow(ActorStore store, int[] ids, int from, int to, FlowField[] fields, double speedController) {
+		for (int i = from; i < to; ++i)
+			follow(store, ids[i], fields[store.getArmy(ids[i])], speedController);
+	} // end follow()
+
+	/** Starts the next leg of motion, lasting <i>MAX_SPEED / (speed * speedController)</i> seconds. */
+	static void startLegs(ActorStore store, int[] ids, int from, int to, double speedController) {
+		for (int i = from; i < to; ++i) {
+			int id = ids[i];
+			store.setLegTime(id, Actor.MAX_SPEED / (store.getSpeed(id) * speedController));
+		}
+	} // end startLegs()
+} // end class MovementKernels
@@ -0,0 +1,167 @@
+package engine;
+
+import java.util.Arrays;
+
+import actor.Archetype;
+
+/**
+ * The projectiles in flight in a battle, in a pool of fixed capacity allocated up front: each attribute is a primitive array, and the live projectiles are always the first <i>size</i> entries, so firing fills the next entry and a projectile that lands or expires is replaced by the last one.
+ * <i>advance()</i> moves every projectile in one pass over the arrays, then tests each against the enemies near its path through the <i>SpatialGrid</i> (the broad phase): only the cells overlapping the box around the segment it flew this tick whose faction mask holds a hostile army are visited, and only their actors are tested against the segment (the narrow phase).
+ * Hits are collected in arrays of the same capacity for the <i>Battle</i> to apply, so a tick allocates nothing however many projectiles are in flight; when the pool is full, further shots are not fired and are counted as dropped.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle#setRangedCombat(int)
+ * @see Archetype#isRanged()
+ */
+final class ProjectilePool {
+	/** Distance from a projectile's path within which an actor is hit: {@value} */
+	static final double HIT_RADIUS = 6.0;
+
+	private final int capacity;
+	/** position, velocity and seconds left to fly of each projectile */
+	private final double[] x, y, velocityX, velocityY, timeLeft;
+	private final float[] damage;
+	/** actor that fired each projectile, and its army */
+	private final int[] shooter, army;
+	private int size;
+	/** hits found by the last <i>advance()</i>: target, shooter, damage and where */
+	final int[] hitTarget, hitShooter;
+	final float[] hitDamage;
+	final double[] hitX, hitY;
+	int numHits;
+	/** simulated time at which each actor may fire again, by id */
+	private double[] readyAt = new double[0];
+	private long fired, hits, dropped;
+
+	/** @param capacity most projectiles in flight at once */
+	ProjectilePool(int capacity) {
+		this.capacity = capacity;
+		x = new double[capacity]; y = new double[capacity];
+		velocityX = new double[capacity]; velocityY = new double[capacity];
+		timeLeft = new double[capacity];
+		damage = new float[capacity];
+		shooter = new int[capacity]; army = new int[capacity];
+		hitTarget = new int[capacity]; hitShooter = new int[capacity];
+		hitDamage = new float[capacity];
+		hitX = new double[capacity]; hitY = new double[capacity];
+	} // end Constructor
+
+	/**
+	 * Fires a projectile of the shooter's archetype from the shooter towards the target's position, if the shooter has reloaded and the target is within reach.
+	 * @return true if a projectile was fired
+	 */
+	boolean fire(ActorStore store, int id, int target, double time) {
+		if (readyAt.length <= id)
+			readyAt = Arrays.copyOf(readyAt, store.capacity());
+		Archetype archetype = store.getArchetype(id);
+		if (time < readyAt[id])
+			return false;
+		double deltaX = store.getX(target) - store.getX(id), deltaY = store.getY(target) - store.getY(id);
+		double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+		if (distance == 0.0 || distance > archetype.getRangedReach())
+			return false;
+		readyAt[id] = time + archetype.getReloadSeconds();
+		if (size == capacity) {
+			++dropped;
+			return false;
+		}
+		double speed = archetype.getProjectileSpeed();
+		x[size] = store.getX(id);
+		y[size] = store.getY(id);
+		velocityX[size] = deltaX / distance * speed;
+		velocityY[size] = deltaY / distance * speed;
+		timeLeft[size] = archetype.getRangedReach() / speed;
+		damage[size] = (float) archetype.getRangedDamage();
+		shooter[size] = id;
+		army[size] = store.getArmy(id);
+		++size;
+		++fired;
+		return true;
+	} // end fire()
+
+	/** Lets a new actor in a recycled slot fire at once, whatever the reload of the slot's previous actor. */
+	void forget(int id) {
+		if (id < readyAt.length)
+			readyAt[id] = 0.0;
+	} // end forget()
+
+	/**
+	 * Moves every projectile by <i>seconds</i> and collects in <i>hitTarget</i> (and the other hit arrays) the first hostile, targetable actor each one passed within {@value #HIT_RADIUS} of. Projectiles that hit, run out of reach or leave the battlefield are removed.
+	 * @param grid grid rebuilt from the current actor positions
+	 * @param hostileMask bit per army that each army attacks
+	 */
+	void advance(double seconds, SpatialGrid grid, ActorStore store, long[] hostileMask, double width, double height) {
+		numHits = 0;
+		for (int i = 0; i < size; ++i) { // the bulk move: one pass over the arrays
+			x[i] += velocityX[i] * seconds;
+			y[i] += velocityY[i] * seconds;
+			timeLeft[i] -= seconds;
+		}
+		int i = 0;
+		while (i < size) {
+			double toX = x[i], toY = y[i], fromX = toX - velocityX[i] * seconds, fromY = toY - velocityY[i] * seconds;
+			int target = collide(grid, store, hostileMask[army[i]], fromX, fromY, toX, toY);
+			if (target >= 0) {
+				hitTarget[numHits] = target;
+				hitShooter[numHits] = shooter[i];
+				hitDamage[numHits] = damage[i];
+				hitX[numHits] = store.getX(target);
+				hitY[numHits++] = store.getY(target);
+				++hits;
+				remove(i);
+			} else if (timeLeft[i] <= 0.0 || toX < 0.0 || toX > width || toY < 0.0 || toY > height)
+				remove(i);
+			else
+				++i;
+		}
+	} // end advance()
+
+	/** @return the hostile, targetable actor nearest the start of the segment among those within {@value #HIT_RADIUS} of it (lowest id on a tie), or -1 */
+	private static int collide(SpatialGrid grid, ActorStore store, long hostile, double fromX, double fromY, double toX, double toY) {
+		int firstColumn = grid.column(Math.min(fromX, toX) - HIT_RADIUS), lastColumn = grid.column(Math.max(fromX, toX) + HIT_RADIUS);
+		int firstRow = grid.row(Math.min(fromY, toY) - HIT_RADIUS), lastRow = grid.row(Math.max(fromY, toY) + HIT_RADIUS);
+		double segmentX = toX - fromX, segmentY = toY - fromY;
+		double lengthSquared = segmentX * segmentX + segmentY * segmentY;
+		int best = -1;
+		double bestAlong = Double.MAX_VALUE;
+		for (int row = firstRow; row <= lastRow; ++row) {
+			for (int column = firstColumn; column <= lastColumn; ++column) {
+				int cell = row * grid.columns + column;
+				if ((grid.cellMask[cell] & hostile) == 0L)
+					continue;
+				for (int i = grid.cellStart[cell], end = grid.cellStart[cell + 1]; i < end; ++i) {
+					int candidate = grid.cellActors[i];
+					if (!store.isTargetable(candidate) || (hostile & (1L << store.getArmy(candidate))) == 0L)
+						continue;
+					double offsetX = store.getX(candidate) - fromX, offsetY = store.getY(candidate) - fromY;
+					double along = lengthSquared == 0.0 ? 0.0 : Math.max(0.0, Math.min(1.0, (offsetX * segmentX + offsetY * segmentY) / lengthSquared)); // nearest point of the segment, as a fraction of it
+					double missX = offsetX - along * segmentX, missY = offsetY - along * segmentY;
+					if (missX * missX + missY * missY <= HIT_RADIUS * HIT_RADIUS && (along < bestAlong || (along == bestAlong && candidate < best))) {
+						best = candidate;
+						bestAlong = along;
+					}
+				}
+			}
+		}
+		return best;
+	} // end collide()
+
+	/** Replaces projectile <i>i</i> with the last one. */
+	private void remove(int i) {
+		int last = --size;
+		x[i] = x[last]; y[i] = y[last];
+		velocityX[i] = velocityX[last]; velocityY[i] = velocityY[last];
+		timeLeft[i] = timeLeft[last];
+		damage[i] = damage[last];
+		shooter[i] = shooter[last]; army[i] = army[last];
+	} // end remove()
+
+	int size() { return size; }
+	int capacity() { return capacity; }
+	long getFired() { return fired; }
+	long getHits() { return hits; }
+	long getDropped() { return dropped; }
+	double getX(int i) { return x[i]; }
+	double getY(int i) { return y[i]; }
+} // end class ProjectilePool
@@ -0,0 +1,106 @@
+package engine;
+
+import java.util.List;
+import java.util.Map;
+
+import actor.Archetype;
+
+/**
+ * A schedule of reinforcements for one army: every <i>intervalSeconds</i> of battle, <i>size</i> new actors enter within <i>radius</i> of (<i>x</i>, <i>y</i>), each of a type drawn from the mix in proportion to its weight.
+ * The wave only describes the reinforcements; whoever it is given to keeps track of how many waves have entered, so one <i>ReinforcementWave</i> can be given to several armies or battles.
+ * <i>Battle</i> fills the slots of dead actors before growing its <i>ActorStore</i>, and <i>Army</i> recycles the <i>Actor</i> objects of the dead, avatars and transitions included, so a battle reinforced for hours allocates no more than one fought once.
+ * <pre>
+ * Map&lt;Archetype, Integer&gt; mix = new LinkedHashMap&lt;&gt;();
+ * mix.put(archetypes.get("ORC"), 3);
+ * mix.put(archetypes.get("WIZARD"), 1);
+ * battle.addReinforcements(Battle.DARKNESS, new ReinforcementWave(mix, 40, 30.0, 900.0, 300.0, 60.0));
+ * </pre>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle#addReinforcements(int, ReinforcementWave)
+ */
+public final class ReinforcementWave {
+	private final Archetype[] types;
+	/** running totals of the weights, in the order of <i>types</i> */
+	private final int[] cumulativeWeights;
+	private final int size;
+	private final double intervalSeconds, x, y, radius;
+	private int maxWaves = Integer.MAX_VALUE;
+
+	/**
+	 * @param mix weight of each type; the types with a weight above 0 enter in proportion to their weights
+	 * @param size actors per wave
+	 * @param intervalSeconds seconds of battle between waves; the first enters one interval after the wave is scheduled
+	 * @param x centre of the spawn area
+	 * @param y centre of the spawn area
+	 * @param radius radius of the spawn area, 0 for a single point
+	 */
+	public ReinforcementWave(Map<Archetype, Integer> mix, int size, double intervalSeconds, double x, double y, double radius) {
+		if (size < 1)
+			throw new IllegalArgumentException("size must be at least 1");
+		if (!(intervalSeconds > 0.0))
+			throw new IllegalArgumentException("intervalSeconds must be positive");
+		if (!(radius >= 0.0))
+			throw new IllegalArgumentException("radius must be 0 or more");
+		int numTypes = 0;
+		for (int weight : mix.values())
+			if (weight > 0)
+				++numTypes;
+		if (numTypes == 0)
+			throw new IllegalArgumentException("The mix needs at least one type with a positive weight");
+		types = new Archetype[numTypes];
+		cumulativeWeights = new int[numTypes];
+		int i = 0, total = 0;
+		for (Map.Entry<Archetype, Integer> entry : mix.entrySet()) {
+			if (entry.getValue() <= 0)
+				continue;
+			types[i] = entry.getKey();
+			cumulativeWeights[i++] = total += entry.getValue();
+		}
+		this.size = size;
+		this.intervalSeconds = intervalSeconds;
+		this.x = x;
+		this.y = y;
+		this.radius = radius;
+	} // end Constructor
+
+	/** @param maxWaves number of waves after which no more reinforcements enter (unlimited by default) */
+	public void setMaxWaves(int maxWaves) { this.maxWaves = maxWaves; }
+	public int getMaxWaves() { return maxWaves; }
+	public int getSize() { return size; }
+	/** @return the types that can enter, those with a weight above 0 in the mix */
+	public List<Archetype> getTypes() { return List.of(types); }
+	public double getIntervalSeconds() { return intervalSeconds; }
+	public double getX() { return x; }
+	public double getY() { return y; }
+	public double getRadius() { return radius; }
+
+	/** @return number of waves that should have entered <i>elapsedSeconds</i> after the wave was scheduled */
+	public int wavesDue(double elapsedSeconds) {
+		return (int) Math.min(maxWaves, Math.max(0.0, Math.floor(elapsedSeconds / intervalSeconds)));
+	} // end wavesDue()
+
+	/**
+	 * @param uniform a random number from 0 (inclusive) to 1 (exclusive)
+	 * @return the type of one reinforcement
+	 */
+	public Archetype pickType(double uniform) {
+		int draw = (int) (uniform * cumulativeWeights[cumulativeWeights.length - 1]);
+		int i = 0;
+		while (cumulativeWeights[i] <= draw)
+			++i;
+		return types[i];
+	} // end pickType()
+
+	/**
+	 * Writes a point of the spawn area, uniform over the disc and kept within the battlefield, into <i>location</i>[0] and <i>location</i>[1].
+	 * @param uniformRadius a random number from 0 to 1 that sets the distance from the centre
+	 * @param uniformAngle a random number from 0 to 1 that sets the direction
+	 */
+	public void place(double uniformRadius, double uniformAngle, double width, double height, double[] location) {
+		double distance = radius * Math.sqrt(uniformRadius), angle = 2.0 * Math.PI * uniformAngle;
+		location[0] = Math.min(width, Math.max(0.0, x + distance * Math.cos(angle)));
+		location[1] = Math.min(height, Math.max(0.0, y + distance * Math.sin(angle)));
+	} // end place()
+} // end class ReinforcementWave
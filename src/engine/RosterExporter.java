@@ -0,0 +1,113 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import actor.ArchetypeRegistry;
+
+/**
+ * Streams the roster of a battle (every live actor, ghosts excepted) to a file, the headless and scalable counterpart of <i>Army.display()</i>.
+ * Rows are encoded one at a time straight into the buffers of an <i>ExportChannel</i>, so a roster of a million actors is written in seconds with a few megabytes of memory, whatever its size.
+ * <ul>
+ * <li><b>CSV</b>: a header line, then <i>id,army,type,x,y,health,strength,speed,special,flags</i> per actor, the type by archetype name;</li>
+ * <li><b>COLUMNAR</b>: the magic number {@value #ROSTER_MAGIC}, the number of rows, the archetype names (a count, then a length byte and ASCII each), the column descriptors and then each column in turn, so that a reader can load one attribute of every actor in one sequential read.</li>
+ * </ul>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ExportChannel
+ * @see SeriesRecorder
+ */
+public final class RosterExporter {
+	/** First <i>int</i> of a columnar roster ("HBXR"): {@value} */
+	public static final int ROSTER_MAGIC = 0x48425852;
+	/** Names of the columns, in order */
+	public static final String[] COLUMNS = { "id", "army", "type", "x", "y", "health", "strength", "speed", "special", "flags" };
+	private static final byte[] KINDS = { ExportChannel.KIND_INT, ExportChannel.KIND_BYTE, ExportChannel.KIND_BYTE, ExportChannel.KIND_FLOAT, ExportChannel.KIND_FLOAT, ExportChannel.KIND_FLOAT, ExportChannel.KIND_FLOAT, ExportChannel.KIND_FLOAT, ExportChannel.KIND_FLOAT, ExportChannel.KIND_BYTE };
+	/** Digits after the point of the attributes in CSV: {@value} */
+	public static final int DECIMALS = 3;
+	/** Most bytes of a CSV row, not counting the archetype name: 6 attributes, 3 small integers and separators */
+	private static final int ROW_BYTES = 6 * 24 + 3 * 12;
+
+	private RosterExporter() {}
+
+	/**
+	 * Writes the roster of <i>battle</i> to <i>file</i>.
+	 * @return number of actors written
+	 */
+	public static long write(Battle battle, Path file, ExportChannel.Format format) throws IOException {
+		try (ExportChannel out = new ExportChannel(file)) {
+			return format == ExportChannel.Format.CSV ? writeCsv(battle, out) : writeColumnar(battle, out);
+		}
+	} // end write()
+
+	private static long writeCsv(Battle battle, ExportChannel out) throws IOException {
+		ActorStore store = battle.getStore();
+		byte[][] names = typeNames(battle.getArchetypes());
+		ExportChannel.putAscii(out.reserve(ROW_BYTES), String.join(",", COLUMNS));
+		out.reserve(1).put((byte) '\n');
+		long rows = 0L;
+		for (int id = 0; id < store.size(); ++id) {
+			if (!store.isAlive(id) || store.isGhost(id))
+				continue;
+			byte[] type = names[store.getType(id)];
+			ByteBuffer row = out.reserve(ROW_BYTES + type.length);
+			ExportChannel.putLong(row, id); row.put((byte) ',');
+			ExportChannel.putLong(row, store.getArmy(id)); row.put((byte) ',');
+			row.put(type).put((byte) ',');
+			ExportChannel.putDecimal(row, store.getX(id), DECIMALS); row.put((byte) ',');
+			ExportChannel.putDecimal(row, store.getY(id), DECIMALS); row.put((byte) ',');
+			ExportChannel.putDecimal(row, store.getHealth(id), DECIMALS); row.put((byte) ',');
+			ExportChannel.putDecimal(row, store.getStrength(id), DECIMALS); row.put((byte) ',');
+			ExportChannel.putDecimal(row, store.getSpeed(id), DECIMALS); row.put((byte) ',');
+			ExportChannel.putDecimal(row, store.getSpecial(id), DECIMALS); row.put((byte) ',');
+			ExportChannel.putLong(row, store.getFlags(id) & 0xFF); row.put((byte) '\n');
+			++rows;
+		}
+		return rows;
+	} // end writeCsv()
+
+	private static long writeColumnar(Battle battle, ExportChannel out) throws IOException {
+		ActorStore store = battle.getStore();
+		int rows = 0;
+		for (int id = 0; id < store.size(); ++id)
+			if (store.isAlive(id) && !store.isGhost(id))
+				++rows;
+		out.reserve(2 * Integer.BYTES).putInt(ROSTER_MAGIC).putInt(rows);
+		byte[][] names = typeNames(battle.getArchetypes());
+		out.reserve(Short.BYTES).putShort((short) names.length);
+		for (byte[] name : names)
+			out.reserve(name.length + 1).put((byte) name.length).put(name);
+		out.putColumns(COLUMNS, KINDS);
+		for (int column = 0; column < COLUMNS.length; ++column) { // one pass over the store per column, so each column is contiguous
+			for (int id = 0; id < store.size(); ++id) {
+				if (!store.isAlive(id) || store.isGhost(id))
+					continue;
+				ByteBuffer buffer = out.reserve(Integer.BYTES);
+				switch (column) {
+				case 0: buffer.putInt(id); break;
+				case 1: buffer.put((byte) store.getArmy(id)); break;
+				case 2: buffer.put((byte) store.getType(id)); break;
+				case 3: buffer.putFloat((float) store.getX(id)); break;
+				case 4: buffer.putFloat((float) store.getY(id)); break;
+				case 5: buffer.putFloat((float) store.getHealth(id)); break;
+				case 6: buffer.putFloat((float) store.getStrength(id)); break;
+				case 7: buffer.putFloat((float) store.getSpeed(id)); break;
+				case 8: buffer.putFloat((float) store.getSpecial(id)); break;
+				default: buffer.put((byte) store.getFlags(id)); break;
+				}
+			}
+		}
+		return rows;
+	} // end writeColumnar()
+
+	/** @return the archetype names, encoded once for every row */
+	private static byte[][] typeNames(ArchetypeRegistry archetypes) {
+		byte[][] names = new byte[archetypes.size()][];
+		for (int type = 0; type < names.length; ++type)
+			names[type] = archetypes.get(type).getName().getBytes(StandardCharsets.US_ASCII);
+		return names;
+	} // end typeNames()
+} // end class RosterExporter
@@ -0,0 +1,199 @@
+package engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Streams a time series of a battle to a file while it runs: every <i>ticksPerSample</i> ticks, the tick, the simulated time and, for each army, its live count, the mean health of its live actors and its deaths since the previous sample.
+ * A sample costs one pass over the actors, for the mean health, and nothing is kept between samples but the death counts; rows go to an <i>ExportChannel</i>, which writes them on its own thread.
+ * <ul>
+ * <li><b>CSV</b>: a header line, then one line per sample;</li>
+ * <li><b>COLUMNAR</b>: the magic number {@value #SERIES_MAGIC}, the column descriptors, then blocks of up to {@value #BLOCK_ROWS} samples, each the number of rows followed by each column of the block in turn. The blocks are gathered in fixed arrays, so a series of any length needs the same memory.</li>
+ * </ul>
+ * <pre>
+ * try (SeriesRecorder series = new SeriesRecorder(battle, path, ExportChannel.Format.CSV, 10)) {
+ *   while (!battle.isDecided()) { battle.tick(); series.update(); }
+ * }
+ * </pre>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ExportChannel
+ * @see RosterExporter
+ */
+public final class SeriesRecorder implements AutoCloseable {
+	/** First <i>int</i> of a columnar series ("HBXS"): {@value} */
+	public static final int SERIES_MAGIC = 0x48425853;
+	/** Samples per block of a columnar series: {@value} */
+	public static final int BLOCK_ROWS = 4096;
+	/** Digits after the point in CSV: {@value} */
+	public static final int DECIMALS = 3;
+
+	private final Battle battle;
+	private final ExportChannel out;
+	private final ExportChannel.Format format;
+	private final long ticksPerSample;
+	private final int numArmies;
+	/** tick of the last sample, or -1 */
+	private long lastSample = -1L;
+	/** deaths of each army at the last sample */
+	private final long[] deathsBefore;
+	/** sums over the live actors of each army, reused by every sample */
+	private final double[] healthSum;
+	private final int[] healthCount;
+	/** the block being gathered (columnar format only) */
+	private final long[] ticks;
+	private final double[] times;
+	private final int[][] live;
+	private final float[][] meanHealth;
+	private final int[][] deaths;
+	private int blockRows;
+	private long samples;
+
+	/**
+	 * Creates <i>file</i> and writes its header.
+	 * @param ticksPerSample ticks between samples taken by <i>update()</i>, at least 1
+	 */
+	public SeriesRecorder(Battle battle, Path file, ExportChannel.Format format, long ticksPerSample) throws IOException {
+		if (ticksPerSample < 1L)
+			throw new IllegalArgumentException("ticksPerSample must be at least 1");
+		this.battle = battle;
+		this.format = format;
+		this.ticksPerSample = ticksPerSample;
+		numArmies = battle.getNumArmies();
+		deathsBefore = new long[numArmies];
+		for (int armyIndex = 0; armyIndex < numArmies; ++armyIndex)
+			deathsBefore[armyIndex] = battle.getDeathCount(armyIndex);
+		healthSum = new double[numArmies];
+		healthCount = new int[numArmies];
+		boolean columnar = format == ExportChannel.Format.COLUMNAR;
+		ticks = new long[columnar ? BLOCK_ROWS : 0];
+		times = new double[ticks.length];
+		live = new int[numArmies][ticks.length];
+		meanHealth = new float[numArmies][ticks.length];
+		deaths = new int[numArmies][ticks.length];
+		out = new ExportChannel(file);
+		try {
+			writeHeader();
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+	} // end Constructor
+
+	/** @return the column names: tick, time, then live, meanHealth and deaths of each army */
+	public static String[] columns(int numArmies) {
+		String[] names = new String[2 + 3 * numArmies];
+		names[0] = "tick";
+		names[1] = "time";
+		for (int armyIndex = 0; armyIndex < numArmies; ++armyIndex) {
+			names[2 + 3 * armyIndex] = "live" + armyIndex;
+			names[3 + 3 * armyIndex] = "meanHealth" + armyIndex;
+			names[4 + 3 * armyIndex] = "deaths" + armyIndex;
+		}
+		return names;
+	} // end columns()
+
+	private void writeHeader() throws IOException {
+		String[] names = columns(numArmies);
+		if (format == ExportChannel.Format.CSV) {
+			for (int column = 0; column < names.length; ++column) {
+				ByteBuffer header = out.reserve(names[column].length() + 1);
+				ExportChannel.putAscii(header, names[column]);
+				header.put((byte) (column + 1 < names.length ? ',' : '\n'));
+			}
+			return;
+		}
+		byte[] kinds = new byte[names.length];
+		kinds[0] = ExportChannel.KIND_LONG;
+		kinds[1] = ExportChannel.KIND_DOUBLE;
+		for (int armyIndex = 0; armyIndex < numArmies; ++armyIndex) {
+			kinds[2 + 3 * armyIndex] = ExportChannel.KIND_INT;
+			kinds[3 + 3 * armyIndex] = ExportChannel.KIND_FLOAT;
+			kinds[4 + 3 * armyIndex] = ExportChannel.KIND_INT;
+		}
+		out.reserve(Integer.BYTES).putInt(SERIES_MAGIC);
+		out.putColumns(names, kinds);
+	} // end writeHeader()
+
+	/** Takes a sample if <i>ticksPerSample</i> ticks have run since the last one (or there has been none); call after each <i>tick()</i>. */
+	public void update() throws IOException {
+		if (lastSample < 0L || battle.getTickCount() - lastSample >= ticksPerSample)
+			sample();
+	} // end update()
+
+	/** Takes a sample now. */
+	public void sample() throws IOException {
+		lastSample = battle.getTickCount();
+		ActorStore store = battle.getStore();
+		Arrays.fill(healthSum, 0.0);
+		Arrays.fill(healthCount, 0);
+		for (int id = 0; id < store.size(); ++id) {
+			if (store.isAlive(id) && !store.isGhost(id)) {
+				healthSum[store.getArmy(id)] += store.getHealth(id);
+				++healthCount[store.getArmy(id)];
+			}
+		}
+		if (format == ExportChannel.Format.CSV) {
+			ByteBuffer row = out.reserve(48 + 64 * numArmies);
+			ExportChannel.putLong(row, lastSample); row.put((byte) ',');
+			ExportChannel.putDecimal(row, battle.getTime(), DECIMALS);
+			for (int armyIndex = 0; armyIndex < numArmies; ++armyIndex) {
+				row.put((byte) ',');
+				ExportChannel.putLong(row, battle.getLiveCount(armyIndex)); row.put((byte) ',');
+				ExportChannel.putDecimal(row, mean(armyIndex), DECIMALS); row.put((byte) ',');
+				ExportChannel.putLong(row, battle.getDeathCount(armyIndex) - deathsBefore[armyIndex]);
+				deathsBefore[armyIndex] = battle.getDeathCount(armyIndex);
+			}
+			row.put((byte) '\n');
+		} else {
+			ticks[blockRows] = lastSample;
+			times[blockRows] = battle.getTime();
+			for (int armyIndex = 0; armyIndex < numArmies; ++armyIndex) {
+				live[armyIndex][blockRows] = battle.getLiveCount(armyIndex);
+				meanHealth[armyIndex][blockRows] = (float) mean(armyIndex);
+				deaths[armyIndex][blockRows] = (int) (battle.getDeathCount(armyIndex) - deathsBefore[armyIndex]);
+				deathsBefore[armyIndex] = battle.getDeathCount(armyIndex);
+			}
+			if (++blockRows == BLOCK_ROWS)
+				flushBlock();
+		}
+		++samples;
+	} // end sample()
+
+	private double mean(int armyIndex) { return healthCount[armyIndex] == 0 ? 0.0 : healthSum[armyIndex] / healthCount[armyIndex]; }
+
+	/** Writes the gathered samples as one block, column by column. */
+	private void flushBlock() throws IOException {
+		out.reserve(Integer.BYTES).putInt(blockRows);
+		for (int row = 0; row < blockRows; ++row)
+			out.reserve(Long.BYTES).putLong(ticks[row]);
+		for (int row = 0; row < blockRows; ++row)
+			out.reserve(Double.BYTES).putDouble(times[row]);
+		for (int armyIndex = 0; armyIndex < numArmies; ++armyIndex) {
+			for (int row = 0; row < blockRows; ++row)
+				out.reserve(Integer.BYTES).putInt(live[armyIndex][row]);
+			for (int row = 0; row < blockRows; ++row)
+				out.reserve(Float.BYTES).putFloat(meanHealth[armyIndex][row]);
+			for (int row = 0; row < blockRows; ++row)
+				out.reserve(Integer.BYTES).putInt(deaths[armyIndex][row]);
+		}
+		blockRows = 0;
+	} // end flushBlock()
+
+	/** @return samples taken so far */
+	public long getSamples() { return samples; }
+
+	/** Writes any samples still gathered and closes the file. */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (blockRows > 0)
+				flushBlock();
+		} finally {
+			out.close();
+		}
+	} // end close()
+} // end class SeriesRecorder
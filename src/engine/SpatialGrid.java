@@ -0,0 +1,127 @@
+package engine;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the battlefield used to answer "nearest hostile actor" queries without scanning every actor.
+ * The grid is rebuilt once per tick with a counting sort: <i>cellStart</i> holds the first position in <i>cellActors</i> of each cell's actor ids.
+ * Only actors whose <i>ActorStore.targetable</i> bit is set are filed, so searches never evaluate visibility rules.
+ * Alongside the ids, each cell keeps a faction bitmask (bit <i>n</i> set if a live, visible actor of army <i>n</i> is in the cell), so a query for any combination of hostile armies skips every cell holding none of them with a single AND.
+ * The cost of a query therefore depends on how far away the nearest hostile actor is, not on how many armies are on the field.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle
+ */
+final class SpatialGrid {
+	final double cellSize;
+	final int columns, rows;
+	/** first index into <i>cellActors</i> for each cell; cell <i>c</i> occupies cellStart[c] to cellStart[c+1]-1 */
+	final int[] cellStart;
+	/** bit per army with at least one live, visible actor in the cell */
+	final long[] cellMask;
+	/** OR of every cell mask, to answer "no hostile actor anywhere" at once */
+	private long globalMask;
+	int[] cellActors = new int[0];
+	/** cell of each actor in the last rebuild, or -1 if it was not entered */
+	int[] cellOf = new int[0];
+	/** next free position of each cell while filing, kept so that a rebuild allocates nothing */
+	private final int[] nextSlot;
+
+	/**
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 * @param cellSize side of each square cell
+	 */
+	SpatialGrid(double width, double height, double cellSize) {
+		this.cellSize = cellSize;
+		columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		cellStart = new int[columns * rows + 1];
+		cellMask = new long[columns * rows];
+		nextSlot = new int[columns * rows];
+	} // end Constructor
+
+	int column(double x) { return Math.min(columns - 1, Math.max(0, (int) (x / cellSize))); }
+	int row(double y) { return Math.min(rows - 1, Math.max(0, (int) (y / cellSize))); }
+
+	/** Re-files every targetable (live, visible) actor of the store under the cell that contains it. */
+	void rebuild(ActorStore store) {
+		final int size = store.size();
+		if (cellOf.length < size) {
+			cellOf = new int[store.capacity()];
+			cellActors = new int[store.capacity()];
+		}
+		Arrays.fill(cellStart, 0);
+		Arrays.fill(cellMask, 0L);
+		Arrays.fill(cellOf, 0, size, -1);
+		globalMask = 0L;
+		final long[] targetable = store.targetable;
+		for (int word = 0, words = ActorStore.wordsFor(size); word < words; ++word) {
+			for (long bits = targetable[word]; bits != 0L; bits &= bits - 1) {
+				int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+				int cell = row(store.getY(id)) * columns + column(store.getX(id));
+				cellOf[id] = cell;
+				++cellStart[cell + 1];
+				cellMask[cell] |= 1L << store.getArmy(id);
+			}
+		}
+		for (int cell = 0; cell < cellMask.length; ++cell) {
+			cellStart[cell + 1] += cellStart[cell]; // prefix sum: counts become start positions
+			globalMask |= cellMask[cell];
+		}
+		System.arraycopy(cellStart, 0, nextSlot, 0, nextSlot.length);
+		for (int id = 0; id < size; ++id)
+			if (cellOf[id] >= 0)
+				cellActors[nextSlot[cellOf[id]]++] = id;
+	} // end rebuild()
+
+	/**
+	 * Finds the nearest live, visible actor whose army is in <i>hostileMask</i>, searching rings of cells outwards from the one containing (x, y) and stopping once no unsearched cell can hold anything closer.
+	 * @param store actors, as passed to the last <i>rebuild()</i>
+	 * @param x query position
+	 * @param y query position
+	 * @param hostileMask bit per army to consider
+	 * @param fog what the searching army sees, to consider only the cells it sees, or null without fog of war
+	 * @param army the searching army
+	 * @return id of the nearest such actor, or -1 if there is none
+	 */
+	int findNearest(ActorStore store, double x, double y, long hostileMask, FogOfWar fog, int army) {
+		if ((globalMask & hostileMask) == 0L)
+			return -1;
+		final int centreColumn = column(x), centreRow = row(y);
+		final int maxRing = Math.max(Math.max(centreColumn, columns - 1 - centreColumn), Math.max(centreRow, rows - 1 - centreRow));
+		int nearest = -1;
+		double closest = Double.MAX_VALUE;
+		for (int ring = 0; ring <= maxRing; ++ring) {
+			double ringDistance = (ring - 1) * cellSize; // nothing in this ring can be closer than this
+			if (ring > 0 && ringDistance * ringDistance > closest)
+				break;
+			for (int row = centreRow - ring; row <= centreRow + ring; ++row) {
+				if (row < 0 || row >= rows)
+					continue;
+				boolean edgeRow = row == centreRow - ring || row == centreRow + ring;
+				int step = edgeRow ? 1 : 2 * ring; // interior rows of the ring only contribute their two end cells
+				for (int column = centreColumn - ring; column <= centreColumn + ring; column += Math.max(1, step)) {
+					if (column < 0 || column >= columns)
+						continue;
+					int cell = row * columns + column;
+					if ((cellMask[cell] & hostileMask) == 0L || (fog != null && (fog.visibleTo[cell] & (1L << army)) == 0L))
+						continue;
+					for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+						int candidate = cellActors[i];
+						if (!store.isTargetable(candidate) || (hostileMask & (1L << store.getArmy(candidate))) == 0L)
+							continue; // killed since the rebuild, or a friendly actor sharing the cell
+						double deltaX = x - store.getX(candidate), deltaY = y - store.getY(candidate);
+						double distanceSquared = deltaX * deltaX + deltaY * deltaY;
+						if (distanceSquared < closest || (distanceSquared == closest && candidate < nearest)) {
+							closest = distanceSquared;
+							nearest = candidate;
+						}
+					}
+				}
+			}
+		}
+		return nearest;
+	} // end findNearest()
+} // end class SpatialGrid
@@ -0,0 +1,41 @@
+package engine;
+
+/**
+ * An order-independent hash of the state of a battle: the sum, modulo 2<sup>64</sup>, of one mixed 64-bit hash per live actor over its id, position and health.
+ * Because the actors' hashes are added, the order in which they are visited does not matter, partial sums over shards or chunks of ids combine by addition, and one actor's change updates the total in constant time (subtract its old hash, add its new one).
+ * The doubles are hashed bit for bit, so two engines agree only if they agree exactly; that is what the engine configurations of a <i>Battle</i> promise.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Battle#setStateHashing(boolean)
+ * @see LockstepVerifier
+ */
+public final class StateHash {
+	private StateHash() {}
+
+	/** @return the contribution of one live actor to the hash */
+	public static long actor(int id, double x, double y, double health) {
+		long hash = mix(id * 0x9E3779B97F4A7C15L ^ Double.doubleToLongBits(x));
+		hash = mix(hash ^ Double.doubleToLongBits(y));
+		return mix(hash ^ Double.doubleToLongBits(health));
+	} // end actor()
+
+	/** @return hash of the live actors (not ghosts) of <i>store</i> with ids <i>from</i> to <i>to</i>-1 */
+	public static long of(ActorStore store, int from, int to) {
+		long hash = 0L;
+		for (int id = from; id < to; ++id)
+			if (store.isAlive(id) && !store.isGhost(id))
+				hash += actor(id, store.getX(id), store.getY(id), store.getHealth(id));
+		return hash;
+	} // end of()
+
+	/** @return hash of every live actor (not ghost) of <i>store</i> */
+	public static long of(ActorStore store) { return of(store, 0, store.size()); }
+
+	/** The finalizer of SplitMix64: every input bit affects every output bit. */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	} // end mix()
+} // end class StateHash
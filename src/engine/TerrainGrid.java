@@ -0,0 +1,151 @@
+package engine;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Cost of crossing each square cell of the battlefield: 1 for open ground, up to {@value #MAX_COST} for the hardest terrain, and {@value #IMPASSABLE} for cells that cannot be entered at all.
+ * A terrain is built from an image, such as the <i>MiddleEarth-3.jpg</i> background, where darker ink (mountains, forests, rivers) costs more, or from a text map with one character per cell.
+ * Every change of cost increments <i>getVersion()</i>, so the <i>FlowField</i> objects built on the terrain know when they are out of date.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see FlowField
+ */
+public final class TerrainGrid {
+	/** Cost of a cell that cannot be entered: {@value} */
+	public static final int IMPASSABLE = 0;
+	/** Highest cost of a passable cell: {@value} */
+	public static final int MAX_COST = 9;
+	/** Average brightness (0 to 255) at or above which a cell of an image is open ground: {@value} */
+	private static final double OPEN_BRIGHTNESS = 165.0;
+	/** Average brightness below which a cell of an image is impassable: {@value} */
+	private static final double IMPASSABLE_BRIGHTNESS = 120.0;
+
+	private final double cellSize;
+	private final int columns, rows;
+	private final byte[] cost;
+	private long version;
+
+	/**
+	 * Builds open terrain: every cell costs 1.
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 * @param cellSize side of each square cell
+	 */
+	public TerrainGrid(double width, double height, double cellSize) {
+		this.cellSize = cellSize;
+		columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		cost = new byte[columns * rows];
+		Arrays.fill(cost, (byte) 1);
+	} // end Constructor
+
+	/**
+	 * Reads the terrain from an image stretched over the battlefield. Each cell's cost comes from the average brightness of the pixels under it:
+	 * 1 at or above {@value #OPEN_BRIGHTNESS}, rising to {@value #MAX_COST}, and impassable below {@value #IMPASSABLE_BRIGHTNESS}.
+	 * @param image file in any format <i>ImageIO</i> reads, e.g. <i>MiddleEarth-3.jpg</i>
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 * @param cellSize side of each square cell
+	 * @throws IOException if the image cannot be read
+	 */
+	public static TerrainGrid fromImage(Path image, double width, double height, double cellSize) throws IOException {
+		BufferedImage picture = ImageIO.read(image.toFile());
+		if (picture == null)
+			throw new IOException("Not a readable image: " + image);
+		TerrainGrid terrain = new TerrainGrid(width, height, cellSize);
+		double scaleX = picture.getWidth() / width, scaleY = picture.getHeight() / height;
+		for (int row = 0; row < terrain.rows; ++row) {
+			int top = (int) (row * cellSize * scaleY), bottom = Math.min(picture.getHeight(), Math.max(top + 1, (int) ((row + 1) * cellSize * scaleY)));
+			for (int column = 0; column < terrain.columns; ++column) {
+				int left = (int) (column * cellSize * scaleX), right = Math.min(picture.getWidth(), Math.max(left + 1, (int) ((column + 1) * cellSize * scaleX)));
+				double brightness = 0.0;
+				for (int y = top; y < bottom; ++y)
+					for (int x = left; x < right; ++x) {
+						int rgb = picture.getRGB(x, y);
+						brightness += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+					}
+				brightness /= Math.max(1, (bottom - top) * (right - left));
+				int cellCost;
+				if (brightness < IMPASSABLE_BRIGHTNESS)
+					cellCost = IMPASSABLE;
+				else if (brightness >= OPEN_BRIGHTNESS)
+					cellCost = 1;
+				else
+					cellCost = 1 + (int) Math.round((MAX_COST - 1) * (OPEN_BRIGHTNESS - brightness) / (OPEN_BRIGHTNESS - IMPASSABLE_BRIGHTNESS));
+				terrain.cost[row * terrain.columns + column] = (byte) cellCost;
+			}
+		}
+		return terrain;
+	} // end fromImage()
+
+	/**
+	 * Reads a text map: one line per row of cells and one character per cell, <b>1</b> to <b>9</b> for the cost and <b>#</b> for impassable.
+	 * Short lines are padded with open ground.
+	 * @param in source of the map
+	 * @param cellSize side of each square cell; the battlefield is as wide as the longest line and as high as the number of lines
+	 * @throws IOException if the map cannot be read
+	 * @throws IllegalArgumentException if the map holds any other character
+	 */
+	public static TerrainGrid fromText(Reader in, double cellSize) throws IOException {
+		List<String> lines = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(in);
+		int longest = 0;
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			lines.add(line);
+			longest = Math.max(longest, line.length());
+		}
+		TerrainGrid terrain = new TerrainGrid(Math.max(1, longest) * cellSize, Math.max(1, lines.size()) * cellSize, cellSize);
+		for (int row = 0; row < lines.size(); ++row) {
+			String line = lines.get(row);
+			for (int column = 0; column < line.length(); ++column) {
+				char symbol = line.charAt(column);
+				if (symbol == '#')
+					terrain.cost[row * terrain.columns + column] = IMPASSABLE;
+				else if (symbol >= '1' && symbol <= '9')
+					terrain.cost[row * terrain.columns + column] = (byte) (symbol - '0');
+				else
+					throw new IllegalArgumentException(String.format("Terrain map line %d column %d: '%c' is not 1 to 9 or #", row + 1, column + 1, symbol));
+			}
+		}
+		return terrain;
+	} // end fromText()
+
+	public double getCellSize() { return cellSize; }
+	public int getColumns() { return columns; }
+	public int getRows() { return rows; }
+	/** @return number of changes made by <i>setCost()</i> */
+	public long getVersion() { return version; }
+
+	public int column(double x) { return Math.min(columns - 1, Math.max(0, (int) (x / cellSize))); }
+	public int row(double y) { return Math.min(rows - 1, Math.max(0, (int) (y / cellSize))); }
+	/** @return index of the cell containing (x, y); positions off the battlefield belong to the nearest edge cell */
+	public int cellAt(double x, double y) { return row(y) * columns + column(x); }
+
+	/** @return cost of entering a cell, or {@value #IMPASSABLE} */
+	public int getCost(int cell) { return cost[cell]; }
+	public int getCost(int column, int row) { return cost[row * columns + column]; }
+
+	/**
+	 * @param column cell column
+	 * @param row cell row
+	 * @param newCost 1 to {@value #MAX_COST}, or {@value #IMPASSABLE}
+	 */
+	public void setCost(int column, int row, int newCost) {
+		if (newCost < IMPASSABLE || newCost > MAX_COST)
+			throw new IllegalArgumentException("Terrain cost must be " + IMPASSABLE + " to " + MAX_COST);
+		if (cost[row * columns + column] != newCost) {
+			cost[row * columns + column] = (byte) newCost;
+			++version;
+		}
+	} // end setCost()
+} // end class TerrainGrid
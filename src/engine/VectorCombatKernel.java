@@ -0,0 +1,45 @@
+package engine;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Resolves a <i>CombatBatch</i> several pairs at a time with the Vector API: once <i>CombatBatch.gather()</i> has copied the attributes of both sides into contiguous arrays, the hit points and proportions are computed lane by lane, and a mask picks the winner's and looser's health change for each side.
+ * The gather is a scalar loop rather than an indexed <i>fromArray()</i>, which crashes the C2 compiler of JDK 21.0.1.
+ * Each lane performs exactly the operations of <i>CombatBatch.resolveScalar()</i>, in the same order and without fused multiply-add, so both give bit-identical results. The pairs left over after the last full vector are finished by the scalar loop.
+ * <p>This is the only class that refers to <i>jdk.incubator.vector</i>: compile and run with <i>--add-modules jdk.incubator.vector</i> to use it. <i>Battle</i> only loads it when <i>Battle.VECTOR_SUPPORTED</i> is true.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see CombatBatch
+ */
+final class VectorCombatKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private VectorCombatKernel() { }
+
+	/** Fills <i>attackerChange</i> and <i>defenderChange</i> of the batch. */
+	static void resolve(CombatBatch batch, ActorStore store) {
+		batch.gather(store);
+		final int lanes = SPECIES.length(), upper = SPECIES.loopBound(batch.size);
+		int i = 0;
+		for (; i < upper; i += lanes) {
+			DoubleVector attackerStrength = DoubleVector.fromArray(SPECIES, batch.attackerStrength, i);
+			DoubleVector attackerHealth = DoubleVector.fromArray(SPECIES, batch.attackerHealth, i).mul(.5);
+			DoubleVector defenderStrength = DoubleVector.fromArray(SPECIES, batch.defenderStrength, i);
+			DoubleVector defenderHealth = DoubleVector.fromArray(SPECIES, batch.defenderHealth, i).mul(.5);
+			DoubleVector looser = DoubleVector.fromArray(SPECIES, batch.looserDraw, i).mul(CombatBatch.MAX_COMBAT_HEALTH_REDUCTION_OF_LOOSER).neg().sub(1.0);
+			DoubleVector winner = DoubleVector.fromArray(SPECIES, batch.winnerDraw, i).mul(CombatBatch.MAX_COMBAT_HEALTH_REDUCTION_OF_WINNER).neg().add(1.0);
+			DoubleVector attackerHitPoints = attackerStrength.add(attackerHealth.mul(DoubleVector.fromArray(SPECIES, batch.attackerDraw, i)));
+			DoubleVector attackerSecondHitPoints = attackerStrength.add(attackerHealth.mul(DoubleVector.fromArray(SPECIES, batch.attackerSecondDraw, i)));
+			DoubleVector defenderHitPoints = defenderStrength.add(defenderHealth.mul(DoubleVector.fromArray(SPECIES, batch.defenderDraw, i)));
+			DoubleVector proportion = attackerHitPoints.div(attackerSecondHitPoints.add(defenderHitPoints));
+			VectorMask<Double> attackerLoses = DoubleVector.fromArray(SPECIES, batch.outcomeDraw, i).compare(VectorOperators.GT, proportion);
+			winner.blend(looser, attackerLoses).intoArray(batch.attackerChange, i);
+			looser.blend(winner, attackerLoses).intoArray(batch.defenderChange, i);
+		}
+		batch.resolveScalar(i, batch.size);
+	} // end resolve()
+} // end class VectorCombatKernel
@@ -0,0 +1,46 @@
+package engine;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The movement step of <i>Battle.tick()</i> over whole vectors of actors with the Vector API: interpolation towards the destination, countdown of the leg of motion and clamping to the battlefield.
+ * It runs on a heap store (see <i>ActorStore.onHeap()</i>), loading whole vectors straight from its arrays. The lanes to update come straight from the <i>ActorStore.moving</i> bitset (a vector never spans two of its words), and lanes of dead actors and ghosts keep their old values through a blend.
+ * Each lane performs the operations of <i>MovementKernels.integrate()</i> in the same order, so both give bit-identical positions; the ids left over after the last full vector are moved by that scalar loop.
+ * <p>Choosing destinations is not part of this step: it draws from the battle's random sequences in id order and stays in the scalar <i>MovementKernels</i>.
+ * Like <i>VectorCombatKernel</i>, this class needs <i>--add-modules jdk.incubator.vector</i> and is only loaded when <i>Battle.VECTOR_SUPPORTED</i> is true.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see MovementKernels
+ */
+final class VectorMovementKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private VectorMovementKernel() { }
+
+	/** Same contract as <i>MovementKernels.integrate()</i> over every id in the store. */
+	static void integrate(ActorStore store, double seconds, double width, double height) {
+		final double[] x = store.x, y = store.y, destX = store.destX, destY = store.destY, legTime = store.legTime;
+		final long[] moving = store.moving;
+		final int lanes = SPECIES.length(), upper = SPECIES.loopBound(store.size());
+		int id = 0;
+		for (; id < upper; id += lanes) {
+			long bits = moving[id >>> 6] >>> (id & 63);
+			if ((bits & (-1L >>> (64 - lanes))) == 0L)
+				continue; // no live actor owned here in these lanes
+			VectorMask<Double> mask = VectorMask.fromLong(SPECIES, bits);
+			DoubleVector remaining = DoubleVector.fromArray(SPECIES, legTime, id);
+			DoubleVector fraction = DoubleVector.broadcast(SPECIES, seconds).div(remaining).blend(1.0, remaining.compare(VectorOperators.LE, seconds));
+			DoubleVector oldX = DoubleVector.fromArray(SPECIES, x, id), oldY = DoubleVector.fromArray(SPECIES, y, id);
+			DoubleVector newX = oldX.add(DoubleVector.fromArray(SPECIES, destX, id).sub(oldX).mul(fraction)).max(0.0).min(width);
+			DoubleVector newY = oldY.add(DoubleVector.fromArray(SPECIES, destY, id).sub(oldY).mul(fraction)).max(0.0).min(height);
+			oldX.blend(newX, mask).intoArray(x, id);
+			oldY.blend(newY, mask).intoArray(y, id);
+			remaining.blend(remaining.sub(seconds), mask).intoArray(legTime, id);
+		}
+		MovementKernels.integrate(store, id, store.size(), seconds, width, height);
+	} // end integrate()
+} // end class VectorMovementKernel
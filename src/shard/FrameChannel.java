@@ -0,0 +1,124 @@
+package shard;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * A non-blocking <i>SocketChannel</i> that carries length-prefixed frames. Each frame is an <i>int</i> byte count followed by that many bytes of payload; the first payload byte is one of the <i>ShardProtocol</i> message types.
+ * Outgoing frames are queued and written as the socket accepts them; incoming bytes are accumulated until a whole frame is available.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ShardProtocol
+ */
+final class FrameChannel implements AutoCloseable {
+	private final SocketChannel channel;
+	private final ArrayDeque<ByteBuffer> outgoing = new ArrayDeque<>();
+	/** incoming bytes, kept in write mode between calls */
+	private ByteBuffer incoming = ByteBuffer.allocate(64 * 1024);
+
+	FrameChannel(SocketChannel channel) throws IOException {
+		this.channel = channel;
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // one small frame per tick: do not wait to coalesce
+	} // end Constructor
+
+	/**
+	 * Queues a frame; nothing is written until <i>flush()</i> or <i>exchange()</i>.
+	 * @param payload frame contents, flipped and ready for reading
+	 */
+	void send(ByteBuffer payload) {
+		ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + payload.remaining());
+		frame.putInt(payload.remaining()).put(payload).flip();
+		outgoing.add(frame);
+	} // end send()
+
+	/** @return true once every queued frame has been written */
+	boolean flush() throws IOException {
+		while (!outgoing.isEmpty()) {
+			ByteBuffer frame = outgoing.peek();
+			channel.write(frame);
+			if (frame.hasRemaining())
+				return false; // socket buffer full; try again when writable
+			outgoing.poll();
+		}
+		return true;
+	} // end flush()
+
+	/**
+	 * Reads whatever bytes are available and returns the next complete frame, if there is one.
+	 * @return payload of the next frame, or null if a whole frame has not arrived yet
+	 * @throws EOFException if the other end has closed the connection
+	 */
+	ByteBuffer poll() throws IOException {
+		ByteBuffer frame = nextFrame();
+		if (frame != null)
+			return frame;
+		if (!incoming.hasRemaining()) {
+			ByteBuffer larger = ByteBuffer.allocate(incoming.capacity() * 2);
+			incoming.flip();
+			incoming = larger.put(incoming);
+		}
+		if (channel.read(incoming) < 0)
+			throw new EOFException("Connection closed by " + channel.getRemoteAddress());
+		return nextFrame();
+	} // end poll()
+
+	private ByteBuffer nextFrame() {
+		if (incoming.position() < Integer.BYTES)
+			return null;
+		int length = incoming.getInt(0);
+		if (incoming.position() < Integer.BYTES + length)
+			return null;
+		incoming.flip();
+		incoming.getInt();
+		ByteBuffer payload = ByteBuffer.allocate(length);
+		ByteBuffer slice = incoming.slice(); slice.limit(length);
+		payload.put(slice).flip();
+		incoming.position(Integer.BYTES + length);
+		incoming.compact();
+		return payload;
+	} // end nextFrame()
+
+	/**
+	 * Writes every queued frame on all channels and waits for exactly one incoming frame from each of them. Writing and reading are interleaved through the <i>Selector</i>, so two processes that send each other large frames at the same time cannot deadlock on full socket buffers.
+	 * @param selector selector reserved for this group of channels
+	 * @param channels channels to service
+	 * @return one frame per channel, in the same order as <i>channels</i>
+	 */
+	static ByteBuffer[] exchange(Selector selector, FrameChannel... channels) throws IOException {
+		ByteBuffer[] frames = new ByteBuffer[channels.length];
+		int pending = 2 * channels.length; // one flush and one frame per channel
+		boolean[] flushed = new boolean[channels.length];
+		while (true) {
+			for (int i = 0; i < channels.length; ++i) {
+				FrameChannel frameChannel = channels[i];
+				if (!flushed[i] && frameChannel.flush()) {
+					flushed[i] = true;
+					--pending;
+				}
+				if (frames[i] == null && (frames[i] = frameChannel.poll()) != null)
+					--pending;
+				int interest = (flushed[i] ? 0 : SelectionKey.OP_WRITE) | (frames[i] == null ? SelectionKey.OP_READ : 0);
+				SelectionKey key = frameChannel.channel.keyFor(selector);
+				if (key == null)
+					frameChannel.channel.register(selector, interest);
+				else
+					key.interestOps(interest);
+			}
+			if (pending == 0)
+				return frames;
+			selector.select();
+			selector.selectedKeys().clear();
+		}
+	} // end exchange()
+
+	@Override
+	public void close() throws IOException { channel.close(); }
+} // end class FrameChannel
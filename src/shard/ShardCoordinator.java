@@ -0,0 +1,245 @@
+package shard;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import actor.ActorFactory;
+import engine.ActorStore;
+import engine.Battle;
+
+/**
+ * The <i>ShardCoordinator</i> runs one battle across several <i>ShardProcess</i> JVMs. The battlefield is cut into vertical strips of equal width, one per shard; each shard owns the actors inside its strip.
+ * The coordinator does no simulation itself. It populates the battlefield once, hands each shard the configuration and the actors in its strip, acts as the tick barrier (no shard starts tick <i>n+1</i> until every shard has reported tick <i>n</i>) and adds up the live counts reported by the shards to detect the winner.
+ * Boundary state travels directly between neighbouring shards, never through the coordinator.
+ * <p>Run from the command line as <pre>java shard.ShardCoordinator [numShards] [HOBBIT=5 ELF=3 ... vs ORC=23]</pre> which starts the shard processes on this machine and prints the result.</p>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ShardProcess
+ * @see ShardProtocol
+ */
+public class ShardCoordinator {
+	/** Concrete actor types (every <i>ActorFactory.Type</i> except <b>RANDOM</b>). */
+	private static final ActorFactory.Type[] TYPES = Arrays.copyOf(ActorFactory.Type.values(), ActorFactory.numTypes - 1);
+
+	private final int numShards;
+	private final int[][] composition = new int[ShardProtocol.NUM_ARMIES][TYPES.length];
+	private long seed = 1L;
+	private double ghostWidth = Battle.DISTANCE_FOR_BATTLE * 2.0;
+	private long maxTicks = 20 * 60 * 10; // ten simulated minutes
+
+	/** Outcome of a sharded battle. */
+	public static final class Result {
+		private final int winner;
+		private final long ticks;
+		private final int[] initialCounts, finalCounts;
+
+		private Result(int winner, long ticks, int[] initialCounts, int[] finalCounts) {
+			this.winner = winner; this.ticks = ticks; this.initialCounts = initialCounts; this.finalCounts = finalCounts;
+		}
+
+		/** @return index of the winning army, or -1 if the battle was not decided within the tick limit */
+		public int getWinner() { return winner; }
+		public long getTicks() { return ticks; }
+		/** @return live count of the army summed over all shards after the first tick */
+		public int getInitialCount(int armyIndex) { return initialCounts[armyIndex]; }
+		/** @return live count of the army summed over all shards after the last tick */
+		public int getFinalCount(int armyIndex) { return finalCounts[armyIndex]; }
+
+		@Override
+		public String toString() {
+			return String.format("Winner:%d Ticks:%d Light:%d->%d Darkness:%d->%d", winner, ticks, initialCounts[Battle.LIGHT], finalCounts[Battle.LIGHT], initialCounts[Battle.DARKNESS], finalCounts[Battle.DARKNESS]);
+		}
+	} // end class Result
+
+	/**
+	 * @param numShards number of strips (and shard processes)
+	 * @param light composition of the <i>Forces of Light</i>
+	 * @param darkness composition of the <i>Forces of Darkness</i>
+	 */
+	public ShardCoordinator(int numShards, Map<ActorFactory.Type, Integer> light, Map<ActorFactory.Type, Integer> darkness) {
+		this.numShards = numShards;
+		ghostWidth = Math.min(ghostWidth, Battle.WORLD_WIDTH / numShards / 2.0 - 1.0); // narrow strips need a narrower ghost zone
+		for (Map.Entry<ActorFactory.Type, Integer> entry : light.entrySet())
+			composition[Battle.LIGHT][entry.getKey().ordinal()] = entry.getValue();
+		for (Map.Entry<ActorFactory.Type, Integer> entry : darkness.entrySet())
+			composition[Battle.DARKNESS][entry.getKey().ordinal()] = entry.getValue();
+	} // end Constructor
+
+	public void setSeed(long seed) { this.seed = seed; }
+	public void setMaxTicks(long maxTicks) { this.maxTicks = maxTicks; }
+
+	/**
+	 * @param ghostWidth distance from a strip border within which actors are mirrored to the neighbouring shard; it must be less than half a strip so that an actor is a ghost on at most one neighbour
+	 */
+	public void setGhostWidth(double ghostWidth) {
+		if (ghostWidth * 2.0 >= Battle.WORLD_WIDTH / numShards)
+			throw new IllegalArgumentException("Ghost width must be less than half the strip width");
+		this.ghostWidth = ghostWidth;
+	} // end setGhostWidth()
+
+	/**
+	 * Starts one <i>ShardProcess</i> JVM per strip on this machine (with the same class path and JVM options, such as <i>--add-modules</i> and <i>--enable-preview</i>, as this JVM) and coordinates the battle.
+	 * @return outcome of the battle
+	 */
+	public Result launch() throws IOException, InterruptedException {
+		try (ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), numShards);
+			String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+			int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+			List<String> command = new ArrayList<>();
+			command.add(java);
+			for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments())
+				if (!option.startsWith("-agentlib:jdwp")) // a debugger's port can only be bound once
+					command.add(option);
+			command.addAll(List.of("-cp", System.getProperty("java.class.path"), ShardProcess.class.getName(), String.valueOf(port)));
+			List<Process> processes = new ArrayList<>();
+			for (int shardIndex = 0; shardIndex < numShards; ++shardIndex) {
+				List<String> shardCommand = new ArrayList<>(command);
+				shardCommand.add(String.valueOf(shardIndex));
+				processes.add(new ProcessBuilder(shardCommand).inheritIO().start());
+			}
+			try {
+				return coordinate(server);
+			} finally {
+				for (Process process : processes)
+					if (process.waitFor() != 0)
+						System.err.println("Shard process exited with " + process.exitValue());
+			}
+		}
+	} // end launch()
+
+	/**
+	 * Accepts <i>numShards</i> shard connections on <i>server</i> and runs the battle to the end. Shards may be started by <i>launch()</i> or by hand.
+	 * @return outcome of the battle
+	 */
+	public Result coordinate(ServerSocketChannel server) throws IOException {
+		FrameChannel[] unordered = new FrameChannel[numShards];
+		for (int i = 0; i < numShards; ++i)
+			unordered[i] = new FrameChannel(server.accept());
+		try (Selector selector = Selector.open()) {
+			// HELLO: put the channels in strip order and collect the peer ports
+			FrameChannel[] shards = new FrameChannel[numShards];
+			int[] peerPorts = new int[numShards];
+			ByteBuffer[] hellos = FrameChannel.exchange(selector, unordered); // frames come back in the same order as the channels
+			for (int i = 0; i < numShards; ++i) {
+				ShardProtocol.expect(hellos[i], ShardProtocol.HELLO);
+				int shardIndex = hellos[i].getInt();
+				peerPorts[shardIndex] = hellos[i].getInt();
+				shards[shardIndex] = unordered[i];
+			}
+			ByteBuffer[] starts = startMessages(peerPorts);
+			for (int shardIndex = 0; shardIndex < numShards; ++shardIndex)
+				shards[shardIndex].send(starts[shardIndex]);
+
+			int[] initialCounts = null, counts = null;
+			long tick = 0;
+			int winner = -1;
+			while (tick < maxTicks) {
+				ByteBuffer go = ByteBuffer.allocate(1 + Long.BYTES);
+				go.put(ShardProtocol.GO).putLong(tick).flip();
+				for (FrameChannel shard : shards)
+					shard.send(go.duplicate());
+				counts = new int[ShardProtocol.NUM_ARMIES];
+				for (ByteBuffer done : FrameChannel.exchange(selector, shards)) {
+					ShardProtocol.expect(done, ShardProtocol.DONE);
+					if (done.getLong() != tick)
+						throw new IllegalStateException("Shard out of step at tick " + tick);
+					for (int armyIndex = 0; armyIndex < counts.length; ++armyIndex)
+						counts[armyIndex] += done.getInt();
+				}
+				if (initialCounts == null)
+					initialCounts = counts;
+				++tick;
+				if ((winner = decide(counts)) != -1 || counts[Battle.LIGHT] + counts[Battle.DARKNESS] == 0)
+					break;
+			}
+			ByteBuffer end = ByteBuffer.allocate(1 + Integer.BYTES);
+			end.put(ShardProtocol.END).putInt(winner).flip();
+			for (FrameChannel shard : shards) {
+				shard.send(end.duplicate());
+				while (!shard.flush()) // a few bytes into an otherwise idle socket; this does not loop in practice
+					Thread.onSpinWait();
+			}
+			return new Result(winner, tick, initialCounts, counts);
+		} finally {
+			for (FrameChannel shard : unordered)
+				shard.close();
+		}
+	} // end coordinate()
+
+	/** Populates the whole battlefield from the seed and builds each shard's <b>START</b>, holding the actors inside its strip; an actor's global id is its id in this population. */
+	private ByteBuffer[] startMessages(int[] peerPorts) {
+		Battle population = new Battle(seed);
+		for (int armyIndex = 0; armyIndex < ShardProtocol.NUM_ARMIES; ++armyIndex)
+			for (ActorFactory.Type type : TYPES)
+				population.populate(armyIndex, type, composition[armyIndex][type.ordinal()]);
+		ActorStore store = population.getStore();
+		int[] strip = new int[store.size()], numActors = new int[numShards];
+		for (int id = 0; id < store.size(); ++id) {
+			int shardIndex = 0;
+			while (shardIndex < numShards - 1 && store.getX(id) >= ShardProtocol.stripStart(shardIndex + 1, numShards))
+				++shardIndex;
+			strip[id] = shardIndex;
+			++numActors[shardIndex];
+		}
+		ByteBuffer[] starts = new ByteBuffer[numShards];
+		for (int shardIndex = 0; shardIndex < numShards; ++shardIndex) {
+			starts[shardIndex] = ByteBuffer.allocate(1 + Integer.BYTES + Long.BYTES + Double.BYTES + Long.BYTES + Integer.BYTES * (numShards + 1) + numActors[shardIndex] * (Long.BYTES + Battle.ACTOR_RECORD_BYTES));
+			starts[shardIndex].put(ShardProtocol.START).putInt(numShards).putLong(seed).putDouble(ghostWidth).putLong(maxTicks);
+			for (int port : peerPorts)
+				starts[shardIndex].putInt(port);
+			starts[shardIndex].putInt(numActors[shardIndex]);
+		}
+		for (int id = 0; id < store.size(); ++id) {
+			starts[strip[id]].putLong(id);
+			population.writeActor(id, starts[strip[id]]);
+		}
+		for (ByteBuffer start : starts)
+			start.flip();
+		return starts;
+	} // end startMessages()
+
+	/** @return the only army with live actors, or -1 if both (or neither) are still standing */
+	private static int decide(int[] counts) {
+		if (counts[Battle.LIGHT] > 0 && counts[Battle.DARKNESS] == 0)
+			return Battle.LIGHT;
+		if (counts[Battle.DARKNESS] > 0 && counts[Battle.LIGHT] == 0)
+			return Battle.DARKNESS;
+		return -1;
+	} // end decide()
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int numShards = 4;
+		Map<ActorFactory.Type, Integer> light = new EnumMap<>(ActorFactory.Type.class), darkness = new EnumMap<>(ActorFactory.Type.class);
+		Map<ActorFactory.Type, Integer> side = light;
+		for (String arg : args) {
+			if (arg.equalsIgnoreCase("vs"))
+				side = darkness;
+			else if (arg.contains("=")) {
+				String[] pair = arg.split("=");
+				side.put(ActorFactory.Type.valueOf(pair[0].toUpperCase()), Integer.parseInt(pair[1]));
+			} else
+				numShards = Integer.parseInt(arg);
+		}
+		if (light.isEmpty() && darkness.isEmpty()) { // same armies as Simulator.populate(), scaled up
+			light.put(ActorFactory.Type.HOBBIT, 500); light.put(ActorFactory.Type.ELF, 300); light.put(ActorFactory.Type.WIZARD, 200); light.put(ActorFactory.Type.ORC, 0);
+			darkness.put(ActorFactory.Type.ORC, 1000);
+		}
+		ShardCoordinator coordinator = new ShardCoordinator(numShards, light, darkness);
+		long start = System.nanoTime();
+		Result result = coordinator.launch();
+		System.out.printf("%s in %.1f s%n", result, (System.nanoTime() - start) / 1e9);
+	} // end main()
+} // end class ShardCoordinator
@@ -0,0 +1,249 @@
+package shard;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import engine.ActorStore;
+import engine.Battle;
+
+/**
+ * One shard of a sharded battle: a JVM that simulates the actors inside one vertical strip of the battlefield with an ordinary headless <i>Battle</i>.
+ * <p>Actors within the ghost width of a strip border are mirrored to the neighbouring shard as ghosts: the neighbour's actors can target them and fight them, but only the owner moves them.
+ * Combat against a ghost changes the ghost's health; the change is sent back to the owner, which applies it to the real actor. An actor whose position leaves the strip migrates, with its complete state, to the neighbour on that side.</p>
+ * <p>Each tick: wait for <b>GO</b> from the coordinator, run <i>Battle.tick()</i>, swap <b>BOUNDARY</b> frames with both neighbours (migrants, fresh ghosts, damage dealt to their ghosts), then report live counts in <b>DONE</b>.</p>
+ * Every actor keeps the global id it was given at population time: the coordinator populates the battlefield once and sends each shard only the actors in its own strip, so ids agree everywhere and a shard's store holds no more than its share.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ShardCoordinator
+ * @see ShardProtocol
+ */
+public class ShardProcess {
+	private final int shardIndex;
+	private Battle battle;
+	private double minX, maxX, ghostWidth;
+	/** global id of the actor in each store slot */
+	private long[] globalIds = new long[0];
+	/** store slot of each actor owned by this shard, by global id */
+	private final Map<Long, Integer> ownedSlots = new HashMap<>();
+	/** ghosts received from each neighbour (0 left, 1 right) and their health when received, to measure damage */
+	private final GhostSet[] ghosts = { new GhostSet(), new GhostSet() };
+	/** health changes dealt to each neighbour's ghosts this tick, by global id; applied here if the actor migrates to this shard in the same exchange */
+	private final List<Map<Long, Float>> damageDealt = List.of(new HashMap<>(), new HashMap<>());
+	private int[] peerPorts;
+	private FrameChannel coordinator;
+	private final FrameChannel[] neighbours = new FrameChannel[2];
+
+	/** The ghosts received from one neighbour during the last exchange. */
+	private static final class GhostSet {
+		int[] slots = new int[16];
+		double[] healthWhenReceived = new double[16];
+		int size;
+
+		void add(int slot, double health) {
+			if (size == slots.length) {
+				slots = Arrays.copyOf(slots, size * 2);
+				healthWhenReceived = Arrays.copyOf(healthWhenReceived, size * 2);
+			}
+			slots[size] = slot;
+			healthWhenReceived[size++] = health;
+		} // end add()
+	} // end class GhostSet
+
+	public ShardProcess(int shardIndex) { this.shardIndex = shardIndex; }
+
+	/**
+	 * Connects to the coordinator, runs the battle and returns when the coordinator sends <b>END</b>.
+	 * @param coordinatorPort port on which the <i>ShardCoordinator</i> is listening (on the loopback interface)
+	 */
+	public void run(int coordinatorPort) throws IOException {
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		try (ServerSocketChannel peerServer = ServerSocketChannel.open(); Selector coordinatorSelector = Selector.open(); Selector peerSelector = Selector.open()) {
+			peerServer.bind(new InetSocketAddress(loopback, 0), 1);
+			coordinator = new FrameChannel(SocketChannel.open(new InetSocketAddress(loopback, coordinatorPort)));
+			ByteBuffer hello = ByteBuffer.allocate(1 + 2 * Integer.BYTES);
+			hello.put(ShardProtocol.HELLO).putInt(shardIndex).putInt(((InetSocketAddress) peerServer.getLocalAddress()).getPort()).flip();
+			coordinator.send(hello);
+			ByteBuffer start = FrameChannel.exchange(coordinatorSelector, coordinator)[0];
+			ShardProtocol.expect(start, ShardProtocol.START);
+			int numShards = configure(start);
+
+			// Right-hand neighbour is already listening (it bound before HELLO), so connect first, then accept the left-hand one.
+			if (shardIndex + 1 < numShards)
+				neighbours[1] = new FrameChannel(SocketChannel.open(new InetSocketAddress(loopback, peerPorts[shardIndex + 1])));
+			if (shardIndex > 0)
+				neighbours[0] = new FrameChannel(peerServer.accept());
+			FrameChannel[] peers = Arrays.stream(neighbours).filter(peer -> peer != null).toArray(FrameChannel[]::new);
+
+			while (true) {
+				ByteBuffer command = FrameChannel.exchange(coordinatorSelector, coordinator)[0];
+				byte type = command.get();
+				if (type == ShardProtocol.END)
+					break;
+				if (type != ShardProtocol.GO)
+					throw new IllegalStateException("Unexpected message " + type);
+				long tick = command.getLong();
+				battle.tick();
+				exchangeBoundaries(peerSelector, peers);
+				ByteBuffer done = ByteBuffer.allocate(1 + Long.BYTES + Integer.BYTES * ShardProtocol.NUM_ARMIES);
+				done.put(ShardProtocol.DONE).putLong(tick);
+				for (int armyIndex = 0; armyIndex < ShardProtocol.NUM_ARMIES; ++armyIndex)
+					done.putInt(battle.getLiveCount(armyIndex));
+				coordinator.send(done.flip());
+			}
+		} finally {
+			if (coordinator != null)
+				coordinator.close();
+			for (FrameChannel peer : neighbours)
+				if (peer != null)
+					peer.close();
+		}
+	} // end run()
+
+	/** Reads <b>START</b> and adopts the actors of this strip. @return number of shards */
+	private int configure(ByteBuffer start) {
+		int numShards = start.getInt();
+		long seed = start.getLong();
+		ghostWidth = start.getDouble();
+		start.getLong(); // maximum ticks: enforced by the coordinator
+		battle = new Battle(seed * 31L + shardIndex + 1); // the shards' battles must not share one random sequence
+		peerPorts = new int[numShards];
+		for (int i = 0; i < numShards; ++i)
+			peerPorts[i] = start.getInt();
+		minX = ShardProtocol.stripStart(shardIndex, numShards);
+		maxX = ShardProtocol.stripStart(shardIndex + 1, numShards);
+		for (int numActors = start.getInt(); numActors > 0; --numActors) {
+			long globalId = start.getLong();
+			int slot = battle.readActor(start, false);
+			remember(slot, globalId);
+			ownedSlots.put(globalId, slot);
+		}
+		return numShards;
+	} // end configure()
+
+	/** Sends migrants, ghosts and ghost damage to each neighbour and applies what they send back. */
+	private void exchangeBoundaries(Selector peerSelector, FrameChannel[] peers) throws IOException {
+		if (peers.length == 0)
+			return;
+		ActorStore store = battle.getStore();
+		ByteBuffer[] outgoing = new ByteBuffer[2];
+		for (int side = 0; side < 2; ++side)
+			if (neighbours[side] != null)
+				outgoing[side] = boundaryMessage(store, side);
+		for (int side = 0; side < 2; ++side)
+			if (neighbours[side] != null)
+				neighbours[side].send(outgoing[side]);
+		for (GhostSet ghostSet : ghosts) {
+			for (int i = 0; i < ghostSet.size; ++i)
+				battle.release(ghostSet.slots[i]);
+			ghostSet.size = 0;
+		}
+		ByteBuffer[] incoming = FrameChannel.exchange(peerSelector, peers);
+		int next = 0;
+		for (int side = 0; side < 2; ++side)
+			if (neighbours[side] != null)
+				applyBoundaryMessage(incoming[next++], side);
+	} // end exchangeBoundaries()
+
+	/**
+	 * Builds the <b>BOUNDARY</b> frame for one side and releases the actors that migrate. Damage to the ghosts received from this neighbour is measured before they are released.
+	 * @param side 0 for the left-hand neighbour, 1 for the right-hand neighbour
+	 */
+	private ByteBuffer boundaryMessage(ActorStore store, int side) {
+		final int recordBytes = Long.BYTES + Battle.ACTOR_RECORD_BYTES;
+		int numMigrants = 0, numGhosts = 0;
+		for (int id = 0; id < store.size(); ++id) {
+			if (!store.isAlive(id) || store.isGhost(id))
+				continue;
+			if (leavesOn(store.getX(id), side))
+				++numMigrants;
+			else if (nearBorder(store.getX(id), side))
+				++numGhosts;
+		}
+		GhostSet ghostSet = ghosts[side];
+		ByteBuffer message = ByteBuffer.allocate(1 + 3 * Integer.BYTES + (numMigrants + numGhosts) * recordBytes + ghostSet.size * (Long.BYTES + Float.BYTES));
+		message.put(ShardProtocol.BOUNDARY);
+		message.putInt(numMigrants);
+		for (int id = 0; id < store.size(); ++id) {
+			if (store.isAlive(id) && !store.isGhost(id) && leavesOn(store.getX(id), side)) {
+				message.putLong(globalIds[id]);
+				battle.writeActor(id, message);
+				ownedSlots.remove(globalIds[id]);
+				battle.release(id);
+			}
+		}
+		message.putInt(numGhosts);
+		for (int id = 0; id < store.size(); ++id) {
+			if (store.isAlive(id) && !store.isGhost(id) && nearBorder(store.getX(id), side)) {
+				message.putLong(globalIds[id]);
+				battle.writeActor(id, message);
+			}
+		}
+		Map<Long, Float> damage = damageDealt.get(side);
+		damage.clear();
+		for (int i = 0; i < ghostSet.size; ++i) {
+			int slot = ghostSet.slots[i];
+			double change = store.getHealth(slot) - ghostSet.healthWhenReceived[i];
+			if (change != 0.0)
+				damage.put(globalIds[slot], (float) change);
+		}
+		message.putInt(damage.size());
+		for (Map.Entry<Long, Float> entry : damage.entrySet())
+			message.putLong(entry.getKey()).putFloat(entry.getValue());
+		return message.flip();
+	} // end boundaryMessage()
+
+	private boolean leavesOn(double x, int side) { return side == 0 ? x < minX : x >= maxX; }
+	private boolean nearBorder(double x, int side) { return side == 0 ? x < minX + ghostWidth : x >= maxX - ghostWidth; }
+
+	/** Adopts migrants, installs the new ghosts and applies the damage the neighbour dealt to this shard's actors. */
+	private void applyBoundaryMessage(ByteBuffer message, int side) {
+		ShardProtocol.expect(message, ShardProtocol.BOUNDARY);
+		ActorStore store = battle.getStore();
+		for (int numMigrants = message.getInt(); numMigrants > 0; --numMigrants) {
+			long globalId = message.getLong();
+			int slot = battle.readActor(message, false);
+			remember(slot, globalId);
+			ownedSlots.put(globalId, slot);
+			Float change = damageDealt.get(side).get(globalId);
+			if (change != null) // hit as a ghost here while it was migrating; the old owner will not find it
+				battle.adjustHealth(slot, change);
+		}
+		GhostSet ghostSet = ghosts[side];
+		for (int numGhosts = message.getInt(); numGhosts > 0; --numGhosts) {
+			long globalId = message.getLong();
+			int slot = battle.readActor(message, true);
+			remember(slot, globalId);
+			ghostSet.add(slot, store.getHealth(slot));
+		}
+		for (int numDamaged = message.getInt(); numDamaged > 0; --numDamaged) {
+			Integer slot = ownedSlots.get(message.getLong());
+			float change = message.getFloat();
+			if (slot != null && store.isAlive(slot)) // absent if it has just migrated to the neighbour that hit it; that neighbour applies the change
+				battle.adjustHealth(slot, change);
+		}
+	} // end applyBoundaryMessage()
+
+	private void remember(int slot, long globalId) {
+		if (slot >= globalIds.length)
+			globalIds = Arrays.copyOf(globalIds, Math.max(slot + 1, globalIds.length * 2));
+		globalIds[slot] = globalId;
+	} // end remember()
+
+	/**
+	 * Entry point used by <i>ShardCoordinator.launch()</i>.
+	 * @param args coordinator port, then shard index
+	 */
+	public static void main(String[] args) throws IOException {
+		new ShardProcess(Integer.parseInt(args[1])).run(Integer.parseInt(args[0]));
+	} // end main()
+} // end class ShardProcess
@@ -0,0 +1,48 @@
+package shard;
+
+import java.nio.ByteBuffer;
+
+import engine.Battle;
+
+/**
+ * Message types and layouts exchanged between the <i>ShardCoordinator</i> and the <i>ShardProcess</i> instances. Every frame starts with one of the type bytes below; all numbers are big-endian.
+ * <ul>
+ * <li><b>HELLO</b> shard to coordinator: <i>int</i> shard index, <i>int</i> port on which the shard accepts its left-hand neighbour</li>
+ * <li><b>START</b> coordinator to shard: <i>int</i> number of shards, <i>long</i> seed, <i>double</i> ghost width, <i>long</i> maximum ticks, one <i>int</i> peer port per shard, then the actors in the shard's strip (<i>int</i> count, then <i>long</i> global id and <i>Battle.writeActor</i> record each)</li>
+ * <li><b>GO</b> coordinator to shard: <i>long</i> tick number to run</li>
+ * <li><b>BOUNDARY</b> shard to neighbour: migrants (<i>int</i> count, then <i>long</i> global id and <i>Battle.writeActor</i> record each), ghosts (same layout), then damage dealt to the receiver's ghosts (<i>int</i> count, then <i>long</i> global id and <i>float</i> health change each)</li>
+ * <li><b>DONE</b> shard to coordinator: <i>long</i> tick number, then one <i>int</i> live count per army</li>
+ * <li><b>END</b> coordinator to shard: <i>int</i> index of the winning army, or -1</li>
+ * </ul>
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see ShardCoordinator
+ * @see ShardProcess
+ */
+final class ShardProtocol {
+	static final byte HELLO = 1;
+	static final byte START = 2;
+	static final byte GO = 3;
+	static final byte BOUNDARY = 4;
+	static final byte DONE = 5;
+	static final byte END = 6;
+
+	/** Both processes of a sharded run are started from the same classes, so the armies are always light and darkness. */
+	static final int NUM_ARMIES = 2;
+
+	private ShardProtocol() {}
+
+	/** @return x coordinate at which strip <i>stripIndex</i> of <i>numShards</i> starts; <i>stripStart(numShards, numShards)</i> is the width of the battlefield */
+	static double stripStart(int stripIndex, int numShards) { return Battle.WORLD_WIDTH * stripIndex / numShards; }
+
+	/**
+	 * Reads the type byte of a frame and checks it.
+	 * @throws IllegalStateException if the frame is not of the expected type
+	 */
+	static void expect(ByteBuffer frame, byte type) {
+		byte actual = frame.get();
+		if (actual != type)
+			throw new IllegalStateException(String.format("Expected message %d but received %d", type, actual));
+	} // end expect()
+} // end class ShardProtocol
@@ -0,0 +1,96 @@
+package simulator;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid that files the actors on the battlefield by cell and counts them per army, so that a view can decide cell by cell whether to draw each actor or one marker for the crowd.
+ * The grid is rebuilt once per refresh with a counting sort: the actors of cell <i>c</i> are <i>actorAt(cellStart(c))</i> to <i>actorAt(cellEnd(c) - 1)</i>.
+ * For every cell and army it also keeps the number of actors and the sum of their positions, so the marker standing for them can be drawn at their centre without visiting them.
+ * The cell size is chosen by the caller at each rebuild (the view matches it to the zoom), and positions off the battlefield belong to the nearest edge cell.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see BattlefieldView
+ */
+public final class AggregationGrid {
+	private double cellSize = 1.0;
+	private int columns = 1, rows = 1, armies = 1;
+	/** first index into <i>cellActors</i> of each cell */
+	private int[] cellStart = new int[2];
+	private int[] cellActors = new int[0], cellOf = new int[0];
+	/** number of actors of each army in each cell, at [cell * armies + army] */
+	private int[] count = new int[1];
+	/** sum of the positions of those actors */
+	private double[] sumX = new double[1], sumY = new double[1];
+
+	/**
+	 * Files <i>size</i> actors.
+	 * @param x position of each actor
+	 * @param y position of each actor
+	 * @param army army index (0 to <i>armies</i> - 1) of each actor
+	 * @param size number of actors
+	 * @param armies number of armies
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 * @param cellSize side of each square cell
+	 */
+	public void rebuild(double[] x, double[] y, int[] army, int size, int armies, double width, double height, double cellSize) {
+		this.cellSize = cellSize;
+		this.armies = Math.max(1, armies);
+		columns = Math.max(1, (int) Math.ceil(width / cellSize));
+		rows = Math.max(1, (int) Math.ceil(height / cellSize));
+		final int cells = columns * rows;
+		if (cellStart.length < cells + 1)
+			cellStart = new int[cells + 1];
+		else
+			Arrays.fill(cellStart, 0, cells + 1, 0);
+		if (count.length < cells * this.armies) {
+			count = new int[cells * this.armies];
+			sumX = new double[count.length];
+			sumY = new double[count.length];
+		} else {
+			Arrays.fill(count, 0, cells * this.armies, 0);
+			Arrays.fill(sumX, 0, cells * this.armies, 0.0);
+			Arrays.fill(sumY, 0, cells * this.armies, 0.0);
+		}
+		if (cellOf.length < size) {
+			cellOf = new int[size];
+			cellActors = new int[size];
+		}
+		for (int id = 0; id < size; ++id) {
+			int cell = row(y[id]) * columns + column(x[id]);
+			cellOf[id] = cell;
+			++cellStart[cell + 1];
+			int group = cell * this.armies + army[id];
+			++count[group];
+			sumX[group] += x[id];
+			sumY[group] += y[id];
+		}
+		for (int cell = 0; cell < cells; ++cell)
+			cellStart[cell + 1] += cellStart[cell]; // prefix sum: counts become start positions
+		int[] next = Arrays.copyOf(cellStart, cells);
+		for (int id = 0; id < size; ++id)
+			cellActors[next[cellOf[id]]++] = id;
+	} // end rebuild()
+
+	public double getCellSize() { return cellSize; }
+	public int getColumns() { return columns; }
+	public int getRows() { return rows; }
+
+	public int column(double x) { return Math.min(columns - 1, Math.max(0, (int) Math.floor(x / cellSize))); }
+	public int row(double y) { return Math.min(rows - 1, Math.max(0, (int) Math.floor(y / cellSize))); }
+
+	/** @return first position of the actors of a cell, for <i>actorAt()</i> */
+	public int cellStart(int column, int row) { return cellStart[row * columns + column]; }
+	/** @return position just past the actors of a cell */
+	public int cellEnd(int column, int row) { return cellStart[row * columns + column + 1]; }
+	/** @return id of the actor at a position between <i>cellStart()</i> and <i>cellEnd()</i> */
+	public int actorAt(int position) { return cellActors[position]; }
+
+	/** @return number of actors of <i>army</i> in a cell */
+	public int getCount(int column, int row, int army) { return count[(row * columns + column) * armies + army]; }
+	/** @return mean x of the actors of <i>army</i> in a cell; only meaningful if there are any */
+	public double getCentreX(int column, int row, int army) { int group = (row * columns + column) * armies + army; return sumX[group] / count[group]; }
+	/** @return mean y of the actors of <i>army</i> in a cell; only meaningful if there are any */
+	public double getCentreY(int column, int row, int army) { int group = (row * columns + column) * armies + army; return sumY[group] / count[group]; }
+} // end class AggregationGrid
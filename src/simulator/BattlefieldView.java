@@ -0,0 +1,186 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import actor.Actor;
+import army.Army;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.VPos;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Decides, {@value #REFRESHES_PER_SECOND} times a second and whenever the <i>Viewport</i> moves, which avatars are drawn.
+ * The avatars of every <i>Army</i> are filed in an <i>AggregationGrid</i> whose cells are {@value #CLUSTER_SIZE} window pixels wide at the current zoom. Then only the cells in view are visited:
+ * <ul>
+ * <li>avatars in cells out of view are culled (made invisible, so the render engine skips them);</li>
+ * <li>with level of detail on, the avatars of an army crowding a cell ({@value #CLUSTER_THRESHOLD} or more) are replaced by one marker in the army's colour showing their number;</li>
+ * <li>the other avatars in view are drawn as usual.</li>
+ * </ul>
+ * A cell in view therefore costs at most one marker per army or a handful of avatars, so the number of nodes drawn each frame depends on the size of the window, not of the armies.
+ * Markers are pooled and drawn in window coordinates, above the battlefield, so their size does not change with the zoom.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see Viewport
+ * @see AggregationGrid
+ */
+final class BattlefieldView {
+	/** Refreshes per second while the battle runs: {@value} */
+	static final int REFRESHES_PER_SECOND = 10;
+	/** Side of an aggregation cell in window pixels: {@value} */
+	static final double CLUSTER_SIZE = 32.0;
+	/** Avatars of one army in one cell that are drawn as a marker: {@value} */
+	static final int CLUSTER_THRESHOLD = 6;
+	/** Battlefield distance beyond the edges of the view within which avatars are still drawn, since they extend beyond their position: {@value} */
+	static final double CULL_MARGIN = 50.0;
+	private static final Font MARKER_FONT = new Font(Army.FONT_NAME, 12.0);
+
+	private final Simulator simulator;
+	private final Viewport viewport;
+	private final AggregationGrid grid = new AggregationGrid();
+	/** markers, in window coordinates */
+	private final Group markerLayer = new Group();
+	private final List<Group> markers = new ArrayList<>();
+	private boolean levelOfDetail = true;
+	/** avatars, positions and army indexes gathered at the last refresh */
+	private Node[] avatars = new Node[0];
+	private double[] x = new double[0], y = new double[0];
+	private int[] army = new int[0];
+	private boolean[] shown = new boolean[0];
+	private int shownAvatars, shownMarkers;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		private long lastRefresh;
+
+		@Override
+		public void handle(long now) {
+			if (now - lastRefresh >= 1_000_000_000L / REFRESHES_PER_SECOND) {
+				lastRefresh = now;
+				refresh();
+			}
+		}
+	};
+
+	/**
+	 * @param simulator source of the <i>Army</i> objects whose avatars are drawn
+	 * @param viewport camera the battlefield is seen through
+	 */
+	BattlefieldView(Simulator simulator, Viewport viewport) {
+		this.simulator = simulator;
+		this.viewport = viewport;
+		markerLayer.setMouseTransparent(true);
+		viewport.addListener(this::refresh);
+	} // end Constructor
+
+	/** @return the layer holding the markers, to be placed above the battlefield and outside the <i>Viewport</i> */
+	Group getMarkerLayer() { return markerLayer; }
+
+	void start() { timer.start(); }
+	void stop() { timer.stop(); }
+
+	/** @param levelOfDetail true to draw crowds as markers, false to draw every avatar in view */
+	void setLevelOfDetail(boolean levelOfDetail) {
+		this.levelOfDetail = levelOfDetail;
+		refresh();
+	} // end setLevelOfDetail()
+
+	boolean isLevelOfDetail() { return levelOfDetail; }
+	/** @return avatars drawn after the last refresh */
+	int getShownAvatars() { return shownAvatars; }
+	/** @return markers drawn after the last refresh */
+	int getShownMarkers() { return shownMarkers; }
+
+	/** Re-files every avatar and shows the avatars and markers in view. */
+	void refresh() {
+		final List<Army> armies = simulator.getArmies();
+		final int size = gather(armies);
+		grid.rebuild(x, y, army, size, armies.size(), viewport.getWidth(), viewport.getHeight(), CLUSTER_SIZE / viewport.getZoom());
+		Arrays.fill(shown, 0, size, false);
+		shownAvatars = shownMarkers = 0;
+		boolean[] clustered = new boolean[armies.size()];
+		int firstColumn = grid.column(viewport.getLeft() - CULL_MARGIN), lastColumn = grid.column(viewport.getRight() + CULL_MARGIN);
+		int firstRow = grid.row(viewport.getTop() - CULL_MARGIN), lastRow = grid.row(viewport.getBottom() + CULL_MARGIN);
+		for (int row = firstRow; row <= lastRow; ++row)
+			for (int column = firstColumn; column <= lastColumn; ++column) {
+				if (grid.cellStart(column, row) == grid.cellEnd(column, row))
+					continue;
+				for (int a = 0; a < armies.size(); ++a) {
+					int count = grid.getCount(column, row, a);
+					clustered[a] = levelOfDetail && count >= CLUSTER_THRESHOLD;
+					if (clustered[a])
+						showMarker(armies.get(a), count, grid.getCentreX(column, row, a), grid.getCentreY(column, row, a));
+				}
+				for (int position = grid.cellStart(column, row); position < grid.cellEnd(column, row); ++position) {
+					int id = grid.actorAt(position);
+					if (!clustered[army[id]]) {
+						shown[id] = true;
+						++shownAvatars;
+					}
+				}
+			}
+		for (int id = 0; id < size; ++id)
+			avatars[id].setVisible(shown[id]);
+		for (int i = shownMarkers; i < markers.size(); ++i)
+			markers.get(i).setVisible(false);
+	} // end refresh()
+
+	/** Copies the avatar, position and army index of every <i>Actor</i> into the arrays. */
+	private int gather(List<Army> armies) {
+		int size = 0;
+		for (Army each : armies)
+			size += each.getSize();
+		if (avatars.length < size) {
+			int capacity = Math.max(size, 2 * avatars.length);
+			avatars = new Node[capacity];
+			x = new double[capacity];
+			y = new double[capacity];
+			army = new int[capacity];
+			shown = new boolean[capacity];
+		}
+		int id = 0;
+		for (int a = 0; a < armies.size(); ++a)
+			for (Actor actor : armies.get(a).getObservableListActors()) {
+				Node avatar = actor.getAvatar();
+				avatars[id] = avatar;
+				x[id] = avatar.getTranslateX();
+				y[id] = avatar.getTranslateY();
+				army[id++] = a;
+			}
+		Arrays.fill(avatars, size, avatars.length, null); // let removed avatars be collected
+		return size;
+	} // end gather()
+
+	/** Shows the next pooled marker at the window position of (x, y). */
+	private void showMarker(Army owner, int count, double x, double y) {
+		if (shownMarkers == markers.size()) {
+			Text label = new Text();
+			label.setFont(MARKER_FONT);
+			label.setTextAlignment(TextAlignment.CENTER);
+			label.setTextOrigin(VPos.CENTER);
+			Group marker = new Group(new Circle(), label);
+			markers.add(marker);
+			markerLayer.getChildren().add(marker);
+		}
+		Group marker = markers.get(shownMarkers++);
+		Circle disc = (Circle) marker.getChildren().get(0);
+		Text label = (Text) marker.getChildren().get(1);
+		Color color = owner.getColor();
+		disc.setRadius(8.0 + 2.0 * Math.log(count) / Math.log(2.0)); // grows slowly with the crowd
+		disc.setFill(color.deriveColor(0.0, 1.0, 1.0, 0.75));
+		disc.setStroke(color.getBrightness() > 0.5 ? Color.BLACK : Color.WHITE);
+		label.setText(Integer.toString(count));
+		label.setFill(disc.getStroke());
+		label.setX(-label.getLayoutBounds().getWidth() / 2.0);
+		marker.setTranslateX(viewport.toWindowX(x));
+		marker.setTranslateY(viewport.toWindowY(y));
+		marker.setVisible(true);
+	} // end showMarker()
+} // end class BattlefieldView
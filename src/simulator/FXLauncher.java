@@ -2,6 +2,9 @@ package simulator;
 
 import java.io.*;
 
+import actor.ArchetypeRegistry;
+import engine.CombatStatistics;
+
 import javafx.application.Application;
 import javafx.scene.*;
 import javafx.scene.control.*;
@@ -16,6 +19,12 @@ import javafx.stage.*;
  */
 public class FXLauncher extends Application {
   private Simulator simulator; // Must be a heap-oriented instance field so that MenuItem objects can make repeated calls to it.
+  /** camera through which the battlefield is seen; built in <i>createScene()</i> once the size of the background is known */
+  private Viewport viewport;
+  /** culls the avatars out of view and draws crowds as markers */
+  private BattlefieldView battlefieldView;
+  /** combat heatmap, shown from the View menu */
+  private HeatmapOverlay heatmapOverlay;
 
   /**
    * The <i>start()</i> method is defined as an <i>abstract</i> method in class <i>Application</i>, thus you MUST <i>Override</i> the <i>start()</i> method.
@@ -40,11 +49,21 @@ public class FXLauncher extends Application {
   	ImageView imageViewBackground = createBackground(); // attempts to load a disk-based file into an Image object which is then wrapped inside an ImageView object (and an ImageView object can be added to a Scene)
     double aspectRatio = imageViewBackground.getImage().getHeight() / imageViewBackground.getImage().getWidth(); // auto-adjust the window aspect-ratio based on the image.
     final double SCENEWIDTH = 1000.0;
-    final Group simulatorContainer = new Group(imageViewBackground, simulator); // Order matters here. The imageViewBackground is first, thus on the bottom visually. The simulator sits on top of that.
+    CombatStatistics statistics = new CombatStatistics(SCENEWIDTH, SCENEWIDTH * aspectRatio, CombatStatistics.DEFAULT_CELL_SIZE, ArchetypeRegistry.getDefault());
+    simulator.setStatistics(statistics);
+    heatmapOverlay = new HeatmapOverlay(statistics, SCENEWIDTH, SCENEWIDTH * aspectRatio);
+    final Group simulatorContainer = new Group(imageViewBackground, heatmapOverlay, simulator); // Order matters here. The imageViewBackground is first, thus on the bottom visually. The heatmap (hidden until chosen) covers it, and the simulator sits on top of that.
+    viewport = new Viewport(SCENEWIDTH, SCENEWIDTH * aspectRatio);
+    viewport.attach(simulatorContainer); // the background and the avatars zoom and pan together
+    battlefieldView = new BattlefieldView(simulator, viewport);
 
-    Group sceneGraphRoot = new Group(simulatorContainer, createMenuBar());// Order matters here. The simulatorContainer is first, thus on the bottom visually. The newly contructed MenuBar sits on top of that.
+    Group sceneGraphRoot = new Group(simulatorContainer, battlefieldView.getMarkerLayer(), createMenuBar());// Order matters here. The simulatorContainer is first, thus on the bottom visually. The markers sit on top of it (unscaled), and the newly contructed MenuBar sits on top of that.
     Scene mainScene = new Scene(sceneGraphRoot, SCENEWIDTH, SCENEWIDTH * aspectRatio); // Scene needs the Parent Node (and a parent Node will have child Node objects). Scene also needs to know its initial size.
     imageViewBackground.fitWidthProperty().bind(mainScene.widthProperty()); // resize the Background automatically, based on the Scene resizing
+    mainScene.widthProperty().addListener((observable, oldWidth, newWidth) -> viewport.setSize(newWidth.doubleValue(), mainScene.getHeight()));
+    mainScene.heightProperty().addListener((observable, oldHeight, newHeight) -> viewport.setSize(mainScene.getWidth(), newHeight.doubleValue()));
+    viewport.installControls(mainScene); // mouse wheel zooms, dragging pans
+    battlefieldView.start();
 
     return mainScene;
   } // end createScene()
@@ -82,7 +101,9 @@ public class FXLauncher extends Application {
     MenuItem suspendMenuItem = new MenuItem("_Suspend");   suspendMenuItem.setMnemonicParsing(true);  suspendMenuItem.setOnAction(event->simulator.suspend());		// create CALLBACK, that is, the code to execute when triggered by user event (in this case, simulator.suspend())
     MenuItem saveMenuItem = new MenuItem("S_ave");   saveMenuItem.setMnemonicParsing(true);  saveMenuItem.setOnAction(event->simulator.save());
     MenuItem restoreMenuItem = new MenuItem("R_estore");   restoreMenuItem.setMnemonicParsing(true);  restoreMenuItem.setOnAction(event->simulator.restore());
-    Menu menuRun = new Menu("_Run"); menuRun.setMnemonicParsing(true); menuRun.getItems().addAll(populateMenuItem, runMenuItem, suspendMenuItem, speedUpMenuItem, slowDownMenuItem, saveMenuItem, restoreMenuItem);	// assemble MenuItems in the "Run" Menu
+    CheckMenuItem reinforcementsMenuItem = new CheckMenuItem("Re_inforcements");   reinforcementsMenuItem.setMnemonicParsing(true);  reinforcementsMenuItem.setOnAction(event->simulator.setReinforcements(reinforcementsMenuItem.isSelected()));
+    MenuItem exportStatisticsMenuItem = new MenuItem("E_xport Statistics");   exportStatisticsMenuItem.setMnemonicParsing(true);  exportStatisticsMenuItem.setOnAction(event->simulator.exportStatistics());
+    Menu menuRun = new Menu("_Run"); menuRun.setMnemonicParsing(true); menuRun.getItems().addAll(populateMenuItem, runMenuItem, suspendMenuItem, speedUpMenuItem, slowDownMenuItem, reinforcementsMenuItem, saveMenuItem, restoreMenuItem, exportStatisticsMenuItem);	// assemble MenuItems in the "Run" Menu
 
     // Create the "Properties" Menu
     MenuItem openArmyListsMenuItem = new MenuItem("Show Army _Lists");		openArmyListsMenuItem.setMnemonicParsing(true);  openArmyListsMenuItem.setOnAction(event->simulator.openListViewWindow());		// create CALLBACK, that is, the code to execute when triggered by user event (in this case, simulator.openListViewWindow())
@@ -91,8 +112,16 @@ public class FXLauncher extends Application {
     MenuItem closeArmyTableMenuItem = new MenuItem("Close Army T_ables");	closeArmyTableMenuItem.setMnemonicParsing(true); closeArmyTableMenuItem.setOnAction(event->simulator.closeTableViewWindow());	// create CALLBACK, that is, the code to execute when triggered by user event (in this case, simulator.closeListViewWindow())
     Menu menuProperties = new Menu("_Properties"); menuProperties.setMnemonicParsing(true); menuProperties.getItems().addAll(openArmyListsMenuItem, closeArmyListsMenuItem, openArmyTableMenuItem, closeArmyTableMenuItem);	// assemble MenuItems in the "Properties" Menu
 
+    // Create the "View" Menu
+    MenuItem zoomInMenuItem = new MenuItem("Zoom _In");		zoomInMenuItem.setMnemonicParsing(true);  zoomInMenuItem.setOnAction(event->viewport.zoomIn());		zoomInMenuItem.setAccelerator(KeyCombination.keyCombination("Ctrl+EQUALS"));
+    MenuItem zoomOutMenuItem = new MenuItem("Zoom _Out");	zoomOutMenuItem.setMnemonicParsing(true); zoomOutMenuItem.setOnAction(event->viewport.zoomOut());	zoomOutMenuItem.setAccelerator(KeyCombination.keyCombination("Ctrl+MINUS"));
+    MenuItem resetViewMenuItem = new MenuItem("_Whole Battlefield");	resetViewMenuItem.setMnemonicParsing(true); resetViewMenuItem.setOnAction(event->viewport.reset());	resetViewMenuItem.setAccelerator(KeyCombination.keyCombination("Ctrl+DIGIT0"));
+    CheckMenuItem levelOfDetailMenuItem = new CheckMenuItem("_Group Crowds");	levelOfDetailMenuItem.setMnemonicParsing(true); levelOfDetailMenuItem.setSelected(battlefieldView.isLevelOfDetail()); levelOfDetailMenuItem.setOnAction(event->battlefieldView.setLevelOfDetail(levelOfDetailMenuItem.isSelected()));
+    CheckMenuItem heatmapMenuItem = new CheckMenuItem("Combat _Heatmap");	heatmapMenuItem.setMnemonicParsing(true); heatmapMenuItem.setSelected(heatmapOverlay.isShown()); heatmapMenuItem.setOnAction(event->heatmapOverlay.setShown(heatmapMenuItem.isSelected()));
+    Menu menuView = new Menu("_View"); menuView.setMnemonicParsing(true); menuView.getItems().addAll(zoomInMenuItem, zoomOutMenuItem, resetViewMenuItem, levelOfDetailMenuItem, heatmapMenuItem);	// assemble MenuItems in the "View" Menu
+
     // Assemble Menu objects in new MenuBar and return
-    return new MenuBar(menuRun, menuProperties);
+    return new MenuBar(menuRun, menuProperties, menuView);
   } // end createMenuBar()
   
 	public static void main(String[] args) { launch(args); } // typically, this is as big as void main() gets in a regular JavaFX application.
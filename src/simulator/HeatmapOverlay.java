@@ -0,0 +1,81 @@
+package simulator;
+
+import engine.CombatStatistics;
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws the heatmap of a <i>CombatStatistics</i> over the battlefield: each cell in which combat rounds were fought is tinted red, more strongly the more rounds (on a logarithmic scale, so that a few busy cells do not wash out the rest), and each cell in which actors died gets a dark mark scaled the same way.
+ * The overlay is one <i>Canvas</i> the size of the battlefield, placed between the background and the avatars so that it zooms and pans with them. It is redrawn {@value #REFRESHES_PER_SECOND} times a second, and only while it is shown; a redraw visits every cell once, so it costs the same however long the battle has run.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see CombatStatistics
+ */
+final class HeatmapOverlay extends Canvas {
+	/** Redraws per second while shown: {@value} */
+	static final int REFRESHES_PER_SECOND = 2;
+	/** Opacity of the busiest cell: {@value} */
+	static final double MAX_OPACITY = 0.6;
+
+	private final CombatStatistics statistics;
+
+	private final AnimationTimer timer = new AnimationTimer() {
+		private long lastRefresh;
+
+		@Override
+		public void handle(long now) {
+			if (now - lastRefresh >= 1_000_000_000L / REFRESHES_PER_SECOND) {
+				lastRefresh = now;
+				refresh();
+			}
+		}
+	};
+
+	/**
+	 * @param statistics source of the heatmap
+	 * @param width battlefield width
+	 * @param height battlefield height
+	 */
+	HeatmapOverlay(CombatStatistics statistics, double width, double height) {
+		super(width, height);
+		this.statistics = statistics;
+		setMouseTransparent(true);
+		setVisible(false);
+	} // end Constructor
+
+	/** @param shown true to show the heatmap and keep it up to date, false to hide it */
+	void setShown(boolean shown) {
+		setVisible(shown);
+		if (shown) {
+			refresh();
+			timer.start();
+		} else
+			timer.stop();
+	} // end setShown()
+
+	boolean isShown() { return isVisible(); }
+
+	/** Redraws every cell from the statistics. */
+	void refresh() {
+		GraphicsContext graphics = getGraphicsContext2D();
+		graphics.clearRect(0.0, 0.0, getWidth(), getHeight());
+		double size = statistics.getCellSize();
+		double combatScale = Math.log1p(statistics.getMaxCombat()), deathScale = Math.log1p(statistics.getMaxDeaths());
+		for (int row = 0; row < statistics.getRows(); ++row)
+			for (int column = 0; column < statistics.getColumns(); ++column) {
+				int combat = statistics.getCombat(column, row), deaths = statistics.getDeaths(column, row);
+				if (combat > 0) {
+					graphics.setFill(Color.color(1.0, 0.0, 0.0, MAX_OPACITY * Math.log1p(combat) / combatScale));
+					graphics.fillRect(column * size, row * size, size, size);
+				}
+				if (deaths > 0) {
+					double mark = size * (0.2 + 0.5 * Math.log1p(deaths) / deathScale); // side of the mark grows with the deaths
+					graphics.setFill(Color.color(0.2, 0.0, 0.0, MAX_OPACITY));
+					graphics.fillOval((column + 0.5) * size - mark / 2.0, (row + 0.5) * size - mark / 2.0, mark, mark);
+				}
+			}
+	} // end refresh()
+} // end class HeatmapOverlay
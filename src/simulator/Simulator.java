@@ -3,11 +3,25 @@ package simulator;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import actor.Actor;
 import actor.ActorFactory;
+import actor.Archetype;
+import actor.ArchetypeRegistry;
 import army.Army;
+import engine.CombatStatistics;
+import engine.ReinforcementWave;
+import javafx.animation.AnimationTimer;
 import javafx.scene.Group;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -20,7 +34,7 @@ import javafx.stage.StageStyle;
 import javafx.util.Duration;
 
 /**
- * The <i>Simulator</i> class is composed of (HAS-A relationship) two <i>Army</i> objects. 
+ * The <i>Simulator</i> class is composed of (HAS-A relationship) two or more <i>Army</i> objects: the <i>Forces of Light</i> and the <i>Forces of Darkness</i>, plus any added through <i>addArmy()</i>. 
  * It HAS-A loose association with the <i>primaryStage</i> to support the management of secondary <i>Stage</i> objects that will be created to show the <i>ListView</i> and <i>TableView</i> representations of the <i>Army</i> objects. 
  * @author Rex Woollard
  * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
@@ -30,11 +44,33 @@ public class Simulator extends Group {
 	private Stage primaryStage;
 	private Army forcesOfLight;
 	private Army forcesOfDarkness;
+	/** Every <i>Army</i> on the battlefield, including <i>forcesOfLight</i> and <i>forcesOfDarkness</i>. */
+	private final List<Army> armies = new ArrayList<>();
 	private Stage stageListControllerWindow;  // reference-to value for a Stage that contain 2 ListView<Actor> objects with suitable titling.
 	private Stage stageTableControllerWindow; // reference-to value for a Stage that contain 2 TableView<Actor> objects with suitable titling.
 	private double speedController = 1.0;
 	private static final double MAX_SPEED_CONTROLLER = 50.0;
 	private static final double MIN_SPEED_CONTROLLER = 1.0;
+	/** Directory <i>exportStatistics()</i> writes to: {@value} */
+	public static final String STATISTICS_DIRECTORY = "statistics";
+	/** combat statistics of the battle; null until <i>setStatistics()</i> */
+	private CombatStatistics statistics;
+	/** nanoTime at which the battle last started to run, or -1 while it is suspended */
+	private long runningSince = -1L;
+	/** nanoseconds the battle ran before <i>runningSince</i> */
+	private long runningNanos;
+	/** Seconds of battle between the waves of <i>setReinforcements()</i>: {@value} */
+	public static final double REINFORCEMENT_INTERVAL = 20.0;
+	/** scheduled reinforcements: each wave, the <i>Army</i> it reinforces, the battle seconds at which it was scheduled and the waves entered so far */
+	private final List<ReinforcementWave> waves = new ArrayList<>();
+	private final List<Army> reinforcedArmies = new ArrayList<>();
+	private double[] waveScheduledAt = new double[0];
+	private int[] wavesEntered = new int[0];
+	/** brings in the waves that have fallen due, once a frame while the battle runs and reinforcements are scheduled */
+	private final AnimationTimer reinforcementTimer = new AnimationTimer() {
+		@Override
+		public void handle(long now) { reinforce(); }
+	};
 
 	
 	/**
@@ -43,14 +79,58 @@ public class Simulator extends Group {
 	 */
 	public Simulator(Stage primaryStage) {
 		this.primaryStage = primaryStage;
-		forcesOfLight = new Army("Forces of Light", this, Color.WHITE);
-		forcesOfDarkness = new Army("Forces of Darkness", this, Color.BLACK);
-		forcesOfDarkness.setOpposingArmy(forcesOfLight);
-		forcesOfLight.setOpposingArmy(forcesOfDarkness);
-		buildListViewWindow(); // creates the Stage object to hold the ListView<Actor> objects with suitable titling.
-		buildTableViewWindow(); // creates the Stage object to hold the TableView<Actor> objects with suitable titling.
+		forcesOfLight = addArmy("Forces of Light", Color.WHITE);
+		forcesOfDarkness = addArmy("Forces of Darkness", Color.BLACK);
 	}
 
+	/**
+	 * Adds another <i>Army</i> to the battlefield. The new <i>Army</i> is hostile to every existing <i>Army</i> (and they to it); use <i>setHostile()</i> to form alliances.
+	 * @param name is the <i>String</i> label for the <i>Army</i>.
+	 * @param color is used for the <i>DropShadow</i> that shows allegiance.
+	 * @return the new <i>Army</i>, ready to be populated
+	 */
+	public Army addArmy(String name, Color color) {
+		Army army = new Army(name, this, color);
+		for (Army existing : armies)
+			setHostile(army, existing, true);
+		armies.add(army);
+		buildListViewWindow(); // rebuild the windows so that the new Army gets its own ListView and TableView
+		buildTableViewWindow();
+		return army;
+	} // end addArmy()
+
+	/**
+	 * Makes two <i>Army</i> objects enemies (both target each other) or allies (neither targets the other).
+	 */
+	public void setHostile(Army first, Army second, boolean hostile) {
+		if (hostile) {
+			first.addHostileArmy(second);
+			second.addHostileArmy(first);
+		} else {
+			first.removeHostileArmy(second);
+			second.removeHostileArmy(first);
+		}
+	} // end setHostile()
+
+	public List<Army> getArmies() { return Collections.unmodifiableList(armies); }
+
+	/**
+	 * The battle is won once no two <i>Army</i> objects that still have <i>Actor</i> objects are hostile to each other (in either direction): the survivors are a single <i>Army</i> or an alliance formed with <i>setHostile(..., false)</i>.
+	 * @return the surviving <i>Army</i> objects if they have won, or an empty list while hostile armies remain (or none does)
+	 */
+	public List<Army> getWinningAlliance() {
+		List<Army> standing = new ArrayList<>();
+		for (Army army : armies) {
+			if (army.getSize() == 0)
+				continue;
+			for (Army survivor : standing)
+				if (army.isHostileTo(survivor) || survivor.isHostileTo(army))
+					return Collections.emptyList();
+			standing.add(army);
+		}
+		return standing;
+	} // end getWinningAlliance()
+
 	/**
 	 * Causes each <i>Army</i> to add defined number of <i>Actor</i> objects.
 	 */
@@ -66,24 +146,108 @@ public class Simulator extends Group {
 
 	/** Causes each <i>Army</i> to iterate through its <i>Collection</i> of <i>Actor</i> objects, cause each of them to begin a <i>TranslateTransition</i> (using <i>play()</i>). */
 	public void run() {
-		forcesOfLight.startMotion();
-		forcesOfDarkness.startMotion();
+		if (runningSince < 0L)
+			runningSince = System.nanoTime();
+		for (Army army : armies)
+			army.startMotion();
+		if (!waves.isEmpty())
+			reinforcementTimer.start();
 	}
 
 	/** Causes each <i>Army</i> to iterate through its <i>Collection</i> of <i>Actor</i> objects, cause each of them to suspend a <i>TranslateTransition</i> (using <i>pause()</i>). */
 	public void suspend() {
-		forcesOfLight.suspendMotion();
-		forcesOfDarkness.suspendMotion();
+		if (runningSince >= 0L) {
+			runningNanos += System.nanoTime() - runningSince;
+			runningSince = -1L;
+		}
+		reinforcementTimer.stop();
+		for (Army army : armies)
+			army.suspendMotion();
 	}
 
+	/**
+	 * Schedules reinforcements for an <i>Army</i>: a wave enters every <i>wave.getIntervalSeconds()</i> of running battle (suspensions do not count), starting one interval from now.
+	 * @param army <i>Army</i> receiving the reinforcements
+	 * @param wave the types, size, spawn area and interval of the waves
+	 */
+	public void addReinforcements(Army army, ReinforcementWave wave) {
+		waves.add(wave);
+		reinforcedArmies.add(army);
+		waveScheduledAt = Arrays.copyOf(waveScheduledAt, waves.size());
+		waveScheduledAt[waves.size()-1] = getBattleSeconds();
+		wavesEntered = Arrays.copyOf(wavesEntered, waves.size());
+		updateRecycling();
+		if (runningSince >= 0L)
+			reinforcementTimer.start();
+	} // end addReinforcements()
+
+	/** Cancels every scheduled reinforcement. */
+	public void clearReinforcements() {
+		reinforcementTimer.stop();
+		waves.clear();
+		reinforcedArmies.clear();
+		waveScheduledAt = new double[0];
+		wavesEntered = new int[0];
+		updateRecycling(); // no waves: every Army lets its kept dead go
+	} // end clearReinforcements()
+
+	/** Tells each <i>Army</i> which of its waves are still to enter, so it keeps only the dead those waves can reuse. */
+	private void updateRecycling() {
+		for (Army army : armies) {
+			List<ReinforcementWave> pendingWaves = new ArrayList<>();
+			for (int i = 0; i < waves.size(); ++i)
+				if (reinforcedArmies.get(i) == army && wavesEntered[i] < waves.get(i).getMaxWaves())
+					pendingWaves.add(waves.get(i));
+			army.setRecycling(pendingWaves);
+		}
+	} // end updateRecycling()
+
+	/**
+	 * Turns the menu's reinforcements on or off: with them on, every {@value #REINFORCEMENT_INTERVAL} seconds the <i>Forces of Light</i> receive the mix of <i>populate()</i> near the left edge and the <i>Forces of Darkness</i> a wave of orcs near the right edge.
+	 * @param reinforced true to schedule the waves, false to cancel every scheduled wave
+	 */
+	public void setReinforcements(boolean reinforced) {
+		clearReinforcements();
+		if (!reinforced)
+			return;
+		ArchetypeRegistry archetypes = ArchetypeRegistry.getDefault();
+		double width = getScene().getWidth(), height = getScene().getHeight();
+		Map<Archetype, Integer> light = new LinkedHashMap<>();
+		light.put(archetypes.get(ActorFactory.Type.HOBBIT), 5);
+		light.put(archetypes.get(ActorFactory.Type.ELF), 3);
+		light.put(archetypes.get(ActorFactory.Type.WIZARD), 2);
+		addReinforcements(forcesOfLight, new ReinforcementWave(light, 10, REINFORCEMENT_INTERVAL, 0.1*width, 0.5*height, 0.1*height));
+		Map<Archetype, Integer> darkness = new LinkedHashMap<>();
+		darkness.put(archetypes.get(ActorFactory.Type.ORC), 1);
+		addReinforcements(forcesOfDarkness, new ReinforcementWave(darkness, 10, REINFORCEMENT_INTERVAL, 0.9*width, 0.5*height, 0.1*height));
+	} // end setReinforcements()
+
+	/** @return true if any reinforcements are scheduled */
+	public boolean isReinforced() { return !waves.isEmpty(); }
+
+	/** Brings in every wave that has fallen due; called by <i>reinforcementTimer</i>. */
+	private void reinforce() {
+		double now = getBattleSeconds();
+		for (int i = 0; i < waves.size(); ++i) {
+			ReinforcementWave wave = waves.get(i);
+			int due = wave.wavesDue(now - waveScheduledAt[i]);
+			if (wavesEntered[i] == due)
+				continue;
+			for (; wavesEntered[i] < due; ++wavesEntered[i])
+				reinforcedArmies.get(i).reinforce(wave);
+			if (wavesEntered[i] == wave.getMaxWaves()) // its last wave has entered
+				updateRecycling();
+		}
+	} // end reinforce()
+
 	// %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 	// %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 	// START ListView<Actor> code
-	/** Uses JavaFX layout managers (<i>HBox</i> and <i>VBox</i>) to organized the 2 <i>ListView</i> objects with suitable titling. */
+	/** Uses JavaFX layout managers (<i>HBox</i> and <i>VBox</i>) to organized one <i>ListView</i> object per <i>Army</i> with suitable titling. */
   private final void buildListViewWindow() { // final because of its use in the constructor
-    VBox vBoxLightArmy = new VBox(5.0, new Text(forcesOfLight.getName()), new ListView<Actor>(forcesOfLight.getObservableListActors()));
-    VBox vBoxDarkArmy = new VBox(5.0, new Text(forcesOfDarkness.getName()), new ListView<Actor>(forcesOfDarkness.getObservableListActors()));
-    HBox hBoxSceneGraphRoot = new HBox(5.0, vBoxLightArmy, vBoxDarkArmy);
+    HBox hBoxSceneGraphRoot = new HBox(5.0);
+    for (Army army : armies)
+      hBoxSceneGraphRoot.getChildren().add(new VBox(5.0, new Text(army.getName()), army.getListViewOfActors()));
 
     if (stageListControllerWindow != null) { // if a Stage already exists, clear it of content before building the new . . . this assists in garbage collection.
       stageListControllerWindow.close();
@@ -92,6 +256,7 @@ public class Simulator extends Group {
     stageListControllerWindow = new Stage(StageStyle.UTILITY);
     stageListControllerWindow.initOwner(primaryStage);
     stageListControllerWindow.setScene(new Scene(hBoxSceneGraphRoot));
+    attachSnapshots(stageListControllerWindow);
   } // end buildListViewWindow()
 	public void openListViewWindow() { stageListControllerWindow.show(); }
 	public void closeListViewWindow() { stageListControllerWindow.hide(); }
@@ -102,11 +267,11 @@ public class Simulator extends Group {
 	// %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 	// %%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%
 	// START TableView<Actor> code
-	/** Uses JavaFX layout managers (<i>HBox</i> and <i>VBox</i>) to organized the 2 <i>TableView</i> objects with suitable titling. */
+	/** Uses JavaFX layout managers (<i>HBox</i> and <i>VBox</i>) to organized one <i>TableView</i> object per <i>Army</i> with suitable titling. */
   private final void buildTableViewWindow() { // final because of its use in the constructor
-    VBox vBoxLightArmy = new VBox(5.0, new Text(forcesOfLight.getName()), forcesOfLight.getTableViewOfActors());
-    VBox vBoxDarkArmy = new VBox(5.0, new Text(forcesOfDarkness.getName()), forcesOfDarkness.getTableViewOfActors());
-    HBox hBoxSceneGraphRoot = new HBox(5.0, vBoxLightArmy, vBoxDarkArmy);
+    HBox hBoxSceneGraphRoot = new HBox(5.0);
+    for (Army army : armies)
+      hBoxSceneGraphRoot.getChildren().add(new VBox(5.0, new Text(army.getName()), army.getTableViewOfActors()));
 
     if (stageTableControllerWindow != null) { // if a Stage already exists, clear it of content before building the new . . . this assists in garbage collection.
       stageTableControllerWindow.close();
@@ -115,7 +280,21 @@ public class Simulator extends Group {
     stageTableControllerWindow = new Stage(StageStyle.UTILITY);
     stageTableControllerWindow.initOwner(primaryStage);
     stageTableControllerWindow.setScene(new Scene(hBoxSceneGraphRoot));
+    attachSnapshots(stageTableControllerWindow);
   } // end buildTableViewWindow()
+
+  /** Snapshots are only taken while a window showing them is open. */
+  private void attachSnapshots(Stage window) {
+    final List<Army> shown = new ArrayList<>(armies); // the armies whose views are in this window
+    window.setOnShown(event -> { for (Army army : shown) army.getSnapshotModel().attach(); });
+    window.setOnHidden(event -> { for (Army army : shown) army.getSnapshotModel().detach(); });
+  } // end attachSnapshots()
+
+  /** @param snapshotsPerSecond how often the <i>ListView</i> and <i>TableView</i> windows are refreshed */
+  public void setSnapshotsPerSecond(double snapshotsPerSecond) {
+    for (Army army : armies)
+      army.getSnapshotModel().setSnapshotsPerSecond(snapshotsPerSecond);
+  } // end setSnapshotsPerSecond()
 	
   
   
@@ -141,11 +320,49 @@ public class Simulator extends Group {
 		return speedController;
 	}
 
+	/** @param statistics aggregates the combat rounds and deaths from now on; null to stop recording */
+	public void setStatistics(CombatStatistics statistics) { this.statistics = statistics; }
+	public CombatStatistics getStatistics() { return statistics; }
+
+	/** @return seconds the battle has been running, not counting suspensions */
+	public double getBattleSeconds() {
+		return (runningNanos + (runningSince < 0L ? 0L : System.nanoTime() - runningSince)) / 1e9;
+	} // end getBattleSeconds()
+
+	/**
+	 * Records one combat round, where the attacker stands, and the death of either side, in the statistics (if any).
+	 * Called through <i>Army.recordCombat()</i> after each round fought in <i>Actor.startMotion()</i>.
+	 */
+	public void recordCombat(Actor attacker, Actor defender, double attackerHealthChange, double defenderHealthChange) {
+		if (statistics == null)
+			return;
+		double time = getBattleSeconds();
+		int attackerType = attacker.getArchetypeId(), defenderType = defender.getArchetypeId();
+		double x = attacker.getAvatar().getTranslateX(), y = attacker.getAvatar().getTranslateY();
+		statistics.recordRound(attackerType, defenderType, x, y, attackerHealthChange, defenderHealthChange, time);
+		if (attacker.getHealth() <= 0.0)
+			statistics.recordDeath(attackerType, defenderType, x, y, time);
+		if (defender.getHealth() <= 0.0)
+			statistics.recordDeath(defenderType, attackerType, defender.getAvatar().getTranslateX(), defender.getAvatar().getTranslateY(), time);
+	} // end recordCombat()
+
+	/** Writes the statistics as CSV files into {@value #STATISTICS_DIRECTORY} (see <i>CombatStatistics.export()</i>). */
+	public void exportStatistics() {
+		if (statistics == null)
+			return;
+		Path directory = Paths.get(STATISTICS_DIRECTORY);
+		try {
+			statistics.export(directory);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	} // end exportStatistics()
+
 	public void save() {
 		  // Using a try block in case there is a file I/O error. Open a file that is configured for binary output.
 		  try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream("battlefield.ser"))) {
-		    forcesOfLight.serialize(out);// "normal" method call that I created. Army class NOT serializable. Actor class and ALL its subclasses are serializable.
-		    forcesOfDarkness.serialize(out);// same
+		    for (Army army : armies)
+		      army.serialize(out);// "normal" method call that I created. Army class NOT serializable. Actor class and ALL its subclasses are serializable.
 		  } catch (Exception e) {
 		    e.printStackTrace();
 		  }
@@ -153,8 +370,8 @@ public class Simulator extends Group {
 		public void restore() {
 		  // Using a try block in case there is a file I/O error. Open a file that is configured for binary input.
 		  try (ObjectInputStream in = new ObjectInputStream(new FileInputStream("battlefield.ser"))) {
-		    forcesOfLight.deserialize(in);// "normal" method call that I created. Army class NOT serializable. Actor class and ALL its subclasses are serializable.
-		    forcesOfDarkness.deserialize(in); // same
+		    for (Army army : armies)
+		      army.deserialize(in);// "normal" method call that I created. Army class NOT serializable. Actor class and ALL its subclasses are serializable.
 		  } catch (Exception e) {
 		    e.printStackTrace();
 		  }
@@ -0,0 +1,145 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.transform.Scale;
+import javafx.scene.transform.Translate;
+
+/**
+ * The camera through which the battlefield is seen: a zoom factor and the battlefield position of the top-left corner of the window.
+ * At zoom 1 the whole battlefield fills the window, as it always did; zooming in shows a smaller part of it, magnified, and panning moves that part around.
+ * The camera is applied to the battlefield <i>Group</i> as a <i>Scale</i> and a <i>Translate</i>, so avatars keep their battlefield coordinates in <i>translateX</i> and <i>translateY</i> and the <i>Actor</i> code is unaware of it.
+ * The view never leaves the battlefield: panning and zooming are clamped to its edges.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see BattlefieldView
+ */
+public final class Viewport {
+	/** Smallest zoom, showing the whole battlefield: {@value} */
+	public static final double MIN_ZOOM = 1.0;
+	/** Largest zoom: {@value} */
+	public static final double MAX_ZOOM = 16.0;
+	/** Zoom factor of one step of <i>zoomIn()</i> or <i>zoomOut()</i>: {@value} */
+	public static final double ZOOM_STEP = 1.25;
+
+	private final Scale scale = new Scale(1.0, 1.0, 0.0, 0.0);
+	private final Translate translate = new Translate();
+	/** called after every change of zoom or position */
+	private final List<Runnable> listeners = new ArrayList<>();
+	/** battlefield size, which is also the window size */
+	private double width, height;
+	private double zoom = MIN_ZOOM;
+	/** battlefield coordinates of the top-left corner of the window */
+	private double left, top;
+	/** last mouse position of a drag, in window coordinates */
+	private double dragX, dragY;
+
+	/**
+	 * @param width battlefield (and window) width
+	 * @param height battlefield (and window) height
+	 */
+	public Viewport(double width, double height) {
+		this.width = width;
+		this.height = height;
+	} // end Constructor
+
+	/** Makes <i>content</i>, whose children are placed in battlefield coordinates, follow the camera. */
+	public void attach(Node content) { content.getTransforms().setAll(scale, translate); }
+
+	/** Zooms with the mouse wheel (about the mouse position) and pans by dragging with the primary button. */
+	public void installControls(Scene scene) {
+		scene.addEventHandler(ScrollEvent.SCROLL, event -> zoomAt(Math.pow(ZOOM_STEP, event.getDeltaY() / 40.0), event.getSceneX(), event.getSceneY())); // a notch of the wheel is 40 pixels
+		scene.addEventHandler(MouseEvent.MOUSE_PRESSED, event -> { dragX = event.getSceneX(); dragY = event.getSceneY(); });
+		scene.addEventHandler(MouseEvent.MOUSE_DRAGGED, event -> {
+			if (event.isPrimaryButtonDown()) {
+				panBy(event.getSceneX() - dragX, event.getSceneY() - dragY);
+				dragX = event.getSceneX();
+				dragY = event.getSceneY();
+			}
+		});
+	} // end installControls()
+
+	/** @param listener called after every change of zoom or position */
+	public void addListener(Runnable listener) { listeners.add(listener); }
+
+	public double getZoom() { return zoom; }
+	/** @return battlefield x shown at the left edge of the window */
+	public double getLeft() { return left; }
+	/** @return battlefield y shown at the top edge of the window */
+	public double getTop() { return top; }
+	/** @return battlefield x shown at the right edge of the window */
+	public double getRight() { return left + width / zoom; }
+	/** @return battlefield y shown at the bottom edge of the window */
+	public double getBottom() { return top + height / zoom; }
+	public double getWidth() { return width; }
+	public double getHeight() { return height; }
+
+	/** @return window x of battlefield x */
+	public double toWindowX(double x) { return (x - left) * zoom; }
+	/** @return window y of battlefield y */
+	public double toWindowY(double y) { return (y - top) * zoom; }
+	/** @return battlefield x under window x */
+	public double toBattlefieldX(double windowX) { return left + windowX / zoom; }
+	/** @return battlefield y under window y */
+	public double toBattlefieldY(double windowY) { return top + windowY / zoom; }
+
+	/** Follows a resized window: the battlefield is resized with it, since the <i>Actor</i> objects take its size from the <i>Scene</i>. */
+	public void setSize(double width, double height) {
+		this.width = width;
+		this.height = height;
+		update();
+	} // end setSize()
+
+	/**
+	 * Multiplies the zoom by <i>factor</i>, keeping the battlefield point under (windowX, windowY) where it is.
+	 * @param factor above 1 zooms in, below 1 zooms out; the result is kept between {@value #MIN_ZOOM} and {@value #MAX_ZOOM}
+	 * @param windowX fixed point of the zoom
+	 * @param windowY fixed point of the zoom
+	 */
+	public void zoomAt(double factor, double windowX, double windowY) {
+		double x = toBattlefieldX(windowX), y = toBattlefieldY(windowY);
+		zoom = Math.min(MAX_ZOOM, Math.max(MIN_ZOOM, zoom * factor));
+		left = x - windowX / zoom;
+		top = y - windowY / zoom;
+		update();
+	} // end zoomAt()
+
+	public void zoomIn() { zoomAt(ZOOM_STEP, width / 2.0, height / 2.0); }
+	public void zoomOut() { zoomAt(1.0 / ZOOM_STEP, width / 2.0, height / 2.0); }
+
+	/**
+	 * Moves the battlefield by a distance measured in the window, as when it is dragged.
+	 * @param windowDeltaX pixels to the right
+	 * @param windowDeltaY pixels down
+	 */
+	public void panBy(double windowDeltaX, double windowDeltaY) {
+		left -= windowDeltaX / zoom;
+		top -= windowDeltaY / zoom;
+		update();
+	} // end panBy()
+
+	/** Shows the whole battlefield again. */
+	public void reset() {
+		zoom = MIN_ZOOM;
+		left = top = 0.0;
+		update();
+	} // end reset()
+
+	/** Keeps the view on the battlefield, updates the transforms and notifies the listeners. */
+	private void update() {
+		left = Math.max(0.0, Math.min(left, width - width / zoom));
+		top = Math.max(0.0, Math.min(top, height - height / zoom));
+		scale.setX(zoom);
+		scale.setY(zoom);
+		translate.setX(-left);
+		translate.setY(-top);
+		for (Runnable listener : listeners)
+			listener.run();
+	} // end update()
+} // end class Viewport
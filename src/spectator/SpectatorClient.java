@@ -0,0 +1,187 @@
+package spectator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+import actor.Actor;
+
+/**
+ * Connects to a <i>SpectatorServer</i> and keeps a mirror of the actors in its interest region, updated from the snapshot and deltas the server sends. The mirror holds the quantized state, restored to battlefield units.
+ * The client does not depend on JavaFX; the <i>SpectatorLauncher</i> draws the mirror.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see SpectatorServer
+ * @see SpectatorLauncher
+ */
+public class SpectatorClient implements AutoCloseable {
+	private final SocketChannel channel;
+	private final Selector selector;
+	/** incoming bytes, kept in write mode between calls */
+	private ByteBuffer incoming = ByteBuffer.allocate(64 * 1024);
+	private final ByteBuffer view = ByteBuffer.allocate(SpectatorProtocol.VIEW_BYTES);
+	private long tick = -1;
+	private double width, height;
+	private int numArmies;
+	private long framesReceived, bytesReceived;
+	/** mirror, indexed by actor id */
+	private int size;
+	private boolean[] present = new boolean[0];
+	private byte[] type = new byte[0], army = new byte[0];
+	private double[] x = new double[0], y = new double[0], health = new double[0];
+	private boolean[] visible = new boolean[0];
+
+	/**
+	 * Connects to a server; the first frame (the snapshot) arrives with the first <i>poll()</i> after the server's next <i>publish()</i>.
+	 * @param address address of the server
+	 */
+	public SpectatorClient(InetSocketAddress address) throws IOException {
+		channel = SocketChannel.open(address);
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		selector = Selector.open();
+		channel.register(selector, SelectionKey.OP_READ);
+	} // end Constructor
+
+	/**
+	 * Asks the server to send only the actors in this region from now on.
+	 * The message is small and written at once; a region that cannot be written whole (the server is not reading) is dropped, and the next one will be sent instead.
+	 */
+	public void setView(double left, double top, double right, double bottom) throws IOException {
+		view.clear();
+		view.putInt(SpectatorProtocol.VIEW_BYTES - Integer.BYTES).put(SpectatorProtocol.VIEW);
+		view.putFloat((float) left).putFloat((float) top).putFloat((float) right).putFloat((float) bottom).flip();
+		channel.write(view);
+	} // end setView()
+
+	/**
+	 * Applies every whole frame that has arrived, without blocking.
+	 * @return number of frames applied
+	 * @throws EOFException if the server has closed the connection
+	 */
+	public int poll() throws IOException {
+		int frames = 0;
+		while (true) {
+			while (nextFrame())
+				++frames;
+			if (!incoming.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(incoming.capacity() * 2);
+				incoming.flip();
+				incoming = larger.put(incoming);
+			}
+			int read = channel.read(incoming);
+			if (read < 0)
+				throw new EOFException("Connection closed by " + channel.getRemoteAddress());
+			if (read == 0)
+				return frames;
+			bytesReceived += read;
+		}
+	} // end poll()
+
+	/**
+	 * Waits until at least one frame has been applied.
+	 * @param timeoutMillis longest wait
+	 * @return number of frames applied, 0 if none arrived in time
+	 */
+	public int await(long timeoutMillis) throws IOException {
+		long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+		int frames;
+		while ((frames = poll()) == 0) {
+			long left = (deadline - System.nanoTime()) / 1_000_000L;
+			if (left <= 0)
+				return 0;
+			selector.select(left);
+			selector.selectedKeys().clear();
+		}
+		return frames;
+	} // end await()
+
+	/** Applies the next whole frame in <i>incoming</i>, if there is one. */
+	private boolean nextFrame() {
+		if (incoming.position() < Integer.BYTES)
+			return false;
+		int length = incoming.getInt(0);
+		if (incoming.position() < Integer.BYTES + length)
+			return false;
+		incoming.flip();
+		incoming.getInt();
+		apply(incoming);
+		incoming.compact();
+		++framesReceived;
+		return true;
+	} // end nextFrame()
+
+	private void apply(ByteBuffer in) {
+		byte kind = in.get();
+		tick = in.getLong();
+		if (kind == SpectatorProtocol.SNAPSHOT) {
+			width = in.getFloat();
+			height = in.getFloat();
+			numArmies = in.get();
+			Arrays.fill(present, false);
+		} else if (kind != SpectatorProtocol.DELTA)
+			throw new IllegalStateException(String.format("Expected message %d or %d but received %d", SpectatorProtocol.SNAPSHOT, SpectatorProtocol.DELTA, kind));
+		for (int updates = in.getInt(); updates > 0; --updates) {
+			int id = in.getInt(), mask = in.get();
+			ensureCapacity(id + 1);
+			if ((mask & SpectatorProtocol.ENTER) != 0) {
+				present[id] = true;
+				type[id] = in.get();
+				army[id] = in.get();
+			}
+			if ((mask & SpectatorProtocol.POSITION) != 0) {
+				x[id] = SpectatorProtocol.restorePosition(Short.toUnsignedInt(in.getShort()), width);
+				y[id] = SpectatorProtocol.restorePosition(Short.toUnsignedInt(in.getShort()), height);
+			}
+			if ((mask & SpectatorProtocol.HEALTH) != 0)
+				health[id] = SpectatorProtocol.restoreHealth(Byte.toUnsignedInt(in.get()), Actor.MAX_HEALTH);
+			if ((mask & SpectatorProtocol.VISIBLE) != 0)
+				visible[id] = in.get() != 0;
+		}
+		for (int removals = in.getInt(); removals > 0; --removals)
+			present[in.getInt()] = false;
+	} // end apply()
+
+	private void ensureCapacity(int required) {
+		size = Math.max(size, required);
+		if (present.length >= required)
+			return;
+		int capacity = Math.max(required, 2 * present.length);
+		present = Arrays.copyOf(present, capacity);
+		type = Arrays.copyOf(type, capacity); army = Arrays.copyOf(army, capacity);
+		x = Arrays.copyOf(x, capacity); y = Arrays.copyOf(y, capacity); health = Arrays.copyOf(health, capacity);
+		visible = Arrays.copyOf(visible, capacity);
+	} // end ensureCapacity()
+
+	/** @return tick of the last frame applied, or -1 before the snapshot */
+	public long getTick() { return tick; }
+	public double getWidth() { return width; }
+	public double getHeight() { return height; }
+	public int getNumArmies() { return numArmies; }
+	public long getFramesReceived() { return framesReceived; }
+	public long getBytesReceived() { return bytesReceived; }
+	/** @return one more than the largest actor id received; ids are 0 to size()-1 */
+	public int size() { return size; }
+	/** @return true if the actor is alive and in the interest region */
+	public boolean isPresent(int id) { return id < size && present[id]; }
+	/** @return <i>Archetype</i> id of the actor */
+	public int getType(int id) { return type[id]; }
+	public int getArmy(int id) { return army[id]; }
+	public double getX(int id) { return x[id]; }
+	public double getY(int id) { return y[id]; }
+	public double getHealth(int id) { return health[id]; }
+	public boolean isVisible(int id) { return visible[id]; }
+
+	@Override
+	public void close() throws IOException {
+		selector.close();
+		channel.close();
+	} // end close()
+} // end class SpectatorClient
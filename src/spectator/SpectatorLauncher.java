@@ -0,0 +1,143 @@
+package spectator;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+import actor.ArchetypeRegistry;
+import actor.Unit;
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import simulator.Viewport;
+
+/**
+ * A window onto a battle streamed by a <i>SpectatorServer</i>. It draws the same background and sprites as the <i>FXLauncher</i>, with the same <i>DropShadow</i> showing allegiance, and zooms and pans through the same <i>Viewport</i>; the region in view is sent to the server, which then streams only the actors in it.
+ * Arguments, both optional: port (default {@value SpectatorServer#DEFAULT_PORT}) and host (default loopback).
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see SpectatorClient
+ */
+public class SpectatorLauncher extends Application {
+	/** Longest wait for the snapshot after connecting, in milliseconds: {@value} */
+	private static final long CONNECT_TIMEOUT = 5000L;
+	/** Battlefield distance beyond the edges of the view that is still asked for, since avatars extend beyond their position: {@value} */
+	private static final double VIEW_MARGIN = 50.0;
+	/** Colours of the armies' <i>DropShadow</i>, as in <i>Simulator</i>; armies beyond the second use the rest in turn */
+	private static final List<Color> ARMY_COLORS = List.of(Color.WHITE, Color.BLACK, Color.RED, Color.BLUE, Color.GOLD, Color.GREEN);
+
+	private SpectatorClient client;
+	private final ArchetypeRegistry archetypes = ArchetypeRegistry.getDefault();
+	private final Group battlefield = new Group();
+	/** avatar of each actor id in the mirror, and the archetype and army it was drawn for */
+	private Node[] avatars = new Node[0];
+	private int[] drawnType = new int[0], drawnArmy = new int[0];
+	private DropShadow[] shadows;
+
+	@Override
+	public void start(Stage primaryStage) throws Exception {
+		List<String> args = getParameters().getRaw();
+		int port = args.size() > 0 ? Integer.parseInt(args.get(0)) : SpectatorServer.DEFAULT_PORT;
+		InetAddress host = args.size() > 1 ? InetAddress.getByName(args.get(1)) : InetAddress.getLoopbackAddress();
+		client = new SpectatorClient(new InetSocketAddress(host, port));
+		if (client.await(CONNECT_TIMEOUT) == 0)
+			throw new IOException("No snapshot from " + host + ":" + port);
+		shadows = new DropShadow[client.getNumArmies()];
+		for (int a = 0; a < shadows.length; ++a)
+			shadows[a] = new DropShadow(10.0, ARMY_COLORS.get(a % ARMY_COLORS.size()));
+
+		final double width = client.getWidth(), height = client.getHeight();
+		ImageView background;
+		try (FileInputStream in = new FileInputStream("MiddleEarth-3.jpg")) { // same background as FXLauncher, stretched to the battlefield
+			background = new ImageView(new Image(in, width, height, false, true));
+		}
+		background.setManaged(false);
+		Group container = new Group(background, battlefield);
+		Viewport viewport = new Viewport(width, height);
+		viewport.attach(container);
+		Scene scene = new Scene(new Group(container), width, height);
+		scene.widthProperty().addListener((observable, oldWidth, newWidth) -> viewport.setSize(newWidth.doubleValue(), scene.getHeight()));
+		scene.heightProperty().addListener((observable, oldHeight, newHeight) -> viewport.setSize(scene.getWidth(), newHeight.doubleValue()));
+		viewport.installControls(scene);
+		viewport.addListener(() -> {
+			try {
+				client.setView(viewport.getLeft() - VIEW_MARGIN, viewport.getTop() - VIEW_MARGIN, viewport.getRight() + VIEW_MARGIN, viewport.getBottom() + VIEW_MARGIN);
+			} catch (IOException e) {
+				Platform.exit();
+			}
+		});
+
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				try {
+					if (client.poll() > 0)
+						refresh();
+				} catch (IOException e) { // the battle is over, or the server has gone
+					stop();
+					primaryStage.setTitle(primaryStage.getTitle() + " (disconnected)");
+				}
+			}
+		}.start();
+		primaryStage.setTitle("Battlefield Spectator: " + host.getHostName() + ":" + port);
+		primaryStage.setScene(scene);
+		primaryStage.setOnCloseRequest(event -> Platform.exit());
+		primaryStage.show();
+	} // end start()
+
+	/** Adds, moves and removes avatars to match the mirror. */
+	private void refresh() {
+		int size = client.size();
+		if (avatars.length < size) {
+			int capacity = Math.max(size, 2 * avatars.length);
+			avatars = Arrays.copyOf(avatars, capacity);
+			drawnType = Arrays.copyOf(drawnType, capacity);
+			drawnArmy = Arrays.copyOf(drawnArmy, capacity);
+		}
+		for (int id = 0; id < size; ++id) {
+			Node avatar = avatars[id];
+			if (!client.isPresent(id)) {
+				if (avatar != null) {
+					battlefield.getChildren().remove(avatar);
+					avatars[id] = null;
+				}
+				continue;
+			}
+			if (avatar != null && (drawnType[id] != client.getType(id) || drawnArmy[id] != client.getArmy(id))) { // the id now belongs to another actor
+				battlefield.getChildren().remove(avatar);
+				avatar = null;
+			}
+			if (avatar == null) {
+				avatar = new Group(Unit.createSprite(archetypes.get(client.getType(id))));
+				avatar.setEffect(shadows[client.getArmy(id)]);
+				battlefield.getChildren().add(avatar);
+				avatars[id] = avatar;
+				drawnType[id] = client.getType(id);
+				drawnArmy[id] = client.getArmy(id);
+			}
+			avatar.setTranslateX(client.getX(id));
+			avatar.setTranslateY(client.getY(id));
+			avatar.setOpacity(client.isVisible(id) ? 1.0 : 0.4); // concealed actors are shown faintly
+		}
+	} // end refresh()
+
+	@Override
+	public void stop() throws IOException {
+		if (client != null)
+			client.close();
+	} // end stop()
+
+	public static void main(String[] args) { launch(args); }
+} // end class SpectatorLauncher
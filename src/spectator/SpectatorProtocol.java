@@ -0,0 +1,64 @@
+package spectator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Message types and layouts exchanged between a <i>SpectatorServer</i> and its <i>SpectatorClient</i> instances. Every frame is an <i>int</i> byte count followed by that many bytes of payload, whose first byte is one of the type bytes below; all numbers are big-endian.
+ * <ul>
+ * <li><b>VIEW</b> client to server: <i>float</i> left, top, right and bottom of the client's interest region, in battlefield coordinates</li>
+ * <li><b>SNAPSHOT</b> server to client: <i>long</i> tick number, <i>float</i> battlefield width and height, <i>byte</i> number of armies, then the same body as a <b>DELTA</b>, in which every actor is entering</li>
+ * <li><b>DELTA</b> server to client: <i>long</i> tick number, updates (<i>int</i> count, then <i>int</i> actor id, <i>byte</i> change mask and the changed fields each), then removals (<i>int</i> count, then <i>int</i> actor id each)</li>
+ * </ul>
+ * The fields of an update follow its change mask, in this order: <b>ENTER</b> <i>byte</i> archetype id and <i>byte</i> army index; <b>POSITION</b> <i>short</i> x and y, quantized to 1/{@value #POSITION_STEPS} of the battlefield; <b>HEALTH</b> <i>byte</i>, quantized to 1/{@value #HEALTH_STEPS} of <i>Actor.MAX_HEALTH</i>; <b>VISIBLE</b> <i>byte</i> 1 if the actor can be seen and targeted, 0 if it is concealed.
+ * An entering actor carries every field. Otherwise a delta only carries the fields whose quantized value differs from what the same client was last sent, so an actor standing still costs nothing.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see SpectatorServer
+ * @see SpectatorClient
+ */
+final class SpectatorProtocol {
+	static final byte VIEW = 1;
+	static final byte SNAPSHOT = 2;
+	static final byte DELTA = 3;
+
+	/** Change mask bits of an update */
+	static final int ENTER = 1, POSITION = 2, HEALTH = 4, VISIBLE = 8;
+
+	/** Largest quantized coordinate: {@value} */
+	static final int POSITION_STEPS = 0xFFFF;
+	/** Largest quantized health: {@value} */
+	static final int HEALTH_STEPS = 0xFF;
+	/** Bytes of a VIEW frame, including its length prefix: {@value} */
+	static final int VIEW_BYTES = Integer.BYTES + 1 + 4 * Float.BYTES;
+	/** Largest update: id, mask and every field */
+	static final int MAX_UPDATE_BYTES = Integer.BYTES + 1 + 2 + 2 * Short.BYTES + 1 + 1;
+
+	private SpectatorProtocol() {}
+
+	/** @return <i>value</i> (clamped to 0 to <i>extent</i>) as 0 to {@value #POSITION_STEPS} */
+	static int quantizePosition(double value, double extent) {
+		return (int) Math.round(Math.max(0.0, Math.min(1.0, value / extent)) * POSITION_STEPS);
+	} // end quantizePosition()
+
+	/** @return battlefield coordinate of the quantized <i>value</i> */
+	static double restorePosition(int value, double extent) { return value * extent / POSITION_STEPS; }
+
+	/** @return <i>health</i> (clamped to 0 to <i>maximum</i>) as 0 to {@value #HEALTH_STEPS} */
+	static int quantizeHealth(double health, double maximum) {
+		return (int) Math.round(Math.max(0.0, Math.min(1.0, health / maximum)) * HEALTH_STEPS);
+	} // end quantizeHealth()
+
+	/** @return health of the quantized <i>value</i> */
+	static double restoreHealth(int value, double maximum) { return value * maximum / HEALTH_STEPS; }
+
+	/**
+	 * Reads the type byte of a frame and checks it.
+	 * @throws IllegalStateException if the frame is not of the expected type
+	 */
+	static void expect(ByteBuffer frame, byte type) {
+		byte actual = frame.get();
+		if (actual != type)
+			throw new IllegalStateException(String.format("Expected message %d but received %d", type, actual));
+	} // end expect()
+} // end class SpectatorProtocol
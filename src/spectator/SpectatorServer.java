@@ -0,0 +1,318 @@
+package spectator;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import actor.Actor;
+import actor.ActorFactory;
+import engine.ActorStore;
+import engine.Battle;
+
+/**
+ * Streams a <i>Battle</i> to any number of spectators on this machine over non-blocking sockets. The battle is driven by its owner, who calls <i>publish()</i> after every tick; the server never blocks the battle.
+ * Each spectator first receives a snapshot of the actors in its interest region, then one delta per tick carrying only what changed since the last frame it was sent. Positions and health are quantized, so an actor that moved less than a quantum is not resent.
+ * A spectator's interest region is the whole battlefield until it sends a VIEW message; actors leaving the region are sent as removals, actors entering it as new.
+ * Back-pressure: each spectator has at most one frame in flight. While that frame is still being written (the spectator reads slower than the battle ticks), later ticks are skipped for it rather than queued, and the next frame it is sent is the delta from the last one, so nothing is lost but the intermediate positions.
+ *
+ * @author Ammar Khan
+ * @version Lab Assignment 4: <i>The Hobbit Battlefield Simulator</i>
+ * @see SpectatorProtocol
+ * @see SpectatorClient
+ */
+public class SpectatorServer implements AutoCloseable {
+	/** Default port: {@value} */
+	public static final int DEFAULT_PORT = 7170;
+
+	/** What one spectator has been sent, and the frame it is being sent. */
+	private static final class Spectator {
+		final SocketChannel channel;
+		final SelectionKey key;
+		/** VIEW messages, kept in write mode between reads */
+		final ByteBuffer incoming = ByteBuffer.allocate(4 * SpectatorProtocol.VIEW_BYTES);
+		/** frame being written; empty when the spectator is ready for the next one */
+		ByteBuffer outgoing = ByteBuffer.allocate(0);
+		/** interest region */
+		double left, top, right, bottom;
+		boolean snapshotSent;
+		/** quantized state last sent, per actor id; <i>known</i> is false for actors the spectator has not been sent or has been told to remove */
+		boolean[] known = new boolean[0];
+		byte[] type = new byte[0], army = new byte[0], health = new byte[0], visible = new byte[0];
+		short[] x = new short[0], y = new short[0];
+		long framesSent, framesSkipped;
+
+		Spectator(SocketChannel channel, SelectionKey key, double width, double height) {
+			this.channel = channel;
+			this.key = key;
+			right = width;
+			bottom = height;
+		} // end Constructor
+
+		boolean isBusy() { return outgoing.hasRemaining(); }
+
+		void ensureCapacity(int size) {
+			if (known.length >= size)
+				return;
+			int capacity = Math.max(size, 2 * known.length);
+			known = Arrays.copyOf(known, capacity);
+			type = Arrays.copyOf(type, capacity); army = Arrays.copyOf(army, capacity);
+			health = Arrays.copyOf(health, capacity); visible = Arrays.copyOf(visible, capacity);
+			x = Arrays.copyOf(x, capacity); y = Arrays.copyOf(y, capacity);
+		} // end ensureCapacity()
+	} // end class Spectator
+
+	private final Battle battle;
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final List<Spectator> spectators = new ArrayList<>();
+	/** ids removed from a spectator's region during the current encoding */
+	private int[] removed = new int[0];
+
+	/**
+	 * Opens the server on the loopback interface.
+	 * @param battle battle to stream
+	 * @param port port to accept spectators on, or 0 for any free port
+	 */
+	public SpectatorServer(Battle battle, int port) throws IOException {
+		this.battle = battle;
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	} // end Constructor
+
+	/** @return port the server accepts spectators on */
+	public int getPort() throws IOException { return ((InetSocketAddress) server.getLocalAddress()).getPort(); }
+	/** @return spectators connected */
+	public int getSpectatorCount() { return spectators.size(); }
+	/** @return frames sent to all spectators so far */
+	public long getFramesSent() { return spectators.stream().mapToLong(spectator -> spectator.framesSent).sum(); }
+	/** @return ticks skipped for spectators still reading an earlier frame */
+	public long getFramesSkipped() { return spectators.stream().mapToLong(spectator -> spectator.framesSkipped).sum(); }
+	/** @return bytes waiting to be written to all spectators; never more than one frame each */
+	public long getPendingBytes() { return spectators.stream().mapToLong(spectator -> spectator.outgoing.remaining()).sum(); }
+
+	/**
+	 * Accepts new spectators, reads their VIEW messages, finishes writing earlier frames and sends a frame of the current state to every spectator that is ready for one. Never blocks.
+	 */
+	public void publish() throws IOException {
+		selector.selectNow();
+		for (SelectionKey key : selector.selectedKeys()) {
+			if (key.isValid() && key.isAcceptable())
+				accept();
+			else if (key.isValid() && key.attachment() instanceof Spectator spectator) {
+				if (key.isReadable())
+					read(spectator);
+				if (key.isValid() && key.isWritable())
+					write(spectator);
+			}
+		}
+		selector.selectedKeys().clear();
+		for (int i = 0; i < spectators.size(); ++i) {
+			Spectator spectator = spectators.get(i);
+			if (!spectator.key.isValid())
+				spectators.remove(i--);
+			else if (spectator.isBusy())
+				++spectator.framesSkipped;
+			else {
+				encode(spectator);
+				++spectator.framesSent;
+				write(spectator);
+			}
+		}
+	} // end publish()
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept()) != null) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // one frame per tick: do not wait to coalesce
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			Spectator spectator = new Spectator(channel, key, battle.getWidth(), battle.getHeight());
+			key.attach(spectator);
+			spectators.add(spectator);
+		}
+	} // end accept()
+
+	/** Reads the spectator's VIEW messages; the last one wins. A spectator that sends anything else is disconnected, without disturbing the battle or the other spectators. */
+	private void read(Spectator spectator) {
+		try {
+			if (spectator.channel.read(spectator.incoming) < 0) {
+				disconnect(spectator);
+				return;
+			}
+		} catch (IOException e) {
+			disconnect(spectator);
+			return;
+		}
+		ByteBuffer in = spectator.incoming.flip();
+		while (in.remaining() >= Integer.BYTES) {
+			if (in.getInt(in.position()) != SpectatorProtocol.VIEW_BYTES - Integer.BYTES) { // VIEW is the only message a spectator sends
+				disconnect(spectator);
+				return;
+			}
+			if (in.remaining() < SpectatorProtocol.VIEW_BYTES)
+				break;
+			in.getInt();
+			try {
+				SpectatorProtocol.expect(in, SpectatorProtocol.VIEW);
+			} catch (IllegalStateException e) {
+				disconnect(spectator);
+				return;
+			}
+			spectator.left = in.getFloat();
+			spectator.top = in.getFloat();
+			spectator.right = in.getFloat();
+			spectator.bottom = in.getFloat();
+		}
+		in.compact();
+	} // end read()
+
+	/** Writes as much of the spectator's frame as the socket accepts, and asks to be told when it accepts more. */
+	private void write(Spectator spectator) {
+		try {
+			spectator.channel.write(spectator.outgoing);
+		} catch (IOException e) {
+			disconnect(spectator);
+			return;
+		}
+		spectator.key.interestOps(SelectionKey.OP_READ | (spectator.isBusy() ? SelectionKey.OP_WRITE : 0));
+	} // end write()
+
+	private void disconnect(Spectator spectator) {
+		spectator.key.cancel();
+		try {
+			spectator.channel.close();
+		} catch (IOException e) {
+			// already gone
+		}
+	} // end disconnect()
+
+	/** Writes the spectator's next frame (a snapshot the first time, a delta afterwards) into its outgoing buffer and records what it has been sent. */
+	private void encode(Spectator spectator) {
+		final ActorStore store = battle.getStore();
+		final int size = store.size();
+		final double width = battle.getWidth(), height = battle.getHeight();
+		spectator.ensureCapacity(size);
+		if (removed.length < size)
+			removed = new int[Math.max(size, 2 * removed.length)];
+		int required = 64 + size * (SpectatorProtocol.MAX_UPDATE_BYTES + Integer.BYTES);
+		if (spectator.outgoing.capacity() < required)
+			spectator.outgoing = ByteBuffer.allocate(Math.max(required, 2 * spectator.outgoing.capacity()));
+		ByteBuffer out = spectator.outgoing.clear();
+		out.putInt(0); // length, patched below
+		if (!spectator.snapshotSent) {
+			out.put(SpectatorProtocol.SNAPSHOT).putLong(battle.getTickCount());
+			out.putFloat((float) width).putFloat((float) height).put((byte) battle.getNumArmies());
+			Arrays.fill(spectator.known, false);
+			spectator.snapshotSent = true;
+		} else
+			out.put(SpectatorProtocol.DELTA).putLong(battle.getTickCount());
+		int countAt = out.position(), updates = 0, removals = 0;
+		out.putInt(0);
+		for (int id = 0; id < size; ++id) {
+			double actorX = store.getX(id), actorY = store.getY(id);
+			if (!store.isAlive(id) || store.isGhost(id) || actorX < spectator.left || actorX > spectator.right || actorY < spectator.top || actorY > spectator.bottom) {
+				if (spectator.known[id]) {
+					spectator.known[id] = false;
+					removed[removals++] = id;
+				}
+				continue;
+			}
+			byte type = (byte) store.getArchetype(id).getId(), army = (byte) store.getArmy(id);
+			short x = (short) SpectatorProtocol.quantizePosition(actorX, width), y = (short) SpectatorProtocol.quantizePosition(actorY, height);
+			byte health = (byte) SpectatorProtocol.quantizeHealth(store.getHealth(id), Actor.MAX_HEALTH);
+			byte visible = (byte) (store.isVisible(id) ? 1 : 0);
+			int mask;
+			if (!spectator.known[id] || spectator.type[id] != type || spectator.army[id] != army) // new to this spectator, or the id has been reused
+				mask = SpectatorProtocol.ENTER | SpectatorProtocol.POSITION | SpectatorProtocol.HEALTH | SpectatorProtocol.VISIBLE;
+			else
+				mask = (spectator.x[id] != x || spectator.y[id] != y ? SpectatorProtocol.POSITION : 0)
+						| (spectator.health[id] != health ? SpectatorProtocol.HEALTH : 0)
+						| (spectator.visible[id] != visible ? SpectatorProtocol.VISIBLE : 0);
+			if (mask == 0)
+				continue;
+			out.putInt(id).put((byte) mask);
+			if ((mask & SpectatorProtocol.ENTER) != 0) {
+				out.put(type).put(army);
+				spectator.known[id] = true;
+				spectator.type[id] = type;
+				spectator.army[id] = army;
+			}
+			if ((mask & SpectatorProtocol.POSITION) != 0) {
+				out.putShort(x).putShort(y);
+				spectator.x[id] = x;
+				spectator.y[id] = y;
+			}
+			if ((mask & SpectatorProtocol.HEALTH) != 0)
+				out.put(spectator.health[id] = health);
+			if ((mask & SpectatorProtocol.VISIBLE) != 0)
+				out.put(spectator.visible[id] = visible);
+			++updates;
+		}
+		out.putInt(countAt, updates);
+		out.putInt(removals);
+		for (int i = 0; i < removals; ++i)
+			out.putInt(removed[i]);
+		out.putInt(0, out.position() - Integer.BYTES);
+		out.flip();
+	} // end encode()
+
+	/**
+	 * Ticks the battle and publishes it, at most <i>ticksPerSecond</i> times a second, until it is decided or <i>maxTicks</i> have run.
+	 * @return index of the winning army, or -1 if there is none yet
+	 */
+	public int run(long maxTicks, double ticksPerSecond) throws IOException, InterruptedException {
+		final long period = (long) (1e9 / ticksPerSecond);
+		long next = System.nanoTime();
+		for (long tick = 0; tick < maxTicks && !battle.isDecided(); ++tick) {
+			battle.tick();
+			publish();
+			next += period;
+			long wait = next - System.nanoTime();
+			if (wait > 0)
+				Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+		}
+		publish();
+		return battle.getWinner();
+	} // end run()
+
+	@Override
+	public void close() throws IOException {
+		for (Spectator spectator : spectators)
+			disconnect(spectator);
+		spectators.clear();
+		selector.close();
+		server.close();
+	} // end close()
+
+	/**
+	 * Runs the same armies as <i>Simulator.populate()</i>, scaled up, and streams them.
+	 * Arguments, all optional: port, actors per army, ticks per second.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int actorsPerArmy = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		double ticksPerSecond = args.length > 2 ? Double.parseDouble(args[2]) : 1.0 / Battle.TICK_SECONDS;
+		Battle battle = new Battle(System.nanoTime());
+		battle.populate(Battle.LIGHT, ActorFactory.Type.HOBBIT, actorsPerArmy / 2);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.ELF, actorsPerArmy * 3 / 10);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.WIZARD, actorsPerArmy - actorsPerArmy / 2 - actorsPerArmy * 3 / 10);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, actorsPerArmy);
+		try (SpectatorServer server = new SpectatorServer(battle, port)) {
+			System.out.printf("Streaming %d actors on port %d%n", 2 * actorsPerArmy, server.getPort());
+			int winner = server.run(Long.MAX_VALUE, ticksPerSecond);
+			System.out.printf("Winner: %s after %d ticks; %d frames sent, %d skipped%n", winner == -1 ? "none" : winner == Battle.LIGHT ? "light" : "darkness", battle.getTickCount(), server.getFramesSent(), server.getFramesSkipped());
+		}
+	} // end main()
+} // end class SpectatorServer
@@ -0,0 +1,782 @@
+package test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+import actor.ActorFactory;
+import actor.Archetype;
+import actor.ArchetypeRegistry;
+import engine.*;
+
+/**
+ * jUnit tests for the headless <i>Battle</i> engine and the <i>CompositionOptimizer</i> built on it.
+ *
+ * @author Ammar Khan
+ * @see Battle
+ * @see CompositionOptimizer
+ */
+public class JUnitTestBattle {
+
+	private static Battle buildBattle(long seed) { return populate(new Battle(seed)); }
+
+	private static Battle populate(Battle battle) {
+		battle.populate(Battle.LIGHT, ActorFactory.Type.HOBBIT, 5);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.ELF, 3);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.WIZARD, 2);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 12);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 23);
+		return battle;
+	}
+
+	@Test
+	public void testPopulate() {
+		Battle battle = buildBattle(7L);
+		assertEquals(22, battle.getLiveCount(Battle.LIGHT));
+		assertEquals(23, battle.getLiveCount(Battle.DARKNESS));
+		ActorStore store = battle.getStore();
+		for (int id = 0; id < store.size(); ++id) {
+			assertNotNull("RANDOM must resolve to a concrete type", store.getArchetype(id));
+			assertTrue(store.getX(id) >= 0.0 && store.getX(id) <= battle.getWidth());
+			assertTrue(store.getY(id) >= 0.0 && store.getY(id) <= battle.getHeight());
+		}
+	}
+
+	@Test
+	public void testSameSeedSameBattle() {
+		Battle first = buildBattle(42L), second = buildBattle(42L);
+		first.run(20_000);
+		second.run(20_000);
+		assertEquals(first.getTickCount(), second.getTickCount());
+		assertEquals(first.getLiveCount(Battle.LIGHT), second.getLiveCount(Battle.LIGHT));
+		assertEquals(first.getLiveCount(Battle.DARKNESS), second.getLiveCount(Battle.DARKNESS));
+		assertEquals(first.getTotalHealth(Battle.LIGHT), second.getTotalHealth(Battle.LIGHT), 0.0);
+	}
+
+	@Test
+	public void testTypeBatchedMatchesInterleaved() {
+		Battle batched = buildBattle(3L), interleaved = buildBattle(3L);
+		interleaved.setTypeBatched(false);
+		ActorStore batchedStore = batched.getStore(), interleavedStore = interleaved.getStore();
+		for (int tick = 0; tick < 5000 && !batched.isDecided(); ++tick) {
+			batched.tick();
+			interleaved.tick();
+			for (int id = 0; id < batchedStore.size(); ++id) {
+				assertEquals(interleavedStore.isAlive(id), batchedStore.isAlive(id));
+				assertEquals(interleavedStore.getX(id), batchedStore.getX(id), 0.0);
+				assertEquals(interleavedStore.getY(id), batchedStore.getY(id), 0.0);
+				assertEquals(interleavedStore.getHealth(id), batchedStore.getHealth(id), 0.0);
+			}
+		}
+		assertEquals(interleaved.isDecided(), batched.isDecided());
+	}
+
+	@Test
+	public void testArchetypeWithoutSubclass() throws IOException {
+		ArchetypeRegistry registry = ArchetypeRegistry.load(new StringReader(String.join("\n",
+				"archetypes = ORC, TROLL",
+				"ORC.visibility = always", "ORC.movement = approach 0.75", "ORC.sprite = rectangle 3 10 RED",
+				"TROLL.strength = 80 100 2.0", "TROLL.special = Hide 0 10 2.0", "TROLL.visibility = special below 20",
+				"TROLL.movement = approach 1.0", "TROLL.sprite = circle 8 GRAY")));
+		Archetype troll = registry.get("troll");
+		assertEquals(1, troll.getId());
+		assertEquals(Archetype.Movement.APPROACH, troll.getMovement());
+		Battle battle = new Battle(9L, 2, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, registry);
+		battle.populate(Battle.LIGHT, troll, 10);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 30);
+		ActorStore store = battle.getStore();
+		for (int id = 0; id < 10; ++id) {
+			assertSame(troll, store.getArchetype(id));
+			assertTrue(store.getStrength(id) >= 80.0);
+			assertTrue("special below 20 is always met by 0 to 10", store.isVisible(id));
+		}
+		battle.run(20_000);
+		assertTrue(battle.getLiveCount(Battle.LIGHT) < 10 || battle.getLiveCount(Battle.DARKNESS) < 30);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testArchetypeMissingMovement() throws IOException {
+		ArchetypeRegistry.load(new StringReader("archetypes = ORC\nORC.visibility = always\nORC.sprite = rectangle 3 10 RED"));
+	}
+
+	@Test
+	public void testGridSearchMatchesScan() {
+		Battle battle = new Battle(11L, 4, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT);
+		for (int armyIndex = 0; armyIndex < 4; ++armyIndex)
+			battle.populate(armyIndex, ActorFactory.Type.RANDOM, 150);
+		battle.setHostile(0, 1, false); // army 0 spares army 1, but army 1 still attacks army 0
+		battle.setHostile(2, 3, false);
+		battle.setHostile(3, 2, false);
+		ActorStore store = battle.getStore();
+		for (int tick = 0; tick < 200; ++tick) {
+			battle.tick();
+			for (int id = 0; id < store.size(); ++id)
+				if (store.isAlive(id))
+					assertEquals(battle.scanNearestHostile(id), battle.findNearestHostile(id));
+		}
+		assertTrue(battle.isHostile(1, 0));
+		assertFalse(battle.isHostile(0, 1));
+	}
+
+	@Test
+	public void testIndexedTargetingMatchesScan() {
+		Battle battle = new Battle(13L, 3, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT);
+		for (int armyIndex = 0; armyIndex < 3; ++armyIndex)
+			battle.populate(armyIndex, ActorFactory.Type.RANDOM, 300);
+		battle.setHostile(1, 2, false);
+		ArchetypeRegistry archetypes = battle.getArchetypes();
+		battle.setTargeting(archetypes.get(ActorFactory.Type.ORC), Archetype.Targeting.WEAKEST_IN_RANGE);
+		battle.setTargeting(archetypes.get(ActorFactory.Type.ELF), Archetype.Targeting.STRONGEST_IN_RANGE);
+		battle.setTargeting(archetypes.get(ActorFactory.Type.WIZARD), Archetype.Targeting.FASTEST_IN_RANGE);
+		ActorStore store = battle.getStore();
+		for (int tick = 0; tick < 300 && !battle.isDecided(); ++tick) {
+			battle.tick();
+			if (tick % 50 == 25) // edits between ticks must keep the indexes in order too
+				for (int id = 0; id < store.size(); id += 17)
+					if (store.isAlive(id)) {
+						battle.setStrength(id, store.getStrength(id) * 0.5);
+						battle.setHealth(id, store.getHealth(id) + 5.0);
+					}
+			for (int id = 0; id < store.size(); ++id)
+				if (store.isAlive(id))
+					assertEquals(battle.scanTarget(id), battle.findTarget(id));
+		}
+		assertEquals(Archetype.Targeting.NEAREST, battle.getTargeting(archetypes.get(ActorFactory.Type.HOBBIT)));
+	}
+
+	@Test
+	public void testFogOfWarRestrictsTargetsToWhatArmiesSee() {
+		Battle battle = new Battle(29L, 3, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT);
+		for (int armyIndex = 0; armyIndex < 3; ++armyIndex)
+			battle.populate(armyIndex, ActorFactory.Type.RANDOM, 300);
+		battle.setTargeting(battle.getArchetypes().get(ActorFactory.Type.ORC), Archetype.Targeting.WEAKEST_IN_RANGE);
+		battle.setFogOfWar(true, false);
+		ActorStore store = battle.getStore();
+		for (int tick = 0; tick < 300 && !battle.isDecided(); ++tick) {
+			battle.tick();
+			for (int id = 0; id < store.size(); ++id) {
+				if (!store.isAlive(id))
+					continue;
+				int target = battle.findTarget(id);
+				assertEquals(battle.scanTarget(id), target);
+				assertEquals(battle.scanNearestHostile(id), battle.findNearestHostile(id));
+				if (target >= 0)
+					assertTrue(battle.isVisibleTo(store.getArmy(id), store.getX(target), store.getY(target)));
+			}
+		}
+		int[] incremental = new int[3];
+		for (int armyIndex = 0; armyIndex < 3; ++armyIndex)
+			incremental[armyIndex] = battle.getVisibleCells(armyIndex);
+		battle.setFogOfWar(true, false); // from scratch
+		for (int armyIndex = 0; armyIndex < 3; ++armyIndex)
+			assertEquals("incremental updates match a fresh fog", battle.getVisibleCells(armyIndex), incremental[armyIndex]);
+	}
+
+	@Test
+	public void testFogOfWarOcclusion() {
+		Battle battle = new Battle(31L);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.ORC, 10);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 10);
+		BulkEdit.compile("set x = 450, y = 200 where army = 0", battle.getArchetypes()).apply(battle);
+		BulkEdit.compile("set x = 560, y = 200 where army = 1", battle.getArchetypes()).apply(battle);
+		TerrainGrid terrain = new TerrainGrid(Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, 10.0);
+		for (int row = 0; row < terrain.getRows(); ++row)
+			terrain.setCost(50, row, TerrainGrid.IMPASSABLE); // a wall from x = 500 to 510
+		battle.setTerrain(terrain);
+		assertTrue(battle.isVisibleTo(Battle.LIGHT, 0.0, 0.0));
+		battle.setFogOfWar(true, false);
+		assertTrue(battle.isVisibleTo(Battle.LIGHT, 560.0, 200.0));
+		assertFalse("beyond sight", battle.isVisibleTo(Battle.LIGHT, 900.0, 200.0));
+		battle.setFogOfWar(true, true);
+		assertFalse("behind the wall", battle.isVisibleTo(Battle.LIGHT, 560.0, 200.0));
+		assertTrue(battle.isVisibleTo(Battle.LIGHT, 400.0, 200.0));
+		for (int row = 20; row < 25; ++row)
+			terrain.setCost(50, row, 1); // a gap in the wall across the actors' cells
+		battle.tick();
+		assertTrue("seen through the gap", battle.isVisibleTo(Battle.DARKNESS, 450.0, 200.0));
+	}
+
+	@Test
+	public void testRangedCombatWithPooledProjectiles() {
+		Battle battle = new Battle(37L), melee = new Battle(37L);
+		for (Battle each : new Battle[] { battle, melee }) {
+			each.populate(Battle.LIGHT, ActorFactory.Type.ELF, 40);
+			each.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 40);
+		}
+		battle.setRangedCombat(2);
+		assertTrue(battle.isRangedCombat());
+		assertFalse(melee.isRangedCombat());
+		for (int tick = 0; tick < 400 && !battle.isDecided(); ++tick) {
+			battle.tick();
+			assertTrue(battle.getProjectilesInFlight() <= 2);
+		}
+		assertTrue(battle.getProjectilesFired() > 0L);
+		assertTrue(battle.getProjectileHits() > 0L);
+		assertTrue(battle.getProjectileHits() <= battle.getProjectilesFired());
+		assertTrue("a pool of 2 overflows", battle.getProjectilesDropped() > 0L);
+		melee.run(400L);
+		assertEquals(0L, melee.getProjectilesFired());
+		assertEquals(0, melee.getProjectilesInFlight());
+	}
+
+	@Test
+	public void testReinforcementsReuseTheSlotsOfTheDead() {
+		Battle battle = new Battle(41L);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 200);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 200);
+		ArchetypeRegistry archetypes = battle.getArchetypes();
+		Map<Archetype, Integer> darkness = new LinkedHashMap<>(), light = new LinkedHashMap<>();
+		darkness.put(archetypes.get(ActorFactory.Type.ORC), 3);
+		darkness.put(archetypes.get(ActorFactory.Type.WIZARD), 1);
+		light.put(archetypes.get(ActorFactory.Type.ELF), 1);
+		battle.addReinforcements(Battle.DARKNESS, new ReinforcementWave(darkness, 20, 1.0, 900.0, 300.0, 30.0));
+		ReinforcementWave limited = new ReinforcementWave(light, 20, 1.0, 100.0, 300.0, 30.0);
+		limited.setMaxWaves(50);
+		battle.addReinforcements(Battle.LIGHT, limited);
+		ActorStore store = battle.getStore();
+		int peakLive = 0;
+		boolean checkedSpawnArea = false;
+		for (int tick = 0; tick < 2000; ++tick) {
+			long wavesBefore = battle.getWavesEntered();
+			battle.tick();
+			if (!checkedSpawnArea && battle.getWavesEntered() > wavesBefore) { // the new actors have not moved yet
+				int inArea = 0;
+				for (int id = 0; id < store.size(); ++id)
+					if (store.isAlive(id) && store.getArmy(id) == Battle.DARKNESS && Math.hypot(store.getX(id) - 900.0, store.getY(id) - 300.0) <= 30.0)
+						++inArea;
+				assertTrue(inArea >= 20);
+				checkedSpawnArea = true;
+			}
+			peakLive = Math.max(peakLive, battle.getLiveCount(Battle.LIGHT) + battle.getLiveCount(Battle.DARKNESS));
+		}
+		assertEquals("99 waves of darkness (the 100th is due after the last tick) and the 50 allowed of light", 149L, battle.getWavesEntered());
+		int[] live = new int[2];
+		for (int id = 0; id < store.size(); ++id) {
+			if (!store.isAlive(id))
+				continue;
+			++live[store.getArmy(id)];
+			if (store.getArmy(id) == Battle.DARKNESS)
+				assertTrue(store.getArchetype(id).getName().equals("ORC") || store.getArchetype(id).getName().equals("WIZARD"));
+		}
+		assertEquals(battle.getLiveCount(Battle.LIGHT), live[Battle.LIGHT]);
+		assertEquals(battle.getLiveCount(Battle.DARKNESS), live[Battle.DARKNESS]);
+		assertTrue("3400 actors fought, but the store holds no more than were ever alive at once", store.size() <= peakLive + 40);
+		assertTrue(battle.getDeathCount(Battle.LIGHT) + battle.getDeathCount(Battle.DARKNESS) > 400L);
+	}
+
+	@Test
+	public void testVectorCombatMatchesScalar() {
+		Battle scalar = buildBattle(17L), vector = buildBattle(17L);
+		scalar.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, 200); // enough rounds per tick to fill the vector lanes
+		vector.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, 200);
+		scalar.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 200);
+		vector.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 200);
+		scalar.setCombat(Battle.Combat.BATCHED_SCALAR);
+		vector.setCombat(Battle.Combat.BATCHED_VECTOR);
+		ActorStore scalarStore = scalar.getStore(), vectorStore = vector.getStore();
+		for (int tick = 0; tick < 5000 && !scalar.isDecided(); ++tick) {
+			scalar.tick();
+			vector.tick();
+			for (int id = 0; id < scalarStore.size(); ++id) {
+				assertEquals(scalarStore.isAlive(id), vectorStore.isAlive(id));
+				assertEquals(scalarStore.getHealth(id), vectorStore.getHealth(id), 0.0);
+			}
+		}
+		assertEquals(scalar.getWinner(), vector.getWinner());
+		assertTrue("both armies should have lost actors", scalar.getLiveCount(Battle.LIGHT) < 222 && scalar.getLiveCount(Battle.DARKNESS) < 223);
+	}
+
+	@Test
+	public void testVectorMovementMatchesScalar() {
+		Battle scalar = buildBattle(19L), vector = buildBattle(19L);
+		scalar.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 101); // not a multiple of any vector length
+		vector.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 101);
+		scalar.setVectorMovement(false);
+		ActorStore scalarStore = scalar.getStore(), vectorStore = vector.getStore();
+		for (int tick = 0; tick < 3000 && !scalar.isDecided(); ++tick) {
+			scalar.tick();
+			vector.tick();
+			for (int id = 0; id < scalarStore.size(); ++id) {
+				assertEquals(scalarStore.isAlive(id), vectorStore.isAlive(id));
+				assertEquals(scalarStore.getX(id), vectorStore.getX(id), 0.0);
+				assertEquals(scalarStore.getY(id), vectorStore.getY(id), 0.0);
+				assertTrue(vectorStore.getX(id) >= 0.0 && vectorStore.getX(id) <= vector.getWidth());
+			}
+		}
+		assertEquals(scalar.getTickCount(), vector.getTickCount());
+	}
+
+	@Test
+	public void testCalendarQueueMatchesPriorityQueue() {
+		Random random = new Random(5L);
+		CalendarQueue calendar = new CalendarQueue();
+		PriorityQueue<double[]> reference = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Double.compare(a[0], b[0]) : Double.compare(a[1], b[1]));
+		double[] scheduled = new double[500];
+		double now = 0.0;
+		for (int step = 0; step < 50_000; ++step) {
+			int id = random.nextInt(scheduled.length);
+			if (random.nextInt(3) > 0 || reference.isEmpty()) { // schedule (or reschedule) at a later time; some ties on purpose
+				double when = now + (random.nextBoolean() ? random.nextInt(20) : 100.0 * random.nextDouble());
+				if (calendar.contains(id))
+					reference.removeIf(entry -> entry[1] == id);
+				calendar.add(id, when);
+				reference.add(new double[] { when, id });
+				scheduled[id] = when;
+			} else {
+				double[] expected = reference.poll();
+				assertEquals((int) expected[1], calendar.poll());
+				now = expected[0];
+			}
+			assertEquals(reference.size(), calendar.size());
+		}
+		while (!reference.isEmpty())
+			assertEquals((int) reference.poll()[1], calendar.poll());
+		assertTrue(calendar.isEmpty());
+	}
+
+	@Test
+	public void testEventDrivenBattle() {
+		Battle first = buildBattle(23L), second = buildBattle(23L);
+		int winner = first.runEvents(100_000.0);
+		assertEquals(winner, second.runEvents(100_000.0));
+		assertTrue(first.isDecided());
+		assertEquals(0L, first.getTickCount());
+		assertEquals(first.getTime(), second.getTime(), 0.0);
+		assertEquals(first.getTotalHealth(Battle.LIGHT), second.getTotalHealth(Battle.LIGHT), 0.0);
+		Battle stopped = buildBattle(23L);
+		stopped.runEvents(1.5);
+		assertTrue(stopped.getTime() <= 1.5);
+		stopped.runEvents(100_000.0); // resuming gives the same battle as running straight through
+		assertEquals(first.getTime(), stopped.getTime(), 0.0);
+		assertEquals(first.getTotalHealth(Battle.DARKNESS), stopped.getTotalHealth(Battle.DARKNESS), 0.0);
+	}
+
+	@Test
+	public void testFlowFieldAroundWall() throws IOException {
+		TerrainGrid terrain = TerrainGrid.fromText(new StringReader(String.join("\n",
+				"1111#1111",
+				"1111#1111",
+				"1111#1111",
+				"1111#1111",
+				"111111111")), 10.0);
+		FlowField field = new FlowField(terrain);
+		field.setTarget(85.0, 5.0, 0.0); // top right cell, behind the wall
+		int cell = terrain.cellAt(5.0, 5.0);
+		boolean passedGap = false;
+		for (int steps = 0; !field.isTarget(cell); ++steps) {
+			assertTrue("path must reach the target", steps < 30);
+			cell = field.nextCell(cell);
+			assertNotEquals(TerrainGrid.IMPASSABLE, terrain.getCost(cell));
+			passedGap |= cell == terrain.cellAt(45.0, 45.0);
+		}
+		assertTrue("the only way round the wall is the gap at the bottom", passedGap);
+
+		int fullVisits = field.getCellsVisited();
+		field.setTarget(85.0, 5.0, 10.0); // grows to the neighbouring cells: incremental
+		assertTrue(field.getCellsVisited() < fullVisits);
+		FlowField fresh = new FlowField(terrain);
+		fresh.setTarget(85.0, 5.0, 10.0);
+		for (int i = 0; i < terrain.getColumns() * terrain.getRows(); ++i)
+			assertEquals(fresh.getDistance(i), field.getDistance(i), 1e-9);
+
+		terrain.setCost(4, 4, TerrainGrid.IMPASSABLE); // close the gap
+		field.refresh();
+		assertEquals(Double.POSITIVE_INFINITY, field.getDistance(terrain.cellAt(5.0, 5.0)), 0.0);
+		assertEquals(-1, field.nextCell(terrain.cellAt(5.0, 5.0)));
+	}
+
+	@Test
+	public void testArmiesMarchOnSharedObjective() throws IOException {
+		Battle battle = new Battle(29L);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.ELF, 200);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 200);
+		battle.setHostile(Battle.LIGHT, Battle.DARKNESS, false); // nobody fights, everybody marches
+		battle.setHostile(Battle.DARKNESS, Battle.LIGHT, false);
+		battle.setTerrain(TerrainGrid.fromImage(Paths.get("MiddleEarth-3.jpg"), Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, 10.0));
+		double objectiveX = 500.0, objectiveY = 280.0;
+		battle.setObjective(Battle.LIGHT, objectiveX, objectiveY, 40.0);
+		battle.setObjective(Battle.DARKNESS, objectiveX, objectiveY, 40.0);
+		assertSame("same objective, same flow field", battle.getObjective(Battle.LIGHT), battle.getObjective(Battle.DARKNESS));
+		ActorStore store = battle.getStore();
+		double before = meanDistance(store, objectiveX, objectiveY);
+		for (int tick = 0; tick < 2000; ++tick)
+			battle.tick();
+		assertTrue(meanDistance(store, objectiveX, objectiveY) < 0.5 * before);
+		battle.setObjective(Battle.LIGHT, 100.0, 100.0, 40.0);
+		assertNotSame(battle.getObjective(Battle.LIGHT), battle.getObjective(Battle.DARKNESS));
+	}
+
+	@Test
+	public void testSeparationSpreadsCrowd() {
+		double[] stacked = new double[2];
+		for (int hard = 0; hard < 2; ++hard) {
+			Battle battle = new Battle(31L);
+			battle.populate(Battle.LIGHT, ActorFactory.Type.ORC, 300);
+			battle.setObjective(Battle.LIGHT, 500.0, 280.0, 0.0); // everybody heads for the same cell
+			if (hard == 1)
+				battle.setSeparation(6.0, true);
+			for (int tick = 0; tick < 3000; ++tick)
+				battle.tick();
+			ActorStore store = battle.getStore();
+			for (int id = 0; id < store.size(); ++id)
+				for (int other = id + 1; other < store.size(); ++other)
+					if (Math.hypot(store.getX(id) - store.getX(other), store.getY(id) - store.getY(other)) < 1.0)
+						++stacked[hard];
+		}
+		assertTrue("without separation the army piles up", stacked[0] > 1000);
+		assertTrue("with separation few actors overlap", stacked[1] < stacked[0] / 20);
+	}
+
+
+	@Test
+	public void testOffHeapStoresPlayOutTheSameBattle() throws IOException {
+		assumeTrue(ActorStore.isOffHeapSupported());
+		Path file = Files.createTempFile("battle", ".store");
+		Files.delete(file); // mapped() creates it
+		ArchetypeRegistry archetypes = ArchetypeRegistry.getDefault();
+		Battle heap = buildBattle(11L);
+		try (ActorStore offHeap = ActorStore.offHeap(archetypes); ActorStore mapped = ActorStore.mapped(file, archetypes)) {
+			Battle[] battles = { heap, populate(new Battle(11L, 2, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, offHeap)), populate(new Battle(11L, 2, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, mapped)) };
+			for (int i = 0; i < 100; ++i) // grows the columns past their initial capacity
+				for (Battle battle : battles)
+					battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 1);
+			assertTrue(offHeap.isOffHeap());
+			for (int tick = 0; tick < 2000 && !heap.isDecided(); ++tick)
+				for (Battle battle : battles)
+					battle.tick();
+			for (Battle battle : battles) {
+				ActorStore store = battle.getStore();
+				assertEquals(heap.getStore().size(), store.size());
+				for (int id = 0; id < store.size(); ++id) {
+					assertEquals(heap.getStore().isAlive(id), store.isAlive(id));
+					assertEquals(heap.getStore().getX(id), store.getX(id), 0.0);
+					assertEquals(heap.getStore().getY(id), store.getY(id), 0.0);
+					assertEquals(heap.getStore().getHealth(id), store.getHealth(id), 0.0);
+				}
+				assertEquals(heap.getLiveCount(Battle.DARKNESS), battle.getLiveCount(Battle.DARKNESS));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testLockstepVerifierFindsEnginesIdentical() {
+		for (LockstepVerifier.Engine engine : LockstepVerifier.Engine.values()) {
+			if (!engine.isAvailable())
+				continue;
+			LockstepVerifier.Divergence divergence = LockstepVerifier.verify(engine.getReference(), engine, 23L, battle -> {
+				populate(battle);
+				battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 150);
+				battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, 150);
+			}, 3000);
+			assertNull(engine + ": " + divergence, divergence);
+		}
+	}
+
+	@Test
+	public void testLockstepVerifierReportsFirstDivergence() {
+		Battle reference = buildBattle(5L), candidate = buildBattle(5L);
+		ActorStore store = candidate.getStore();
+		assertEquals("the hash does not depend on the order the actors are visited", StateHash.of(store), StateHash.of(store, 0, 20) + StateHash.of(store, 20, store.size()));
+		candidate.setHealth(7, Math.nextDown(store.getHealth(7))); // one bit of one actor
+		LockstepVerifier.Divergence divergence = LockstepVerifier.verify(reference, candidate, 1000);
+		assertNotNull(divergence);
+		assertEquals(1L, divergence.getTick());
+		assertTrue(divergence.toString(), divergence.getActors().get(0).startsWith("Id:7 "));
+		assertEquals(reference.getStateHashes().length, candidate.getStateHashes().length);
+	}
+
+	@Test
+	public void testCombatStatisticsAccountForEveryDeath() throws IOException {
+		Battle battle = buildBattle(9L), plain = buildBattle(9L);
+		ArchetypeRegistry registry = ArchetypeRegistry.getDefault();
+		CombatStatistics statistics = new CombatStatistics(Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, CombatStatistics.DEFAULT_CELL_SIZE, registry);
+		battle.setStatistics(statistics);
+		battle.setStateHashing(true);
+		plain.setStateHashing(true);
+		int before = battle.getLiveCount(Battle.LIGHT) + battle.getLiveCount(Battle.DARKNESS);
+		for (int tick = 0; tick < 20000 && !battle.isDecided(); ++tick) {
+			battle.tick();
+			plain.tick();
+		}
+		assertArrayEquals("recording does not change the battle", plain.getStateHashes(), battle.getStateHashes());
+		long died = before - battle.getLiveCount(Battle.LIGHT) - battle.getLiveCount(Battle.DARKNESS), counted = 0L, mapped = 0L;
+		for (int victim = 0; victim < registry.size(); ++victim) {
+			counted += statistics.getOtherDeaths(victim);
+			for (int killer = 0; killer < registry.size(); ++killer)
+				counted += statistics.getKills(killer, victim);
+		}
+		for (int row = 0; row < statistics.getRows(); ++row)
+			for (int column = 0; column < statistics.getColumns(); ++column)
+				mapped += statistics.getDeaths(column, row);
+		assertTrue(died > 0 && statistics.getRounds() > 0);
+		assertEquals(died, counted);
+		assertEquals(died, mapped);
+
+		Path directory = Files.createTempDirectory("statistics");
+		statistics.export(directory);
+		for (String file : new String[] { "kills.csv", "timeline.csv", "heatmap.csv" })
+			assertTrue(file, Files.size(directory.resolve(file)) > 0L);
+	}
+
+	@Test
+	public void testCombatStatisticsTimelineStaysFixedSize() {
+		CombatStatistics statistics = new CombatStatistics(100.0, 100.0, 10.0, ArchetypeRegistry.getDefault());
+		for (int second = 0; second < 100000; ++second)
+			statistics.recordRound(0, 1, 5.0, 5.0, -1.0, 1.0, second);
+		assertTrue(statistics.getTimelineSize() <= CombatStatistics.TIMELINE_LENGTH);
+		assertEquals(512.0, statistics.getBucketSeconds(), 0.0); // 100000 seconds need 9 doublings of 256 one-second buckets
+		double total = 0.0;
+		for (int bucket = 0; bucket < statistics.getTimelineSize(); ++bucket)
+			total += statistics.getTimelineDamage(bucket);
+		assertEquals("merging keeps the damage", 100000.0, total, 1e-6);
+		assertEquals(100000.0, statistics.getDamageTaken(0), 1e-6);
+		assertEquals(0.0, statistics.getDamageTaken(1), 0.0);
+		assertEquals(100000, statistics.getCombat(0, 0));
+	}
+
+	@Test
+	public void testRosterExportStreamsBothFormats() throws IOException {
+		Battle battle = new Battle(13L);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 100000);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, 100000);
+		ActorStore store = battle.getStore();
+		Path directory = Files.createTempDirectory("roster");
+
+		Path csv = directory.resolve("roster.csv");
+		assertEquals(200000L, RosterExporter.write(battle, csv, ExportChannel.Format.CSV));
+		List<String> lines = Files.readAllLines(csv);
+		assertEquals(200001, lines.size());
+		assertEquals(String.join(",", RosterExporter.COLUMNS), lines.get(0));
+		String[] first = lines.get(1).split(",");
+		assertEquals("0", first[0]);
+		assertEquals(store.getArchetype(0).getName(), first[2]);
+		assertEquals(store.getX(0), Double.parseDouble(first[3]), 0.0005);
+		assertEquals(store.getHealth(0), Double.parseDouble(first[5]), 0.0005);
+
+		Path bin = directory.resolve("roster.bin");
+		assertEquals(200000L, RosterExporter.write(battle, bin, ExportChannel.Format.COLUMNAR));
+		ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(bin));
+		assertEquals(RosterExporter.ROSTER_MAGIC, in.getInt());
+		int rows = in.getInt();
+		assertEquals(200000, rows);
+		for (int type = in.getShort(); type > 0; --type)
+			in.position(in.position() + 1 + in.get(in.position()));
+		int[] widths = new int[in.getShort()];
+		for (int column = 0; column < widths.length; ++column) {
+			in.position(in.position() + 1 + in.get(in.position()));
+			widths[column] = in.get() == ExportChannel.KIND_BYTE ? 1 : 4;
+		}
+		int xColumn = in.position() + rows * (widths[0] + widths[1] + widths[2]);
+		assertEquals((float) store.getX(rows - 1), in.getFloat(xColumn + 4 * (rows - 1)), 0.0f);
+		int total = in.position();
+		for (int width : widths)
+			total += rows * width;
+		assertEquals("the file ends after the last column", in.limit(), total);
+	}
+
+	@Test
+	public void testSeriesRecorderSamplesPeriodically() throws IOException {
+		Path directory = Files.createTempDirectory("series");
+		Battle battle = buildBattle(17L);
+		int before = battle.getLiveCount(Battle.LIGHT) + battle.getLiveCount(Battle.DARKNESS);
+		long samples;
+		try (SeriesRecorder series = new SeriesRecorder(battle, directory.resolve("series.csv"), ExportChannel.Format.CSV, 10L)) {
+			series.update();
+			for (int tick = 0; tick < 20000 && !battle.isDecided(); ++tick) {
+				battle.tick();
+				series.update();
+			}
+			series.sample();
+			samples = series.getSamples();
+		}
+		List<String> lines = Files.readAllLines(directory.resolve("series.csv"));
+		assertEquals(samples + 1, lines.size());
+		assertEquals(String.join(",", SeriesRecorder.columns(2)), lines.get(0));
+		long deaths = 0L;
+		for (String line : lines.subList(1, lines.size())) {
+			String[] fields = line.split(",");
+			deaths += Long.parseLong(fields[4]) + Long.parseLong(fields[7]);
+		}
+		assertEquals(before - battle.getLiveCount(Battle.LIGHT) - battle.getLiveCount(Battle.DARKNESS), deaths);
+		String[] last = lines.get(lines.size() - 1).split(",");
+		assertEquals(battle.getTickCount(), Long.parseLong(last[0]));
+		assertEquals(battle.getLiveCount(Battle.LIGHT), Integer.parseInt(last[2]));
+
+		Battle columnar = buildBattle(17L);
+		try (SeriesRecorder series = new SeriesRecorder(columnar, directory.resolve("series.bin"), ExportChannel.Format.COLUMNAR, 1L)) {
+			for (int tick = 0; tick < SeriesRecorder.BLOCK_ROWS + 10; ++tick) {
+				columnar.tick();
+				series.update();
+			}
+		}
+		int rowBytes = Long.BYTES + Double.BYTES + 2 * (Integer.BYTES + Float.BYTES + Integer.BYTES);
+		int header = Integer.BYTES + Short.BYTES;
+		for (String name : SeriesRecorder.columns(2))
+			header += name.length() + 2;
+		assertEquals("two blocks", header + 2 * Integer.BYTES + (SeriesRecorder.BLOCK_ROWS + 10) * rowBytes, Files.size(directory.resolve("series.bin")));
+	}
+
+	@Test
+	public void testBulkEditMatchesSequentialEdits() {
+		Battle battle = new Battle(21L), expected = new Battle(21L);
+		for (Battle each : new Battle[] { battle, expected }) {
+			each.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 50000);
+			each.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, 50000);
+		}
+		ActorStore store = battle.getStore(), reference = expected.getStore();
+		int orc = battle.getArchetypes().get("ORC").getId();
+		long orcsWest = 0L;
+		for (int id = 0; id < reference.size(); ++id) {
+			if (reference.getArchetype(id).getId() == orc && reference.getX(id) < 500.0) {
+				expected.setHealth(id, 100.0);
+				++orcsWest;
+			}
+		}
+		assertEquals(orcsWest, BulkEdit.compile("SET health = 100 WHERE type = orc and x < 500", battle.getArchetypes()).apply(battle));
+		for (int id = 0; id < store.size(); ++id)
+			assertEquals(reference.getHealth(id), store.getHealth(id), 0.0);
+
+		assertEquals(battle.getLiveCount(Battle.DARKNESS), BulkEdit.compile("count where army = 1", battle.getArchetypes()).apply(battle));
+		double strength = store.getStrength(3), speed = store.getSpeed(3);
+		BulkEdit.compile("set strength = speed, speed = strength where id = 3", battle.getArchetypes()).apply(battle);
+		assertEquals("right-hand sides see the values from before the command", speed, store.getStrength(3), 0.0);
+		assertEquals(strength, store.getSpeed(3), 0.0);
+		assertEquals(1L, BulkEdit.compile("count where (id + 1) * 2 = 8 and not (army = 1 or type = -1)", battle.getArchetypes()).apply(battle));
+
+		int live = battle.getLiveCount(Battle.LIGHT);
+		long killed = BulkEdit.compile("set health = health - 1000 where army = 0 and x < 100", battle.getArchetypes()).apply(battle);
+		assertTrue(killed > 0);
+		assertEquals("an edit to 0 health kills, as Battle.setHealth() does", live - killed, battle.getLiveCount(Battle.LIGHT));
+		assertEquals(0L, BulkEdit.compile("count where army = 0 and x < 100", battle.getArchetypes()).apply(battle));
+
+		for (String invalid : new String[] { "", "set id = 3", "set health 3", "count where health", "count where type = DRAGON", "set health = 1 where x < 5 extra", "count where x # 5" }) {
+			try {
+				BulkEdit.compile(invalid, battle.getArchetypes());
+				fail("compiled " + invalid);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("position"));
+			}
+		}
+	}
+
+	@Test
+	public void testMappedStoreReopens() throws IOException {
+		assumeTrue(ActorStore.isOffHeapSupported());
+		Path file = Files.createTempFile("battle", ".store");
+		Files.delete(file);
+		ArchetypeRegistry archetypes = ArchetypeRegistry.getDefault();
+		try {
+			double[] x, health;
+			int light, darkness, size;
+			try (ActorStore store = ActorStore.mapped(file, archetypes)) {
+				Battle battle = populate(new Battle(5L, 2, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, store));
+				battle.run(300);
+				size = store.size();
+				x = new double[size];
+				health = new double[size];
+				for (int id = 0; id < size; ++id) {
+					x[id] = store.getX(id);
+					health[id] = store.getHealth(id);
+				}
+				light = battle.getLiveCount(Battle.LIGHT);
+				darkness = battle.getLiveCount(Battle.DARKNESS);
+			}
+			try (ActorStore store = ActorStore.mapped(file, archetypes)) {
+				assertEquals(size, store.size());
+				for (int id = 0; id < size; ++id) {
+					assertEquals(x[id], store.getX(id), 0.0);
+					assertEquals(health[id], store.getHealth(id), 0.0);
+				}
+				Battle reopened = new Battle(6L, 2, Battle.WORLD_WIDTH, Battle.WORLD_HEIGHT, store);
+				assertEquals(light, reopened.getLiveCount(Battle.LIGHT));
+				assertEquals(darkness, reopened.getLiveCount(Battle.DARKNESS));
+				reopened.run(100); // and the battle goes on
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testSteadyStateTickAllocatesNothing() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(counters.isThreadAllocatedMemorySupported() && counters.isThreadAllocatedMemoryEnabled());
+		long thread = Thread.currentThread().threadId();
+		for (int setup = 0; setup < 8; ++setup) {
+			Battle battle = new Battle(17L);
+			battle.populate(Battle.LIGHT, ActorFactory.Type.RANDOM, 300);
+			battle.populate(Battle.DARKNESS, ActorFactory.Type.RANDOM, 300);
+			battle.setVectorMovement(false); // Vector API objects are only scalarized once C2 has compiled the kernel, so they are not tested here
+			switch (setup) {
+			case 1: battle.setTypeBatched(false); break;
+			case 2: battle.setCombat(Battle.Combat.BATCHED_SCALAR); break;
+			case 3: battle.setSeparation(6.0, true); battle.setObjective(Battle.LIGHT, 500.0, 300.0, 20.0); break;
+			case 4:
+				for (Archetype archetype : battle.getArchetypes().getArchetypes())
+					battle.setTargeting(archetype, Archetype.Targeting.WEAKEST_IN_RANGE);
+				break;
+			case 5: battle.setRangedCombat(4096); break;
+			case 6: battle.setFogOfWar(true, false); break;
+			case 7:
+				Map<Archetype, Integer> orcs = new LinkedHashMap<>();
+				orcs.put(battle.getArchetypes().get(ActorFactory.Type.ORC), 1);
+				battle.addReinforcements(Battle.DARKNESS, new ReinforcementWave(orcs, 4, 0.5, 500.0, 300.0, 50.0));
+				break;
+			}
+			for (int tick = 0; tick < 200; ++tick) // lets every scratch array reach its final size and every class used by a tick load
+				battle.tick();
+			long before = counters.getThreadAllocatedBytes(thread);
+			for (int tick = 0; tick < 50; ++tick)
+				battle.tick();
+			long allocated = counters.getThreadAllocatedBytes(thread) - before; // read before the message below is built
+			assertEquals("bytes allocated by 50 ticks of setup " + setup, 0L, allocated);
+			assertFalse(battle.isDecided());
+		}
+	}
+	private static double meanDistance(ActorStore store, double x, double y) {
+		double total = 0.0;
+		for (int id = 0; id < store.size(); ++id)
+			total += Math.hypot(store.getX(id) - x, store.getY(id) - y);
+		return total / store.size();
+	}
+
+	@Test
+	public void testOptimizerStaysWithinBudget() throws InterruptedException {
+		Map<ActorFactory.Type, Integer> budget = new EnumMap<>(ActorFactory.Type.class), darkness = new EnumMap<>(ActorFactory.Type.class);
+		budget.put(ActorFactory.Type.HOBBIT, 2);
+		budget.put(ActorFactory.Type.ELF, 3);
+		darkness.put(ActorFactory.Type.ORC, 4);
+		CompositionOptimizer optimizer = new CompositionOptimizer(budget, darkness);
+		optimizer.setMinBattles(5);
+		optimizer.setMaxBattles(20);
+		List<CompositionOptimizer.Candidate> ranked = optimizer.optimize(2);
+		assertEquals("3 x 4 grid minus the empty army", 11, ranked.size());
+		for (CompositionOptimizer.Candidate candidate : ranked) {
+			assertTrue(candidate.getCount(ActorFactory.Type.HOBBIT) <= 2);
+			assertTrue(candidate.getCount(ActorFactory.Type.ELF) <= 3);
+			assertEquals(0, candidate.getCount(ActorFactory.Type.WIZARD));
+			assertTrue(candidate.getBattles() >= 5 && candidate.getBattles() <= 20);
+		}
+		assertFalse(ranked.get(0).isDroppedEarly());
+		assertTrue(ranked.get(0).getWinRate() >= ranked.get(1).getWinRate() || ranked.get(1).isDroppedEarly());
+	}
+}
@@ -0,0 +1,120 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import control.ControlServer;
+
+/**
+ * jUnit test of the HTTP control API, driven through <i>java.net.http.HttpClient</i> over loopback.
+ *
+ * @author Ammar Khan
+ * @see ControlServer
+ */
+public class JUnitTestControl {
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	private HttpResponse<String> send(ControlServer server, String method, String path) throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path)).method(method, HttpRequest.BodyPublishers.noBody()).build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static long number(String json, String name) {
+		Matcher matcher = Pattern.compile("\"" + name + "\":(-?\\d+)").matcher(json);
+		assertTrue(name + " in " + json, matcher.find());
+		return Long.parseLong(matcher.group(1));
+	}
+
+	private static String text(String json, String name) {
+		Matcher matcher = Pattern.compile("\"" + name + "\":\"([^\"]*)\"").matcher(json);
+		assertTrue(name + " in " + json, matcher.find());
+		return matcher.group(1);
+	}
+
+	@Test
+	public void testCreatePopulateRunAndPollConcurrently() throws Exception {
+		try (ControlServer server = new ControlServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Files.createTempDirectory("control"))) {
+			server.start();
+			HttpResponse<String> created = send(server, "POST", "/battles?seed=3");
+			assertEquals(201, created.statusCode());
+			long id = number(created.body(), "id");
+			assertEquals("paused", text(created.body(), "state"));
+
+			String populated = send(server, "POST", "/battles/" + id + "/populate?army=0&type=HOBBIT&count=2000").body();
+			populated = send(server, "POST", "/battles/" + id + "/populate?army=1&type=orc&count=2000").body();
+			assertTrue(populated, populated.contains("{\"army\":0,\"live\":2000,") && populated.contains("{\"army\":1,\"live\":2000,"));
+			send(server, "POST", "/battles/" + id + "/rate?ticksPerSecond=0");
+			assertEquals("running", text(send(server, "POST", "/battles/" + id + "/run").body(), "state"));
+
+			ExecutorService pollers = Executors.newVirtualThreadPerTaskExecutor();
+			List<Future<HttpResponse<String>>> responses = new ArrayList<>();
+			for (int i = 0; i < 500; ++i)
+				responses.add(pollers.submit(() -> send(server, "GET", "/battles/" + id)));
+			for (Future<HttpResponse<String>> response : responses)
+				assertEquals(200, response.get().statusCode());
+			pollers.shutdown();
+
+			String paused = send(server, "POST", "/battles/" + id + "/suspend").body();
+			assertEquals("paused", text(paused, "state"));
+			long tick = number(paused, "tick");
+			assertTrue("the battle ticked while being polled", tick > 0);
+			Thread.sleep(200L);
+			assertEquals("a suspended battle does not tick", tick, number(send(server, "GET", "/battles/" + id).body(), "tick"));
+			assertTrue(number(send(server, "GET", "/metrics").body(), "requests") >= 500);
+			assertEquals(200, send(server, "GET", "/battles/" + id + "/metrics").statusCode());
+		}
+	}
+
+	@Test
+	public void testSaveAndRestoreCheckpoint() throws Exception {
+		Path directory = Files.createTempDirectory("control");
+		try (ControlServer server = new ControlServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), directory)) {
+			server.start();
+			long id = number(send(server, "POST", "/battles?seed=5").body(), "id");
+			send(server, "POST", "/battles/" + id + "/populate?army=0&type=ELF&count=50");
+			send(server, "POST", "/battles/" + id + "/populate?army=1&type=ORC&count=50");
+			String saved = send(server, "POST", "/battles/" + id + "/save?name=first.ckpt").body();
+			assertEquals(100, number(saved, "actors"));
+			assertTrue(Files.exists(directory.resolve("first.ckpt")));
+			send(server, "POST", "/battles/" + id + "/populate?army=1&type=ORC&count=25");
+			String restored = send(server, "POST", "/battles/" + id + "/restore?name=first.ckpt").body();
+			assertEquals(100, number(restored, "actors"));
+			String summary = send(server, "GET", "/battles/" + id).body();
+			assertTrue(summary, summary.contains("{\"army\":1,\"live\":50,"));
+			assertEquals(400, send(server, "POST", "/battles/" + id + "/save?name=../escape").statusCode());
+		}
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		try (ControlServer server = new ControlServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), Files.createTempDirectory("control"))) {
+			server.start();
+			assertEquals(404, send(server, "GET", "/battles/42").statusCode());
+			long id = number(send(server, "POST", "/battles").body(), "id");
+			assertEquals(405, send(server, "GET", "/battles/" + id + "/run").statusCode());
+			assertEquals(400, send(server, "POST", "/battles/" + id + "/populate?army=7&type=ELF&count=1").statusCode());
+			assertEquals(400, send(server, "POST", "/battles/" + id + "/populate?army=0&type=DRAGON&count=1").statusCode());
+			assertEquals(400, send(server, "POST", "/battles/" + id + "/populate?army=0&type=ELF").statusCode());
+			assertEquals(404, send(server, "POST", "/battles/" + id + "/fly").statusCode());
+			assertEquals(200, send(server, "DELETE", "/battles/" + id).statusCode());
+			assertEquals(404, send(server, "GET", "/battles/" + id).statusCode());
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import actor.ActorFactory;
+import engine.Battle;
+import shard.ShardCoordinator;
+
+/**
+ * jUnit test that runs a sharded battle in separate <i>ShardProcess</i> JVMs on this machine.
+ *
+ * @author Ammar Khan
+ * @see ShardCoordinator
+ */
+public class JUnitTestShard {
+
+	@Test
+	public void testThreeProcessBattle() throws Exception {
+		Map<ActorFactory.Type, Integer> light = new EnumMap<>(ActorFactory.Type.class), darkness = new EnumMap<>(ActorFactory.Type.class);
+		light.put(ActorFactory.Type.HOBBIT, 40);
+		light.put(ActorFactory.Type.ELF, 30);
+		light.put(ActorFactory.Type.WIZARD, 20);
+		darkness.put(ActorFactory.Type.ORC, 90);
+		ShardCoordinator coordinator = new ShardCoordinator(3, light, darkness);
+		coordinator.setSeed(5L);
+		coordinator.setMaxTicks(3000);
+		ShardCoordinator.Result result = coordinator.launch();
+
+		assertEquals("every actor is owned by exactly one shard", 90, result.getInitialCount(Battle.LIGHT));
+		assertEquals("every actor is owned by exactly one shard", 90, result.getInitialCount(Battle.DARKNESS));
+		assertTrue(result.getTicks() > 0 && result.getTicks() <= 3000);
+		assertTrue("actors are killed across the shards", result.getFinalCount(Battle.LIGHT) + result.getFinalCount(Battle.DARKNESS) < 180);
+		if (result.getWinner() != -1)
+			assertEquals(0, result.getFinalCount(1 - result.getWinner()));
+	}
+}
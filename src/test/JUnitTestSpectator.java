@@ -0,0 +1,157 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import actor.Actor;
+import actor.ActorFactory;
+import engine.ActorStore;
+import engine.Battle;
+import spectator.SpectatorClient;
+import spectator.SpectatorServer;
+
+/**
+ * jUnit test that streams a <i>Battle</i> to spectators over loopback sockets.
+ *
+ * @author Ammar Khan
+ * @see SpectatorServer
+ * @see SpectatorClient
+ */
+public class JUnitTestSpectator {
+
+	private static Battle buildBattle(int actorsPerArmy) {
+		Battle battle = new Battle(11L);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.HOBBIT, actorsPerArmy / 2);
+		battle.populate(Battle.LIGHT, ActorFactory.Type.ELF, actorsPerArmy - actorsPerArmy / 2);
+		battle.populate(Battle.DARKNESS, ActorFactory.Type.ORC, actorsPerArmy);
+		return battle;
+	}
+
+	/** Publishes until the client has applied the frame of the current tick. */
+	private static void catchUp(SpectatorServer server, Battle battle, SpectatorClient client) throws IOException {
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (client.getTick() != battle.getTickCount()) {
+			assertTrue("spectator did not catch up", System.nanoTime() < deadline);
+			server.publish();
+			client.await(20L);
+		}
+	}
+
+	/** Checks that the client holds exactly the actors in the region, at their quantized state. */
+	private static void assertMirrors(Battle battle, SpectatorClient client, double left, double top, double right, double bottom) {
+		ActorStore store = battle.getStore();
+		for (int id = 0; id < store.size(); ++id) {
+			double x = store.getX(id), y = store.getY(id);
+			boolean expected = store.isAlive(id) && x >= left && x <= right && y >= top && y <= bottom;
+			assertEquals("actor " + id, expected, client.isPresent(id));
+			if (expected) {
+				assertEquals(x, client.getX(id), battle.getWidth() / 65535.0);
+				assertEquals(y, client.getY(id), battle.getHeight() / 65535.0);
+				assertEquals(store.getHealth(id), client.getHealth(id), Actor.MAX_HEALTH / 255.0);
+				assertEquals(store.getArmy(id), client.getArmy(id));
+				assertEquals(store.getArchetype(id).getId(), client.getType(id));
+				assertEquals(store.isVisible(id), client.isVisible(id));
+			}
+		}
+	}
+
+	@Test
+	public void testSnapshotThenDeltasMirrorTheBattle() throws Exception {
+		Battle battle = buildBattle(200);
+		try (SpectatorServer server = new SpectatorServer(battle, 0);
+				SpectatorClient client = new SpectatorClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+			catchUp(server, battle, client);
+			assertEquals(battle.getWidth(), client.getWidth(), 1e-3);
+			assertEquals(battle.getNumArmies(), client.getNumArmies());
+			assertMirrors(battle, client, 0.0, 0.0, battle.getWidth(), battle.getHeight());
+			long snapshotBytes = client.getBytesReceived();
+			for (int tick = 0; tick < 300 && !battle.isDecided(); ++tick) {
+				battle.tick();
+				catchUp(server, battle, client);
+				assertMirrors(battle, client, 0.0, 0.0, battle.getWidth(), battle.getHeight());
+			}
+			long deltas = client.getFramesReceived() - 1;
+			assertTrue(deltas > 0);
+			assertTrue("a delta is smaller than the snapshot", (client.getBytesReceived() - snapshotBytes) / deltas < snapshotBytes);
+		}
+	}
+
+	@Test
+	public void testInterestRegionFiltersActors() throws Exception {
+		Battle battle = buildBattle(300);
+		try (SpectatorServer server = new SpectatorServer(battle, 0);
+				SpectatorClient client = new SpectatorClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+			catchUp(server, battle, client);
+			double right = battle.getWidth() / 2.0, bottom = battle.getHeight() / 2.0;
+			client.setView(0.0, 0.0, right, bottom);
+			for (int tick = 0; tick < 100; ++tick) {
+				battle.tick();
+				catchUp(server, battle, client);
+			}
+			assertMirrors(battle, client, 0.0, 0.0, right, bottom);
+			client.setView(0.0, 0.0, battle.getWidth(), battle.getHeight()); // widening the view brings the others in
+			for (int tick = 0; tick < 5; ++tick) {
+				battle.tick();
+				catchUp(server, battle, client);
+			}
+			assertMirrors(battle, client, 0.0, 0.0, battle.getWidth(), battle.getHeight());
+		}
+	}
+
+	@Test
+	public void testSlowSpectatorSkipsFramesWithoutHoldingUpOthers() throws Exception {
+		Battle battle = buildBattle(3000);
+		try (SpectatorServer server = new SpectatorServer(battle, 0);
+				SpectatorClient fast = new SpectatorClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+				SpectatorClient slow = new SpectatorClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+			final int ticks = 200;
+			catchUp(server, battle, fast);
+			for (int tick = 0; tick < ticks; ++tick) { // the slow spectator reads nothing meanwhile
+				battle.tick();
+				catchUp(server, battle, fast);
+			}
+			assertEquals("the fast spectator was sent every tick", ticks + 1, fast.getFramesReceived());
+			assertTrue("the slow spectator's ticks were skipped", server.getFramesSkipped() > 0);
+			long oneFrame = 64L + battle.getStore().size() * 17L;
+			assertTrue("at most one frame is buffered per spectator", server.getPendingBytes() <= oneFrame);
+
+			catchUp(server, battle, slow); // once it reads again, the next delta brings it up to date
+			assertTrue(slow.getFramesReceived() < ticks);
+			assertMirrors(battle, slow, 0.0, 0.0, battle.getWidth(), battle.getHeight());
+		}
+	}
+
+	@Test
+	public void testMalformedSpectatorIsDisconnectedAndTheBattleGoesOn() throws Exception {
+		Battle battle = buildBattle(100);
+		try (SpectatorServer server = new SpectatorServer(battle, 0);
+				SpectatorClient client = new SpectatorClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+				SocketChannel http = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+				SocketChannel wrongType = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()))) {
+			catchUp(server, battle, client);
+			http.write(ByteBuffer.wrap("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+			ByteBuffer frame = ByteBuffer.allocate(4 + 17); // the length of a VIEW, but not its type
+			frame.putInt(17).put((byte) 99).putFloat(0f).putFloat(0f).putFloat(1f).putFloat(1f).flip();
+			wrongType.write(frame);
+			long deadline = System.nanoTime() + 5_000_000_000L;
+			while (server.getSpectatorCount() > 1) {
+				assertTrue("malformed spectators were not disconnected", System.nanoTime() < deadline);
+				battle.tick();
+				catchUp(server, battle, client);
+			}
+			for (int tick = 0; tick < 20; ++tick) {
+				battle.tick();
+				catchUp(server, battle, client);
+			}
+			assertMirrors(battle, client, 0.0, 0.0, battle.getWidth(), battle.getHeight());
+		}
+	}
+}
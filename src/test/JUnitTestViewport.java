@@ -0,0 +1,62 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import simulator.AggregationGrid;
+import simulator.Viewport;
+
+/**
+ * jUnit test of the camera and of the grid that decides which avatars are drawn; neither needs the JavaFX toolkit to be running.
+ *
+ * @author Ammar Khan
+ * @see Viewport
+ * @see AggregationGrid
+ */
+public class JUnitTestViewport {
+
+	@Test
+	public void testZoomKeepsPointUnderMouseAndStaysOnBattlefield() {
+		Viewport viewport = new Viewport(1000.0, 600.0);
+		viewport.zoomAt(4.0, 250.0, 150.0);
+		assertEquals(4.0, viewport.getZoom(), 1e-9);
+		assertEquals(250.0, viewport.toBattlefieldX(250.0), 1e-9); // the point under the mouse has not moved
+		assertEquals(150.0, viewport.toBattlefieldY(150.0), 1e-9);
+		assertEquals(250.0, viewport.getRight() - viewport.getLeft(), 1e-9);
+		viewport.panBy(10_000.0, 10_000.0); // far past the top-left corner
+		assertEquals(0.0, viewport.getLeft(), 1e-9);
+		assertEquals(0.0, viewport.getTop(), 1e-9);
+		viewport.panBy(-10_000.0, -10_000.0);
+		assertEquals(1000.0, viewport.getRight(), 1e-9);
+		assertEquals(600.0, viewport.getBottom(), 1e-9);
+		viewport.zoomAt(1e-3, 0.0, 0.0);
+		assertEquals(Viewport.MIN_ZOOM, viewport.getZoom(), 1e-9);
+		assertEquals(0.0, viewport.getLeft(), 1e-9);
+	}
+
+	@Test
+	public void testAggregationGridCountsAndCentres() {
+		double[] x = { 5.0, 7.0, 9.0, 35.0, 5.0, -20.0 };
+		double[] y = { 5.0, 7.0, 9.0, 5.0, 6.0, 2000.0 };
+		int[] army = { 0, 0, 0, 0, 1, 1 };
+		AggregationGrid grid = new AggregationGrid();
+		grid.rebuild(x, y, army, x.length, 2, 100.0, 100.0, 32.0);
+		assertEquals(4, grid.getColumns());
+		assertEquals(3, grid.getCount(0, 0, 0));
+		assertEquals(1, grid.getCount(0, 0, 1));
+		assertEquals(7.0, grid.getCentreX(0, 0, 0), 1e-9);
+		assertEquals(1, grid.getCount(1, 0, 0));
+		assertEquals(1, grid.getCount(0, grid.getRows() - 1, 1)); // off the battlefield: nearest edge cell
+		int filed = 0;
+		for (int row = 0; row < grid.getRows(); ++row)
+			for (int column = 0; column < grid.getColumns(); ++column)
+				for (int position = grid.cellStart(column, row); position < grid.cellEnd(column, row); ++position) {
+					int id = grid.actorAt(position);
+					assertEquals(grid.column(x[id]), column);
+					assertEquals(grid.row(y[id]), row);
+					++filed;
+				}
+		assertEquals(x.length, filed);
+	}
+}
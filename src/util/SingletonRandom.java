@@ -27,6 +27,18 @@ public class SingletonRandom {
    * @return a random number that follows a normal (Gaussian) distribution within the specified range.
    */
   public double getNormalDistribution(double lowerLimit, double upperLimit, double standardDeviationSpread) {
+    return getNormalDistribution(random, lowerLimit, upperLimit, standardDeviationSpread);
+  } // end getNormalDistribution()
+
+  /**
+   * Same distribution as the instance method, but drawn from a caller-supplied <i>Random</i>. Headless battles each own a seeded <i>Random</i> so that a run can be repeated exactly, and so that battles on different threads do not contend on the singleton.
+   * @param random source of the Gaussian values
+   * @param lowerLimit returned values will always be greater-than-or-equal-to this value
+   * @param upperLimit returned values will always be less-than-or-equal-to this value
+   * @param standardDeviationSpread see {@link #getNormalDistribution(double, double, double)}
+   * @return a random number that follows a normal (Gaussian) distribution within the specified range.
+   */
+  public static double getNormalDistribution(Random random, double lowerLimit, double upperLimit, double standardDeviationSpread) {
     if (standardDeviationSpread < 1.0 || standardDeviationSpread > 5.0) // if standardDeviationSpread is < 1.0 there is a risk of excessive iterations of the range-checking do-while() loop
       throw new IllegalArgumentException();
     double range = upperLimit - lowerLimit + 1.0;